@@ -0,0 +1,179 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.benchmark;
+
+import com.mathis.inputMidi.MidiEvent;
+import com.mathis.inputMidi.MidiEventBatch;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.midiEventBatchHandler;
+import com.mathis.inputMidi.midiEventHandler;
+import com.mathis.inputMidi.midiStreamListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing the messages of the input path over to the application, per message, for the
+ * workloads of MidiWorkloads. The scores are in messages per second.
+ * <ul>
+ * <li>perMessageCopy: one call per message with an array of its own, as softwareMidiReceiverAdapter
+ * and the message splitter of AppMidiSupport do for classic receivers</li>
+ * <li>perMessageRange: one call per message with a range of a scratch buffer, as for
+ * softwareMidiRangeReceiver</li>
+ * <li>batch: one call per packet with a MidiEventBatch, as for softwareMidiBatchReceiver and
+ * hardwareMidiBatchReceiver</li>
+ * <li>ringDrain and ringDrainBatch: draining a MidiEventRing one event or one batch at a time</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MidiBatchBenchmark {
+
+    @Param({"NOTE_BURST", "CC_FLOOD"})
+    public String workload;
+
+    private byte[][] mPackets;
+    private MidiInputPipeline mCopyPipeline;
+    private MidiInputPipeline mRangePipeline;
+    private MidiInputPipeline mBatchPipeline;
+    private MidiInputPipeline mRingPipeline;
+    private MidiEventRing mRing;
+    private midiEventHandler mDrain;
+    private midiEventBatchHandler mBatchDrain;
+    private final MidiEventBatch mDrainBatch = new MidiEventBatch();
+    private long mTimestamp = 1;
+
+    /**
+     * Output turning each message into bytes, in a new array or in a scratch buffer
+     */
+    private static final class ByteOutput implements midiStreamListener {
+        private final Blackhole mBlackhole;
+        private final boolean mCopy;
+        private final byte[] mScratch = new byte[3];
+
+        ByteOutput(Blackhole blackhole, boolean copy)
+        {
+            mBlackhole = blackhole;
+            mCopy = copy;
+        }
+
+        @Override
+        public void onMidiEvent(int event, long timestamp)
+        {
+            byte[] message = mCopy ? new byte[MidiEvent.getLength(event)] : mScratch;
+            MidiEvent.toBytes(event, message, 0);
+            mBlackhole.consume(message);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp)
+        {
+            mBlackhole.consume(data[offset]);
+        }
+    }
+
+    @Setup
+    public void setup(final Blackhole blackhole)
+    {
+        mPackets = MidiWorkloads.build(workload);
+        mCopyPipeline = new MidiInputPipeline(0, "benchmarkCopy");
+        mCopyPipeline.setOutput(new ByteOutput(blackhole, true));
+        mRangePipeline = new MidiInputPipeline(1, "benchmarkRange");
+        mRangePipeline.setOutput(new ByteOutput(blackhole, false));
+        mBatchPipeline = new MidiInputPipeline(2, "benchmarkBatch");
+        mBatchPipeline.setOutput(new ByteOutput(blackhole, false));
+        mBatchPipeline.setBatchOutput(batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                blackhole.consume(batch.getEvent(i));
+            }
+        });
+        mRing = new MidiEventRing(1024);
+        mRingPipeline = new MidiInputPipeline(3, "benchmarkRing");
+        mRingPipeline.setEventRing(mRing);
+        mDrain = (event, timestamp) -> blackhole.consume(event);
+        mBatchDrain = batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                blackhole.consume(batch.getEvent(i));
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void perMessageCopy()
+    {
+        receive(mCopyPipeline);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void perMessageRange()
+    {
+        receive(mRangePipeline);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void batch()
+    {
+        receive(mBatchPipeline);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void ringDrain()
+    {
+        receive(mRingPipeline);
+        mRing.drain(mDrain);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void ringDrainBatch()
+    {
+        receive(mRingPipeline);
+        mRing.drain(mDrainBatch, mBatchDrain);
+    }
+
+    private void receive(MidiInputPipeline pipeline)
+    {
+        byte[][] packets = mPackets;
+        for (byte[] packet : packets) {
+            pipeline.receive(packet, 0, packet.length, mTimestamp++);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.benchmark;
+
+import com.mathis.inputMidi.MidiDispatchBus;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiStreamParser;
+import com.mathis.inputMidi.midiEventHandler;
+import com.mathis.inputMidi.midiStreamListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the input path per message, for the workloads of MidiWorkloads. The scores are in
+ * messages per second; run with the gc profiler (the default of the build) to get the bytes
+ * allocated per message as gc.alloc.rate.norm.
+ * <ul>
+ * <li>parse: MidiStreamParser alone</li>
+ * <li>pipeline: what SynthDeviceServiceMidiReceiver.onSend and AppMidiSupport.onNativeMessageReceive
+ * do, transmitting to an output listener</li>
+ * <li>pipelineToRing: the same, queueing into a MidiEventRing drained after each workload, as
+ * the audio render thread would</li>
+ * <li>pipelineToBus: the same, with a MidiDispatchBus with two subscribers in addition</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MidiInputBenchmark {
+
+    @Param({"NOTE_BURST", "CC_FLOOD", "LARGE_SYSEX"})
+    public String workload;
+
+    private byte[][] mPackets;
+    private MidiStreamParser mParser;
+    private MidiInputPipeline mPipeline;
+    private MidiInputPipeline mRingPipeline;
+    private MidiInputPipeline mBusPipeline;
+    private MidiEventRing mRing;
+    private midiEventHandler mDrain;
+    private long mTimestamp = 1;
+
+    /**
+     * Output consuming the messages, so that nothing is optimized away
+     */
+    private static final class BlackholeOutput implements midiStreamListener {
+        private final Blackhole mBlackhole;
+
+        BlackholeOutput(Blackhole blackhole)
+        {
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public void onMidiEvent(int event, long timestamp)
+        {
+            mBlackhole.consume(event);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp)
+        {
+            mBlackhole.consume(data[offset]);
+        }
+    }
+
+    @Setup
+    public void setup(Blackhole blackhole)
+    {
+        mPackets = MidiWorkloads.build(workload);
+        BlackholeOutput output = new BlackholeOutput(blackhole);
+        mParser = new MidiStreamParser(output);
+        mPipeline = new MidiInputPipeline(0, "benchmark");
+        mPipeline.setOutput(output);
+        mRing = new MidiEventRing(1024);
+        mRingPipeline = new MidiInputPipeline(1, "benchmarkRing");
+        mRingPipeline.setOutput(output);
+        mRingPipeline.setEventRing(mRing);
+        mDrain = output::onMidiEvent;
+        MidiDispatchBus bus = new MidiDispatchBus();
+        bus.subscribe(new BlackholeOutput(blackhole), MidiDispatchBus.ALL_CHANNELS, MidiDispatchBus.TYPE_NOTES);
+        bus.subscribe(new BlackholeOutput(blackhole), MidiDispatchBus.ALL_CHANNELS, MidiDispatchBus.TYPE_ALL);
+        mBusPipeline = new MidiInputPipeline(2, "benchmarkBus");
+        mBusPipeline.setOutput(output);
+        mBusPipeline.setDispatchBus(bus);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void parse()
+    {
+        byte[][] packets = mPackets;
+        for (byte[] packet : packets) {
+            mParser.parse(packet, 0, packet.length, mTimestamp++);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void pipeline()
+    {
+        byte[][] packets = mPackets;
+        for (byte[] packet : packets) {
+            mPipeline.receive(packet, 0, packet.length, mTimestamp++);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void pipelineToRing()
+    {
+        byte[][] packets = mPackets;
+        for (byte[] packet : packets) {
+            mRingPipeline.receive(packet, 0, packet.length, mTimestamp++);
+        }
+        mRing.drain(mDrain);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MidiWorkloads.MESSAGES)
+    public void pipelineToBus()
+    {
+        byte[][] packets = mPackets;
+        for (byte[] packet : packets) {
+            mBusPipeline.receive(packet, 0, packet.length, mTimestamp++);
+        }
+    }
+}
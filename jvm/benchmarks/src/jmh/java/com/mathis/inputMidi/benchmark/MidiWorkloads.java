@@ -0,0 +1,132 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.benchmark;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Realistic input workloads, as the packets a receiver gets from the midi framework. Each
+ * workload holds exactly MESSAGES messages, so that benchmarks can report per message.
+ */
+final class MidiWorkloads {
+
+    /**
+     * Messages per workload
+     */
+    static final int MESSAGES = 256;
+
+    /**
+     * Length of the system exclusive messages of LARGE_SYSEX, and size of their packets
+     */
+    static final int SYSEX_LENGTH = 1024;
+    static final int SYSEX_PACKET = 64;
+
+    private MidiWorkloads()
+    {
+    }
+
+    /**
+     * Build the packets of a workload
+     * @param name NOTE_BURST, CC_FLOOD or LARGE_SYSEX
+     */
+    static byte[][] build(String name)
+    {
+        switch (name) {
+            case "NOTE_BURST":
+                return noteBursts();
+            case "CC_FLOOD":
+                return controllerFlood();
+            case "LARGE_SYSEX":
+                return largeSysEx();
+            default:
+                throw new IllegalArgumentException("unknown workload " + name);
+        }
+    }
+
+    /**
+     * Eight-note chords struck and released, each chord in one packet with running status, as
+     * sent by keyboards playing fast passages: 16 chords on, 16 chords off
+     */
+    private static byte[][] noteBursts()
+    {
+        byte[][] packets = new byte[MESSAGES / 8][];
+        for (int chord = 0; chord < packets.length; chord++) {
+            boolean on = chord % 2 == 0;
+            int root = 36 + (chord / 2) % 48;
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            packet.write(0x90);
+            for (int note = 0; note < 8; note++) {
+                packet.write(root + note * 3);
+                packet.write(on ? 64 + note * 4 : 0);
+            }
+            packets[chord] = packet.toByteArray();
+        }
+        return packets;
+    }
+
+    /**
+     * Continuous controller data from an expressive controller, one message per packet: modulation,
+     * expression, pitch bend and channel pressure interleaved over four channels
+     */
+    private static byte[][] controllerFlood()
+    {
+        byte[][] packets = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            int channel = i % 4;
+            int value = (i * 7) & 0x7F;
+            switch ((i / 4) % 4) {
+                case 0:
+                    packets[i] = new byte[]{(byte) (0xB0 | channel), 1, (byte) value};
+                    break;
+                case 1:
+                    packets[i] = new byte[]{(byte) (0xB0 | channel), 11, (byte) value};
+                    break;
+                case 2:
+                    packets[i] = new byte[]{(byte) (0xE0 | channel), (byte) value, (byte) (value ^ 0x40)};
+                    break;
+                default:
+                    packets[i] = new byte[]{(byte) (0xD0 | channel), (byte) value};
+            }
+        }
+        return packets;
+    }
+
+    /**
+     * System exclusive dumps of SYSEX_LENGTH bytes, split into packets of SYSEX_PACKET bytes
+     */
+    private static byte[][] largeSysEx()
+    {
+        int packetsPerMessage = SYSEX_LENGTH / SYSEX_PACKET;
+        byte[][] packets = new byte[MESSAGES * packetsPerMessage][];
+        for (int message = 0; message < MESSAGES; message++) {
+            byte[] sysEx = new byte[SYSEX_LENGTH];
+            sysEx[0] = (byte) 0xF0;
+            for (int i = 1; i < SYSEX_LENGTH - 1; i++) {
+                sysEx[i] = (byte) ((message + i) & 0x7F);
+            }
+            sysEx[SYSEX_LENGTH - 1] = (byte) 0xF7;
+            for (int p = 0; p < packetsPerMessage; p++) {
+                byte[] packet = new byte[SYSEX_PACKET];
+                System.arraycopy(sysEx, p * SYSEX_PACKET, packet, 0, SYSEX_PACKET);
+                packets[message * packetsPerMessage + p] = packet;
+            }
+        }
+        return packets;
+    }
+}
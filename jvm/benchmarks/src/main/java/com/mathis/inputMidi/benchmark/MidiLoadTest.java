@@ -0,0 +1,94 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.benchmark;
+
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiLoadGenerator;
+import com.mathis.inputMidi.midiByteReceiver;
+import com.mathis.inputMidi.midiEventHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak test of the input path on a plain JVM: MidiLoadGenerator drives one MidiInputPipeline per
+ * sending thread, each queueing into a MidiEventRing, and a consumer thread drains the queues
+ * once per audio block like a render thread would. Prints the load report, from which the queue
+ * capacity needed for a given load and block size can be read off the overflow drops.<br />
+ * Arguments: pattern (cc, chords, sysex, runningStatus), messages per second per thread,
+ * threads, seconds, queue capacity, block length in microseconds, seed.
+ */
+public class MidiLoadTest {
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int pattern = MidiLoadGenerator.patternOf(args.length > 0 ? args[0] : "cc");
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 10000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        int capacity = args.length > 4 ? Integer.parseInt(args[4]) : 1024;
+        final long blockNanos = (args.length > 5 ? Long.parseLong(args[5]) : 2667) * 1000L;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+
+        MidiLoadGenerator generator = new MidiLoadGenerator(pattern, rate, seed);
+        final List<MidiEventRing> rings = new ArrayList<>();
+        List<midiByteReceiver> receivers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            MidiInputPipeline pipeline = new MidiInputPipeline(t, "load" + t);
+            MidiEventRing ring = new MidiEventRing(capacity);
+            pipeline.setEventRing(ring);
+            generator.addMetrics(pipeline.getMetrics());
+            rings.add(ring);
+            receivers.add(pipeline::receive);
+        }
+
+        final long[] drained = new long[1];
+        final midiEventHandler sink = new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                drained[0]++;
+            }
+        };
+        final Thread[] consumer = new Thread[1];
+        consumer[0] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (MidiEventRing ring : rings) {
+                        ring.drain(sink);
+                    }
+                    next += blockNanos;
+                    LockSupport.parkNanos(next - System.nanoTime());
+                }
+            }
+        }, "consumer");
+        consumer[0].start();
+
+        System.out.println("pattern " + (args.length > 0 ? args[0] : "cc") + ", " + rate + " msg/s x " + threads
+                + " threads, queue " + capacity + ", block " + blockNanos / 1000 + " us, seed " + seed);
+        MidiLoadGenerator.Report report = generator.run(receivers, seconds * 1000);
+        consumer[0].interrupt();
+        consumer[0].join();
+        System.out.print(report);
+        System.out.println("drained " + drained[0] + " events");
+    }
+}
@@ -0,0 +1,319 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Merges continuous controller data received within one audio render block, keeping only the
+ * latest value per channel and controller. Expressive controllers can send modulation wheel,
+ * pitch bend or channel pressure at over 1 kHz per channel; within a render block, all but the
+ * last of these values would be overwritten before they have any audible effect.<br />
+ * Usage, once per render block on the audio thread: collect the block's events with add (or
+ * drain a MidiEventRing into the coalescer, which implements midiEventHandler), then call flush to
+ * deliver them. Coalesced are controller changes (except bank select, data entry, NRPN/RPN,
+ * switch and channel mode controllers, which are order sensitive), pitch bend and channel pressure.
+ * The merged value takes the place of the last value of its run in the output, with its timestamp,
+ * so that the block stays in order of arrival and its timestamps monotonic. Any other channel
+ * message (note on/off, NRPN/RPN parameter numbers and data entry, program change, ...) ends the
+ * run on its channel, and later values start a new one. If the block is full of distinct events,
+ * a value is merged in place of the previous one instead, keeping the previous timestamp.<br />
+ * Nothing is allocated after construction. Not thread safe: use from the audio thread only.
+ */
+public class MidiCoalescer implements midiEventHandler {
+
+    /**
+     * Slots per channel: 128 controllers, pitch bend, channel pressure
+     */
+    private static final int SLOTS_PER_CHANNEL = 130;
+    private static final int SLOT_PITCHBEND = 128;
+    private static final int SLOT_CHANPRESS = 129;
+
+    /**
+     * Events of the current block, in order
+     */
+    private final int[] mEvents;
+
+    /**
+     * Timestamps of the events of the current block
+     */
+    private final long[] mTimestamps;
+
+    /**
+     * Number of events in the current block, including the superseded ones
+     */
+    private int mCount = 0;
+
+    /**
+     * Number of events in the current block superseded by a later value of their slot
+     */
+    private int mSupersededCount = 0;
+
+    /**
+     * Marks a superseded event in mEvents; not a valid packed event, whose status is at least 0x80
+     */
+    private static final int SUPERSEDED = 0;
+
+    /**
+     * Position in mEvents of the current value of each slot
+     */
+    private final int[] mSlotPosition = new int[16 * SLOTS_PER_CHANNEL];
+
+    /**
+     * Epoch of each slot's position; the position is valid only if it equals the channel's epoch
+     */
+    private final int[] mSlotEpoch = new int[16 * SLOTS_PER_CHANNEL];
+
+    /**
+     * Current epoch of each channel, advanced at each order-sensitive event and each flush
+     */
+    private final int[] mChannelEpoch = new int[16];
+
+    /**
+     * Which controllers can be coalesced
+     */
+    private static final boolean[] COALESCABLE_CC = new boolean[128];
+
+    static {
+        for (int cc = 0; cc < 128; cc++) {
+            COALESCABLE_CC[cc] = true;
+        }
+        // bank select, data entry, NRPN/RPN: order matters
+        int[] excluded = {0, 32, 6, 38, 96, 97, 98, 99, 100, 101};
+        for (int cc : excluded) {
+            COALESCABLE_CC[cc] = false;
+        }
+        // switches (sustain, portamento, sostenuto, soft pedal, legato, hold 2) and channel mode messages
+        for (int cc = 64; cc <= 69; cc++) {
+            COALESCABLE_CC[cc] = false;
+        }
+        for (int cc = 120; cc < 128; cc++) {
+            COALESCABLE_CC[cc] = false;
+        }
+    }
+
+    /**
+     * Number of events merged into a later value
+     */
+    private long mMergedCount = 0;
+
+    /**
+     * Number of events dropped because the block was full
+     */
+    private long mDroppedCount = 0;
+
+    /**
+     * Number of events delivered
+     */
+    private long mDeliveredCount = 0;
+
+    /**
+     * Constructor
+     * @param capacity Maximum number of distinct events per render block
+     */
+    public MidiCoalescer(int capacity)
+    {
+        mEvents = new int[capacity];
+        mTimestamps = new long[capacity];
+        for (int channel = 0; channel < 16; channel++) {
+            mChannelEpoch[channel] = 1;
+        }
+    }
+
+    /**
+     * Slot of a coalescable event
+     * @return the slot index, or -1 if the event is order sensitive
+     */
+    private static int slotOf(int event)
+    {
+        int status = event & 0xFF;
+        int channel = status & 0x0F;
+        switch (status >> 4) {
+            case MidiSpec.MIDICODE_CONTROLLER: {
+                int cc = (event >> 8) & 0x7F;
+                return COALESCABLE_CC[cc] ? channel * SLOTS_PER_CHANNEL + cc : -1;
+            }
+            case MidiSpec.MIDICODE_PITCHBEND:
+                return channel * SLOTS_PER_CHANNEL + SLOT_PITCHBEND;
+            case MidiSpec.MIDICODE_CHANPRESS:
+                return channel * SLOTS_PER_CHANNEL + SLOT_CHANPRESS;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Whether an event carries continuous data that the coalescer merges (controllers other than
+     * the order sensitive ones, pitch bend, channel pressure)
+     * @param event packed midi event
+     * @return True if later values of the same controller supersede the event
+     */
+    public static boolean isContinuous(int event)
+    {
+        return slotOf(event) >= 0;
+    }
+
+    /**
+     * Add an event of the current block
+     * @param event packed midi event
+     * @param timestamp timestamp of the event
+     * @return False if the block was full and the event was dropped
+     */
+    public boolean add(int event, long timestamp)
+    {
+        int status = event & 0xFF;
+        if (status < 0xF0) {
+            int channel = status & 0x0F;
+            int slot = slotOf(event);
+            if (slot >= 0) {
+                // slots are per source as well: do not merge values from different ports or devices
+                if (mSlotEpoch[slot] == mChannelEpoch[channel]
+                        && (mEvents[mSlotPosition[slot]] >>> 24) == (event >>> 24)) {
+                    int position = mSlotPosition[slot];
+                    mMergedCount++;
+                    if (mCount == mEvents.length && mSupersededCount == 0) {
+                        // no room to move the value after the events in between
+                        mEvents[position] = event;
+                        return true;
+                    }
+                    mEvents[position] = SUPERSEDED;
+                    mSupersededCount++;
+                    append(event, timestamp);
+                    mSlotPosition[slot] = mCount - 1;
+                    return true;
+                }
+                if (!append(event, timestamp)) {
+                    return false;
+                }
+                mSlotPosition[slot] = mCount - 1;
+                mSlotEpoch[slot] = mChannelEpoch[channel];
+                return true;
+            }
+            mChannelEpoch[channel]++;
+        } else if (status == (MidiSpec.MIDICODE_RESET & 0xFF)) {
+            newEpoch();
+        }
+        return append(event, timestamp);
+    }
+
+    private boolean append(int event, long timestamp)
+    {
+        if (mCount == mEvents.length && mSupersededCount != 0) {
+            compact();
+        }
+        if (mCount == mEvents.length) {
+            mDroppedCount++;
+            return false;
+        }
+        mEvents[mCount] = event;
+        mTimestamps[mCount] = timestamp;
+        mCount++;
+        return true;
+    }
+
+    /**
+     * Remove the superseded events from the block, keeping the slot positions up to date
+     */
+    private void compact()
+    {
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            int event = mEvents[i];
+            if (event == SUPERSEDED) {
+                continue;
+            }
+            int slot = slotOf(event);
+            if (slot >= 0 && mSlotPosition[slot] == i
+                    && mSlotEpoch[slot] == mChannelEpoch[event & 0x0F]) {
+                mSlotPosition[slot] = count;
+            }
+            mEvents[count] = event;
+            mTimestamps[count] = mTimestamps[i];
+            count++;
+        }
+        mCount = count;
+        mSupersededCount = 0;
+    }
+
+    private void newEpoch()
+    {
+        for (int channel = 0; channel < 16; channel++) {
+            mChannelEpoch[channel]++;
+        }
+    }
+
+    /**
+     * Same as add, so that a MidiEventRing can be drained directly into the coalescer
+     */
+    @Override
+    public void onMidiEvent(int event, long timestamp)
+    {
+        add(event, timestamp);
+    }
+
+    /**
+     * Deliver the events of the current block and start a new block
+     * @param handler receiver of the events
+     * @return number of events delivered
+     */
+    public int flush(midiEventHandler handler)
+    {
+        int count = mCount - mSupersededCount;
+        for (int i = 0; i < mCount; i++) {
+            if (mEvents[i] != SUPERSEDED) {
+                handler.onMidiEvent(mEvents[i], mTimestamps[i]);
+            }
+        }
+        mCount = 0;
+        mSupersededCount = 0;
+        mDeliveredCount += count;
+        newEpoch();
+        return count;
+    }
+
+    /**
+     * @return Number of events collected in the current block
+     */
+    public int getPendingCount()
+    {
+        return mCount - mSupersededCount;
+    }
+
+    /**
+     * @return Number of events merged into a later value of the same controller since construction
+     */
+    public long getMergedCount()
+    {
+        return mMergedCount;
+    }
+
+    /**
+     * @return Number of events delivered since construction
+     */
+    public long getDeliveredCount()
+    {
+        return mDeliveredCount;
+    }
+
+    /**
+     * @return Number of events dropped because a block held more than the capacity
+     */
+    public long getDroppedCount()
+    {
+        return mDroppedCount;
+    }
+}
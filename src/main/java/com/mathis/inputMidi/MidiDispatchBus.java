@@ -0,0 +1,245 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.ArrayList;
+
+/**
+ * Distributes midi events to several subscribers (synth engine, keyboard visualizer, recorder,
+ * midi-learn handler, ...). Each subscriber declares the channels and message types it is
+ * interested in; these declarations are compiled into a table with one entry per status byte,
+ * holding the array of subscribers to call. Delivering an event is a single table lookup, and
+ * only the subscribers that asked for the event are woken.<br />
+ * Subscribing and unsubscribing rebuild the table and publish it with a single volatile write
+ * (copy-on-write), so the delivering threads never block and never allocate. Delivery may happen
+ * concurrently from several receiving threads (one per port or device); subscribers are called on
+ * these threads.
+ */
+public class MidiDispatchBus implements midiStreamListener {
+
+    // Message type bits, for the typeMask argument of subscribe
+    public static final int TYPE_NOTE_OFF = 1;
+    public static final int TYPE_NOTE_ON = 1 << 1;
+    public static final int TYPE_POLY_PRESSURE = 1 << 2;
+    public static final int TYPE_CONTROLLER = 1 << 3;
+    public static final int TYPE_PROGRAM_CHANGE = 1 << 4;
+    public static final int TYPE_CHANNEL_PRESSURE = 1 << 5;
+    public static final int TYPE_PITCH_BEND = 1 << 6;
+    public static final int TYPE_SYSTEM_COMMON = 1 << 7;
+    public static final int TYPE_REALTIME = 1 << 8;
+    public static final int TYPE_SYSEX = 1 << 9;
+    public static final int TYPE_NOTES = TYPE_NOTE_OFF | TYPE_NOTE_ON;
+    public static final int TYPE_ALL = (1 << 10) - 1;
+
+    /**
+     * Channel mask selecting all 16 channels
+     */
+    public static final int ALL_CHANNELS = 0xFFFF;
+
+    private static final midiEventHandler[] NO_HANDLERS = new midiEventHandler[0];
+    private static final midiStreamListener[] NO_LISTENERS = new midiStreamListener[0];
+
+    /**
+     * A subscriber with its filter
+     */
+    private static final class Subscription {
+        final midiEventHandler handler;
+        final int channelMask;
+        final int typeMask;
+
+        Subscription(midiEventHandler handler, int channelMask, int typeMask)
+        {
+            this.handler = handler;
+            this.channelMask = channelMask;
+            this.typeMask = typeMask;
+        }
+
+        boolean accepts(int status)
+        {
+            if ((typeMask & typeOf(status)) == 0) {
+                return false;
+            }
+            return status >= 0xF0 || (channelMask & (1 << (status & 0x0F))) != 0;
+        }
+    }
+
+    /**
+     * Current subscriptions; only accessed by writers, under the object's lock
+     */
+    private final ArrayList<Subscription> mSubscriptions = new ArrayList<>();
+
+    /**
+     * Compiled form of the subscriptions. Never modified once published.
+     */
+    private static final class Table {
+        /**
+         * Subscribers to call, per status byte
+         */
+        final midiEventHandler[][] handlers;
+
+        /**
+         * Subscribers of system exclusive messages
+         */
+        final midiStreamListener[] sysExListeners;
+
+        Table(midiEventHandler[][] handlers, midiStreamListener[] sysExListeners)
+        {
+            this.handlers = handlers;
+            this.sysExListeners = sysExListeners;
+        }
+    }
+
+    /**
+     * Currently published table
+     */
+    private volatile Table mTable = compile(new ArrayList<Subscription>());
+
+    /**
+     * Message type bit of a status byte
+     * @param status status byte, 0x80-0xFF
+     * @return one of the TYPE_* constants
+     */
+    public static int typeOf(int status)
+    {
+        if (status < 0xF0) {
+            return 1 << ((status >> 4) - MidiSpec.MIDICODE_NOTEOFF);
+        }
+        if (status >= 0xF8) {
+            return TYPE_REALTIME;
+        }
+        if (status == 0xF0 || status == 0xF7) {
+            return TYPE_SYSEX;
+        }
+        return TYPE_SYSTEM_COMMON;
+    }
+
+    /**
+     * Subscribe to short midi messages
+     * @param handler the subscriber
+     * @param channelMask bit n set to receive channel messages of channel n (0-15); system
+     *                    messages are not filtered by channel
+     * @param typeMask combination of TYPE_* bits
+     */
+    public synchronized void subscribe(midiEventHandler handler, int channelMask, int typeMask)
+    {
+        removeSubscription(handler);
+        mSubscriptions.add(new Subscription(handler, channelMask, typeMask));
+        publish();
+    }
+
+    /**
+     * Subscribe to midi messages, including system exclusive messages if typeMask contains TYPE_SYSEX
+     * @param listener the subscriber
+     * @param channelMask bit n set to receive channel messages of channel n (0-15)
+     * @param typeMask combination of TYPE_* bits
+     */
+    public synchronized void subscribe(midiStreamListener listener, int channelMask, int typeMask)
+    {
+        subscribe((midiEventHandler) listener, channelMask, typeMask);
+    }
+
+    /**
+     * Remove a subscriber
+     * @param handler the subscriber
+     */
+    public synchronized void unsubscribe(midiEventHandler handler)
+    {
+        if (removeSubscription(handler)) {
+            publish();
+        }
+    }
+
+    /**
+     * @return Number of subscribers
+     */
+    public synchronized int getSubscriberCount()
+    {
+        return mSubscriptions.size();
+    }
+
+    private boolean removeSubscription(midiEventHandler handler)
+    {
+        for (int i = 0; i < mSubscriptions.size(); i++) {
+            if (mSubscriptions.get(i).handler == handler) {
+                mSubscriptions.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compile the subscriptions into a new table and publish it
+     */
+    private void publish()
+    {
+        mTable = compile(mSubscriptions);
+    }
+
+    private static Table compile(ArrayList<Subscription> subscriptions)
+    {
+        midiEventHandler[][] table = new midiEventHandler[256][];
+        ArrayList<midiEventHandler> handlers = new ArrayList<>();
+        for (int status = 0; status < 256; status++) {
+            if (status < 0x80) {
+                table[status] = NO_HANDLERS;
+                continue;
+            }
+            handlers.clear();
+            for (Subscription subscription : subscriptions) {
+                if (subscription.accepts(status)) {
+                    handlers.add(subscription.handler);
+                }
+            }
+            table[status] = handlers.isEmpty() ? NO_HANDLERS : handlers.toArray(new midiEventHandler[0]);
+        }
+        ArrayList<midiStreamListener> sysEx = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            if ((subscription.typeMask & TYPE_SYSEX) != 0 && subscription.handler instanceof midiStreamListener) {
+                sysEx.add((midiStreamListener) subscription.handler);
+            }
+        }
+        return new Table(table, sysEx.isEmpty() ? NO_LISTENERS : sysEx.toArray(new midiStreamListener[0]));
+    }
+
+    /**
+     * Deliver a short message to the subscribers interested in it
+     * @param event packed midi event
+     * @param timestamp timestamp of the event
+     */
+    @Override
+    public void onMidiEvent(int event, long timestamp)
+    {
+        midiEventHandler[] handlers = mTable.handlers[event & 0xFF];
+        for (midiEventHandler handler : handlers) {
+            handler.onMidiEvent(event, timestamp);
+        }
+    }
+
+    /**
+     * Deliver (part of) a system exclusive message to the subscribers interested in it
+     */
+    @Override
+    public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp)
+    {
+        for (midiStreamListener listener : mTable.sysExListeners) {
+            listener.onSysExChunk(data, offset, count, first, last, timestamp);
+        }
+    }
+}
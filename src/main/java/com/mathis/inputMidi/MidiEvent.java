@@ -0,0 +1,201 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Static helper functions for midi events packed into a single int. Do not instantiate.
+ * Packing short midi messages into primitives lets the receive path hand them over, queue
+ * and filter them without allocating objects. The layout is: <br />
+ * bits 0-7: status byte<br />
+ * bits 8-15: first data byte (0 if the message has none)<br />
+ * bits 16-23: second data byte (0 if the message has none)<br />
+ * bits 24-31: source tag, for example the index of the port or device the event came from<br />
+ * The timestamp is carried separately as a long, based on {@link java.lang.System#nanoTime}.
+ */
+public class MidiEvent {
+
+    private MidiEvent()
+    {
+    }
+
+    /**
+     * Pack a short midi message
+     * @param status status byte (0x80-0xFF)
+     * @param data1 first data byte
+     * @param data2 second data byte
+     * @return the packed event, with source tag 0
+     */
+    public static int pack(int status, int data1, int data2)
+    {
+        return (status & 0xFF) | ((data1 & 0x7F) << 8) | ((data2 & 0x7F) << 16);
+    }
+
+    /**
+     * Pack a short midi message with a source tag
+     * @param status status byte (0x80-0xFF)
+     * @param data1 first data byte
+     * @param data2 second data byte
+     * @param source source tag, 0-255
+     * @return the packed event
+     */
+    public static int pack(int status, int data1, int data2, int source)
+    {
+        return pack(status, data1, data2) | ((source & 0xFF) << 24);
+    }
+
+    /**
+     * @param event packed event
+     * @return the status byte, 0x80-0xFF
+     */
+    public static int getStatus(int event)
+    {
+        return event & 0xFF;
+    }
+
+    /**
+     * @param event packed event
+     * @return the message code (upper nibble of the status byte, see MidiSpec.MIDICODE_*) for
+     * channel messages
+     */
+    public static int getCode(int event)
+    {
+        return (event >> 4) & 0x0F;
+    }
+
+    /**
+     * @param event packed event
+     * @return the midi channel (0-15), meaningful for channel messages only
+     */
+    public static int getChannel(int event)
+    {
+        return event & 0x0F;
+    }
+
+    /**
+     * @param event packed event
+     * @return the first data byte
+     */
+    public static int getData1(int event)
+    {
+        return (event >> 8) & 0x7F;
+    }
+
+    /**
+     * @param event packed event
+     * @return the second data byte
+     */
+    public static int getData2(int event)
+    {
+        return (event >> 16) & 0x7F;
+    }
+
+    /**
+     * @param event packed event
+     * @return the source tag
+     */
+    public static int getSource(int event)
+    {
+        return event >>> 24;
+    }
+
+    /**
+     * Replace the source tag of an event
+     * @param event packed event
+     * @param source new source tag, 0-255
+     * @return the packed event with the new source tag
+     */
+    public static int withSource(int event, int source)
+    {
+        return (event & 0x00FFFFFF) | ((source & 0xFF) << 24);
+    }
+
+    /**
+     * Is the status byte a channel message (note, controller, ...)
+     * @param status status byte
+     * @return True for status bytes 0x80-0xEF
+     */
+    public static boolean isChannelStatus(int status)
+    {
+        return status >= 0x80 && status < 0xF0;
+    }
+
+    /**
+     * Is the status byte a system real-time message (clock, start, stop, active sensing, reset)
+     * @param status status byte
+     * @return True for status bytes 0xF8-0xFF
+     */
+    public static boolean isRealTimeStatus(int status)
+    {
+        return status >= 0xF8;
+    }
+
+    /**
+     * Number of data bytes following a status byte
+     * @param status status byte
+     * @return 0, 1 or 2; -1 for the start of a system exclusive message, which has variable length
+     */
+    public static int getDataLength(int status)
+    {
+        if (status < 0xF0) {
+            int code = status >> 4;
+            return (code == MidiSpec.MIDICODE_PROGCHANGE || code == MidiSpec.MIDICODE_CHANPRESS) ? 1 : 2;
+        }
+        switch (status) {
+            case 0xF0:
+                return -1;
+            case 0xF1: // MTC quarter frame
+            case 0xF3: // song select
+                return 1;
+            case 0xF2: // song position pointer
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Length in bytes of the short message represented by an event, status byte included
+     * @param event packed event
+     * @return 1 to 3
+     */
+    public static int getLength(int event)
+    {
+        return 1 + Math.max(0, getDataLength(getStatus(event)));
+    }
+
+    /**
+     * Write the short message represented by an event as midi bytes
+     * @param event packed event
+     * @param target target buffer, needs room for up to 3 bytes
+     * @param offset position in the target buffer
+     * @return number of bytes written
+     */
+    public static int toBytes(int event, byte[] target, int offset)
+    {
+        int length = getLength(event);
+        target[offset] = (byte) event;
+        if (length > 1) {
+            target[offset + 1] = (byte) getData1(event);
+        }
+        if (length > 2) {
+            target[offset + 2] = (byte) getData2(event);
+        }
+        return length;
+    }
+}
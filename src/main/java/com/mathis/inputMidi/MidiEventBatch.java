@@ -0,0 +1,179 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Read-only view over a group of packed midi events (see MidiEvent) with their timestamps, handed
+ * to a midiEventBatchHandler once per received packet or per drain of a queue, instead of one call
+ * per message. The view is reused: it is only valid for the duration of the call, and receivers
+ * wanting to keep events must copy them. It is filled by MidiInputPipeline and MidiEventRing;
+ * receivers only read it.
+ */
+public final class MidiEventBatch {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int[] mEvents;
+    private final long[] mTimestamps;
+    private int mSize = 0;
+
+    /**
+     * Constructor with the default capacity
+     */
+    public MidiEventBatch()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param capacity maximum number of events per batch
+     */
+    public MidiEventBatch(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        mEvents = new int[capacity];
+        mTimestamps = new long[capacity];
+    }
+
+    /**
+     * @return Number of events in the batch
+     */
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * @return Maximum number of events per batch
+     */
+    public int capacity()
+    {
+        return mEvents.length;
+    }
+
+    /**
+     * @param index position in the batch, 0 to size() - 1
+     * @return the packed event
+     */
+    public int getEvent(int index)
+    {
+        return mEvents[index];
+    }
+
+    /**
+     * @param index position in the batch, 0 to size() - 1
+     * @return the timestamp of the event
+     */
+    public long getTimestamp(int index)
+    {
+        return mTimestamps[index];
+    }
+
+    /**
+     * @param index position in the batch, 0 to size() - 1
+     * @return the status byte of the event
+     */
+    public int getStatus(int index)
+    {
+        return mEvents[index] & 0xFF;
+    }
+
+    /**
+     * @param index position in the batch, 0 to size() - 1
+     * @return the first data byte of the event
+     */
+    public int getData1(int index)
+    {
+        return (mEvents[index] >> 8) & 0x7F;
+    }
+
+    /**
+     * @param index position in the batch, 0 to size() - 1
+     * @return the second data byte of the event
+     */
+    public int getData2(int index)
+    {
+        return (mEvents[index] >> 16) & 0x7F;
+    }
+
+    /**
+     * Copy the events into arrays
+     * @param events target array for the packed events
+     * @param timestamps target array for the timestamps, or null
+     * @param offset position in the target arrays for the first event
+     * @return number of events copied
+     */
+    public int copyTo(int[] events, long[] timestamps, int offset)
+    {
+        System.arraycopy(mEvents, 0, events, offset, mSize);
+        if (timestamps != null) {
+            System.arraycopy(mTimestamps, 0, timestamps, offset, mSize);
+        }
+        return mSize;
+    }
+
+    /**
+     * Hand the events one by one to a handler
+     * @param handler receiver of the events
+     */
+    public void forEach(midiEventHandler handler)
+    {
+        for (int i = 0; i < mSize; i++) {
+            handler.onMidiEvent(mEvents[i], mTimestamps[i]);
+        }
+    }
+
+    boolean add(int event, long timestamp)
+    {
+        mEvents[mSize] = event;
+        mTimestamps[mSize] = timestamp;
+        return ++mSize == mEvents.length;
+    }
+
+    boolean isFull()
+    {
+        return mSize == mEvents.length;
+    }
+
+    void clear()
+    {
+        mSize = 0;
+    }
+
+    /**
+     * Storage of the events, for filling by MidiEventRing
+     */
+    int[] events()
+    {
+        return mEvents;
+    }
+
+    long[] timestamps()
+    {
+        return mTimestamps;
+    }
+
+    void setSize(int size)
+    {
+        mSize = size;
+    }
+}
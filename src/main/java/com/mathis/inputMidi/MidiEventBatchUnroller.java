@@ -0,0 +1,43 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Adapter handing the events of batches one by one to a single-message handler, for receivers
+ * that do not process batches.
+ */
+public class MidiEventBatchUnroller implements midiEventBatchHandler {
+
+    private final midiEventHandler mHandler;
+
+    /**
+     * Constructor
+     * @param handler receiver of the single events
+     */
+    public MidiEventBatchUnroller(midiEventHandler handler)
+    {
+        mHandler = handler;
+    }
+
+    @Override
+    public void onMidiEventBatch(MidiEventBatch batch)
+    {
+        batch.forEach(mHandler);
+    }
+}
@@ -0,0 +1,136 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Merges the events of several MidiEventRing queues, one per source (for example one per
+ * hardware midi device), into a single stream ordered by timestamp. Each queue is assumed to be
+ * ordered by itself, which holds for the timestamps of a single device; the merger then performs
+ * a k-way merge, picking at each step the queue whose next event is the oldest.<br />
+ * Sources can be added and removed at any time from any thread: the list of sources is a
+ * copy-on-write array, so the consumer never blocks and never sees a half-updated list. Draining
+ * must be done by a single consumer thread, typically the audio render thread, and does not
+ * allocate.
+ */
+public class MidiEventMerger {
+
+    /**
+     * Current sources, replaced as a whole on every change
+     */
+    private volatile MidiEventRing[] mSources = new MidiEventRing[0];
+
+    /**
+     * Add a source
+     * @param ring queue of the source, filled by the source's producer thread
+     */
+    public synchronized void addSource(MidiEventRing ring)
+    {
+        MidiEventRing[] sources = mSources;
+        for (MidiEventRing source : sources) {
+            if (source == ring) {
+                return;
+            }
+        }
+        MidiEventRing[] updated = new MidiEventRing[sources.length + 1];
+        System.arraycopy(sources, 0, updated, 0, sources.length);
+        updated[sources.length] = ring;
+        mSources = updated;
+    }
+
+    /**
+     * Remove a source. Events still queued in it will not be delivered.
+     * @param ring queue of the source
+     */
+    public synchronized void removeSource(MidiEventRing ring)
+    {
+        MidiEventRing[] sources = mSources;
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == ring) {
+                MidiEventRing[] updated = new MidiEventRing[sources.length - 1];
+                System.arraycopy(sources, 0, updated, 0, i);
+                System.arraycopy(sources, i + 1, updated, i, sources.length - i - 1);
+                mSources = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Number of sources currently merged
+     */
+    public int getSourceCount()
+    {
+        return mSources.length;
+    }
+
+    /**
+     * Deliver the queued events of all sources in timestamp order
+     * @param handler receiver of the events
+     * @param untilTimestamp only events with a timestamp up to this value are delivered; the
+     *                       others stay queued. Use Long.MAX_VALUE - 1 to deliver everything.
+     * @param maxEvents maximum number of events to deliver
+     * @return number of events delivered
+     */
+    public int drain(midiEventHandler handler, long untilTimestamp, int maxEvents)
+    {
+        MidiEventRing[] sources = mSources;
+        int delivered = 0;
+        while (delivered < maxEvents) {
+            MidiEventRing oldest = null;
+            long oldestTimestamp = Long.MAX_VALUE;
+            for (MidiEventRing source : sources) {
+                long timestamp = source.peekTimestamp();
+                if (timestamp < oldestTimestamp) {
+                    oldestTimestamp = timestamp;
+                    oldest = source;
+                }
+            }
+            if (oldest == null || oldestTimestamp > untilTimestamp) {
+                break;
+            }
+            int event = oldest.peekEvent();
+            oldest.skip();
+            handler.onMidiEvent(event, oldestTimestamp);
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Deliver all queued events of all sources in timestamp order
+     * @param handler receiver of the events
+     * @return number of events delivered
+     */
+    public int drain(midiEventHandler handler)
+    {
+        return drain(handler, Long.MAX_VALUE - 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return Total number of events dropped because a source queue was full
+     */
+    public long getOverflowCount()
+    {
+        long total = 0;
+        for (MidiEventRing source : mSources) {
+            total += source.getOverflowCount();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,322 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer queue of packed midi events (see MidiEvent) with
+ * their timestamps. It is meant to hand events from the midi receiving thread (binder thread for
+ * software midi, native reading thread for hardware midi) to the audio render thread, which drains
+ * it once per render block. Both sides are wait-free and never allocate: events and timestamps are
+ * stored in preallocated primitive arrays, and the read and write positions are published with
+ * ordered writes only. When the producer gets ahead of the consumer by more than the capacity,
+ * new events are dropped and counted as overflow.<br />
+ * Optionally, the time each event spends in the queue is recorded into a MidiLatencyHistogram,
+ * at the cost of a System.nanoTime call per offer and per drain.<br />
+ * Exactly one thread may call offer, and exactly one (possibly different) thread may call
+ * the drain functions.
+ */
+public class MidiEventRing {
+
+    /**
+     * Packed events
+     */
+    private final int[] mEvents;
+
+    /**
+     * Timestamps of the events
+     */
+    private final long[] mTimestamps;
+
+    /**
+     * Times at which the events were queued (System.nanoTime), null if wait times are not recorded
+     */
+    private final long[] mEnqueueNanos;
+
+    /**
+     * Histogram of the time spent in the queue, or null
+     */
+    private final MidiLatencyHistogram mWaitHistogram;
+
+    /**
+     * capacity - 1, the capacity being a power of two
+     */
+    private final int mMask;
+
+    /**
+     * Position of the next event to read; written by the consumer only
+     */
+    private final AtomicLong mHead = new AtomicLong();
+
+    /**
+     * Position of the next event to write; written by the producer only
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * Last value of mHead seen by the producer, saves reading the consumer's counter on each offer
+     */
+    private long mProducerHead = 0;
+
+    /**
+     * Last value of mTail seen by the consumer
+     */
+    private long mConsumerTail = 0;
+
+    /**
+     * Number of events dropped because the queue was full; written by the producer only
+     */
+    private volatile long mOverflowCount = 0;
+
+    /**
+     * Constructor
+     * @param capacity Minimum number of events the queue can hold; rounded up to a power of two
+     */
+    public MidiEventRing(int capacity)
+    {
+        this(capacity, null);
+    }
+
+    /**
+     * Constructor
+     * @param capacity Minimum number of events the queue can hold; rounded up to a power of two
+     * @param waitHistogram Histogram recording the time each event spends in the queue, or null
+     */
+    public MidiEventRing(int capacity, MidiLatencyHistogram waitHistogram)
+    {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mEvents = new int[size];
+        mTimestamps = new long[size];
+        mEnqueueNanos = waitHistogram == null ? null : new long[size];
+        mWaitHistogram = waitHistogram;
+        mMask = size - 1;
+    }
+
+    /**
+     * Add an event; producer side
+     * @param event packed midi event
+     * @param timestamp timestamp of the event
+     * @return True if the event was queued, false if the queue was full and the event was dropped
+     */
+    public boolean offer(int event, long timestamp)
+    {
+        long tail = mTail.get();
+        if (tail - mProducerHead > mMask) {
+            mProducerHead = mHead.get();
+            if (tail - mProducerHead > mMask) {
+                mOverflowCount = mOverflowCount + 1;
+                return false;
+            }
+        }
+        int index = (int) tail & mMask;
+        mEvents[index] = event;
+        mTimestamps[index] = timestamp;
+        if (mEnqueueNanos != null) {
+            mEnqueueNanos[index] = System.nanoTime();
+        }
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Number of events available to the consumer, refreshing the consumer's view of the producer
+     */
+    private int available(long head)
+    {
+        if (head == mConsumerTail) {
+            mConsumerTail = mTail.get();
+        }
+        return (int) (mConsumerTail - head);
+    }
+
+    /**
+     * Deliver queued events to a handler; consumer side
+     * @param handler receiver of the events
+     * @param maxEvents maximum number of events to deliver
+     * @return number of events delivered
+     */
+    public int drain(midiEventHandler handler, int maxEvents)
+    {
+        long head = mHead.get();
+        int count = Math.min(available(head), maxEvents);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (head + i) & mMask;
+            handler.onMidiEvent(mEvents[index], mTimestamps[index]);
+        }
+        recordWait(head, count);
+        mHead.lazySet(head + count);
+        return count;
+    }
+
+    /**
+     * Deliver all queued events to a handler; consumer side
+     * @param handler receiver of the events
+     * @return number of events delivered
+     */
+    public int drain(midiEventHandler handler)
+    {
+        return drain(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Deliver all queued events to a batch handler, in batches of at most the capacity of the
+     * batch; consumer side
+     * @param batch reusable batch to fill
+     * @param handler receiver of the batches
+     * @return number of events delivered
+     */
+    public int drain(MidiEventBatch batch, midiEventBatchHandler handler)
+    {
+        int total = 0;
+        while (true) {
+            int count = drainTo(batch.events(), batch.timestamps(), 0, batch.capacity());
+            if (count == 0) {
+                break;
+            }
+            batch.setSize(count);
+            handler.onMidiEventBatch(batch);
+            total += count;
+            if (count < batch.capacity()) {
+                break;
+            }
+        }
+        batch.clear();
+        return total;
+    }
+
+    /**
+     * Copy queued events into arrays; consumer side
+     * @param events target array for the packed events
+     * @param timestamps target array for the timestamps
+     * @param offset position in the target arrays for the first event
+     * @param maxEvents maximum number of events to copy
+     * @return number of events copied
+     */
+    public int drainTo(int[] events, long[] timestamps, int offset, int maxEvents)
+    {
+        long head = mHead.get();
+        int count = Math.min(available(head), maxEvents);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (head + i) & mMask;
+            events[offset + i] = mEvents[index];
+            timestamps[offset + i] = mTimestamps[index];
+        }
+        recordWait(head, count);
+        mHead.lazySet(head + count);
+        return count;
+    }
+
+    /**
+     * Timestamp of the next event to be drained, without removing it; consumer side
+     * @return the timestamp, or Long.MAX_VALUE if the queue is empty
+     */
+    public long peekTimestamp()
+    {
+        long head = mHead.get();
+        if (available(head) == 0) {
+            return Long.MAX_VALUE;
+        }
+        return mTimestamps[(int) head & mMask];
+    }
+
+    /**
+     * Next event to be drained, without removing it; consumer side. Only meaningful if
+     * peekTimestamp did not report an empty queue.
+     * @return the packed event
+     */
+    public int peekEvent()
+    {
+        return mEvents[(int) mHead.get() & mMask];
+    }
+
+    /**
+     * Remove the next event; consumer side. Only meaningful if peekTimestamp did not report
+     * an empty queue.
+     */
+    public void skip()
+    {
+        long head = mHead.get();
+        recordWait(head, 1);
+        mHead.lazySet(head + 1);
+    }
+
+    /**
+     * Record the time spent in the queue by the events about to be removed
+     */
+    private void recordWait(long head, int count)
+    {
+        if (mWaitHistogram == null || count == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            mWaitHistogram.record(now - mEnqueueNanos[(int) (head + i) & mMask]);
+        }
+    }
+
+    /**
+     * Approximate number of queued events; exact when called from the producer or consumer
+     * while the other side is idle
+     * @return number of queued events
+     */
+    public int size()
+    {
+        long head = mHead.get();
+        return (int) (mTail.get() - head);
+    }
+
+    /**
+     * @return True if no events are queued
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return Number of events the queue can hold
+     */
+    public int capacity()
+    {
+        return mMask + 1;
+    }
+
+    /**
+     * @return The histogram of the time spent in the queue, or null if not recorded
+     */
+    public MidiLatencyHistogram getWaitHistogram()
+    {
+        return mWaitHistogram;
+    }
+
+    /**
+     * @return Number of events dropped because the queue was full
+     */
+    public long getOverflowCount()
+    {
+        return mOverflowCount;
+    }
+}
@@ -0,0 +1,212 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Converts event timestamps into sample-accurate frame offsets within audio render blocks.
+ * Without this, every event received during a render block is applied at the start of the next
+ * one, which adds up to a full buffer of jitter. Here, each event is delayed by a constant
+ * latency (typically one render block) and placed at the corresponding frame of the block in
+ * which it falls; the resulting timing does not depend on the buffer size.<br />
+ * Events are collected with add (or by draining a MidiEventRing into the scheduler, which
+ * implements midiEventHandler), then render is called once per block from the audio thread.
+ * Events due in a later block are held back; events whose time is already past are clamped
+ * to the first frame and counted as late. Nothing is allocated after construction.<br />
+ * Not thread safe: use from the audio render thread only.
+ */
+public class MidiEventScheduler implements midiEventHandler {
+
+    /**
+     * Pending events, sorted by due time
+     */
+    private final int[] mEvents;
+
+    /**
+     * Due times of the pending events (timestamp + latency), in nanoseconds
+     */
+    private final long[] mDueTimes;
+
+    /**
+     * Number of pending events
+     */
+    private int mCount = 0;
+
+    /**
+     * Audio sample rate in Hz
+     */
+    private final double mSampleRate;
+
+    /**
+     * Constant delay added to all event timestamps, in nanoseconds
+     */
+    private long mLatencyNanos = 0;
+
+    /**
+     * Number of events delivered after their due time
+     */
+    private long mLateEvents = 0;
+
+    /**
+     * Number of events dropped because the pending list was full
+     */
+    private long mDroppedEvents = 0;
+
+    /**
+     * Constructor
+     * @param sampleRate Audio sample rate in Hz
+     * @param capacity Maximum number of pending events
+     */
+    public MidiEventScheduler(double sampleRate, int capacity)
+    {
+        if (sampleRate <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid sample rate or capacity");
+        }
+        mSampleRate = sampleRate;
+        mEvents = new int[capacity];
+        mDueTimes = new long[capacity];
+    }
+
+    /**
+     * Set the constant delay applied to all events. With a latency of at least one render
+     * block, events are normally placed exactly rather than clamped to the start of the block.
+     * @param latencyNanos delay in nanoseconds
+     */
+    public void setLatencyNanos(long latencyNanos)
+    {
+        mLatencyNanos = latencyNanos;
+    }
+
+    /**
+     * Set the constant delay applied to all events to a number of frames
+     * @param frames delay in frames, typically the render block size
+     */
+    public void setLatencyFrames(int frames)
+    {
+        mLatencyNanos = (long) (frames * 1e9 / mSampleRate);
+    }
+
+    /**
+     * @return Constant delay applied to all events, in nanoseconds
+     */
+    public long getLatencyNanos()
+    {
+        return mLatencyNanos;
+    }
+
+    /**
+     * Add an event to be scheduled. Events with equal timestamps keep their order.
+     * @param event packed midi event
+     * @param timestamp timestamp of the event (based on {@link java.lang.System#nanoTime})
+     * @return True if added, false if the pending list was full and the event was dropped
+     */
+    public boolean add(int event, long timestamp)
+    {
+        if (mCount == mEvents.length) {
+            mDroppedEvents++;
+            return false;
+        }
+        long due = timestamp + mLatencyNanos;
+        int position = mCount;
+        // events normally arrive in order, so the insertion point is almost always the end
+        while (position > 0 && mDueTimes[position - 1] > due) {
+            position--;
+        }
+        if (position < mCount) {
+            System.arraycopy(mEvents, position, mEvents, position + 1, mCount - position);
+            System.arraycopy(mDueTimes, position, mDueTimes, position + 1, mCount - position);
+        }
+        mEvents[position] = event;
+        mDueTimes[position] = due;
+        mCount++;
+        return true;
+    }
+
+    /**
+     * Same as add, so that a MidiEventRing can be drained directly into the scheduler
+     */
+    @Override
+    public void onMidiEvent(int event, long timestamp)
+    {
+        add(event, timestamp);
+    }
+
+    /**
+     * Deliver the events falling within a render block
+     * @param blockStartNanos time (based on {@link java.lang.System#nanoTime}) corresponding to
+     *                        the first frame of the block
+     * @param frames number of frames in the block
+     * @param handler receiver of the events and their frame offsets
+     * @return number of events delivered
+     */
+    public int render(long blockStartNanos, int frames, midiScheduledEventHandler handler)
+    {
+        long blockEnd = blockStartNanos + (long) (frames * 1e9 / mSampleRate);
+        int delivered = 0;
+        while (delivered < mCount && mDueTimes[delivered] < blockEnd) {
+            long delta = mDueTimes[delivered] - blockStartNanos;
+            int frameOffset;
+            if (delta < 0) {
+                mLateEvents++;
+                frameOffset = 0;
+            } else {
+                frameOffset = Math.min(frames - 1, (int) (delta * mSampleRate / 1e9));
+            }
+            handler.onScheduledEvent(mEvents[delivered], frameOffset);
+            delivered++;
+        }
+        if (delivered > 0) {
+            mCount -= delivered;
+            System.arraycopy(mEvents, delivered, mEvents, 0, mCount);
+            System.arraycopy(mDueTimes, delivered, mDueTimes, 0, mCount);
+        }
+        return delivered;
+    }
+
+    /**
+     * @return Number of events waiting for a later render block
+     */
+    public int getPendingCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * @return Number of events delivered after their due time (clamped to the first frame)
+     */
+    public long getLateEventCount()
+    {
+        return mLateEvents;
+    }
+
+    /**
+     * @return Number of events dropped because too many events were pending
+     */
+    public long getDroppedEventCount()
+    {
+        return mDroppedEvents;
+    }
+
+    /**
+     * Drop all pending events
+     */
+    public void clear()
+    {
+        mCount = 0;
+    }
+}
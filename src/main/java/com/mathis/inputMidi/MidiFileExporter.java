@@ -0,0 +1,232 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts a recording made with MidiInputRecorder into a Standard MIDI File, offline. The file
+ * is of format 1: a first track holding the tempo, then one track per input (stream and source
+ * tag), named after it. Times are relative to the first record, at a fixed tempo of 120 beats
+ * per minute and PPQ ticks per beat, which makes a tick about half a millisecond at the default
+ * resolution.<br />
+ * Channel messages and system exclusive messages are exported; system common and real-time
+ * messages (clock, active sensing, ...) have no representation in a Standard MIDI File and are
+ * skipped. Events that are timestamped earlier than the previous event of their track (senders
+ * do not always deliver in order) are moved to the time of that event.
+ */
+public class MidiFileExporter {
+
+    public static final int DEFAULT_PPQ = 960;
+
+    /**
+     * Tempo of the exported file, in microseconds per beat (120 beats per minute)
+     */
+    private static final int TEMPO_MICROS = 500000;
+
+    private MidiFileExporter()
+    {
+    }
+
+    /**
+     * A track under construction
+     */
+    private static final class Track {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final ByteArrayOutputStream sysEx = new ByteArrayOutputStream();
+        long lastTick = 0;
+        long sysExTick = 0;
+
+        void writeDelta(long tick)
+        {
+            long delta = Math.max(0, tick - lastTick);
+            lastTick = Math.max(lastTick, tick);
+            writeVariableLength(data, delta);
+        }
+    }
+
+    /**
+     * Export the segments of a recording to a file
+     * @param segments the segment files, in recording order (see MidiRecordingReader.listSegments)
+     * @param target the file to write
+     * @return number of events exported
+     * @throws IOException if reading or writing fails
+     */
+    public static int export(File[] segments, File target) throws IOException
+    {
+        try (MidiRecordingReader reader = new MidiRecordingReader(segments);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            return export(reader, out, DEFAULT_PPQ);
+        }
+    }
+
+    /**
+     * Export the remaining records of a reader
+     * @param reader the recording
+     * @param out destination of the Standard MIDI File
+     * @param ppq resolution, in ticks per beat
+     * @return number of events exported
+     * @throws IOException if reading or writing fails
+     */
+    public static int export(MidiRecordingReader reader, OutputStream out, int ppq) throws IOException
+    {
+        if (ppq < 1 || ppq > 0x7FFF) {
+            throw new IllegalArgumentException("Invalid resolution " + ppq);
+        }
+        TreeMap<Integer, Track> tracks = new TreeMap<>();
+        byte[] bytes = new byte[4];
+        boolean started = false;
+        long startNanos = 0;
+        int exported = 0;
+        while (reader.next()) {
+            if (!started) {
+                startNanos = reader.getTimestamp();
+                started = true;
+            }
+            long tick = Math.max(0, reader.getTimestamp() - startNanos) * ppq / (TEMPO_MICROS * 1000L);
+            int key = (reader.getStream() << 8) | reader.getSource();
+            Track track = tracks.get(key);
+            if (track == null) {
+                track = new Track();
+                writeTrackName(track, "stream " + reader.getStream() + " source " + reader.getSource());
+                tracks.put(key, track);
+            }
+            if (reader.isSysEx()) {
+                if (reader.isFirst()) {
+                    track.sysEx.reset();
+                    track.sysExTick = tick;
+                }
+                int length = reader.getSysExBytes(bytes, 0);
+                track.sysEx.write(bytes, 0, length);
+                if (reader.isLast()) {
+                    if (writeSysEx(track)) {
+                        exported++;
+                    }
+                }
+                continue;
+            }
+            int event = reader.getEvent();
+            if (!MidiEvent.isChannelStatus(MidiEvent.getStatus(event))) {
+                continue;
+            }
+            int length = MidiEvent.toBytes(event, bytes, 0);
+            track.writeDelta(tick);
+            track.data.write(bytes, 0, length);
+            exported++;
+        }
+
+        writeChunkHeader(out, "MThd", 6);
+        writeShort(out, 1);
+        writeShort(out, tracks.size() + 1);
+        writeShort(out, ppq);
+
+        ByteArrayOutputStream tempo = new ByteArrayOutputStream();
+        tempo.write(new byte[] {0, (byte) 0xFF, 0x51, 3,
+                (byte) (TEMPO_MICROS >> 16), (byte) (TEMPO_MICROS >> 8), (byte) TEMPO_MICROS}, 0, 7);
+        writeTrack(out, tempo);
+        for (Map.Entry<Integer, Track> entry : tracks.entrySet()) {
+            writeTrack(out, entry.getValue().data);
+        }
+        out.flush();
+        return exported;
+    }
+
+    /**
+     * Write the system exclusive message assembled in a track
+     * @return false if there was nothing to write, e.g. because the start of the message was not recorded
+     */
+    private static boolean writeSysEx(Track track)
+    {
+        byte[] message = track.sysEx.toByteArray();
+        track.sysEx.reset();
+        if (message.length == 0 || (message[0] & 0xFF) != 0xF0) {
+            return false;
+        }
+        // an interrupted message lacks its end marker, which the file format requires
+        boolean terminated = (message[message.length - 1] & 0xFF) == 0xF7;
+        track.writeDelta(track.sysExTick);
+        track.data.write(0xF0);
+        writeVariableLength(track.data, message.length - 1 + (terminated ? 0 : 1));
+        track.data.write(message, 1, message.length - 1);
+        if (!terminated) {
+            track.data.write(0xF7);
+        }
+        return true;
+    }
+
+    private static void writeTrackName(Track track, String name)
+    {
+        byte[] text = name.getBytes(StandardCharsets.US_ASCII);
+        track.data.write(0);
+        track.data.write(0xFF);
+        track.data.write(0x03);
+        writeVariableLength(track.data, text.length);
+        track.data.write(text, 0, text.length);
+    }
+
+    /**
+     * Write a track chunk, appending the end of track event
+     */
+    private static void writeTrack(OutputStream out, ByteArrayOutputStream events) throws IOException
+    {
+        writeChunkHeader(out, "MTrk", events.size() + 4);
+        events.writeTo(out);
+        out.write(new byte[] {0, (byte) 0xFF, 0x2F, 0});
+    }
+
+    private static void writeChunkHeader(OutputStream out, String type, int length) throws IOException
+    {
+        out.write(type.getBytes(StandardCharsets.US_ASCII));
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException
+    {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Write a variable-length quantity: 7 bits per byte, most significant first, bit 7 set on all
+     * bytes but the last
+     */
+    static void writeVariableLength(ByteArrayOutputStream out, long value)
+    {
+        value = Math.min(value, 0x0FFFFFFF);
+        int shift = 21;
+        while (shift > 0 && (value >> shift) == 0) {
+            shift -= 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            out.write((int) ((value >> shift) & 0x7F) | 0x80);
+        }
+        out.write((int) (value & 0x7F));
+    }
+}
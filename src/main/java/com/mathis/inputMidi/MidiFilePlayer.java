@@ -0,0 +1,325 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a Standard MIDI File into a listener, typically a MidiInputPipeline whose output and bus
+ * are those of a live input, so that the file reaches the same receivers as live input (see
+ * MidiSynthDeviceService.newPlaybackPipeline and hardwareMidiManager.newPlaybackPipeline).<br />
+ * In real-time mode (start), a thread of its own delivers each event at its time, timestamped with
+ * that time in System.nanoTime time base. The thread parks until shortly before the event and
+ * spins the rest of the way, which keeps the delivery within some microseconds of the schedule
+ * rather than the milliseconds of Thread.sleep.<br />
+ * In offline mode (render), events are delivered on the calling thread, as fast as the consumer
+ * asks for them: each call advances the playback position by a given duration, for example one
+ * audio block, and delivers the events falling into it, timestamped on a virtual clock starting at
+ * the timestamp base.<br />
+ * The two modes can alternate, but render must not be called while playing in real time.<br />
+ * The notes delivered are tracked, so that stop and rewind send note offs (and sustain pedal
+ * releases) for the notes still sounding, rather than leaving them on in the receivers of live
+ * input.
+ */
+public class MidiFilePlayer {
+
+    /**
+     * Remaining wait below which the playback thread spins instead of parking
+     */
+    private static final long SPIN_NANOS = 100000;
+
+    private final MidiFileReader mReader;
+    private final midiStreamListener mOutput;
+
+    /**
+     * Notes delivered and not released yet; updated by the thread delivering the events
+     */
+    private final MidiNoteTracker mNoteTracker = new MidiNoteTracker(0);
+
+    /**
+     * mOutput, with the events tracked on the way
+     */
+    private final midiStreamListener mTrackingOutput = new midiStreamListener() {
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            mNoteTracker.track(event);
+            mOutput.onMidiEvent(event, timestamp);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            mOutput.onSysExChunk(data, offset, count, first, last, timestamp);
+        }
+    };
+
+    /**
+     * Whether the reader holds an event read but not delivered yet
+     */
+    private boolean mPending = false;
+    private volatile boolean mFinished = false;
+
+    /**
+     * Playback position, in file time
+     */
+    private volatile long mPositionNanos = 0;
+
+    /**
+     * Timestamp given to the start of the file in offline mode
+     */
+    private long mTimestampBase = 0;
+
+    private volatile boolean mPlaying = false;
+    private Thread mThread = null;
+    private volatile IOException mError = null;
+    private volatile Runnable mCompletionListener = null;
+
+    /**
+     * Constructor
+     * @param reader the file to play; not to be used by others while the player exists
+     * @param output receiver of the events
+     */
+    public MidiFilePlayer(MidiFileReader reader, midiStreamListener output)
+    {
+        mReader = reader;
+        mOutput = output;
+    }
+
+    /**
+     * Start playing in real time from the current position
+     */
+    public synchronized void start()
+    {
+        reapThread();
+        if (mThread != null || mFinished) {
+            return;
+        }
+        mPlaying = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                play();
+            }
+        }, "MidiFilePlayer");
+        mThread.setPriority(Thread.MAX_PRIORITY);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Stop playing in real time, wait for the playback thread to end and send note offs for the
+     * notes still sounding. The position is kept, so that start resumes playback.
+     */
+    public synchronized void stop()
+    {
+        if (mThread == null) {
+            return;
+        }
+        mPlaying = false;
+        LockSupport.unpark(mThread);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        mThread = null;
+        mNoteTracker.releaseAll(mOutput, System.nanoTime());
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forget the playback thread if it ended by itself, at the end of the file
+     */
+    private void reapThread()
+    {
+        if (mThread != null && !mPlaying) {
+            stop();
+        }
+    }
+
+    /**
+     * Body of the playback thread
+     */
+    private void play()
+    {
+        long start = System.nanoTime() - mPositionNanos;
+        try {
+            while (mPlaying) {
+                if (!mPending) {
+                    if (!mReader.next()) {
+                        mFinished = true;
+                        break;
+                    }
+                    mPending = true;
+                }
+                long deadline = start + mReader.getTimeNanos();
+                if (!waitUntil(deadline)) {
+                    break;
+                }
+                mReader.deliver(mTrackingOutput, deadline);
+                mPending = false;
+                mPositionNanos = mReader.getTimeNanos();
+            }
+        } catch (IOException e) {
+            mError = e;
+            mFinished = true;
+        }
+        if (!mFinished) {
+            // stopped: resume where the clock was, but not beyond the next event
+            long position = System.nanoTime() - start;
+            mPositionNanos = mPending ? Math.min(position, mReader.getTimeNanos()) : position;
+        }
+        mPlaying = false;
+        Runnable listener = mCompletionListener;
+        if (mFinished && listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Wait for a point in time
+     * @return false if playback was stopped meanwhile
+     */
+    private boolean waitUntil(long deadline)
+    {
+        while (mPlaying) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return true;
+            }
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Offline mode: advance the position and deliver the events up to it, on the calling thread
+     * @param durationNanos time to advance by
+     * @return number of events delivered
+     * @throws IOException if the file is malformed
+     * @throws IllegalStateException if playing in real time
+     */
+    public synchronized int render(long durationNanos) throws IOException
+    {
+        reapThread();
+        if (mThread != null) {
+            throw new IllegalStateException("playing in real time");
+        }
+        long end = mPositionNanos + durationNanos;
+        int delivered = 0;
+        while (!mFinished) {
+            if (!mPending) {
+                if (!mReader.next()) {
+                    mFinished = true;
+                    Runnable listener = mCompletionListener;
+                    if (listener != null) {
+                        listener.run();
+                    }
+                    break;
+                }
+                mPending = true;
+            }
+            if (mReader.getTimeNanos() >= end) {
+                break;
+            }
+            mReader.deliver(mTrackingOutput, mTimestampBase + mReader.getTimeNanos());
+            mPending = false;
+            delivered++;
+        }
+        mPositionNanos = end;
+        return delivered;
+    }
+
+    /**
+     * Go back to the start of the file, sending note offs for the notes still sounding. Not to be
+     * called while playing in real time.
+     */
+    public synchronized void rewind()
+    {
+        reapThread();
+        if (mThread != null) {
+            throw new IllegalStateException("playing in real time");
+        }
+        mNoteTracker.releaseAll(mOutput, mTimestampBase + mPositionNanos);
+        mReader.rewind();
+        mPending = false;
+        mFinished = false;
+        mPositionNanos = 0;
+        mError = null;
+    }
+
+    /**
+     * Set the timestamp given to the start of the file in offline mode, by default 0
+     * @param timestampBase the timestamp
+     */
+    public synchronized void setTimestampBase(long timestampBase)
+    {
+        mTimestampBase = timestampBase;
+    }
+
+    /**
+     * Set a function to be called when the end of the file is reached, on the playback thread in
+     * real-time mode and on the rendering thread in offline mode
+     * @param listener the function, or null
+     */
+    public void setCompletionListener(Runnable listener)
+    {
+        mCompletionListener = listener;
+    }
+
+    /**
+     * @return True while playing in real time
+     */
+    public boolean isPlaying()
+    {
+        return mPlaying;
+    }
+
+    /**
+     * @return True once all events of the file have been delivered
+     */
+    public boolean isFinished()
+    {
+        return mFinished;
+    }
+
+    /**
+     * @return Playback position, in file time; updated at each event in real-time mode
+     */
+    public long getPositionNanos()
+    {
+        return mPositionNanos;
+    }
+
+    /**
+     * @return The error that stopped playback, or null
+     */
+    public IOException getError()
+    {
+        return mError;
+    }
+}
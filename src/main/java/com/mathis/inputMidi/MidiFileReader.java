@@ -0,0 +1,440 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streaming reader of Standard MIDI Files. The file is mapped into memory and parsed in place,
+ * event by event, without building objects for the events: next moves to the following event of
+ * the file, in time order across all tracks, and its fields are then available through the getters
+ * or handed to a listener with deliver. Tracks are merged on the fly, keeping one read position
+ * per track; events at the same tick are taken from the tracks in track order, so that the tempo
+ * changes of the first track apply before the notes of the other tracks.<br />
+ * Tempo changes are applied as they are read, so getTimeNanos follows the tempo map. Files
+ * with SMPTE time division are timed by frames and ignore tempo changes. Files of format 2
+ * (independent sequences) are merged like format 1.<br />
+ * Meta events other than tempo and end of track, and escaped (0xF7) events outside a divided
+ * system exclusive message, are skipped. The track index is the source tag of the events, so
+ * files with more than MAX_TRACKS tracks are rejected.
+ */
+public class MidiFileReader {
+
+    /**
+     * Default tempo, in microseconds per beat (120 beats per minute)
+     */
+    private static final int DEFAULT_TEMPO_MICROS = 500000;
+
+    /**
+     * Maximum number of tracks, as many as there are source tags (see MidiEvent)
+     */
+    public static final int MAX_TRACKS = 256;
+
+    private static final int META = 0xFF;
+    private static final int META_END_OF_TRACK = 0x2F;
+    private static final int META_TEMPO = 0x51;
+
+    private final ByteBuffer mData;
+    private final int mFormat;
+    private final int mDivision;
+
+    // Per track: extent in mData, read position, running status, tick of the next event,
+    // and whether a divided system exclusive message is open
+    private final int[] mTrackStart;
+    private final int[] mTrackEnd;
+    private final int[] mTrackPosition;
+    private final int[] mRunningStatus;
+    private final long[] mNextTick;
+    private final boolean[] mSysExOpen;
+    private final boolean[] mTrackDone;
+
+    // Tempo map state: time at the last tempo change and the tempo since
+    private long mTempoTick;
+    private long mTempoNanos;
+    private int mTempoMicros;
+
+    // Current event
+    private int mTrack = -1;
+    private long mTick;
+    private long mTimeNanos;
+    private int mEvent;
+    private boolean mSysEx;
+    private int mSysExPosition;
+    private int mSysExLength;
+    private boolean mSysExFirst;
+
+    /**
+     * Buffer for handing over system exclusive messages; grown to the largest message
+     */
+    private byte[] mSysExBuffer = new byte[256];
+
+    /**
+     * Open a file
+     * @param file the Standard MIDI File
+     * @throws IOException if the file cannot be read or is not a Standard MIDI File
+     */
+    public MidiFileReader(File file) throws IOException
+    {
+        this(map(file));
+    }
+
+    /**
+     * Read a Standard MIDI File from a buffer
+     * @param data the content of the file, from its position to its limit
+     * @throws IOException if the content is not a Standard MIDI File
+     */
+    public MidiFileReader(ByteBuffer data) throws IOException
+    {
+        mData = data.slice();
+        if (mData.remaining() < 14 || mData.getInt(0) != 0x4D546864) { // "MThd"
+            throw new IOException("Not a Standard MIDI File");
+        }
+        int headerLength = mData.getInt(4);
+        if (headerLength < 6 || 8L + headerLength > mData.limit()) {
+            throw new IOException("Invalid header length " + headerLength);
+        }
+        mFormat = mData.getShort(8) & 0xFFFF;
+        int declaredTracks = mData.getShort(10) & 0xFFFF;
+        if (declaredTracks > MAX_TRACKS) {
+            throw new IOException("Too many tracks: " + declaredTracks + ", at most " + MAX_TRACKS);
+        }
+        mDivision = mData.getShort(12) & 0xFFFF;
+        if (mDivision == 0 || ((mDivision & 0x8000) != 0 && (mDivision & 0xFF) == 0)) {
+            throw new IOException("Invalid time division " + mDivision);
+        }
+
+        // locate the track chunks, skipping chunks of other types
+        int[] starts = new int[declaredTracks];
+        int[] ends = new int[declaredTracks];
+        int tracks = 0;
+        int position = 8 + headerLength;
+        while (tracks < declaredTracks && position + 8 <= mData.limit()) {
+            int type = mData.getInt(position);
+            long length = mData.getInt(position + 4) & 0xFFFFFFFFL;
+            int start = position + 8;
+            // a truncated last track is read as far as it goes
+            int end = (int) Math.min(start + length, mData.limit());
+            if (type == 0x4D54726B) { // "MTrk"
+                starts[tracks] = start;
+                ends[tracks] = end;
+                tracks++;
+            }
+            position = end;
+        }
+        mTrackStart = new int[tracks];
+        mTrackEnd = new int[tracks];
+        System.arraycopy(starts, 0, mTrackStart, 0, tracks);
+        System.arraycopy(ends, 0, mTrackEnd, 0, tracks);
+        mTrackPosition = new int[tracks];
+        mRunningStatus = new int[tracks];
+        mNextTick = new long[tracks];
+        mSysExOpen = new boolean[tracks];
+        mTrackDone = new boolean[tracks];
+        rewind();
+    }
+
+    private static ByteBuffer map(File file) throws IOException
+    {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Go back to the start of the file
+     */
+    public void rewind()
+    {
+        for (int track = 0; track < mTrackStart.length; track++) {
+            mTrackPosition[track] = mTrackStart[track];
+            mRunningStatus[track] = 0;
+            mNextTick[track] = 0;
+            mSysExOpen[track] = false;
+            mTrackDone[track] = false;
+            try {
+                readDelta(track);
+            } catch (IOException e) {
+                mTrackDone[track] = true;
+            }
+        }
+        mTempoTick = 0;
+        mTempoNanos = 0;
+        mTempoMicros = DEFAULT_TEMPO_MICROS;
+        mTrack = -1;
+        mTick = 0;
+        mTimeNanos = 0;
+    }
+
+    /**
+     * Move to the next event of the file
+     * @return false at the end of the file
+     * @throws IOException if the file is malformed
+     */
+    public boolean next() throws IOException
+    {
+        while (true) {
+            int track = -1;
+            long tick = Long.MAX_VALUE;
+            for (int t = 0; t < mNextTick.length; t++) {
+                if (!mTrackDone[t] && mNextTick[t] < tick) {
+                    tick = mNextTick[t];
+                    track = t;
+                }
+            }
+            if (track < 0) {
+                mTrack = -1;
+                return false;
+            }
+            mTick = tick;
+            mTimeNanos = tickToNanos(tick);
+            if (readEvent(track)) {
+                mTrack = track;
+                readDelta(track);
+                return true;
+            }
+            readDelta(track);
+        }
+    }
+
+    /**
+     * Read the event at the position of a track
+     * @return true if the event is to be delivered, false if it was consumed (meta events, ...)
+     */
+    private boolean readEvent(int track) throws IOException
+    {
+        int status = readByte(track);
+        if (status < 0x80) {
+            status = mRunningStatus[track];
+            if (status == 0) {
+                throw new IOException("Data byte without status in track " + track);
+            }
+            mTrackPosition[track]--;
+        }
+        if (status < 0xF0) {
+            mRunningStatus[track] = status;
+            int length = MidiEvent.getDataLength(status);
+            int data1 = readByte(track);
+            int data2 = length > 1 ? readByte(track) : 0;
+            mEvent = MidiEvent.pack(status, data1, data2, track);
+            mSysEx = false;
+            return true;
+        }
+        // system exclusive and meta events cancel running status
+        mRunningStatus[track] = 0;
+        if (status == META) {
+            int type = readByte(track);
+            int length = readVariableLength(track);
+            int data = skip(track, length);
+            if (type == META_END_OF_TRACK) {
+                mTrackDone[track] = true;
+            } else if (type == META_TEMPO && length >= 3 && (mDivision & 0x8000) == 0) {
+                mTempoNanos = tickToNanos(mTick);
+                mTempoTick = mTick;
+                mTempoMicros = ((mData.get(data) & 0xFF) << 16) | ((mData.get(data + 1) & 0xFF) << 8)
+                        | (mData.get(data + 2) & 0xFF);
+            }
+            return false;
+        }
+        if (status == 0xF0) {
+            int length = readVariableLength(track);
+            mSysExPosition = skip(track, length);
+            mSysExLength = length;
+            mSysExFirst = true;
+            mSysEx = true;
+            mSysExOpen[track] = length == 0 || mData.get(mSysExPosition + length - 1) != (byte) 0xF7;
+            return true;
+        }
+        if (status == 0xF7) {
+            int length = readVariableLength(track);
+            int data = skip(track, length);
+            if (!mSysExOpen[track]) {
+                return false;
+            }
+            mSysExPosition = data;
+            mSysExLength = length;
+            mSysExFirst = false;
+            mSysEx = true;
+            mSysExOpen[track] = length == 0 || mData.get(data + length - 1) != (byte) 0xF7;
+            return true;
+        }
+        throw new IOException("Invalid status " + status + " in track " + track);
+    }
+
+    private long tickToNanos(long tick)
+    {
+        if ((mDivision & 0x8000) != 0) {
+            int framesPerSecond = -(byte) (mDivision >> 8);
+            double fps = framesPerSecond == 29 ? 29.97 : framesPerSecond;
+            return (long) (tick * 1e9 / (fps * (mDivision & 0xFF)));
+        }
+        return mTempoNanos + (tick - mTempoTick) * mTempoMicros * 1000L / mDivision;
+    }
+
+    private int readByte(int track) throws IOException
+    {
+        int position = mTrackPosition[track];
+        if (position >= mTrackEnd[track]) {
+            throw new IOException("Unexpected end of track " + track);
+        }
+        mTrackPosition[track] = position + 1;
+        return mData.get(position) & 0xFF;
+    }
+
+    /**
+     * Skip bytes of a track
+     * @return the position of the first byte skipped
+     */
+    private int skip(int track, int length) throws IOException
+    {
+        int position = mTrackPosition[track];
+        if (length > mTrackEnd[track] - position) {
+            throw new IOException("Unexpected end of track " + track);
+        }
+        mTrackPosition[track] = position + length;
+        return position;
+    }
+
+    private int readVariableLength(int track) throws IOException
+    {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = readByte(track);
+            value = (value << 7) | (b & 0x7F);
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length quantity in track " + track);
+    }
+
+    /**
+     * Read the delta time preceding the next event of a track, or end the track
+     */
+    private void readDelta(int track) throws IOException
+    {
+        if (mTrackDone[track]) {
+            return;
+        }
+        if (mTrackPosition[track] >= mTrackEnd[track]) {
+            // missing end of track event
+            mTrackDone[track] = true;
+            return;
+        }
+        mNextTick[track] += readVariableLength(track);
+    }
+
+    /**
+     * Hand the current event to a listener: short messages as events (with the track index as
+     * source tag), system exclusive messages as a single chunk, or one chunk per part for
+     * messages divided into several events
+     * @param listener the receiver
+     * @param timestamp timestamp to give the event
+     */
+    public void deliver(midiStreamListener listener, long timestamp)
+    {
+        if (!mSysEx) {
+            listener.onMidiEvent(mEvent, timestamp);
+            return;
+        }
+        int length = mSysExLength + (mSysExFirst ? 1 : 0);
+        if (mSysExBuffer.length < length) {
+            mSysExBuffer = new byte[Math.max(length, 2 * mSysExBuffer.length)];
+        }
+        int offset = 0;
+        if (mSysExFirst) {
+            mSysExBuffer[offset++] = (byte) 0xF0;
+        }
+        for (int i = 0; i < mSysExLength; i++) {
+            mSysExBuffer[offset + i] = mData.get(mSysExPosition + i);
+        }
+        boolean last = mSysExLength > 0 && mSysExBuffer[length - 1] == (byte) 0xF7;
+        listener.onSysExChunk(mSysExBuffer, 0, length, mSysExFirst, last, timestamp);
+    }
+
+    /**
+     * @return Format of the file: 0 (single track), 1 (simultaneous tracks) or 2
+     */
+    public int getFormat()
+    {
+        return mFormat;
+    }
+
+    /**
+     * @return Number of tracks found in the file
+     */
+    public int getTrackCount()
+    {
+        return mTrackStart.length;
+    }
+
+    /**
+     * @return Time division field of the header: ticks per beat, or SMPTE format and ticks per
+     * frame if bit 15 is set
+     */
+    public int getDivision()
+    {
+        return mDivision;
+    }
+
+    /**
+     * @return Time of the current event from the start of the file, following the tempo map
+     */
+    public long getTimeNanos()
+    {
+        return mTimeNanos;
+    }
+
+    /**
+     * @return Tick of the current event
+     */
+    public long getTick()
+    {
+        return mTick;
+    }
+
+    /**
+     * @return Track of the current event
+     */
+    public int getTrack()
+    {
+        return mTrack;
+    }
+
+    /**
+     * @return True if the current event is (part of) a system exclusive message
+     */
+    public boolean isSysEx()
+    {
+        return mSysEx;
+    }
+
+    /**
+     * @return The current event, packed, with the track index as source tag; only meaningful if
+     * isSysEx is false
+     */
+    public int getEvent()
+    {
+        return mEvent;
+    }
+}
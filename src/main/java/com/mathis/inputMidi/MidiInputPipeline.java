@@ -0,0 +1,633 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Processing shared by all midi inputs, independent of the Android midi API: the received byte
+ * stream is parsed into complete messages, tagged with the source index, transformed
+ * (see MidiTransformStage), tracked for held notes, counted (MidiSourceMetrics, MidiLatencyMonitor),
+ * optionally recorded as received (MidiInputRecorder) and transmitted to an optional dispatch bus,
+ * and to priority lanes (MidiPriorityLanes), an event queue or, without either, to the output
+ * listener. System exclusive messages go to the bus and the output listener, or instead of the
+ * output to a MidiSysExAssembler gathering them into pooled buffers.<br />
+ * Instead of one call per message, the output can get the short messages of each received packet
+ * at once, as a MidiEventBatch (see setBatchOutput).<br />
+ * Universal MIDI Packets (MIDI 2.0) are fed through receiveUmp, and either passed on unchanged to a
+ * packet output or converted into MIDI 1.0 messages.<br />
+ * Where the messages go, whether they are transmitted and how they are transformed is held in an
+ * immutable MidiInputRouting, published through a single atomic reference: the receiving thread
+ * reads it once per packet, so a packet is processed entirely with either the old or the new
+ * routing, and settings changed together (see updateRouting) take effect together.<br />
+ * The Android receivers (SynthDeviceServiceMidiReceiver, AppMidiSupport, HardwareMidiInputPort)
+ * feed their data into a pipeline through receive; as this class is plain Java, the same code path
+ * can be measured off-device.<br />
+ * receive, releaseAll and reset must not run concurrently: they are called from a single receiving
+ * thread, or a receiver releasing from another thread (e.g. the one learning that the sender is
+ * gone) holds the same lock around them as around receive. The routing may be changed from any
+ * thread. Nothing is allocated after construction, except by routing changes.
+ */
+public class MidiInputPipeline implements midiStreamListener {
+
+    /**
+     * Source index packed into the events
+     */
+    private final int mSource;
+
+    /**
+     * Parser splitting the incoming byte stream into messages. The stream is parsed even
+     * if the messages are not transmitted, so that running status stays valid.
+     */
+    private final MidiStreamParser mParser = new MidiStreamParser(this);
+
+    /**
+     * Channel remapping, transposition, splits and velocity curves applied to the short messages,
+     * with the transform of the routing
+     */
+    private final MidiTransformStage mTransformStage = new MidiTransformStage();
+
+    /**
+     * Notes transmitted and not yet released
+     */
+    private final MidiNoteTracker mNoteTracker;
+
+    /**
+     * Latency from the timestamps of the data to its reception, and jitter
+     */
+    private final MidiLatencyMonitor mLatencyMonitor = new MidiLatencyMonitor();
+
+    /**
+     * Message, byte and drop counters
+     */
+    private final MidiSourceMetrics mMetrics;
+
+    /**
+     * Discarded bytes of the parser already counted in mMetrics
+     */
+    private long mCountedDiscardedBytes = 0;
+
+    /**
+     * Published routing
+     */
+    private final AtomicReference<MidiInputRouting> mRouting = new AtomicReference<>(MidiInputRouting.DEFAULT);
+
+    /**
+     * Routing read at the start of the packet being received, null outside receive and
+     * releaseAll; only accessed by the receiving thread
+     */
+    private MidiInputRouting mCurrent = null;
+
+    /**
+     * Short messages of the packet being received, for the batch output
+     */
+    private final MidiEventBatch mBatch = new MidiEventBatch();
+
+    /**
+     * Down conversion of the Universal MIDI Packets fed to receiveUmp
+     */
+    private final MidiUmpConverter mUmpConverter = new MidiUmpConverter();
+
+    /**
+     * Handler transmitting synthesized events like the received ones
+     */
+    private final midiEventHandler mTransmitter = this::transmit;
+
+    /**
+     * Constructor
+     * @param source Source index packed into the events, 0-255
+     * @param name Name of the source in the metrics reports
+     */
+    public MidiInputPipeline(int source, String name)
+    {
+        mSource = source;
+        mNoteTracker = new MidiNoteTracker(source);
+        mMetrics = new MidiSourceMetrics(name);
+    }
+
+    /**
+     * Process received data
+     * @param data the buffer
+     * @param offset start of the data in the buffer
+     * @param count number of bytes
+     * @param timestamp timestamp of the data, in System.nanoTime time base; 0 if unknown
+     */
+    public void receive(byte[] data, int offset, int count, long timestamp)
+    {
+        if (count <= 0) {
+            return;
+        }
+        mLatencyMonitor.record(timestamp, System.nanoTime());
+        mMetrics.onBytes(count);
+        mCurrent = mRouting.get();
+        mParser.parse(data, offset, count, timestamp);
+        flushBatch();
+        mCurrent = null;
+        long discarded = mParser.getDiscardedBytes();
+        if (discarded != mCountedDiscardedBytes) {
+            mMetrics.onDrop(MidiSourceMetrics.DROP_MALFORMED_BYTES, discarded - mCountedDiscardedBytes);
+            mCountedDiscardedBytes = discarded;
+        }
+    }
+
+    /**
+     * Process received Universal MIDI Packets, e.g. from a device opened with
+     * MidiManager.TRANSPORT_UNIVERSAL_MIDI_PACKETS (see MidiUmpAssembler). If the routing has a
+     * packet output (MidiInputRouting.withUmpOutput), the packets are passed on unchanged, at full
+     * resolution, as long as transmission is switched on; otherwise, they are converted into MIDI
+     * 1.0 messages (see MidiUmpConverter) and processed like received ones, so that the other
+     * outputs, the transform, note tracking and recording work as for byte stream input.
+     * @param words buffer holding the packets
+     * @param offset index of the first word of the first packet
+     * @param count number of words, a sum of whole packets
+     * @param timestamp timestamp of the packets, in System.nanoTime time base; 0 if unknown
+     */
+    public void receiveUmp(int[] words, int offset, int count, long timestamp)
+    {
+        if (count <= 0) {
+            return;
+        }
+        mLatencyMonitor.record(timestamp, System.nanoTime());
+        mMetrics.onBytes(4 * count);
+        MidiInputRouting routing = mRouting.get();
+        midiUmpListener umpOutput = routing.getUmpOutput();
+        if (umpOutput != null) {
+            int messages = countUmpMessages(words, offset, count);
+            if (routing.isEnabled()) {
+                umpOutput.onUmpPackets(words, offset, count, timestamp);
+            } else if (messages != 0) {
+                mMetrics.onDrop(MidiSourceMetrics.DROP_DISABLED, messages);
+            }
+            return;
+        }
+        mCurrent = routing;
+        long skipped = mUmpConverter.getSkippedCount();
+        int end = offset + count;
+        while (offset < end) {
+            if (offset + MidiUmpSpec.getWordCount(words[offset]) > end) {
+                // incomplete packet: not a sum of whole packets after all
+                mMetrics.onDrop(MidiSourceMetrics.DROP_UNCONVERTED_PACKETS, 1);
+                break;
+            }
+            offset += mUmpConverter.toMidi1(words, offset, this, timestamp);
+        }
+        flushBatch();
+        mCurrent = null;
+        skipped = mUmpConverter.getSkippedCount() - skipped;
+        if (skipped != 0) {
+            mMetrics.onDrop(MidiSourceMetrics.DROP_UNCONVERTED_PACKETS, skipped);
+        }
+    }
+
+    /**
+     * Count the messages and packet bytes of packets passed on unchanged, by the category of their
+     * MIDI 1.0 equivalent; the converted ones are counted as they are processed, with their MIDI
+     * 1.0 length
+     * @return the number of messages counted, complete system exclusive messages included
+     */
+    private int countUmpMessages(int[] words, int offset, int count)
+    {
+        int messages = 0;
+        int end = offset + count;
+        while (offset < end) {
+            int word = words[offset];
+            int wordCount = MidiUmpSpec.getWordCount(word);
+            switch (MidiUmpSpec.getMessageType(word)) {
+                case MidiUmpSpec.MT_SYSTEM:
+                case MidiUmpSpec.MT_MIDI1_CHANNEL_VOICE:
+                    mMetrics.onMessage(MidiUmpSpec.getStatus(word), 4 * wordCount);
+                    messages++;
+                    break;
+                case MidiUmpSpec.MT_MIDI2_CHANNEL_VOICE: {
+                    int opcode = MidiUmpSpec.getOpcode(word);
+                    // the controllers below note off have no MIDI 1.0 status of their own
+                    mMetrics.onMessage(opcode >= MidiUmpSpec.OPCODE_NOTE_OFF ? opcode << 4 : 0xB0, 4 * wordCount);
+                    messages++;
+                    break;
+                }
+                case MidiUmpSpec.MT_DATA_64: {
+                    int status = (word >>> 20) & 0x0F;
+                    mMetrics.onSysExBytes(4 * wordCount);
+                    if (status == MidiUmpSpec.SYSEX_COMPLETE || status == MidiUmpSpec.SYSEX_END) {
+                        mMetrics.onSysEx();
+                        messages++;
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            offset += wordCount;
+        }
+        return messages;
+    }
+
+    /**
+     * Routing for the message being processed: the one read for the current packet, or the
+     * published one for messages fed in directly
+     */
+    private MidiInputRouting routing()
+    {
+        MidiInputRouting current = mCurrent;
+        return current != null ? current : mRouting.get();
+    }
+
+    /**
+     * Called by the parser for every complete short message
+     */
+    @Override
+    public void onMidiEvent(int event, long timestamp)
+    {
+        MidiInputRouting routing = routing();
+        mMetrics.onMessage(event);
+        MidiInputRecorder recorder = routing.getRecorder();
+        if (recorder != null) {
+            recorder.record(routing.getRecorderStream(), MidiEvent.withSource(event, mSource), timestamp);
+        }
+        if (!routing.isEnabled()) {
+            mMetrics.onDrop(MidiSourceMetrics.DROP_DISABLED, 1);
+            return;
+        }
+        event = mTransformStage.process(MidiEvent.withSource(event, mSource), routing.getTransform());
+        if (event == MidiTransform.DROPPED) {
+            mMetrics.onDrop(MidiSourceMetrics.DROP_FILTERED, 1);
+            return;
+        }
+        if (MidiEvent.getStatus(event) == (MidiSpec.MIDICODE_RESET & 0xFF)) {
+            mNoteTracker.releaseAll(mTransmitter, timestamp);
+        }
+        mNoteTracker.track(event);
+        transmit(routing, event, timestamp);
+    }
+
+    /**
+     * Transmit a synthesized short message
+     */
+    private void transmit(int event, long timestamp)
+    {
+        transmit(routing(), event, timestamp);
+    }
+
+    /**
+     * Transmit a short message to the bus and to the queue or output
+     */
+    private void transmit(MidiInputRouting routing, int event, long timestamp)
+    {
+        MidiDispatchBus bus = routing.getDispatchBus();
+        if (bus != null) {
+            bus.onMidiEvent(event, timestamp);
+        }
+        MidiPriorityLanes lanes = routing.getPriorityLanes();
+        if (lanes != null) {
+            if (!lanes.offer(event, timestamp)) {
+                mMetrics.onDrop(MidiSourceMetrics.DROP_OVERFLOW, 1);
+            }
+            return;
+        }
+        MidiEventRing ring = routing.getEventRing();
+        if (ring != null) {
+            if (!ring.offer(event, timestamp)) {
+                mMetrics.onDrop(MidiSourceMetrics.DROP_OVERFLOW, 1);
+            }
+            return;
+        }
+        midiEventBatchHandler batchOutput = routing.getBatchOutput();
+        if (batchOutput != null) {
+            // handed over at the end of the packet, or right away for events not from receive
+            if (mBatch.add(event, timestamp) || mCurrent == null) {
+                flushBatch(batchOutput);
+            }
+            return;
+        }
+        midiStreamListener output = routing.getOutput();
+        if (output != null) {
+            output.onMidiEvent(event, timestamp);
+        }
+    }
+
+    /**
+     * Hand the collected short messages to the batch output of the current routing
+     */
+    private void flushBatch()
+    {
+        if (mBatch.size() != 0) {
+            flushBatch(routing().getBatchOutput());
+        }
+    }
+
+    private void flushBatch(midiEventBatchHandler batchOutput)
+    {
+        if (mBatch.size() == 0) {
+            return;
+        }
+        if (batchOutput != null) {
+            batchOutput.onMidiEventBatch(mBatch);
+        }
+        mBatch.clear();
+    }
+
+    /**
+     * Called by the parser for system exclusive messages
+     */
+    @Override
+    public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp)
+    {
+        MidiInputRouting routing = routing();
+        mMetrics.onSysExBytes(count);
+        if (last) {
+            mMetrics.onSysEx();
+        }
+        MidiInputRecorder recorder = routing.getRecorder();
+        if (recorder != null) {
+            recorder.recordSysEx(routing.getRecorderStream(), mSource, data, offset, count, first, last, timestamp);
+        }
+        if (!routing.isEnabled()) {
+            if (last) {
+                mMetrics.onDrop(MidiSourceMetrics.DROP_DISABLED, 1);
+            }
+            return;
+        }
+        MidiDispatchBus bus = routing.getDispatchBus();
+        if (bus != null) {
+            bus.onSysExChunk(data, offset, count, first, last, timestamp);
+        }
+        // keep the order of the short messages before the chunk
+        flushBatch(routing.getBatchOutput());
+        MidiSysExAssembler assembler = routing.getSysExAssembler();
+        if (assembler != null) {
+            if (assembler.onSysExChunk(data, offset, count, first, last, timestamp)) {
+                mMetrics.onDrop(MidiSourceMetrics.DROP_SYSEX_TRUNCATED, 1);
+            }
+            return;
+        }
+        midiStreamListener output = routing.getOutput();
+        if (output != null) {
+            output.onSysExChunk(data, offset, count, first, last, timestamp);
+        }
+    }
+
+    /**
+     * Transmit note offs for all notes still held and release the sustain pedals, e.g. once the
+     * sender is gone
+     * @param timestamp timestamp of the synthesized events
+     */
+    public void releaseAll(long timestamp)
+    {
+        mCurrent = mRouting.get();
+        mNoteTracker.releaseAll(mTransmitter, timestamp);
+        flushBatch();
+        mCurrent = null;
+    }
+
+    /**
+     * Forget a partially received message, e.g. before data from a new connection arrives
+     */
+    public void reset()
+    {
+        mParser.reset();
+        MidiSysExAssembler assembler = mRouting.get().getSysExAssembler();
+        if (assembler != null) {
+            assembler.reset();
+        }
+    }
+
+    /**
+     * @return The published routing
+     */
+    public MidiInputRouting getRouting()
+    {
+        return mRouting.get();
+    }
+
+    /**
+     * Replace the whole routing. Takes effect with the next received packet.
+     * @param routing the new routing
+     */
+    public void setRouting(MidiInputRouting routing)
+    {
+        if (routing == null) {
+            throw new IllegalArgumentException("routing must not be null");
+        }
+        mRouting.set(routing);
+    }
+
+    /**
+     * Change some settings of the routing atomically, e.g.
+     * {@code updateRouting(r -> r.withOutput(output).withEnabled(true))}. Concurrent updates
+     * are applied one after the other, none is lost; the update may be called more than once
+     * and must not have side effects.
+     * @param update function computing the new routing from the current one
+     * @return the routing published
+     */
+    public MidiInputRouting updateRouting(UnaryOperator<MidiInputRouting> update)
+    {
+        return mRouting.updateAndGet(update);
+    }
+
+    /**
+     * Switch transmission on or off. The data is parsed and counted in any case.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        updateRouting(routing -> routing.withEnabled(enabled));
+    }
+
+    public boolean isEnabled()
+    {
+        return mRouting.get().isEnabled();
+    }
+
+    /**
+     * Set a queue to which short messages will be transmitted instead of the output. The queue
+     * is single-producer: it must not be shared with another pipeline.
+     * @param ring The queue, or null to transmit short messages to the output again
+     */
+    public void setEventRing(MidiEventRing ring)
+    {
+        updateRouting(routing -> routing.withEventRing(ring));
+    }
+
+    public MidiEventRing getEventRing()
+    {
+        return mRouting.get().getEventRing();
+    }
+
+    /**
+     * Set priority lanes to which short messages will be transmitted instead of the queue or
+     * output, so that notes and real-time messages are not held up behind controller data. The
+     * lanes are single-producer: they must not be shared with another pipeline.
+     * @param lanes The lanes, or null to transmit short messages to the queue or output again
+     */
+    public void setPriorityLanes(MidiPriorityLanes lanes)
+    {
+        updateRouting(routing -> routing.withPriorityLanes(lanes));
+    }
+
+    public MidiPriorityLanes getPriorityLanes()
+    {
+        return mRouting.get().getPriorityLanes();
+    }
+
+    /**
+     * Set a bus to which all messages will be transmitted, in addition to the queue or output
+     * @param bus The bus, or null
+     */
+    public void setDispatchBus(MidiDispatchBus bus)
+    {
+        updateRouting(routing -> routing.withDispatchBus(bus));
+    }
+
+    public MidiDispatchBus getDispatchBus()
+    {
+        return mRouting.get().getDispatchBus();
+    }
+
+    /**
+     * Set the receiver of the short messages (when there is no queue) and of the system exclusive
+     * messages
+     * @param output The receiver, or null
+     */
+    public void setOutput(midiStreamListener output)
+    {
+        updateRouting(routing -> routing.withOutput(output));
+    }
+
+    public midiStreamListener getOutput()
+    {
+        return mRouting.get().getOutput();
+    }
+
+    /**
+     * Record the received messages, including those not transmitted because transmission is
+     * switched off or they are filtered out. Recording never blocks: messages the recorder cannot
+     * take are counted as dropped by the recorder.
+     * @param recorder the recorder, or null to stop recording this pipeline
+     * @param stream index distinguishing this pipeline's messages from those of other pipelines
+     *               with the same source index, 0-255
+     */
+    public void setRecorder(MidiInputRecorder recorder, int stream)
+    {
+        updateRouting(routing -> routing.withRecorder(recorder, stream));
+    }
+
+    public MidiInputRecorder getRecorder()
+    {
+        return mRouting.get().getRecorder();
+    }
+
+    /**
+     * Have the short messages transmitted to a batch receiver rather than one by one to the
+     * output: the messages of each received packet are handed over at once, at the end of the
+     * packet (or earlier, before a system exclusive message or when the batch is full). The queue,
+     * if set, still takes precedence; system exclusive messages still go to the output.
+     * @param batchOutput the receiver, or null to transmit short messages to the output again
+     */
+    public void setBatchOutput(midiEventBatchHandler batchOutput)
+    {
+        updateRouting(routing -> routing.withBatchOutput(batchOutput));
+    }
+
+    public midiEventBatchHandler getBatchOutput()
+    {
+        return mRouting.get().getBatchOutput();
+    }
+
+    /**
+     * Replace the transform applied to the short messages. Note offs still follow the note ons
+     * they release, so that swapping a split or transposition while playing leaves no note hanging.
+     * @param transform the compiled transform, or null to pass events unchanged
+     */
+    public void setTransform(MidiTransform transform)
+    {
+        updateRouting(routing -> routing.withTransform(transform));
+    }
+
+    /**
+     * Compile and use a transformation configuration
+     * @param config the configuration, or null to pass events unchanged
+     */
+    public void setTransformConfig(MidiTransformConfig config)
+    {
+        setTransform(config == null ? null : config.compile());
+    }
+
+    public MidiTransform getTransform()
+    {
+        return mRouting.get().getTransform();
+    }
+
+    public int getSource()
+    {
+        return mSource;
+    }
+
+    public MidiNoteTracker getNoteTracker()
+    {
+        return mNoteTracker;
+    }
+
+    public MidiLatencyMonitor getLatencyMonitor()
+    {
+        return mLatencyMonitor;
+    }
+
+    public MidiSourceMetrics getMetrics()
+    {
+        return mMetrics;
+    }
+
+    /**
+     * @return Number of packets fed to receiveUmp that had no MIDI 1.0 equivalent
+     */
+    public long getSkippedUmpCount()
+    {
+        return mUmpConverter.getSkippedCount();
+    }
+
+    /**
+     * Have Universal MIDI Packets fed to receiveUmp passed on unchanged instead of converted
+     * @param umpOutput the receiver, or null to convert the packets into MIDI 1.0 messages
+     */
+    public void setUmpOutput(midiUmpListener umpOutput)
+    {
+        updateRouting(routing -> routing.withUmpOutput(umpOutput));
+    }
+
+    public midiUmpListener getUmpOutput()
+    {
+        return mRouting.get().getUmpOutput();
+    }
+
+    /**
+     * Have the system exclusive messages gathered into pooled buffers instead of passed on to the
+     * output in chunks. The assembler replaced keeps the buffer of a message in progress until
+     * reset.
+     * @param assembler the assembler, or null to pass the chunks on to the output
+     */
+    public void setSysExAssembler(MidiSysExAssembler assembler)
+    {
+        updateRouting(routing -> routing.withSysExAssembler(assembler));
+    }
+
+    public MidiSysExAssembler getSysExAssembler()
+    {
+        return mRouting.get().getSysExAssembler();
+    }
+}
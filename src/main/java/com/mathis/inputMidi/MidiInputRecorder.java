@@ -0,0 +1,520 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the incoming midi messages with their nanosecond timestamps into a binary log, for bug
+ * reports and session recall. The receiving threads only claim slots in a preallocated lock-free
+ * buffer and store three primitives per record; a writer thread of its own drains the buffer into
+ * memory-mapped segment files, so that recording adds neither locks, nor allocation, nor file
+ * access to the live path. When the writer falls behind by more than the buffer capacity, the
+ * messages are dropped and counted rather than blocking the receivers.<br />
+ * The log consists of segment files named prefix-NNNNN.midrec, each holding a header of
+ * HEADER_SIZE bytes followed by fixed-width records of RECORD_SIZE bytes (big endian):<br />
+ * long: timestamp, System.nanoTime time base<br />
+ * int: the packed event (see MidiEvent) for short messages; up to 4 bytes of a system exclusive
+ * message, first byte in the lowest bits, otherwise<br />
+ * int: bits 0-7 record type (TYPE_SHORT, TYPE_SYSEX), bits 8-10 number of system exclusive
+ * bytes, bit 11 first record of a system exclusive message, bit 12 last record, bits 16-23
+ * stream, bits 24-31 source tag<br />
+ * The stream distinguishes inputs whose source tags overlap (e.g. virtual ports and hardware
+ * devices). The header holds the record count, updated at each flush, and the System.nanoTime and
+ * wall clock times at which the segment was started. A segment is full after a fixed number of
+ * records, and recording continues in the next one. Recordings are read with
+ * MidiRecordingReader and converted to Standard MIDI Files with MidiFileExporter.
+ */
+public class MidiInputRecorder implements Closeable {
+
+    public static final int MAGIC = 0x4D494452; // "MIDR"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 16;
+    public static final String FILE_EXTENSION = ".midrec";
+
+    // Offsets of the header fields
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_RECORD_SIZE = 8;
+    static final int HEADER_SEGMENT_INDEX = 12;
+    static final int HEADER_START_NANOS = 16;
+    static final int HEADER_START_MILLIS = 24;
+    static final int HEADER_RECORD_COUNT = 32;
+
+    // Record types
+    public static final int TYPE_SHORT = 0;
+    public static final int TYPE_SYSEX = 1;
+
+    // Bits of the info field of a record
+    static final int INFO_FIRST = 1 << 11;
+    static final int INFO_LAST = 1 << 12;
+
+    /**
+     * Maximum number of system exclusive bytes per record
+     */
+    static final int SYSEX_BYTES_PER_RECORD = 4;
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 1 << 16;
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Sleep of the writer thread when the buffer is empty
+     */
+    private static final long IDLE_PARK_NANOS = 2000000;
+
+    private final File mDirectory;
+    private final String mPrefix;
+    private final int mSegmentRecords;
+    private final long mFlushIntervalNanos;
+
+    // The buffer: records claimed by the producers through mTail, each slot published through its
+    // sequence number once written (seq == position + 1), and released by the writer
+    // (seq == position + capacity)
+    private final long[] mTimestamps;
+    private final int[] mData;
+    private final int[] mInfo;
+    private final AtomicLongArray mSequence;
+    private final int mMask;
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * Next position to write to the file; writer thread only
+     */
+    private long mHead = 0;
+
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private volatile long mWrittenCount = 0;
+    private volatile boolean mRecording = false;
+    private volatile IOException mError = null;
+
+    // Current segment; writer thread only once started
+    private final List<File> mSegmentFiles = new ArrayList<>();
+    private RandomAccessFile mSegmentFile = null;
+    private MappedByteBuffer mSegment = null;
+    private int mSegmentIndex = -1;
+    private int mSegmentCount = 0;
+    private long mLastFlushNanos = 0;
+
+    private Thread mWriter = null;
+
+    /**
+     * Constructor with default buffer capacity, segment size and flush interval
+     * @param directory directory of the segment files
+     * @param prefix name of the segment files, followed by the segment index
+     */
+    public MidiInputRecorder(File directory, String prefix)
+    {
+        this(directory, prefix, DEFAULT_BUFFER_CAPACITY, DEFAULT_SEGMENT_RECORDS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructor
+     * @param directory directory of the segment files
+     * @param prefix name of the segment files, followed by the segment index
+     * @param bufferCapacity number of records the buffer between the receivers and the writer
+     *                       can hold; rounded up to a power of two
+     * @param segmentRecords number of records per segment file
+     * @param flushIntervalMillis interval at which the record count is updated and the segment
+     *                            is forced to storage
+     */
+    public MidiInputRecorder(File directory, String prefix, int bufferCapacity, int segmentRecords,
+                             long flushIntervalMillis)
+    {
+        if (bufferCapacity < 1 || bufferCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid buffer capacity " + bufferCapacity);
+        }
+        if (segmentRecords < 1 || segmentRecords > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size " + segmentRecords);
+        }
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("flush interval must be positive");
+        }
+        mDirectory = directory;
+        mPrefix = prefix;
+        mSegmentRecords = segmentRecords;
+        mFlushIntervalNanos = flushIntervalMillis * 1000000L;
+        int size = Integer.highestOneBit(bufferCapacity);
+        if (size < bufferCapacity) {
+            size <<= 1;
+        }
+        mTimestamps = new long[size];
+        mData = new int[size];
+        mInfo = new int[size];
+        mSequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequence.set(i, i);
+        }
+        mMask = size - 1;
+    }
+
+    /**
+     * Open the first segment and start recording. After a writing error, recording starts again
+     * with a new segment; the records still buffered are written to it.
+     * @throws IOException if the segment file cannot be created
+     */
+    public synchronized void start() throws IOException
+    {
+        if (mWriter != null) {
+            if (mRecording) {
+                return;
+            }
+            // the writer failed: collect it before starting over
+            stop();
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        openSegment();
+        mError = null;
+        mRecording = true;
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "MidiInputRecorder");
+        mWriter.setDaemon(true);
+        mWriter.setPriority(Thread.MIN_PRIORITY);
+        mWriter.start();
+    }
+
+    /**
+     * Stop recording, write the records still buffered and close the segment. Messages recorded
+     * concurrently with stop may be lost.
+     */
+    public synchronized void stop()
+    {
+        if (mWriter == null) {
+            return;
+        }
+        mRecording = false;
+        LockSupport.unpark(mWriter);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mWriter.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        mWriter = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        stop();
+    }
+
+    /**
+     * Record a short message; may be called from any receiving thread
+     * @param stream input the message was received on, 0-255
+     * @param event packed event, with source tag
+     * @param timestamp timestamp of the message; 0 if unknown, in which case the time of the call
+     *                  is recorded
+     * @return false if the message was dropped, because recording is stopped or the buffer is full
+     */
+    public boolean record(int stream, int event, long timestamp)
+    {
+        if (!mRecording) {
+            return false;
+        }
+        long position = claim(1);
+        if (position < 0) {
+            return false;
+        }
+        int info = TYPE_SHORT | ((stream & 0xFF) << 16) | (MidiEvent.getSource(event) << 24);
+        publish(position, event, info, timestamp == 0 ? System.nanoTime() : timestamp);
+        return true;
+    }
+
+    /**
+     * Record (part of) a system exclusive message; may be called from any receiving thread. The
+     * chunk is stored in consecutive records, all or none.
+     * @param stream input the message was received on, 0-255
+     * @param source source tag, 0-255
+     * @param data buffer containing the bytes
+     * @param offset position of the first byte in data
+     * @param count number of bytes
+     * @param first True if this is the first chunk of the message
+     * @param last True if this is the last chunk of the message
+     * @param timestamp timestamp of the chunk; 0 if unknown
+     * @return false if the chunk was dropped
+     */
+    public boolean recordSysEx(int stream, int source, byte[] data, int offset, int count,
+                               boolean first, boolean last, long timestamp)
+    {
+        if (!mRecording || count <= 0) {
+            return false;
+        }
+        int records = (count + SYSEX_BYTES_PER_RECORD - 1) / SYSEX_BYTES_PER_RECORD;
+        long position = claim(records);
+        if (position < 0) {
+            return false;
+        }
+        if (timestamp == 0) {
+            timestamp = System.nanoTime();
+        }
+        int baseInfo = TYPE_SYSEX | ((stream & 0xFF) << 16) | ((source & 0xFF) << 24);
+        for (int r = 0; r < records; r++) {
+            int start = offset + r * SYSEX_BYTES_PER_RECORD;
+            int length = Math.min(SYSEX_BYTES_PER_RECORD, offset + count - start);
+            int bytes = 0;
+            for (int i = 0; i < length; i++) {
+                bytes |= (data[start + i] & 0xFF) << (8 * i);
+            }
+            int info = baseInfo | (length << 8);
+            if (first && r == 0) {
+                info |= INFO_FIRST;
+            }
+            if (last && r == records - 1) {
+                info |= INFO_LAST;
+            }
+            publish(position + r, bytes, info, timestamp);
+        }
+        return true;
+    }
+
+    /**
+     * Claim consecutive positions in the buffer
+     * @param records number of positions
+     * @return the first position, or -1 if the buffer cannot take the records
+     */
+    private long claim(int records)
+    {
+        if (records > mMask + 1) {
+            mDroppedCount.incrementAndGet();
+            return -1;
+        }
+        while (true) {
+            long tail = mTail.get();
+            long last = tail + records - 1;
+            long sequence = mSequence.get((int) last & mMask);
+            if (sequence == last) {
+                // the writer releases the slots in order, so all slots up to last are free
+                if (mTail.compareAndSet(tail, tail + records)) {
+                    return tail;
+                }
+            } else if (sequence < last) {
+                mDroppedCount.incrementAndGet();
+                return -1;
+            }
+            // else another producer claimed the position meanwhile
+        }
+    }
+
+    private void publish(long position, int data, int info, long timestamp)
+    {
+        int index = (int) position & mMask;
+        mTimestamps[index] = timestamp;
+        mData[index] = data;
+        mInfo[index] = info;
+        mSequence.lazySet(index, position + 1);
+    }
+
+    /**
+     * Body of the writer thread
+     */
+    private void writeLoop()
+    {
+        mLastFlushNanos = System.nanoTime();
+        try {
+            while (true) {
+                boolean recording = mRecording;
+                int written = drain();
+                long now = System.nanoTime();
+                if (now - mLastFlushNanos >= mFlushIntervalNanos) {
+                    flush();
+                    mLastFlushNanos = now;
+                }
+                if (written == 0) {
+                    if (!recording) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            mError = e;
+            mRecording = false;
+        } finally {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Write the published records to the segment, rolling over to the next segment when full
+     * @return number of records written
+     */
+    private int drain() throws IOException
+    {
+        int written = 0;
+        try {
+            // bounded, so that a continuous flood does not hold off the flushes
+            while (written <= mMask) {
+                int index = (int) mHead & mMask;
+                if (mSequence.get(index) != mHead + 1) {
+                    break;
+                }
+                if (mSegmentCount == mSegmentRecords) {
+                    closeSegment();
+                    openSegment();
+                }
+                int position = HEADER_SIZE + mSegmentCount * RECORD_SIZE;
+                mSegment.putLong(position, mTimestamps[index]);
+                mSegment.putInt(position + 8, mData[index]);
+                mSegment.putInt(position + 12, mInfo[index]);
+                mSegmentCount++;
+                mSequence.lazySet(index, mHead + mMask + 1);
+                mHead++;
+                written++;
+            }
+        } finally {
+            // also the records written before a failure to open the next segment
+            if (written > 0) {
+                mWrittenCount = mWrittenCount + written;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Create and map the next segment file
+     */
+    private void openSegment() throws IOException
+    {
+        mSegmentIndex++;
+        File file = new File(mDirectory, String.format(Locale.ROOT, "%s-%05d%s", mPrefix, mSegmentIndex, FILE_EXTENSION));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            mSegment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) mSegmentRecords * RECORD_SIZE);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        mSegmentFile = raf;
+        mSegmentCount = 0;
+        mSegment.putInt(HEADER_MAGIC, MAGIC);
+        mSegment.putInt(HEADER_VERSION, VERSION);
+        mSegment.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        mSegment.putInt(HEADER_SEGMENT_INDEX, mSegmentIndex);
+        mSegment.putLong(HEADER_START_NANOS, System.nanoTime());
+        mSegment.putLong(HEADER_START_MILLIS, System.currentTimeMillis());
+        mSegment.putLong(HEADER_RECORD_COUNT, 0);
+        synchronized (mSegmentFiles) {
+            mSegmentFiles.add(file);
+        }
+    }
+
+    /**
+     * Publish the record count of the segment and force it to storage
+     */
+    private void flush()
+    {
+        if (mSegment != null) {
+            mSegment.putLong(HEADER_RECORD_COUNT, mSegmentCount);
+            mSegment.force();
+        }
+    }
+
+    /**
+     * Flush the current segment, cut the unused space off and close it
+     */
+    private void closeSegment()
+    {
+        if (mSegment == null) {
+            return;
+        }
+        flush();
+        mSegment = null;
+        try {
+            try {
+                // the records past the count are never read; some platforms refuse to truncate a
+                // mapped file, which leaves it at full size
+                mSegmentFile.getChannel().truncate(HEADER_SIZE + (long) mSegmentCount * RECORD_SIZE);
+            } catch (IOException ignored) {
+            }
+            mSegmentFile.close();
+        } catch (IOException e) {
+            mError = e;
+        }
+        mSegmentFile = null;
+    }
+
+    /**
+     * @return True between start and stop, unless writing failed (see getError; start resumes)
+     */
+    public boolean isRecording()
+    {
+        return mRecording;
+    }
+
+    /**
+     * @return Number of records written to the segments so far
+     */
+    public long getWrittenCount()
+    {
+        return mWrittenCount;
+    }
+
+    /**
+     * @return Number of messages or system exclusive chunks dropped because the buffer was full
+     */
+    public long getDroppedCount()
+    {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return The error that stopped the writer, or null
+     */
+    public IOException getError()
+    {
+        return mError;
+    }
+
+    /**
+     * @return The segment files written since construction, in order
+     */
+    public List<File> getSegmentFiles()
+    {
+        synchronized (mSegmentFiles) {
+            return new ArrayList<>(mSegmentFiles);
+        }
+    }
+}
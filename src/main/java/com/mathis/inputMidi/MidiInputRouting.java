@@ -0,0 +1,240 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Routing state of a MidiInputPipeline: whether messages are transmitted, the transform applied
+ * to them, and where they go (queue or priority lanes, dispatch bus, output, batch output, packet output,
+ * system exclusive assembler, recorder). Objects of
+ * this class are immutable; the with* methods return a modified copy. A pipeline publishes its
+ * routing through a single atomic reference and reads it once per received packet, so a receiving
+ * thread always sees a complete configuration, either the old or the new one, never a mix.<br />
+ * Configuration changes allocate; the receive path does not.
+ */
+public final class MidiInputRouting {
+
+    /**
+     * Routing of a new pipeline: transmission on, no transform, no targets
+     */
+    public static final MidiInputRouting DEFAULT =
+            new MidiInputRouting(true, null, null, null, null, null, 0, null, null, null, null);
+
+    private final boolean mEnabled;
+    private final MidiEventRing mEventRing;
+    private final MidiDispatchBus mDispatchBus;
+    private final midiStreamListener mOutput;
+    private final midiEventBatchHandler mBatchOutput;
+    private final MidiInputRecorder mRecorder;
+    private final int mRecorderStream;
+    private final MidiTransform mTransform;
+    private final midiUmpListener mUmpOutput;
+    private final MidiSysExAssembler mSysExAssembler;
+    private final MidiPriorityLanes mPriorityLanes;
+
+    private MidiInputRouting(boolean enabled, MidiEventRing eventRing, MidiDispatchBus dispatchBus,
+                             midiStreamListener output, midiEventBatchHandler batchOutput,
+                             MidiInputRecorder recorder, int recorderStream, MidiTransform transform,
+                             midiUmpListener umpOutput, MidiSysExAssembler sysExAssembler,
+                             MidiPriorityLanes priorityLanes)
+    {
+        mEnabled = enabled;
+        mEventRing = eventRing;
+        mDispatchBus = dispatchBus;
+        mOutput = output;
+        mBatchOutput = batchOutput;
+        mRecorder = recorder;
+        mRecorderStream = recorderStream;
+        mTransform = transform;
+        mUmpOutput = umpOutput;
+        mSysExAssembler = sysExAssembler;
+        mPriorityLanes = priorityLanes;
+    }
+
+    /**
+     * @param enabled whether messages are transmitted at all; they are parsed, counted and
+     *                recorded in any case
+     * @return a copy with the given setting
+     */
+    public MidiInputRouting withEnabled(boolean enabled)
+    {
+        return new MidiInputRouting(enabled, mEventRing, mDispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param eventRing queue taking the short messages instead of the outputs, or null
+     * @return a copy with the given queue
+     */
+    public MidiInputRouting withEventRing(MidiEventRing eventRing)
+    {
+        return new MidiInputRouting(mEnabled, eventRing, mDispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param dispatchBus bus getting all messages in addition to the queue or outputs, or null
+     * @return a copy with the given bus
+     */
+    public MidiInputRouting withDispatchBus(MidiDispatchBus dispatchBus)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, dispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param output receiver of the short messages (without queue and batch output) and of the
+     *               system exclusive messages, or null
+     * @return a copy with the given output
+     */
+    public MidiInputRouting withOutput(midiStreamListener output)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, output, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param batchOutput receiver of the short messages in batches, or null
+     * @return a copy with the given batch output
+     */
+    public MidiInputRouting withBatchOutput(midiEventBatchHandler batchOutput)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, mOutput, batchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * Replace both outputs at once, e.g. when the receiver object of an input changes
+     * @param output receiver of the short and system exclusive messages, or null
+     * @param batchOutput receiver of the short messages in batches, or null
+     * @return a copy with the given outputs
+     */
+    public MidiInputRouting withOutputs(midiStreamListener output, midiEventBatchHandler batchOutput)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, output, batchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param recorder recorder of the messages as received, or null
+     * @param recorderStream stream index of the pipeline in the recording, 0-255
+     * @return a copy with the given recorder
+     */
+    public MidiInputRouting withRecorder(MidiInputRecorder recorder, int recorderStream)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, mOutput, mBatchOutput,
+                recorder, recorderStream, mTransform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param transform compiled transform applied to the short messages, or null for none
+     * @return a copy with the given transform
+     */
+    public MidiInputRouting withTransform(MidiTransform transform)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, transform, mUmpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param umpOutput receiver of Universal MIDI Packets fed to MidiInputPipeline.receiveUmp,
+     *                  taking them instead of the down conversion to MIDI 1.0 messages, or null
+     * @return a copy with the given packet output
+     */
+    public MidiInputRouting withUmpOutput(midiUmpListener umpOutput)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, umpOutput, mSysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param sysExAssembler assembler taking the system exclusive messages into pooled buffers
+     *                       instead of the output, or null
+     * @return a copy with the given assembler
+     */
+    public MidiInputRouting withSysExAssembler(MidiSysExAssembler sysExAssembler)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, sysExAssembler, mPriorityLanes);
+    }
+
+    /**
+     * @param priorityLanes lanes taking the short messages instead of the queue and outputs, or null
+     * @return a copy with the given lanes
+     */
+    public MidiInputRouting withPriorityLanes(MidiPriorityLanes priorityLanes)
+    {
+        return new MidiInputRouting(mEnabled, mEventRing, mDispatchBus, mOutput, mBatchOutput,
+                mRecorder, mRecorderStream, mTransform, mUmpOutput, mSysExAssembler, priorityLanes);
+    }
+
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    public MidiEventRing getEventRing()
+    {
+        return mEventRing;
+    }
+
+    public MidiDispatchBus getDispatchBus()
+    {
+        return mDispatchBus;
+    }
+
+    public midiStreamListener getOutput()
+    {
+        return mOutput;
+    }
+
+    public midiEventBatchHandler getBatchOutput()
+    {
+        return mBatchOutput;
+    }
+
+    public MidiInputRecorder getRecorder()
+    {
+        return mRecorder;
+    }
+
+    public int getRecorderStream()
+    {
+        return mRecorderStream;
+    }
+
+    public MidiTransform getTransform()
+    {
+        return mTransform;
+    }
+
+    public midiUmpListener getUmpOutput()
+    {
+        return mUmpOutput;
+    }
+
+    public MidiSysExAssembler getSysExAssembler()
+    {
+        return mSysExAssembler;
+    }
+
+    public MidiPriorityLanes getPriorityLanes()
+    {
+        return mPriorityLanes;
+    }
+}
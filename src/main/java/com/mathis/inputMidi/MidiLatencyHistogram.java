@@ -0,0 +1,203 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with fixed, log-linear buckets: each power of two is
+ * divided into 8 linear sub-buckets, so that a recorded value is known within 12.5% over the whole
+ * range from 1 ns to several minutes, with 488 buckets in total.<br />
+ * Recording is lock free and allocation free, and can be done from several threads at once; it
+ * costs a few atomic increments, so the histogram can stay enabled in production. Percentiles are
+ * computed on demand from a snapshot.
+ */
+public class MidiLatencyHistogram {
+
+    /**
+     * Sub-buckets per power of two, as a power of two
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets, enough for any non negative long
+     */
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mMax = new AtomicLong(0);
+
+    /**
+     * Values recorded as negative and counted as 0, e.g. for timestamps in the future
+     */
+    private final AtomicLong mNegativeCount = new AtomicLong(0);
+
+    /**
+     * Percentiles of a histogram at one point in time
+     */
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mMax;
+        private final long mNegativeCount;
+
+        Snapshot(long[] counts, long max, long negativeCount) {
+            mCounts = counts;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            mCount = count;
+            mMax = max;
+            mNegativeCount = negativeCount;
+        }
+
+        /**
+         * Number of recorded values
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Largest recorded value, exact
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * Number of negative values, which have been recorded as 0
+         */
+        public long getNegativeCount() {
+            return mNegativeCount;
+        }
+
+        /**
+         * Value below which the given fraction of the recorded values lie, as the upper bound of
+         * the bucket holding it (never above the maximum)
+         * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+         * @return the value in nanoseconds, 0 if nothing has been recorded
+         */
+        public long getPercentile(double fraction) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * mCount);
+            if (rank < 1) {
+                rank = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        public long getP50() {
+            return getPercentile(0.50);
+        }
+
+        public long getP90() {
+            return getPercentile(0.90);
+        }
+
+        public long getP99() {
+            return getPercentile(0.99);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + mCount + " p50=" + getP50() + "ns p90=" + getP90() + "ns p99=" + getP99()
+                    + "ns max=" + mMax + "ns";
+        }
+    }
+
+    /**
+     * Record a duration
+     * @param nanos the duration in nanoseconds; negative values are counted as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            mNegativeCount.incrementAndGet();
+            nanos = 0;
+        }
+        mCounts.incrementAndGet(bucketIndex(nanos));
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Copy of the current counts. Values recorded concurrently may or may not be included.
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+        }
+        return new Snapshot(counts, mMax.get(), mNegativeCount.get());
+    }
+
+    /**
+     * Forget all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mMax.set(0);
+        mNegativeCount.set(0);
+    }
+
+    /**
+     * Bucket of a non negative value: values below 8 have a bucket each, then each power of two
+     * is split into 8 sub-buckets
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Largest value falling into a bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << shift;
+        long upper = lower + (1L << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,83 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Delivery latency and inter-arrival jitter of one midi source. For each received packet, the
+ * latency is the time from its timestamp (the sender's or the native receive time) to its arrival
+ * at our receiver, and the jitter is how much the spacing of arrivals differs from the spacing of
+ * the timestamps, |(arrival - previous arrival) - (timestamp - previous timestamp)|.<br />
+ * record is to be called from the single receiving thread of the source, and does not allocate;
+ * the histograms can be read from any thread.
+ */
+public class MidiLatencyMonitor {
+
+    private final MidiLatencyHistogram mLatency = new MidiLatencyHistogram();
+    private final MidiLatencyHistogram mJitter = new MidiLatencyHistogram();
+
+    /**
+     * Timestamp and arrival time of the previous packet; only accessed by the receiving thread
+     */
+    private long mPreviousTimestamp = 0;
+    private long mPreviousArrival = 0;
+    private boolean mHasPrevious = false;
+
+    /**
+     * Record the arrival of a packet
+     * @param timestamp timestamp of the packet, in System.nanoTime time base; 0 for packets
+     *                  without timestamp, which are not recorded
+     * @param arrival time of arrival, typically System.nanoTime()
+     */
+    public void record(long timestamp, long arrival) {
+        if (timestamp == 0) {
+            return;
+        }
+        mLatency.record(arrival - timestamp);
+        if (mHasPrevious) {
+            mJitter.record(Math.abs((arrival - mPreviousArrival) - (timestamp - mPreviousTimestamp)));
+        }
+        mPreviousTimestamp = timestamp;
+        mPreviousArrival = arrival;
+        mHasPrevious = true;
+    }
+
+    /**
+     * Histogram of the time from timestamp to arrival
+     */
+    public MidiLatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Histogram of the inter-arrival jitter
+     */
+    public MidiLatencyHistogram getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * Forget the recorded values. Not to be called concurrently with record, as the jitter of the
+     * next packet may then be computed against a stale previous packet.
+     */
+    public void reset() {
+        mLatency.reset();
+        mJitter.reset();
+        mHasPrevious = false;
+    }
+}
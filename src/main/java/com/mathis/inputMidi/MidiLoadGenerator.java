@@ -0,0 +1,439 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives midi receive paths with synthetic, reproducible load, to size queues and check the
+ * behaviour under stress without devices attached. Each sending thread feeds one receiver
+ * (midiByteReceiver, e.g. SynthDeviceServiceMidiReceiver::onSend or MidiInputPipeline::receive)
+ * with packets of a load pattern, at a target message rate kept on a precise clock. The packets
+ * are generated before the run from a seed, so the same seed gives the same byte streams; every
+ * packet is an array of its own, exactly sized, so receivers taking whole arrays
+ * (AppMidiSupport.onNativeMessageReceive) can be driven as well.<br />
+ * The run reports the achieved throughput, the time spent in the receiver per packet, how far
+ * sending lagged behind schedule, and the drops counted by the MidiSourceMetrics of the receive
+ * paths given with addMetrics.<br />
+ * Receivers are not thread-safe; give each sending thread its own.
+ */
+public class MidiLoadGenerator {
+
+    /** One controller change per packet, random channels, controllers and values */
+    public static final int PATTERN_CONTROL_CHANGE = 0;
+    /** Chords of 64 notes, all note ons in one packet with running status, then all note offs */
+    public static final int PATTERN_CHORDS = 1;
+    /** System exclusive messages of 16 to 1024 bytes, in packets of at most 64 bytes */
+    public static final int PATTERN_SYSEX = 2;
+    /** Long running status runs with real-time bytes between data bytes, cut into packets at
+     * random positions */
+    public static final int PATTERN_RUNNING_STATUS = 3;
+    public static final int PATTERN_COUNT = 4;
+
+    static final String[] PATTERN_NAMES = {"cc", "chords", "sysex", "runningStatus"};
+
+    /**
+     * Number of messages generated per thread before the packets are repeated
+     */
+    private static final int MESSAGES_PER_CYCLE = 8192;
+
+    private static final int CHORD_SIZE = 64;
+    private static final int SYSEX_PACKET_SIZE = 64;
+
+    /**
+     * Remaining wait below which the sending threads spin instead of parking
+     */
+    private static final long SPIN_NANOS = 50000;
+
+    private final int mPattern;
+    private final double mMessagesPerSecond;
+    private final long mSeed;
+    private final List<MidiSourceMetrics> mMetrics = new ArrayList<>();
+
+    /**
+     * Packets of one sending thread, and the number of messages each completes
+     */
+    static final class Packets {
+        final byte[][] data;
+        final int[] messages;
+
+        Packets(byte[][] data, int[] messages)
+        {
+            this.data = data;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * Result of a run
+     */
+    public static final class Report {
+        private final long mDurationNanos;
+        private final long mMessages;
+        private final long mPackets;
+        private final long mBytes;
+        private final MidiLatencyHistogram.Snapshot mCallTime;
+        private final MidiLatencyHistogram.Snapshot mLag;
+        private final long[] mDrops;
+
+        Report(long durationNanos, long messages, long packets, long bytes,
+               MidiLatencyHistogram.Snapshot callTime, MidiLatencyHistogram.Snapshot lag, long[] drops)
+        {
+            mDurationNanos = durationNanos;
+            mMessages = messages;
+            mPackets = packets;
+            mBytes = bytes;
+            mCallTime = callTime;
+            mLag = lag;
+            mDrops = drops;
+        }
+
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        public long getMessageCount() {
+            return mMessages;
+        }
+
+        public long getPacketCount() {
+            return mPackets;
+        }
+
+        public long getByteCount() {
+            return mBytes;
+        }
+
+        /**
+         * @return Messages sent per second, over all threads
+         */
+        public double getMessagesPerSecond() {
+            return mDurationNanos == 0 ? 0 : mMessages * 1e9 / mDurationNanos;
+        }
+
+        /**
+         * @return Time spent in the receiver per packet
+         */
+        public MidiLatencyHistogram.Snapshot getCallTime() {
+            return mCallTime;
+        }
+
+        /**
+         * @return Delay of the packets behind their schedule; grows when the receivers cannot keep
+         * up. Empty for runs without target rate.
+         */
+        public MidiLatencyHistogram.Snapshot getLag() {
+            return mLag;
+        }
+
+        /**
+         * Drops counted during the run by the metrics given with addMetrics
+         * @param reason one of the MidiSourceMetrics.DROP_ constants
+         * @return number of messages, or bytes for DROP_MALFORMED_BYTES
+         */
+        public long getDropCount(int reason) {
+            return mDrops[reason];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.ROOT, "%d messages in %d packets (%d bytes) in %.3f s: %.0f msg/s%n",
+                    mMessages, mPackets, mBytes, mDurationNanos * 1e-9, getMessagesPerSecond()));
+            builder.append("call time: ").append(mCallTime).append('\n');
+            builder.append("lag: ").append(mLag).append('\n');
+            builder.append("drops:");
+            for (int reason = 0; reason < MidiSourceMetrics.DROP_REASON_COUNT; reason++) {
+                builder.append(' ').append(MidiSourceMetrics.DROP_REASON_NAMES[reason]).append('=').append(mDrops[reason]);
+            }
+            return builder.append('\n').toString();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param pattern one of the PATTERN_ constants
+     * @param messagesPerSecond target rate of each sending thread, or 0 to send as fast as possible
+     * @param seed seed of the generated streams
+     */
+    public MidiLoadGenerator(int pattern, double messagesPerSecond, long seed)
+    {
+        if (pattern < 0 || pattern >= PATTERN_COUNT) {
+            throw new IllegalArgumentException("Invalid pattern " + pattern);
+        }
+        if (!(messagesPerSecond >= 0)) {
+            throw new IllegalArgumentException("Invalid rate " + messagesPerSecond);
+        }
+        mPattern = pattern;
+        mMessagesPerSecond = messagesPerSecond;
+        mSeed = seed;
+    }
+
+    /**
+     * Pattern from its name, as used in reports ("cc", "chords", "sysex", "runningStatus")
+     * @param name the name
+     * @return one of the PATTERN_ constants
+     */
+    public static int patternOf(String name)
+    {
+        for (int pattern = 0; pattern < PATTERN_COUNT; pattern++) {
+            if (PATTERN_NAMES[pattern].equalsIgnoreCase(name)) {
+                return pattern;
+            }
+        }
+        throw new IllegalArgumentException("Unknown pattern " + name);
+    }
+
+    /**
+     * Include the drops of a receive path in the reports
+     * @param metrics the counters of the receive path
+     */
+    public synchronized void addMetrics(MidiSourceMetrics metrics)
+    {
+        mMetrics.add(metrics);
+    }
+
+    /**
+     * Generate the packets of a sending thread
+     * @param thread index of the thread, which selects its part of the seeded streams
+     * @return the packets
+     */
+    Packets generate(int thread)
+    {
+        Random random = new Random(mSeed * 31 + thread);
+        List<byte[]> packets = new ArrayList<>();
+        List<Integer> messages = new ArrayList<>();
+        int generated = 0;
+        while (generated < MESSAGES_PER_CYCLE) {
+            switch (mPattern) {
+                case PATTERN_CONTROL_CHANGE:
+                    packets.add(new byte[] {(byte) (0xB0 | random.nextInt(16)), (byte) random.nextInt(120),
+                            (byte) random.nextInt(128)});
+                    messages.add(1);
+                    generated++;
+                    break;
+                case PATTERN_CHORDS:
+                    generated += generateChord(random, packets, messages);
+                    break;
+                case PATTERN_SYSEX:
+                    generated += generateSysEx(random, packets, messages);
+                    break;
+                default:
+                    generated += generateRunningStatus(random, packets, messages);
+                    break;
+            }
+        }
+        int[] counts = new int[messages.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = messages.get(i);
+        }
+        return new Packets(packets.toArray(new byte[0][]), counts);
+    }
+
+    private static int generateChord(Random random, List<byte[]> packets, List<Integer> messages)
+    {
+        int channel = random.nextInt(16);
+        int lowest = random.nextInt(128 - CHORD_SIZE);
+        byte[] on = new byte[1 + 2 * CHORD_SIZE];
+        byte[] off = new byte[1 + 2 * CHORD_SIZE];
+        on[0] = (byte) (0x90 | channel);
+        off[0] = (byte) (0x90 | channel);
+        for (int i = 0; i < CHORD_SIZE; i++) {
+            on[1 + 2 * i] = (byte) (lowest + i);
+            on[2 + 2 * i] = (byte) (1 + random.nextInt(127));
+            off[1 + 2 * i] = (byte) (lowest + i);
+        }
+        packets.add(on);
+        messages.add(CHORD_SIZE);
+        packets.add(off);
+        messages.add(CHORD_SIZE);
+        return 2 * CHORD_SIZE;
+    }
+
+    private static int generateSysEx(Random random, List<byte[]> packets, List<Integer> messages)
+    {
+        int length = 16 + random.nextInt(1024 - 16 + 1);
+        byte[] message = new byte[length];
+        message[0] = (byte) 0xF0;
+        message[1] = 0x7D; // non-commercial manufacturer id
+        for (int i = 2; i < length - 1; i++) {
+            message[i] = (byte) random.nextInt(128);
+        }
+        message[length - 1] = (byte) 0xF7;
+        for (int start = 0; start < length; start += SYSEX_PACKET_SIZE) {
+            int count = Math.min(SYSEX_PACKET_SIZE, length - start);
+            byte[] packet = new byte[count];
+            System.arraycopy(message, start, packet, 0, count);
+            packets.add(packet);
+            messages.add(start + count == length ? 1 : 0);
+        }
+        return 1;
+    }
+
+    private static int generateRunningStatus(Random random, List<byte[]> packets, List<Integer> messages)
+    {
+        // one run: a status byte, then many messages as data bytes only, with clock and active
+        // sensing bytes slipped in anywhere, cut into packets at arbitrary positions
+        int status = (random.nextBoolean() ? 0x90 : 0xB0) | random.nextInt(16);
+        int run = 16 + random.nextInt(240);
+        byte[] stream = new byte[1 + 2 * run * 2];
+        boolean[] completes = new boolean[stream.length];
+        int length = 0;
+        stream[length++] = (byte) status;
+        for (int m = 0; m < run; m++) {
+            for (int d = 0; d < 2; d++) {
+                if (random.nextInt(8) == 0) {
+                    stream[length++] = (byte) (random.nextBoolean() ? 0xF8 : 0xFE);
+                    completes[length - 1] = true;
+                }
+                stream[length++] = (byte) random.nextInt(128);
+            }
+            completes[length - 1] = true;
+        }
+        int total = 0;
+        for (int start = 0; start < length; ) {
+            int count = Math.min(1 + random.nextInt(16), length - start);
+            byte[] packet = new byte[count];
+            System.arraycopy(stream, start, packet, 0, count);
+            int completed = 0;
+            for (int i = start; i < start + count; i++) {
+                if (completes[i]) {
+                    completed++;
+                }
+            }
+            packets.add(packet);
+            messages.add(completed);
+            total += completed;
+            start += count;
+        }
+        return total;
+    }
+
+    /**
+     * Run the load, one sending thread per receiver, and wait for the end of the run
+     * @param receivers the receivers, one per sending thread
+     * @param durationMillis duration of the run
+     * @return the results
+     * @throws InterruptedException if interrupted while waiting for the sending threads
+     */
+    public Report run(List<? extends midiByteReceiver> receivers, long durationMillis) throws InterruptedException
+    {
+        final int threads = receivers.size();
+        final Packets[] packets = new Packets[threads];
+        for (int t = 0; t < threads; t++) {
+            packets[t] = generate(t);
+        }
+        List<MidiSourceMetrics> metrics;
+        synchronized (this) {
+            metrics = new ArrayList<>(mMetrics);
+        }
+        long[] dropsBefore = sumDrops(metrics);
+
+        final MidiLatencyHistogram callTime = new MidiLatencyHistogram();
+        final MidiLatencyHistogram lag = new MidiLatencyHistogram();
+        final AtomicLong sentMessages = new AtomicLong();
+        final AtomicLong sentPackets = new AtomicLong();
+        final AtomicLong sentBytes = new AtomicLong();
+        final long start = System.nanoTime() + 1000000;
+        final long end = start + durationMillis * 1000000L;
+        Thread[] senders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final midiByteReceiver receiver = receivers.get(t);
+            final Packets own = packets[t];
+            senders[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    send(receiver, own, start, end, callTime, lag, sentMessages, sentPackets, sentBytes);
+                }
+            }, "MidiLoadGenerator-" + t);
+            senders[t].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        long duration = Math.max(0, System.nanoTime() - start);
+
+        long[] drops = sumDrops(metrics);
+        for (int reason = 0; reason < drops.length; reason++) {
+            drops[reason] -= dropsBefore[reason];
+        }
+        return new Report(duration, sentMessages.get(), sentPackets.get(), sentBytes.get(),
+                callTime.snapshot(), lag.snapshot(), drops);
+    }
+
+    /**
+     * Body of a sending thread
+     */
+    private void send(midiByteReceiver receiver, Packets packets, long start, long end,
+                      MidiLatencyHistogram callTime, MidiLatencyHistogram lag,
+                      AtomicLong sentMessages, AtomicLong sentPackets, AtomicLong sentBytes)
+    {
+        double nanosPerMessage = mMessagesPerSecond > 0 ? 1e9 / mMessagesPerSecond : 0;
+        long messages = 0;
+        long packetCount = 0;
+        long bytes = 0;
+        int index = 0;
+        while (true) {
+            long deadline = start + (long) (messages * nanosPerMessage);
+            if (deadline >= end) {
+                break;
+            }
+            long now = System.nanoTime();
+            while (deadline - now > 0) {
+                if (deadline - now > SPIN_NANOS) {
+                    LockSupport.parkNanos(deadline - now - SPIN_NANOS);
+                }
+                now = System.nanoTime();
+            }
+            if (now >= end) {
+                break;
+            }
+            byte[] packet = packets.data[index];
+            receiver.onMidiBytes(packet, 0, packet.length, now);
+            long done = System.nanoTime();
+            callTime.record(done - now);
+            if (nanosPerMessage > 0) {
+                lag.record(now - deadline);
+            }
+            messages += packets.messages[index];
+            packetCount++;
+            bytes += packet.length;
+            index = index + 1 == packets.data.length ? 0 : index + 1;
+        }
+        sentMessages.addAndGet(messages);
+        sentPackets.addAndGet(packetCount);
+        sentBytes.addAndGet(bytes);
+    }
+
+    private static long[] sumDrops(List<MidiSourceMetrics> metrics)
+    {
+        long[] drops = new long[MidiSourceMetrics.DROP_REASON_COUNT];
+        for (MidiSourceMetrics source : metrics) {
+            for (int reason = 0; reason < drops.length; reason++) {
+                drops[reason] += source.getDropCount(reason);
+            }
+        }
+        return drops;
+    }
+}
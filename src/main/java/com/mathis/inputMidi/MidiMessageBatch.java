@@ -0,0 +1,206 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A batch of timestamped midi messages in a direct ByteBuffer, the format in which a native
+ * reading thread hands over many messages at once (see hardwareMidiBatchedNativeSetup): one JNI
+ * transition per batch instead of one call and one byte[] allocation per message. The buffer is
+ * allocated on the Java side and shared with the native code, which writes a batch and signals its
+ * size; the batch is then decoded from the buffer while the native side waits, and the buffer is
+ * reused for the next batch.<br />
+ * Layout of a batch, in native byte order, each record starting at a multiple of 8 bytes:<br />
+ * int64: timestamp, CLOCK_MONOTONIC nanoseconds (System.nanoTime time base)<br />
+ * int32: number of midi bytes n<br />
+ * n bytes: the midi data, as received (any number of messages, running status allowed)<br />
+ * padding to the next multiple of 8<br />
+ * add writes this format from Java, for tests and for sources without native code.
+ * decode is to be called on a single thread; it does not allocate.
+ */
+public class MidiMessageBatch {
+
+    /**
+     * Size of the record header: timestamp and length
+     */
+    public static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * Alignment of the records
+     */
+    public static final int ALIGNMENT = 8;
+
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private final ByteBuffer mBuffer;
+
+    /**
+     * View of mBuffer for the bulk transfer in decode, with a position and limit of its own
+     */
+    private final ByteBuffer mReadView;
+
+    /**
+     * The batch copied out of the buffer in one bulk transfer, for parsing
+     */
+    private final byte[] mScratch;
+
+    /**
+     * Write position and message count of a batch written from Java
+     */
+    private int mWritePosition = 0;
+    private int mWriteCount = 0;
+
+    /**
+     * Records that did not fit in the buffer
+     */
+    private long mMalformedCount = 0;
+
+    /**
+     * Constructor with a buffer of the default capacity
+     */
+    public MidiMessageBatch()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param capacity size of the buffer in bytes, a multiple of 8
+     */
+    public MidiMessageBatch(int capacity)
+    {
+        if (capacity < RECORD_HEADER_SIZE || capacity % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        mBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        mReadView = mBuffer.duplicate();
+        mScratch = new byte[capacity];
+    }
+
+    /**
+     * The buffer to share with the native code
+     * @return a direct buffer in native byte order
+     */
+    public ByteBuffer getBuffer()
+    {
+        return mBuffer;
+    }
+
+    /**
+     * Size a record takes in the buffer, padding included
+     * @param count number of midi bytes
+     * @return size in bytes
+     */
+    public static int recordSize(int count)
+    {
+        return (RECORD_HEADER_SIZE + count + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Append a record to the batch being written from Java
+     * @param data buffer containing the midi data
+     * @param offset position of the first byte in data
+     * @param count number of bytes
+     * @param timestamp timestamp of the data
+     * @return false if the batch is full; the record is not added
+     */
+    public boolean add(byte[] data, int offset, int count, long timestamp)
+    {
+        int size = recordSize(count);
+        if (size > mBuffer.capacity() - mWritePosition) {
+            return false;
+        }
+        mBuffer.putLong(mWritePosition, timestamp);
+        mBuffer.putInt(mWritePosition + 8, count);
+        for (int i = 0; i < count; i++) {
+            mBuffer.put(mWritePosition + RECORD_HEADER_SIZE + i, data[offset + i]);
+        }
+        mWritePosition += size;
+        mWriteCount++;
+        return true;
+    }
+
+    /**
+     * @return Size in bytes of the batch written from Java
+     */
+    public int getWrittenBytes()
+    {
+        return mWritePosition;
+    }
+
+    /**
+     * @return Number of records of the batch written from Java
+     */
+    public int getWrittenCount()
+    {
+        return mWriteCount;
+    }
+
+    /**
+     * Start a new batch written from Java
+     */
+    public void clear()
+    {
+        mWritePosition = 0;
+        mWriteCount = 0;
+    }
+
+    /**
+     * Hand the records of a batch to a receiver, in order
+     * @param byteCount size of the batch, as signalled by the writer
+     * @param receiver receiver of the data of each record
+     * @return number of records decoded
+     */
+    public int decode(int byteCount, midiByteReceiver receiver)
+    {
+        if (byteCount <= 0) {
+            return 0;
+        }
+        byteCount = Math.min(byteCount, mBuffer.capacity());
+        mReadView.limit(byteCount).position(0);
+        mReadView.get(mScratch, 0, byteCount);
+        int position = 0;
+        int records = 0;
+        while (position + RECORD_HEADER_SIZE <= byteCount) {
+            long timestamp = mBuffer.getLong(position);
+            int count = mBuffer.getInt(position + 8);
+            if (count < 0 || count > byteCount - position - RECORD_HEADER_SIZE) {
+                // the rest of the batch cannot be trusted
+                mMalformedCount++;
+                break;
+            }
+            if (count > 0) {
+                receiver.onMidiBytes(mScratch, position + RECORD_HEADER_SIZE, count, timestamp);
+            }
+            records++;
+            position += recordSize(count);
+        }
+        return records;
+    }
+
+    /**
+     * @return Number of batches whose decoding stopped at a record exceeding the batch
+     */
+    public long getMalformedCount()
+    {
+        return mMalformedCount;
+    }
+}
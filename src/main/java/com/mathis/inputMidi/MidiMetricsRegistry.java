@@ -0,0 +1,219 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of the midi sources whose counters are reported together. Sources are registered as they
+ * appear (virtual ports, the natively read device, hardware input ports) and unregistered when
+ * they go away. The list of sources is copied on write, so that snapshots never lock against
+ * the receiving threads.
+ */
+public class MidiMetricsRegistry {
+
+    private static final MidiMetricsRegistry mDefault = new MidiMetricsRegistry();
+
+    private volatile MidiSourceMetrics[] mSources = new MidiSourceMetrics[0];
+
+    /**
+     * Counters of one source at one point in time
+     */
+    public static final class SourceSnapshot {
+        private final String mName;
+        private final long[] mMessages = new long[MidiSourceMetrics.CATEGORY_COUNT];
+        private final long[] mCategoryBytes = new long[MidiSourceMetrics.CATEGORY_COUNT];
+        private final long[] mDrops = new long[MidiSourceMetrics.DROP_REASON_COUNT];
+        private final long mBytes;
+
+        SourceSnapshot(MidiSourceMetrics source) {
+            mName = source.getName();
+            for (int i = 0; i < mMessages.length; i++) {
+                mMessages[i] = source.getMessageCount(i);
+                mCategoryBytes[i] = source.getByteCount(i);
+            }
+            for (int i = 0; i < mDrops.length; i++) {
+                mDrops[i] = source.getDropCount(i);
+            }
+            mBytes = source.getByteCount();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getMessageCount(int category) {
+            return mMessages[category];
+        }
+
+        public long getMessageCount() {
+            long total = 0;
+            for (long count : mMessages) {
+                total += count;
+            }
+            return total;
+        }
+
+        public long getByteCount() {
+            return mBytes;
+        }
+
+        public long getByteCount(int category) {
+            return mCategoryBytes[category];
+        }
+
+        public long getDropCount(int reason) {
+            return mDrops[reason];
+        }
+    }
+
+    /**
+     * Counters of all sources at one point in time
+     */
+    public static final class Snapshot {
+        private final long mTimeNanos;
+        private final List<SourceSnapshot> mSources;
+
+        Snapshot(long timeNanos, List<SourceSnapshot> sources) {
+            mTimeNanos = timeNanos;
+            mSources = sources;
+        }
+
+        /**
+         * Time of the snapshot, in System.nanoTime time base
+         */
+        public long getTimeNanos() {
+            return mTimeNanos;
+        }
+
+        public List<SourceSnapshot> getSources() {
+            return mSources;
+        }
+
+        /**
+         * @return the source with this name, or null
+         */
+        public SourceSnapshot getSource(String name) {
+            for (SourceSnapshot source : mSources) {
+                if (source.getName().equals(name)) {
+                    return source;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Registry to which the input classes of this module register their sources
+     */
+    public static MidiMetricsRegistry getDefault() {
+        return mDefault;
+    }
+
+    public synchronized void register(MidiSourceMetrics source) {
+        for (MidiSourceMetrics existing : mSources) {
+            if (existing == source) {
+                return;
+            }
+        }
+        MidiSourceMetrics[] sources = new MidiSourceMetrics[mSources.length + 1];
+        System.arraycopy(mSources, 0, sources, 0, mSources.length);
+        sources[mSources.length] = source;
+        mSources = sources;
+    }
+
+    public synchronized void unregister(MidiSourceMetrics source) {
+        MidiSourceMetrics[] current = mSources;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == source) {
+                MidiSourceMetrics[] sources = new MidiSourceMetrics[current.length - 1];
+                System.arraycopy(current, 0, sources, 0, i);
+                System.arraycopy(current, i + 1, sources, i, current.length - i - 1);
+                mSources = sources;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sum the counters of all registered sources. Costs a few additions per counter; the
+     * receiving threads are not affected.
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        MidiSourceMetrics[] sources = mSources;
+        List<SourceSnapshot> snapshots = new ArrayList<SourceSnapshot>(sources.length);
+        for (MidiSourceMetrics source : sources) {
+            snapshots.add(new SourceSnapshot(source));
+        }
+        return new Snapshot(System.nanoTime(), Collections.unmodifiableList(snapshots));
+    }
+
+    /**
+     * Describe the rates between two snapshots, one line per source with messages/s and bytes/s,
+     * the messages/s and bytes/s of each category, and the drops in the interval
+     * @param previous the earlier snapshot, or null to report the totals instead of rates
+     * @param current the later snapshot
+     * @return the description
+     */
+    public static String formatRates(Snapshot previous, Snapshot current) {
+        double seconds = previous == null ? 0 : (current.getTimeNanos() - previous.getTimeNanos()) * 1e-9;
+        StringBuilder builder = new StringBuilder();
+        for (SourceSnapshot source : current.getSources()) {
+            SourceSnapshot before = previous == null ? null : previous.getSource(source.getName());
+            if (before != null && (source.getMessageCount() < before.getMessageCount()
+                    || source.getByteCount() < before.getByteCount())) {
+                // counters reset, or name taken over by a new source
+                before = null;
+            }
+            builder.append(source.getName()).append(':');
+            appendRate(builder, " msg/s=", source.getMessageCount() - (before == null ? 0 : before.getMessageCount()), seconds);
+            appendRate(builder, " bytes/s=", source.getByteCount() - (before == null ? 0 : before.getByteCount()), seconds);
+            for (int i = 0; i < MidiSourceMetrics.CATEGORY_COUNT; i++) {
+                long delta = source.getMessageCount(i) - (before == null ? 0 : before.getMessageCount(i));
+                if (delta != 0) {
+                    appendRate(builder, " " + MidiSourceMetrics.CATEGORY_NAMES[i] + "/s=", delta, seconds);
+                }
+                delta = source.getByteCount(i) - (before == null ? 0 : before.getByteCount(i));
+                if (delta != 0) {
+                    appendRate(builder, " " + MidiSourceMetrics.CATEGORY_NAMES[i] + ".bytes/s=", delta, seconds);
+                }
+            }
+            for (int i = 0; i < MidiSourceMetrics.DROP_REASON_COUNT; i++) {
+                long delta = source.getDropCount(i) - (before == null ? 0 : before.getDropCount(i));
+                if (delta != 0) {
+                    builder.append(" dropped.").append(MidiSourceMetrics.DROP_REASON_NAMES[i]).append('=').append(delta);
+                }
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void appendRate(StringBuilder builder, String label, long delta, double seconds) {
+        builder.append(label);
+        if (seconds > 0) {
+            builder.append(Math.round(delta / seconds));
+        } else {
+            builder.append(delta).append("(total)");
+        }
+    }
+}
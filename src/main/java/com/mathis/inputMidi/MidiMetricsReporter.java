@@ -0,0 +1,128 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes the message rates of a MidiMetricsRegistry to logcat and/or a file, to
+ * correlate CPU load with input load. Runs on a daemon thread of its own, at low cost: one
+ * snapshot and one formatted report per period.
+ */
+public class MidiMetricsReporter {
+
+    private static final String TAG = "MidiMetrics";
+
+    private final MidiMetricsRegistry mRegistry;
+    private final long mPeriodMillis;
+    private boolean mLogcat = true;
+    private File mFile = null;
+
+    private ScheduledExecutorService mExecutor = null;
+    private MidiMetricsRegistry.Snapshot mPrevious = null;
+
+    /**
+     * Constructor
+     * @param registry the registry to report
+     * @param periodMillis interval between reports
+     */
+    public MidiMetricsReporter(MidiMetricsRegistry registry, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        mRegistry = registry;
+        mPeriodMillis = periodMillis;
+    }
+
+    /**
+     * Whether to write the reports to logcat, the default
+     */
+    public synchronized void setLogcat(boolean logcat) {
+        mLogcat = logcat;
+    }
+
+    /**
+     * Append the reports to a file, each preceded by a line with the snapshot time
+     * @param file the file, or null for no file output
+     */
+    public synchronized void setFile(File file) {
+        mFile = file;
+    }
+
+    public synchronized void start() {
+        if (mExecutor != null) {
+            return;
+        }
+        mPrevious = mRegistry.snapshot();
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MidiMetricsReporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, mPeriodMillis, mPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Report the rates since the previous report now
+     */
+    public synchronized void report() {
+        MidiMetricsRegistry.Snapshot current = mRegistry.snapshot();
+        String rates = MidiMetricsRegistry.formatRates(mPrevious, current);
+        mPrevious = current;
+        if (mLogcat) {
+            for (String line : rates.split("\n")) {
+                if (!line.isEmpty()) {
+                    Log.i(TAG, line);
+                }
+            }
+        }
+        if (mFile != null) {
+            try (Writer writer = new FileWriter(mFile, true)) {
+                writer.write("t=" + current.getTimeNanos() + "\n");
+                writer.write(rates);
+            } catch (IOException e) {
+                Log.w(TAG, "could not write " + mFile, e);
+            }
+        }
+    }
+}
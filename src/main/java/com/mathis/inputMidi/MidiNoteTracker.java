@@ -0,0 +1,272 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Keeps track of the notes currently held on each of the 16 midi channels, of the sustain pedal
+ * state and of the last note on velocity of each note, in flat primitive arrays (one 128 bit set per
+ * channel). Whether a note is held and how many voices sound on a channel are answered in
+ * constant time.<br />
+ * Its main purpose is to avoid stuck notes: when the sending device disappears (hardware device
+ * unplugged, virtual port closed) or sends a system reset, releaseAll synthesizes the note offs
+ * (and sustain pedal release) for everything still sounding, by walking the set bits only.<br />
+ * Not thread safe: track and releaseAll must be called from the receiving thread, or after the
+ * receiving thread has stopped.
+ */
+public class MidiNoteTracker {
+
+    /**
+     * Held notes: two longs (notes 0-63, 64-127) per channel
+     */
+    private final long[] mHeld = new long[32];
+
+    /**
+     * Notes released while the sustain pedal was down, hence still sounding
+     */
+    private final long[] mSustained = new long[32];
+
+    /**
+     * Last note on velocity per (channel * 128 + note)
+     */
+    private final byte[] mVelocity = new byte[16 * 128];
+
+    /**
+     * Sustain pedal state, bit n for channel n
+     */
+    private int mSustainMask = 0;
+
+    /**
+     * Source tag of the synthesized events
+     */
+    private final int mSource;
+
+    /**
+     * Number of note off events synthesized since construction
+     */
+    private long mSynthesizedNoteOffs = 0;
+
+    /**
+     * Constructor, with source tag 0 for the synthesized events
+     */
+    public MidiNoteTracker()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructor
+     * @param source Source tag of the synthesized events, see MidiEvent.getSource
+     */
+    public MidiNoteTracker(int source)
+    {
+        mSource = source;
+    }
+
+    /**
+     * Update the state with an event
+     * @param event packed midi event
+     */
+    public void track(int event)
+    {
+        int status = event & 0xFF;
+        if (status >= 0xF0) {
+            return;
+        }
+        int channel = status & 0x0F;
+        int data1 = (event >> 8) & 0x7F;
+        int data2 = (event >> 16) & 0x7F;
+        int word = channel * 2 + (data1 >> 6);
+        long bit = 1L << (data1 & 63);
+        switch (status >> 4) {
+            case MidiSpec.MIDICODE_NOTEON:
+                if (data2 != 0) {
+                    mHeld[word] |= bit;
+                    mSustained[word] &= ~bit;
+                    mVelocity[channel * 128 + data1] = (byte) data2;
+                } else {
+                    // velocity 0: note off
+                    noteOff(word, bit, channel);
+                }
+                break;
+            case MidiSpec.MIDICODE_NOTEOFF:
+                noteOff(word, bit, channel);
+                break;
+            case MidiSpec.MIDICODE_CONTROLLER:
+                if (data1 == 64) {
+                    if (data2 >= 64) {
+                        mSustainMask |= 1 << channel;
+                    } else {
+                        mSustainMask &= ~(1 << channel);
+                        mSustained[channel * 2] = 0;
+                        mSustained[channel * 2 + 1] = 0;
+                    }
+                } else if (data1 == 120 || data1 == 123) {
+                    // all sound off, all notes off
+                    clearChannel(channel);
+                } else if (data1 == 121) {
+                    // reset all controllers releases the pedal
+                    mSustainMask &= ~(1 << channel);
+                    mSustained[channel * 2] = 0;
+                    mSustained[channel * 2 + 1] = 0;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void clearChannel(int channel)
+    {
+        mHeld[channel * 2] = 0;
+        mHeld[channel * 2 + 1] = 0;
+        mSustained[channel * 2] = 0;
+        mSustained[channel * 2 + 1] = 0;
+    }
+
+    /**
+     * Is a note held (note on received, note off not yet received)?
+     * @param channel midi channel, 0-15
+     * @param note note number, 0-127
+     * @return True if the note is held
+     */
+    public boolean isNoteHeld(int channel, int note)
+    {
+        return (mHeld[channel * 2 + (note >> 6)] & (1L << (note & 63))) != 0;
+    }
+
+    /**
+     * Is a note sounding, i.e. held, or released while the sustain pedal is down?
+     * @param channel midi channel, 0-15
+     * @param note note number, 0-127
+     * @return True if the note is sounding
+     */
+    public boolean isNoteSounding(int channel, int note)
+    {
+        int word = channel * 2 + (note >> 6);
+        return ((mHeld[word] | mSustained[word]) & (1L << (note & 63))) != 0;
+    }
+
+    /**
+     * @param channel midi channel, 0-15
+     * @return Number of notes held on the channel
+     */
+    public int getHeldNoteCount(int channel)
+    {
+        return Long.bitCount(mHeld[channel * 2]) + Long.bitCount(mHeld[channel * 2 + 1]);
+    }
+
+    /**
+     * @param channel midi channel, 0-15
+     * @return Number of notes sounding on the channel (held or sustained)
+     */
+    public int getVoiceCount(int channel)
+    {
+        return Long.bitCount(mHeld[channel * 2] | mSustained[channel * 2])
+                + Long.bitCount(mHeld[channel * 2 + 1] | mSustained[channel * 2 + 1]);
+    }
+
+    /**
+     * @param channel midi channel, 0-15
+     * @return True if the sustain pedal is down on the channel
+     */
+    public boolean isSustainOn(int channel)
+    {
+        return (mSustainMask & (1 << channel)) != 0;
+    }
+
+    /**
+     * @param channel midi channel, 0-15
+     * @param note note number, 0-127
+     * @return Velocity of the last note on of the note, 0 if none was received
+     */
+    public int getLastVelocity(int channel, int note)
+    {
+        return mVelocity[channel * 128 + note];
+    }
+
+    /**
+     * @return True if any note is held or sustained on any channel
+     */
+    public boolean isAnyNoteSounding()
+    {
+        for (int i = 0; i < 32; i++) {
+            if ((mHeld[i] | mSustained[i]) != 0) {
+                return true;
+            }
+        }
+        return mSustainMask != 0;
+    }
+
+    /**
+     * Release a held note, keeping it sounding if the sustain pedal of its channel is down
+     */
+    private void noteOff(int word, long bit, int channel)
+    {
+        if ((mHeld[word] & bit) != 0) {
+            mHeld[word] &= ~bit;
+            if ((mSustainMask & (1 << channel)) != 0) {
+                mSustained[word] |= bit;
+            }
+        }
+    }
+
+    /**
+     * Synthesize note offs for all held notes, and sustain pedal releases for all channels with
+     * the pedal down, then clear the state
+     * @param handler receiver of the synthesized events
+     * @param timestamp timestamp given to the synthesized events
+     * @return number of events synthesized
+     */
+    public int releaseAll(midiEventHandler handler, long timestamp)
+    {
+        int count = 0;
+        for (int word = 0; word < 32; word++) {
+            long held = mHeld[word];
+            mHeld[word] = 0;
+            int channel = word >> 1;
+            int base = (word & 1) << 6;
+            while (held != 0) {
+                int note = base + Long.numberOfTrailingZeros(held);
+                held &= held - 1;
+                handler.onMidiEvent(MidiEvent.pack(0x80 | channel, note, 0, mSource), timestamp);
+                count++;
+            }
+        }
+        mSynthesizedNoteOffs += count;
+        for (int channel = 0; channel < 16; channel++) {
+            if ((mSustainMask & (1 << channel)) != 0) {
+                handler.onMidiEvent(MidiEvent.pack(0xB0 | channel, 64, 0, mSource), timestamp);
+                count++;
+            }
+        }
+        mSustainMask = 0;
+        for (int word = 0; word < 32; word++) {
+            mSustained[word] = 0;
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of note offs synthesized by releaseAll since construction
+     */
+    public long getSynthesizedNoteOffCount()
+    {
+        return mSynthesizedNoteOffs;
+    }
+}
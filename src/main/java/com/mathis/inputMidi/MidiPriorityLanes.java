@@ -0,0 +1,284 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Queue of packed midi events split into priority lanes, so that a flood of controller data does
+ * not hold up the notes queued after it. Each event is classified as it is offered:
+ * <ul>
+ * <li>LANE_REALTIME: system real-time messages (clock, start/stop, active sensing, reset)</li>
+ * <li>LANE_NOTES: note on/off and the other messages whose order matters relative to the notes:
+ * program change, system common, and the controllers MidiCoalescer leaves alone (pedals, bank
+ * select, data entry, NRPN/RPN, channel mode)</li>
+ * <li>LANE_CONTINUOUS: continuous data superseded by later values (see MidiCoalescer.isContinuous)
+ * and polyphonic pressure</li>
+ * </ul>
+ * Each lane is a MidiEventRing: the order within a lane is kept, and a full lane drops only its
+ * own events. The drain functions empty the lanes one after the other, in the drain order
+ * (realtime, notes, continuous by default), so within one drain a note can overtake controller
+ * values received before it; consumers placing events by timestamp within a render block are not
+ * affected. The depth of each lane and the time its events wait are available for monitoring.<br />
+ * Like MidiEventRing, single-producer/single-consumer: exactly one thread may call offer, and
+ * exactly one thread may call the drain functions. The drain order can be changed from any thread.
+ */
+public class MidiPriorityLanes {
+
+    public static final int LANE_REALTIME = 0;
+    public static final int LANE_NOTES = 1;
+    public static final int LANE_CONTINUOUS = 2;
+    public static final int LANE_COUNT = 3;
+
+    static final String[] LANE_NAMES = {"realtime", "notes", "continuous"};
+
+    /**
+     * The lanes, by lane index
+     */
+    private final MidiEventRing[] mLanes = new MidiEventRing[LANE_COUNT];
+
+    /**
+     * Lane indexes in drain order
+     */
+    private volatile int[] mDrainOrder = {LANE_REALTIME, LANE_NOTES, LANE_CONTINUOUS};
+
+    /**
+     * Highest depth of each lane seen when draining
+     */
+    private final AtomicIntegerArray mPeakDepth = new AtomicIntegerArray(LANE_COUNT);
+
+    /**
+     * Constructor, with the same capacity for all lanes
+     * @param capacity Minimum number of events each lane can hold
+     */
+    public MidiPriorityLanes(int capacity)
+    {
+        this(capacity, capacity, capacity);
+    }
+
+    /**
+     * Constructor
+     * @param realtimeCapacity Minimum number of events of the realtime lane
+     * @param notesCapacity Minimum number of events of the notes lane
+     * @param continuousCapacity Minimum number of events of the continuous lane
+     */
+    public MidiPriorityLanes(int realtimeCapacity, int notesCapacity, int continuousCapacity)
+    {
+        mLanes[LANE_REALTIME] = new MidiEventRing(realtimeCapacity, new MidiLatencyHistogram());
+        mLanes[LANE_NOTES] = new MidiEventRing(notesCapacity, new MidiLatencyHistogram());
+        mLanes[LANE_CONTINUOUS] = new MidiEventRing(continuousCapacity, new MidiLatencyHistogram());
+    }
+
+    /**
+     * Lane of an event
+     * @param event packed midi event
+     * @return one of the LANE_* constants
+     */
+    public static int laneOf(int event)
+    {
+        int status = event & 0xFF;
+        if (status >= 0xF8) {
+            return LANE_REALTIME;
+        }
+        if ((status >> 4) == MidiSpec.MIDICODE_POLYPRESS || MidiCoalescer.isContinuous(event)) {
+            return LANE_CONTINUOUS;
+        }
+        return LANE_NOTES;
+    }
+
+    /**
+     * Add an event to its lane; producer side
+     * @param event packed midi event
+     * @param timestamp timestamp of the event
+     * @return True if the event was queued, false if its lane was full and the event was dropped
+     */
+    public boolean offer(int event, long timestamp)
+    {
+        return mLanes[laneOf(event)].offer(event, timestamp);
+    }
+
+    /**
+     * Deliver queued events to a handler, lane after lane in drain order; consumer side
+     * @param handler receiver of the events
+     * @param maxEvents maximum number of events to deliver; the lanes last in drain order get
+     *                  what the first ones leave
+     * @return number of events delivered
+     */
+    public int drain(midiEventHandler handler, int maxEvents)
+    {
+        int total = 0;
+        for (int lane : mDrainOrder) {
+            if (total >= maxEvents) {
+                break;
+            }
+            MidiEventRing ring = mLanes[lane];
+            notePeakDepth(lane, ring);
+            total += ring.drain(handler, maxEvents - total);
+        }
+        return total;
+    }
+
+    /**
+     * Deliver all queued events to a handler, lane after lane in drain order; consumer side
+     * @param handler receiver of the events
+     * @return number of events delivered
+     */
+    public int drain(midiEventHandler handler)
+    {
+        return drain(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Deliver all queued events to a batch handler, lane after lane in drain order, in batches of
+     * at most the capacity of the batch; a batch holds events of a single lane. Consumer side.
+     * @param batch reusable batch to fill
+     * @param handler receiver of the batches
+     * @return number of events delivered
+     */
+    public int drain(MidiEventBatch batch, midiEventBatchHandler handler)
+    {
+        int total = 0;
+        for (int lane : mDrainOrder) {
+            MidiEventRing ring = mLanes[lane];
+            notePeakDepth(lane, ring);
+            total += ring.drain(batch, handler);
+        }
+        return total;
+    }
+
+    private void notePeakDepth(int lane, MidiEventRing ring)
+    {
+        int depth = ring.size();
+        if (depth > mPeakDepth.get(lane)) {
+            mPeakDepth.lazySet(lane, depth);
+        }
+    }
+
+    /**
+     * Set the order in which the lanes are drained
+     * @param lanes the three LANE_* constants, each once, first drained first
+     */
+    public void setDrainOrder(int... lanes)
+    {
+        if (lanes.length != LANE_COUNT) {
+            throw new IllegalArgumentException("drain order must list the " + LANE_COUNT + " lanes");
+        }
+        boolean[] seen = new boolean[LANE_COUNT];
+        for (int lane : lanes) {
+            if (lane < 0 || lane >= LANE_COUNT || seen[lane]) {
+                throw new IllegalArgumentException("invalid or repeated lane " + lane);
+            }
+            seen[lane] = true;
+        }
+        mDrainOrder = lanes.clone();
+    }
+
+    /**
+     * @return Lane indexes in drain order
+     */
+    public int[] getDrainOrder()
+    {
+        return mDrainOrder.clone();
+    }
+
+    /**
+     * The queue of a lane, e.g. to drain it separately
+     * @param lane one of the LANE_* constants
+     * @return the queue
+     */
+    public MidiEventRing getLane(int lane)
+    {
+        return mLanes[lane];
+    }
+
+    /**
+     * @param lane one of the LANE_* constants
+     * @return Approximate number of events queued in the lane
+     */
+    public int getDepth(int lane)
+    {
+        return mLanes[lane].size();
+    }
+
+    /**
+     * @param lane one of the LANE_* constants
+     * @return Highest number of events found queued in the lane when draining it
+     */
+    public int getPeakDepth(int lane)
+    {
+        return mPeakDepth.get(lane);
+    }
+
+    /**
+     * Time spent by the events of a lane between offer and drain
+     * @param lane one of the LANE_* constants
+     * @return the histogram, in nanoseconds
+     */
+    public MidiLatencyHistogram getWaitHistogram(int lane)
+    {
+        return mLanes[lane].getWaitHistogram();
+    }
+
+    /**
+     * @param lane one of the LANE_* constants
+     * @return Number of events dropped because the lane was full
+     */
+    public long getOverflowCount(int lane)
+    {
+        return mLanes[lane].getOverflowCount();
+    }
+
+    /**
+     * @return Approximate number of events queued in all lanes
+     */
+    public int size()
+    {
+        int size = 0;
+        for (MidiEventRing ring : mLanes) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return True if no events are queued
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Depth and wait time percentiles of each lane, for logging
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("MidiPriorityLanes");
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            builder.append(' ').append(LANE_NAMES[lane])
+                    .append("[depth=").append(getDepth(lane))
+                    .append(" peak=").append(getPeakDepth(lane))
+                    .append(" overflow=").append(getOverflowCount(lane))
+                    .append(" wait ").append(getWaitHistogram(lane).snapshot())
+                    .append(']');
+        }
+        return builder.toString();
+    }
+}
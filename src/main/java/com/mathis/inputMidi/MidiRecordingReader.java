@@ -0,0 +1,227 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a recording made with MidiInputRecorder, segment after segment, as a
+ * cursor: next moves to the following record, whose fields are then available through the
+ * getters. The segments are mapped read-only; only the records counted in a segment's header
+ * are read, so a segment still being written can be read up to its last flush.
+ */
+public class MidiRecordingReader implements Closeable {
+
+    private final File[] mSegments;
+    private int mSegmentIndex = -1;
+    private MappedByteBuffer mSegment = null;
+    private long mSegmentRecords = 0;
+    private long mRecordIndex = 0;
+    private long mSegmentStartNanos = 0;
+    private long mSegmentStartMillis = 0;
+
+    private long mTimestamp;
+    private int mData;
+    private int mInfo;
+
+    /**
+     * Constructor
+     * @param segments the segment files, in recording order
+     */
+    public MidiRecordingReader(File... segments)
+    {
+        mSegments = segments.clone();
+    }
+
+    /**
+     * The segment files of a recording
+     * @param directory directory of the recording
+     * @param prefix prefix given to MidiInputRecorder
+     * @return the segment files, in recording order
+     */
+    public static File[] listSegments(File directory, final String prefix)
+    {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix + "-")
+                && name.endsWith(MidiInputRecorder.FILE_EXTENSION));
+        if (files == null) {
+            return new File[0];
+        }
+        // the segment index is zero-padded, so name order is recording order
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Move to the next record
+     * @return false if there are no more records
+     * @throws IOException if a segment cannot be read or is not a recording
+     */
+    public boolean next() throws IOException
+    {
+        while (mRecordIndex >= mSegmentRecords) {
+            if (mSegmentIndex + 1 >= mSegments.length) {
+                return false;
+            }
+            openSegment(mSegments[++mSegmentIndex]);
+        }
+        int position = MidiInputRecorder.HEADER_SIZE + (int) mRecordIndex * MidiInputRecorder.RECORD_SIZE;
+        mTimestamp = mSegment.getLong(position);
+        mData = mSegment.getInt(position + 8);
+        mInfo = mSegment.getInt(position + 12);
+        mRecordIndex++;
+        return true;
+    }
+
+    private void openSegment(File file) throws IOException
+    {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel channel = input.getChannel();
+            if (channel.size() < MidiInputRecorder.HEADER_SIZE) {
+                throw new IOException(file + " is not a midi recording");
+            }
+            mSegment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mSegment.getInt(MidiInputRecorder.HEADER_MAGIC) != MidiInputRecorder.MAGIC
+                || mSegment.getInt(MidiInputRecorder.HEADER_RECORD_SIZE) != MidiInputRecorder.RECORD_SIZE) {
+            throw new IOException(file + " is not a midi recording");
+        }
+        if (mSegment.getInt(MidiInputRecorder.HEADER_VERSION) != MidiInputRecorder.VERSION) {
+            throw new IOException(file + ": unsupported recording version "
+                    + mSegment.getInt(MidiInputRecorder.HEADER_VERSION));
+        }
+        long available = (mSegment.capacity() - MidiInputRecorder.HEADER_SIZE) / MidiInputRecorder.RECORD_SIZE;
+        mSegmentRecords = Math.min(mSegment.getLong(MidiInputRecorder.HEADER_RECORD_COUNT), available);
+        mSegmentStartNanos = mSegment.getLong(MidiInputRecorder.HEADER_START_NANOS);
+        mSegmentStartMillis = mSegment.getLong(MidiInputRecorder.HEADER_START_MILLIS);
+        mRecordIndex = 0;
+    }
+
+    /**
+     * Deliver all remaining records to a listener: short messages as events, system exclusive
+     * records as chunks. The chunks of messages received concurrently on several inputs may be
+     * interleaved; listeners that care distinguish them with getStream and getSource.
+     * @param listener receiver of the messages
+     * @throws IOException if a segment cannot be read
+     */
+    public void replay(midiStreamListener listener) throws IOException
+    {
+        byte[] bytes = new byte[MidiInputRecorder.SYSEX_BYTES_PER_RECORD];
+        while (next()) {
+            if (isSysEx()) {
+                int length = getSysExBytes(bytes, 0);
+                listener.onSysExChunk(bytes, 0, length, isFirst(), isLast(), mTimestamp);
+            } else {
+                listener.onMidiEvent(mData, mTimestamp);
+            }
+        }
+    }
+
+    /**
+     * @return Timestamp of the current record, System.nanoTime time base of the recording device
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * Wall clock time of the current record, derived from the start times of its segment
+     * @return milliseconds since the epoch
+     */
+    public long getWallClockMillis()
+    {
+        return mSegmentStartMillis + (mTimestamp - mSegmentStartNanos) / 1000000L;
+    }
+
+    /**
+     * @return MidiInputRecorder.TYPE_SHORT or TYPE_SYSEX
+     */
+    public int getType()
+    {
+        return mInfo & 0xFF;
+    }
+
+    public boolean isSysEx()
+    {
+        return getType() == MidiInputRecorder.TYPE_SYSEX;
+    }
+
+    /**
+     * @return the packed event of a short message, with source tag
+     */
+    public int getEvent()
+    {
+        return mData;
+    }
+
+    public int getStream()
+    {
+        return (mInfo >> 16) & 0xFF;
+    }
+
+    public int getSource()
+    {
+        return mInfo >>> 24;
+    }
+
+    /**
+     * @return True for the record holding the first bytes of a system exclusive message
+     */
+    public boolean isFirst()
+    {
+        return (mInfo & MidiInputRecorder.INFO_FIRST) != 0;
+    }
+
+    /**
+     * @return True for the record holding the last bytes of a system exclusive message
+     */
+    public boolean isLast()
+    {
+        return (mInfo & MidiInputRecorder.INFO_LAST) != 0;
+    }
+
+    /**
+     * Copy the system exclusive bytes of the current record
+     * @param target target array, with room for 4 bytes
+     * @param offset position in target
+     * @return number of bytes copied
+     */
+    public int getSysExBytes(byte[] target, int offset)
+    {
+        int length = (mInfo >> 8) & 0x07;
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = (byte) (mData >> (8 * i));
+        }
+        return length;
+    }
+
+    @Override
+    public void close()
+    {
+        mSegment = null;
+        mSegmentIndex = mSegments.length;
+        mSegmentRecords = 0;
+    }
+}
@@ -0,0 +1,218 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Message, byte and drop counters of one midi source. The counters are striped (LongAdder), so
+ * that counting costs an uncontended add on the receiving thread and never allocates once the
+ * stripes exist; readers sum them in MidiMetricsRegistry.snapshot.
+ */
+public class MidiSourceMetrics {
+
+    /**
+     * Message categories
+     */
+    public static final int NOTE = 0;
+    public static final int CONTROL_CHANGE = 1;
+    public static final int PITCH_BEND = 2;
+    public static final int PRESSURE = 3;
+    public static final int PROGRAM_CHANGE = 4;
+    public static final int SYSEX = 5;
+    public static final int SYSTEM_COMMON = 6;
+    public static final int REALTIME = 7;
+    public static final int CATEGORY_COUNT = 8;
+
+    static final String[] CATEGORY_NAMES = {
+            "note", "cc", "pitchbend", "pressure", "program", "sysex", "common", "realtime"
+    };
+
+    /**
+     * Reasons for dropping data
+     */
+    /** received while transmission to the receiver was switched off */
+    public static final int DROP_DISABLED = 0;
+    /** filtered out by the transformation stage */
+    public static final int DROP_FILTERED = 1;
+    /** event queue full */
+    public static final int DROP_OVERFLOW = 2;
+    /** bytes not attributable to a complete message (counted in bytes, not messages) */
+    public static final int DROP_MALFORMED_BYTES = 3;
+    /** system exclusive message truncated or dropped by MidiSysExAssembler (no free buffer, too long) */
+    public static final int DROP_SYSEX_TRUNCATED = 4;
+    /** Universal MIDI Packet incomplete or without MIDI 1.0 equivalent (counted in packets) */
+    public static final int DROP_UNCONVERTED_PACKETS = 5;
+    public static final int DROP_REASON_COUNT = 6;
+
+    static final String[] DROP_REASON_NAMES = {"disabled", "filtered", "overflow", "malformedBytes", "sysExTruncated",
+            "unconvertedPackets"};
+
+    /**
+     * Category of each status byte
+     */
+    private static final byte[] CATEGORY = new byte[256];
+
+    static {
+        for (int status = 0; status < 256; status++) {
+            int category;
+            switch (status & 0xF0) {
+                case 0x80:
+                case 0x90:
+                    category = NOTE;
+                    break;
+                case 0xA0:
+                case 0xD0:
+                    category = PRESSURE;
+                    break;
+                case 0xB0:
+                    category = CONTROL_CHANGE;
+                    break;
+                case 0xC0:
+                    category = PROGRAM_CHANGE;
+                    break;
+                case 0xE0:
+                    category = PITCH_BEND;
+                    break;
+                default:
+                    category = status >= 0xF8 ? REALTIME : status == 0xF0 ? SYSEX : SYSTEM_COMMON;
+            }
+            CATEGORY[status] = (byte) category;
+        }
+    }
+
+    private final String mName;
+    private final LongAdder[] mMessages = new LongAdder[CATEGORY_COUNT];
+    private final LongAdder[] mCategoryBytes = new LongAdder[CATEGORY_COUNT];
+    private final LongAdder[] mDrops = new LongAdder[DROP_REASON_COUNT];
+    private final LongAdder mBytes = new LongAdder();
+
+    /**
+     * Constructor
+     * @param name name of the source in reports
+     */
+    public MidiSourceMetrics(String name) {
+        mName = name;
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            mMessages[i] = new LongAdder();
+            mCategoryBytes[i] = new LongAdder();
+        }
+        for (int i = 0; i < DROP_REASON_COUNT; i++) {
+            mDrops[i] = new LongAdder();
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Count raw bytes received
+     */
+    public void onBytes(int count) {
+        mBytes.add(count);
+    }
+
+    /**
+     * Count a short message received, with its MIDI 1.0 length in bytes
+     * @param event packed event, see MidiEvent
+     */
+    public void onMessage(int event) {
+        onMessage(event, MidiEvent.getLength(event));
+    }
+
+    /**
+     * Count a short message received
+     * @param event packed event, see MidiEvent; only the status byte is used
+     * @param bytes size of the message as received, e.g. that of its Universal MIDI Packet
+     */
+    public void onMessage(int event, int bytes) {
+        int category = CATEGORY[event & 0xFF];
+        mMessages[category].increment();
+        mCategoryBytes[category].add(bytes);
+    }
+
+    /**
+     * Count a complete system exclusive message received
+     */
+    public void onSysEx() {
+        mMessages[SYSEX].increment();
+    }
+
+    /**
+     * Count system exclusive bytes received, of complete messages or not
+     */
+    public void onSysExBytes(int count) {
+        mCategoryBytes[SYSEX].add(count);
+    }
+
+    /**
+     * Count dropped messages
+     * @param reason one of the DROP_ constants
+     * @param count number of messages, or of bytes for DROP_MALFORMED_BYTES, or of packets for
+     *              DROP_UNCONVERTED_PACKETS
+     */
+    public void onDrop(int reason, long count) {
+        mDrops[reason].add(count);
+    }
+
+    /**
+     * Category of a status byte
+     * @return one of NOTE, CONTROL_CHANGE, ...
+     */
+    public static int categoryOf(int status) {
+        return CATEGORY[status & 0xFF];
+    }
+
+    public long getMessageCount(int category) {
+        return mMessages[category].sum();
+    }
+
+    public long getByteCount() {
+        return mBytes.sum();
+    }
+
+    /**
+     * Bytes of the messages of one category
+     * @param category one of NOTE, CONTROL_CHANGE, ...
+     */
+    public long getByteCount(int category) {
+        return mCategoryBytes[category].sum();
+    }
+
+    public long getDropCount(int reason) {
+        return mDrops[reason].sum();
+    }
+
+    /**
+     * Set all counters to zero. Counts made concurrently may be lost.
+     */
+    public void reset() {
+        for (LongAdder adder : mMessages) {
+            adder.reset();
+        }
+        for (LongAdder adder : mCategoryBytes) {
+            adder.reset();
+        }
+        for (LongAdder adder : mDrops) {
+            adder.reset();
+        }
+        mBytes.reset();
+    }
+}
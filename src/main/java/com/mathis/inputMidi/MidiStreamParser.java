@@ -0,0 +1,282 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Resumable parser splitting a MIDI 1.0 byte stream into complete messages. The bytes may be
+ * handed over in arbitrary pieces: the parser keeps its state between calls, so that messages
+ * split over several packets, several messages packed into one packet, running status,
+ * real-time messages interleaved within other messages, and system exclusive messages spanning
+ * several packets are all handled. Parsing is done in a single pass and does not allocate.<br />
+ * Short messages are delivered as packed events (see MidiEvent), system exclusive messages are
+ * reassembled in a buffer allocated once at construction and delivered as chunks of at most
+ * the buffer size.<br />
+ * A parser instance is meant to be used by a single thread, typically the midi receiving thread
+ * of one port.
+ */
+public class MidiStreamParser {
+
+    /**
+     * Default size of the system exclusive reassembly buffer
+     */
+    public static final int DEFAULT_SYSEX_BUFFER_SIZE = 1024;
+
+    /**
+     * Target of the parsed messages
+     */
+    private final midiStreamListener mListener;
+
+    /**
+     * Buffer used to reassemble system exclusive messages
+     */
+    private final byte[] mSysExBuffer;
+
+    /**
+     * Number of bytes currently in mSysExBuffer
+     */
+    private int mSysExLength = 0;
+
+    /**
+     * Are we within a system exclusive message?
+     */
+    private boolean mInSysEx = false;
+
+    /**
+     * Will the next system exclusive chunk be the first one of its message?
+     */
+    private boolean mSysExFirst = false;
+
+    /**
+     * Running status (last channel status byte seen), 0 if none
+     */
+    private int mRunningStatus = 0;
+
+    /**
+     * Status of the message being assembled, 0 if none
+     */
+    private int mStatus = 0;
+
+    /**
+     * Number of data bytes the message being assembled needs
+     */
+    private int mNeeded = 0;
+
+    /**
+     * Number of data bytes of the message being assembled received so far
+     */
+    private int mDataCount = 0;
+
+    /**
+     * First data byte of the message being assembled
+     */
+    private int mData1 = 0;
+
+    /**
+     * Number of bytes that could not be attributed to any message (data bytes without
+     * status, stray end of system exclusive)
+     */
+    private long mDiscardedBytes = 0;
+
+    /**
+     * Constructor, with the default system exclusive buffer size
+     * @param listener Target of the parsed messages
+     */
+    public MidiStreamParser(midiStreamListener listener)
+    {
+        this(listener, DEFAULT_SYSEX_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param listener Target of the parsed messages
+     * @param sysExBufferSize Size of the system exclusive reassembly buffer; longer messages are
+     *                        delivered in several chunks
+     */
+    public MidiStreamParser(midiStreamListener listener, int sysExBufferSize)
+    {
+        if (sysExBufferSize < 2) {
+            throw new IllegalArgumentException("System exclusive buffer needs at least 2 bytes");
+        }
+        mListener = listener;
+        mSysExBuffer = new byte[sysExBufferSize];
+    }
+
+    /**
+     * Parse a piece of the byte stream
+     * @param buffer buffer containing the midi data
+     * @param offset position of the first byte to parse
+     * @param count number of bytes to parse
+     * @param timestamp timestamp of the data (based on {@link java.lang.System#nanoTime}), passed
+     *                  on with each message completed within this piece
+     * @return number of messages completed (system exclusive messages count once, on their last chunk)
+     */
+    public int parse(byte[] buffer, int offset, int count, long timestamp)
+    {
+        int messages = 0;
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            if (parseByte(buffer[i] & 0xFF, timestamp)) {
+                messages++;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Parse a single byte of the byte stream
+     * @param b the byte, 0-255
+     * @param timestamp timestamp of the byte
+     * @return True if the byte completed a message
+     */
+    public boolean parseByte(int b, long timestamp)
+    {
+        if (b >= 0xF8) {
+            // real-time messages may appear anywhere, and affect neither running status
+            // nor the message being assembled
+            mListener.onMidiEvent(b, timestamp);
+            return true;
+        }
+        if (b >= 0x80) {
+            boolean completed = false;
+            if (mInSysEx) {
+                mInSysEx = false;
+                if (b == 0xF7) {
+                    appendSysEx(b, timestamp);
+                    flushSysEx(true, timestamp);
+                    return true;
+                }
+                // any other status byte ends the system exclusive message prematurely
+                flushSysEx(true, timestamp);
+                completed = true;
+            }
+            if (mStatus != 0) {
+                // the message being assembled is cut short: its data bytes are lost
+                mDiscardedBytes += mDataCount;
+            }
+            if (b == 0xF0) {
+                mInSysEx = true;
+                mSysExFirst = true;
+                mSysExLength = 0;
+                mRunningStatus = 0;
+                mStatus = 0;
+                appendSysEx(b, timestamp);
+                return completed;
+            }
+            if (b == 0xF7) {
+                mDiscardedBytes++;
+                return completed;
+            }
+            mRunningStatus = b < 0xF0 ? b : 0;
+            mNeeded = MidiEvent.getDataLength(b);
+            mDataCount = 0;
+            if (mNeeded == 0) {
+                mStatus = 0;
+                mListener.onMidiEvent(b, timestamp);
+                return true;
+            }
+            mStatus = b;
+            return completed;
+        }
+        // data byte
+        if (mInSysEx) {
+            appendSysEx(b, timestamp);
+            return false;
+        }
+        if (mStatus == 0) {
+            if (mRunningStatus == 0) {
+                mDiscardedBytes++;
+                return false;
+            }
+            mStatus = mRunningStatus;
+            mNeeded = MidiEvent.getDataLength(mStatus);
+            mDataCount = 0;
+        }
+        if (mDataCount == 0 && mNeeded == 2) {
+            mData1 = b;
+            mDataCount = 1;
+            return false;
+        }
+        int event = mNeeded == 1 ? MidiEvent.pack(mStatus, b, 0) : MidiEvent.pack(mStatus, mData1, b);
+        mStatus = 0;
+        mDataCount = 0;
+        mListener.onMidiEvent(event, timestamp);
+        return true;
+    }
+
+    /**
+     * Add a byte to the system exclusive buffer, delivering the buffer as a chunk first if it is full
+     */
+    private void appendSysEx(int b, long timestamp)
+    {
+        if (mSysExLength == mSysExBuffer.length) {
+            flushSysEx(false, timestamp);
+        }
+        mSysExBuffer[mSysExLength++] = (byte) b;
+    }
+
+    /**
+     * Deliver the content of the system exclusive buffer
+     */
+    private void flushSysEx(boolean last, long timestamp)
+    {
+        mListener.onSysExChunk(mSysExBuffer, 0, mSysExLength, mSysExFirst, last, timestamp);
+        mSysExFirst = false;
+        mSysExLength = 0;
+    }
+
+    /**
+     * Is the parser between messages, i.e. no message partially received?
+     * @return True if no short or system exclusive message is pending
+     */
+    public boolean isIdle()
+    {
+        return mStatus == 0 && !mInSysEx;
+    }
+
+    /**
+     * Running status currently in effect
+     * @return The last channel status byte, or 0 if running status is not in effect
+     */
+    public int getRunningStatus()
+    {
+        return mRunningStatus;
+    }
+
+    /**
+     * Number of bytes discarded because they could not be attributed to any message
+     * @return count of discarded bytes since construction
+     */
+    public long getDiscardedBytes()
+    {
+        return mDiscardedBytes;
+    }
+
+    /**
+     * Forget any partially received message and the running status, for example when the
+     * sending device was disconnected
+     */
+    public void reset()
+    {
+        mRunningStatus = 0;
+        mStatus = 0;
+        mDataCount = 0;
+        mInSysEx = false;
+        mSysExLength = 0;
+    }
+}
@@ -0,0 +1,259 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Gathers the system exclusive chunks of one input (see midiStreamListener.onSysExChunk) into
+ * buffers of a bounded MidiSysExBufferPool, and passes them on to a midiSysExListener. A message
+ * fitting in one buffer is delivered complete; a longer one is delivered as consecutive parts, one
+ * per buffer, as they fill up. Once handed over, buffers are owned by the receiver until released,
+ * so a dump can be processed off the receiving thread without being copied again.<br />
+ * When no buffer is free, the rest of the message is dropped and counted (see getDroppedCount); the
+ * part already gathered is still delivered, marked as last and truncated, so the receiver always
+ * sees the end of a message it has seen the beginning of. With POLICY_WAIT, the assembler first
+ * waits a bounded time for a buffer to be released: this slows the sender down (backpressure) but
+ * also holds up the short messages following on the same input, so it is meant for inputs
+ * carrying dumps rather than notes. Messages above the size limit (see setMaxMessageSize) are
+ * truncated the same way.<br />
+ * onSysExChunk and reset are to be called from a single receiving thread, usually through a
+ * MidiInputPipeline (see MidiInputRouting.withSysExAssembler); one assembler per input, the pool
+ * can be shared.
+ */
+public class MidiSysExAssembler {
+
+    /**
+     * Drop the rest of a message at once when no buffer is free
+     */
+    public static final int POLICY_DROP = 0;
+
+    /**
+     * Wait for a buffer to be released, up to the wait time, before dropping
+     */
+    public static final int POLICY_WAIT = 1;
+
+    private final MidiSysExBufferPool mPool;
+    private final midiSysExListener mListener;
+
+    /**
+     * Source index set in the delivered buffers
+     */
+    private final int mSource;
+
+    private volatile int mPolicy = POLICY_DROP;
+    private volatile long mMaxWaitNanos = 0;
+    private volatile long mMaxMessageSize = Long.MAX_VALUE;
+
+    /**
+     * Buffer being filled, null if none
+     */
+    private MidiSysExBuffer mCurrent = null;
+
+    /**
+     * Whether the rest of the current message is dropped
+     */
+    private boolean mDropping = false;
+
+    /**
+     * Bytes of the current message gathered so far
+     */
+    private long mMessageSize = 0;
+
+    // Counters, written by the receiving thread only
+    private volatile long mDeliveredCount = 0;
+    private volatile long mDroppedCount = 0;
+    private volatile long mDroppedBytes = 0;
+
+    /**
+     * Constructor
+     * @param pool the pool to take the buffers from
+     * @param listener the receiver of the buffers
+     * @param source source index set in the buffers, see MidiEvent.getSource
+     */
+    public MidiSysExAssembler(MidiSysExBufferPool pool, midiSysExListener listener, int source)
+    {
+        mPool = pool;
+        mListener = listener;
+        mSource = source;
+    }
+
+    /**
+     * Gather (part of) a system exclusive message
+     * @param data the bytes
+     * @param offset position of the first byte
+     * @param count number of bytes
+     * @param first true for the first chunk of the message
+     * @param last true for the last chunk of the message
+     * @param timestamp timestamp of the chunk
+     * @return True if the message ended with this chunk and was not delivered entirely
+     */
+    public boolean onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp)
+    {
+        if (first) {
+            reset();
+            mCurrent = acquire(true);
+            mDropping = mCurrent == null;
+        } else if (mCurrent == null && !mDropping) {
+            // continuation of a message whose beginning went missing (e.g. reset midway)
+            mDropping = true;
+        }
+        while (count > 0 && !mDropping) {
+            if (mCurrent.isFull()) {
+                // take the next buffer before handing this one over, so that it can be marked as
+                // the last one if there is none
+                MidiSysExBuffer next = acquire(false);
+                if (next == null) {
+                    truncate(timestamp);
+                    break;
+                }
+                deliver(mCurrent, false, false, timestamp);
+                mCurrent = next;
+            }
+            long room = mMaxMessageSize - mMessageSize;
+            if (room <= 0) {
+                truncate(timestamp);
+                break;
+            }
+            int appended = mCurrent.append(data, offset, (int) Math.min(count, room));
+            offset += appended;
+            count -= appended;
+            mMessageSize += appended;
+        }
+        if (mDropping) {
+            mDroppedBytes += count;
+        }
+        if (!last) {
+            return false;
+        }
+        if (mCurrent != null) {
+            deliver(mCurrent, true, false, timestamp);
+            mCurrent = null;
+        }
+        boolean dropped = mDropping;
+        if (dropped) {
+            mDroppedCount++;
+        }
+        mDropping = false;
+        mMessageSize = 0;
+        return dropped;
+    }
+
+    /**
+     * Forget a partially gathered message, returning its buffer to the pool. To be called on the
+     * receiving thread, e.g. when the input is reset, or once the assembler is no longer used.
+     */
+    public void reset()
+    {
+        if (mCurrent != null) {
+            mCurrent.release();
+            mCurrent = null;
+        }
+        mDropping = false;
+        mMessageSize = 0;
+    }
+
+    private MidiSysExBuffer acquire(boolean first)
+    {
+        MidiSysExBuffer buffer = mPolicy == POLICY_WAIT ? mPool.acquire(mMaxWaitNanos) : mPool.acquire();
+        if (buffer != null) {
+            buffer.reset(first, mSource);
+        }
+        return buffer;
+    }
+
+    /**
+     * Deliver what was gathered as the end of the message, and drop the rest
+     */
+    private void truncate(long timestamp)
+    {
+        deliver(mCurrent, true, true, timestamp);
+        mCurrent = null;
+        mDropping = true;
+    }
+
+    private void deliver(MidiSysExBuffer buffer, boolean last, boolean truncated, long timestamp)
+    {
+        buffer.finish(last, truncated, timestamp);
+        if (last) {
+            mDeliveredCount++;
+        }
+        mListener.onSysEx(buffer);
+    }
+
+    /**
+     * Set what happens when no buffer is free
+     * @param policy POLICY_DROP, or POLICY_WAIT to wait up to maxWaitNanos for a buffer
+     * @param maxWaitNanos maximum time to wait for a buffer, for POLICY_WAIT
+     */
+    public void setPolicy(int policy, long maxWaitNanos)
+    {
+        if (policy != POLICY_DROP && policy != POLICY_WAIT) {
+            throw new IllegalArgumentException("unknown policy " + policy);
+        }
+        mMaxWaitNanos = maxWaitNanos;
+        mPolicy = policy;
+    }
+
+    public int getPolicy()
+    {
+        return mPolicy;
+    }
+
+    /**
+     * Set the size above which messages are truncated, by default none
+     * @param maxMessageSize maximum size in bytes, including 0xF0 and 0xF7
+     */
+    public void setMaxMessageSize(long maxMessageSize)
+    {
+        mMaxMessageSize = maxMessageSize;
+    }
+
+    public long getMaxMessageSize()
+    {
+        return mMaxMessageSize;
+    }
+
+    public MidiSysExBufferPool getPool()
+    {
+        return mPool;
+    }
+
+    /**
+     * @return Number of messages delivered, completely or truncated
+     */
+    public long getDeliveredCount()
+    {
+        return mDeliveredCount;
+    }
+
+    /**
+     * @return Number of messages truncated or dropped entirely
+     */
+    public long getDroppedCount()
+    {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return Number of bytes dropped
+     */
+    public long getDroppedBytes()
+    {
+        return mDroppedBytes;
+    }
+}
@@ -0,0 +1,166 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * A system exclusive message, or part of a long one, reassembled by MidiSysExAssembler in a buffer
+ * of a MidiSysExBufferPool. The receiver owns the buffer until it calls release, and may hand it
+ * over to another thread meanwhile (e.g. to parse a patch bank off the receiving thread); it must
+ * not be used after release.<br />
+ * Messages longer than the buffers are delivered in consecutive buffers: the first one has isFirst,
+ * the last one isLast; a message fitting in one buffer has both (isComplete).
+ */
+public final class MidiSysExBuffer {
+
+    private final MidiSysExBufferPool mPool;
+    private final byte[] mData;
+    private int mLength = 0;
+    private boolean mFirst = false;
+    private boolean mLast = false;
+    private boolean mTruncated = false;
+    private long mTimestamp = 0;
+    private int mSource = 0;
+
+    /**
+     * Whether the buffer is in the pool, to detect double release
+     */
+    private boolean mReleased = false;
+
+    MidiSysExBuffer(MidiSysExBufferPool pool, int size)
+    {
+        mPool = pool;
+        mData = new byte[size];
+    }
+
+    /**
+     * Prepare the buffer for a new message part, when taken from the pool
+     */
+    void reset(boolean first, int source)
+    {
+        mLength = 0;
+        mFirst = first;
+        mLast = false;
+        mTruncated = false;
+        mSource = source;
+        mReleased = false;
+    }
+
+    /**
+     * Append bytes
+     * @return the number of bytes appended, less than count if the buffer is full
+     */
+    int append(byte[] data, int offset, int count)
+    {
+        int n = Math.min(count, mData.length - mLength);
+        System.arraycopy(data, offset, mData, mLength, n);
+        mLength += n;
+        return n;
+    }
+
+    boolean isFull()
+    {
+        return mLength == mData.length;
+    }
+
+    void finish(boolean last, boolean truncated, long timestamp)
+    {
+        mLast = last;
+        mTruncated = truncated;
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Return the buffer to its pool
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    public void release()
+    {
+        synchronized (this) {
+            if (mReleased) {
+                throw new IllegalStateException("buffer released twice");
+            }
+            mReleased = true;
+        }
+        mPool.release(this);
+    }
+
+    /**
+     * @return The buffer; the bytes are at positions 0 to getLength() - 1, including the leading
+     * 0xF0 in the first part and the trailing 0xF7 in the last part (unless the message was
+     * interrupted or truncated)
+     */
+    public byte[] getData()
+    {
+        return mData;
+    }
+
+    public int getLength()
+    {
+        return mLength;
+    }
+
+    /**
+     * @return True if this is the first part of the message
+     */
+    public boolean isFirst()
+    {
+        return mFirst;
+    }
+
+    /**
+     * @return True if this is the last part of the message
+     */
+    public boolean isLast()
+    {
+        return mLast;
+    }
+
+    /**
+     * @return True if the whole message is in this buffer
+     */
+    public boolean isComplete()
+    {
+        return mFirst && mLast;
+    }
+
+    /**
+     * @return True if the rest of the message was dropped after this part, for lack of a free
+     * buffer or because the message exceeded the size limit of the assembler
+     */
+    public boolean isTruncated()
+    {
+        return mTruncated;
+    }
+
+    /**
+     * @return Timestamp of the chunk with which this part was handed over, in System.nanoTime time base
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    /**
+     * @return Source index of the input the message comes from, see MidiEvent.getSource
+     */
+    public int getSource()
+    {
+        return mSource;
+    }
+}
@@ -0,0 +1,132 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of buffers for system exclusive messages (see MidiSysExAssembler). The buffers are
+ * created when first needed, up to a fixed number, so that the memory taken by bulk dumps is
+ * bounded by getBufferSize() * getMaxBuffers() whatever their size and rate; once all buffers are
+ * in use, acquire fails until a receiver releases one.<br />
+ * Buffers can be acquired and released from any thread; a pool can be shared by several inputs.
+ */
+public class MidiSysExBufferPool {
+
+    /**
+     * Size of each buffer, in bytes
+     */
+    private final int mBufferSize;
+
+    /**
+     * Maximum number of buffers
+     */
+    private final int mMaxBuffers;
+
+    /**
+     * Buffers created so far
+     */
+    private final AtomicInteger mCreated = new AtomicInteger();
+
+    /**
+     * Released buffers
+     */
+    private final ArrayBlockingQueue<MidiSysExBuffer> mFree;
+
+    /**
+     * Constructor
+     * @param bufferSize size of each buffer, in bytes: the longest message delivered in one piece
+     * @param maxBuffers maximum number of buffers
+     */
+    public MidiSysExBufferPool(int bufferSize, int maxBuffers)
+    {
+        if (bufferSize < 2 || maxBuffers < 1) {
+            throw new IllegalArgumentException("buffer size must be at least 2 bytes and buffer count at least 1");
+        }
+        mBufferSize = bufferSize;
+        mMaxBuffers = maxBuffers;
+        mFree = new ArrayBlockingQueue<MidiSysExBuffer>(maxBuffers);
+    }
+
+    /**
+     * Take a buffer, without waiting
+     * @return the buffer, or null if all buffers are in use
+     */
+    public MidiSysExBuffer acquire()
+    {
+        MidiSysExBuffer buffer = mFree.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        int created;
+        while ((created = mCreated.get()) < mMaxBuffers) {
+            if (mCreated.compareAndSet(created, created + 1)) {
+                return new MidiSysExBuffer(this, mBufferSize);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take a buffer, waiting for one to be released if all are in use
+     * @param timeoutNanos maximum time to wait
+     * @return the buffer, or null if none was released in time or the thread was interrupted
+     */
+    public MidiSysExBuffer acquire(long timeoutNanos)
+    {
+        MidiSysExBuffer buffer = acquire();
+        if (buffer != null || timeoutNanos <= 0) {
+            return buffer;
+        }
+        try {
+            return mFree.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Called by MidiSysExBuffer.release
+     */
+    void release(MidiSysExBuffer buffer)
+    {
+        mFree.offer(buffer);
+    }
+
+    public int getBufferSize()
+    {
+        return mBufferSize;
+    }
+
+    public int getMaxBuffers()
+    {
+        return mMaxBuffers;
+    }
+
+    /**
+     * @return Number of buffers that can be acquired right now
+     */
+    public int getAvailableCount()
+    {
+        return mFree.size() + mMaxBuffers - mCreated.get();
+    }
+}
@@ -0,0 +1,106 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Compiled form of a MidiTransformConfig: precomputed lookup tables for channel remapping,
+ * transposition, keyboard splits (a 16x128 note/channel map) and velocity curves (128 entries per
+ * channel). Applying it to an event is a single pass of table lookups, without branches on the
+ * number of rules and without allocation. Immutable, hence safe to share between threads and to
+ * swap atomically (see MidiTransformStage).
+ */
+public class MidiTransform {
+
+    /**
+     * Value returned by apply for events that are dropped
+     */
+    public static final int DROPPED = -1;
+
+    /**
+     * Entry of the note map for notes that are dropped
+     */
+    static final short NOTE_DROPPED = -1;
+
+    /**
+     * Output (channel << 7 | note) per input (channel * 128 + note)
+     */
+    private final short[] mNoteMap;
+
+    /**
+     * Output channel per input channel for channel messages other than notes, -1 if dropped
+     */
+    private final byte[] mChannelMap;
+
+    /**
+     * Output velocity per input (channel * 128 + velocity)
+     */
+    private final byte[] mVelocity;
+
+    MidiTransform(short[] noteMap, byte[] channelMap, byte[] velocity)
+    {
+        mNoteMap = noteMap;
+        mChannelMap = channelMap;
+        mVelocity = velocity;
+    }
+
+    /**
+     * Output (channel << 7 | note) of a note, or -1 if the note is dropped
+     * @param channel input channel
+     * @param note input note
+     * @return the packed output channel and note
+     */
+    public int mapNote(int channel, int note)
+    {
+        return mNoteMap[channel * 128 + note];
+    }
+
+    /**
+     * Transform a packed event. Note on/off and polyphonic pressure go through the note map
+     * (and note on through the velocity curve), other channel messages through the channel map;
+     * system messages are left unchanged. The source tag is kept.
+     * @param event packed midi event, see MidiEvent
+     * @return the transformed event, or DROPPED
+     */
+    public int apply(int event)
+    {
+        int status = event & 0xFF;
+        if (status >= 0xF0) {
+            return event;
+        }
+        int channel = status & 0x0F;
+        int code = status >> 4;
+        if (code <= MidiSpec.MIDICODE_POLYPRESS) {
+            int note = (event >> 8) & 0x7F;
+            int mapped = mNoteMap[channel * 128 + note];
+            if (mapped < 0) {
+                return DROPPED;
+            }
+            int data2 = (event >> 16) & 0x7F;
+            if (code == MidiSpec.MIDICODE_NOTEON) {
+                data2 = mVelocity[channel * 128 + data2];
+            }
+            return (event & 0xFF000000) | (code << 4) | (mapped >> 7) | ((mapped & 0x7F) << 8) | (data2 << 16);
+        }
+        int outChannel = mChannelMap[channel];
+        if (outChannel < 0) {
+            return DROPPED;
+        }
+        return (event & ~0x0F) | outChannel;
+    }
+}
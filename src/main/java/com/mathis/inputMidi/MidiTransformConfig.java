@@ -0,0 +1,238 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+import java.util.ArrayList;
+
+/**
+ * Declarative description of the transformations applied to incoming midi events: channel
+ * remapping, transposition, keyboard splits and velocity curves. The description is compiled into
+ * lookup tables (see MidiTransform) before use, so that applying it costs a few array accesses per
+ * event, whatever the number of rules. The setters return the object itself, for chaining.
+ * Not thread safe; build the configuration on one thread, then compile it.
+ */
+public class MidiTransformConfig {
+
+    /**
+     * Key range of one input channel sent to another channel, with its own transposition
+     */
+    private static final class Split {
+        final int channel;
+        final int lowNote;
+        final int highNote;
+        final int outChannel;
+        final int transpose;
+
+        Split(int channel, int lowNote, int highNote, int outChannel, int transpose)
+        {
+            this.channel = channel;
+            this.lowNote = lowNote;
+            this.highNote = highNote;
+            this.outChannel = outChannel;
+            this.transpose = transpose;
+        }
+    }
+
+    /**
+     * Output channel per input channel, -1 to mute the channel
+     */
+    private final int[] mChannelMap = new int[16];
+
+    /**
+     * Transposition in semitones per input channel
+     */
+    private final int[] mTranspose = new int[16];
+
+    /**
+     * Velocity curve per input channel, null for linear
+     */
+    private final byte[][] mVelocityCurves = new byte[16][];
+
+    /**
+     * Keyboard splits, later ones taking precedence
+     */
+    private final ArrayList<Split> mSplits = new ArrayList<>();
+
+    /**
+     * Constructor; the initial configuration leaves all events unchanged
+     */
+    public MidiTransformConfig()
+    {
+        for (int channel = 0; channel < 16; channel++) {
+            mChannelMap[channel] = channel;
+        }
+    }
+
+    /**
+     * Send the events of an input channel to another channel
+     * @param channel input channel, 0-15
+     * @param outChannel output channel, 0-15, or -1 to drop the channel's events
+     * @return this
+     */
+    public MidiTransformConfig setChannelMap(int channel, int outChannel)
+    {
+        mChannelMap[checkChannel(channel)] = outChannel < 0 ? -1 : checkChannel(outChannel);
+        return this;
+    }
+
+    /**
+     * Transpose the notes of an input channel
+     * @param channel input channel, 0-15
+     * @param semitones transposition; notes falling outside 0-127 are dropped
+     * @return this
+     */
+    public MidiTransformConfig setTranspose(int channel, int semitones)
+    {
+        mTranspose[checkChannel(channel)] = semitones;
+        return this;
+    }
+
+    /**
+     * Transpose the notes of all channels
+     * @param semitones transposition
+     * @return this
+     */
+    public MidiTransformConfig setTranspose(int semitones)
+    {
+        for (int channel = 0; channel < 16; channel++) {
+            mTranspose[channel] = semitones;
+        }
+        return this;
+    }
+
+    /**
+     * Send a key range of an input channel to another channel, with its own transposition.
+     * Splits replace the channel map and transposition of the input channel for the notes in the range;
+     * a later split overrides an earlier one where they overlap.
+     * @param channel input channel, 0-15
+     * @param lowNote lowest note of the range
+     * @param highNote highest note of the range
+     * @param outChannel output channel, 0-15, or -1 to drop the range
+     * @param semitones transposition of the range
+     * @return this
+     */
+    public MidiTransformConfig addSplit(int channel, int lowNote, int highNote, int outChannel, int semitones)
+    {
+        if (lowNote < 0 || highNote > 127 || lowNote > highNote) {
+            throw new IllegalArgumentException("Invalid key range " + lowNote + "-" + highNote);
+        }
+        mSplits.add(new Split(checkChannel(channel), lowNote, highNote,
+                outChannel < 0 ? -1 : checkChannel(outChannel), semitones));
+        return this;
+    }
+
+    /**
+     * Set the velocity curve of an input channel as a table
+     * @param channel input channel, 0-15
+     * @param curve 128 output velocities, indexed by input velocity
+     * @return this
+     */
+    public MidiTransformConfig setVelocityCurve(int channel, byte[] curve)
+    {
+        if (curve.length != 128) {
+            throw new IllegalArgumentException("Velocity curve needs 128 entries");
+        }
+        mVelocityCurves[checkChannel(channel)] = curve.clone();
+        return this;
+    }
+
+    /**
+     * Set a power-law velocity curve on all channels: out = 127 * (in / 127) ^ exponent.
+     * Exponents below 1 make soft playing louder, above 1 softer.
+     * @param exponent exponent of the curve, 1 for linear
+     * @return this
+     */
+    public MidiTransformConfig setVelocityCurve(double exponent)
+    {
+        byte[] curve = powerCurve(exponent);
+        for (int channel = 0; channel < 16; channel++) {
+            mVelocityCurves[channel] = curve;
+        }
+        return this;
+    }
+
+    /**
+     * Set a power-law velocity curve on one input channel, see setVelocityCurve(double)
+     * @param channel input channel, 0-15
+     * @param exponent exponent of the curve
+     * @return this
+     */
+    public MidiTransformConfig setVelocityCurve(int channel, double exponent)
+    {
+        mVelocityCurves[checkChannel(channel)] = powerCurve(exponent);
+        return this;
+    }
+
+    private static byte[] powerCurve(double exponent)
+    {
+        if (!(exponent > 0)) {
+            throw new IllegalArgumentException("Velocity curve exponent must be positive");
+        }
+        byte[] curve = new byte[128];
+        for (int velocity = 0; velocity < 128; velocity++) {
+            curve[velocity] = (byte) Math.round(127 * Math.pow(velocity / 127.0, exponent));
+        }
+        return curve;
+    }
+
+    private static int checkChannel(int channel)
+    {
+        if (channel < 0 || channel > 15) {
+            throw new IllegalArgumentException("Invalid channel " + channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Compile the configuration into lookup tables
+     * @return the compiled, immutable transformation
+     */
+    public MidiTransform compile()
+    {
+        short[] noteMap = new short[16 * 128];
+        byte[] channelMap = new byte[16];
+        byte[] velocity = new byte[16 * 128];
+        for (int channel = 0; channel < 16; channel++) {
+            channelMap[channel] = (byte) mChannelMap[channel];
+            for (int note = 0; note < 128; note++) {
+                noteMap[channel * 128 + note] = mapNote(mChannelMap[channel], note + mTranspose[channel]);
+            }
+            byte[] curve = mVelocityCurves[channel];
+            for (int v = 0; v < 128; v++) {
+                int out = curve == null ? v : curve[v] & 0x7F;
+                // a note on with velocity 0 is a note off: keep velocity 0 exactly there
+                velocity[channel * 128 + v] = (byte) (v == 0 ? 0 : Math.max(1, out));
+            }
+        }
+        for (Split split : mSplits) {
+            for (int note = split.lowNote; note <= split.highNote; note++) {
+                noteMap[split.channel * 128 + note] = mapNote(split.outChannel, note + split.transpose);
+            }
+        }
+        return new MidiTransform(noteMap, channelMap, velocity);
+    }
+
+    private static short mapNote(int outChannel, int outNote)
+    {
+        if (outChannel < 0 || outNote < 0 || outNote > 127) {
+            return MidiTransform.NOTE_DROPPED;
+        }
+        return (short) ((outChannel << 7) | outNote);
+    }
+}
@@ -0,0 +1,112 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Applies a hot-swappable MidiTransform within a receive path. The transform in use is replaced
+ * with a single volatile write (setTransform), so a configuration change never pauses the stream and
+ * each event is transformed entirely with either the old or the new tables.<br />
+ * The stage remembers, for each sounding note, where its note on was sent; the matching note off
+ * is sent to the same output even if the configuration changed in between, so that swapping a
+ * split or transposition while playing does not leave notes hanging.<br />
+ * process must be called from a single thread (the receiving thread of one port or device);
+ * setTransform may be called from any thread. MidiInputPipeline passes the transform of its
+ * MidiInputRouting to process instead of setting it on the stage.
+ */
+public class MidiTransformStage {
+
+    /**
+     * Transform in use, null for none
+     */
+    private volatile MidiTransform mTransform = null;
+
+    /**
+     * Output (channel << 7 | note) + 1 of the sounding notes per input (channel * 128 + note),
+     * 0 for notes not sounding
+     */
+    private final short[] mSounding = new short[16 * 128];
+
+    /**
+     * Replace the transform in use
+     * @param transform the compiled transform, or null to pass events unchanged
+     */
+    public void setTransform(MidiTransform transform)
+    {
+        mTransform = transform;
+    }
+
+    /**
+     * Compile and use a configuration
+     * @param config the configuration, or null to pass events unchanged
+     */
+    public void setConfig(MidiTransformConfig config)
+    {
+        mTransform = config == null ? null : config.compile();
+    }
+
+    /**
+     * @return The transform in use, or null
+     */
+    public MidiTransform getTransform()
+    {
+        return mTransform;
+    }
+
+    /**
+     * Transform an event
+     * @param event packed midi event
+     * @return the transformed event, or MidiTransform.DROPPED
+     */
+    public int process(int event)
+    {
+        return process(event, mTransform);
+    }
+
+    /**
+     * Transform an event with a given transform rather than the one set on this stage, for
+     * callers publishing the transform together with other settings (see MidiInputRouting).
+     * Note offs still follow their note ons.
+     * @param event packed midi event
+     * @param transform the transform to apply, or null to pass the event unchanged
+     * @return the transformed event, or MidiTransform.DROPPED
+     */
+    public int process(int event, MidiTransform transform)
+    {
+        int status = event & 0xFF;
+        int code = status >> 4;
+        boolean noteOn = code == MidiSpec.MIDICODE_NOTEON && (event & 0x7F0000) != 0;
+        boolean noteOff = code == MidiSpec.MIDICODE_NOTEOFF || (code == MidiSpec.MIDICODE_NOTEON && !noteOn);
+        if (noteOff) {
+            int index = (status & 0x0F) * 128 + ((event >> 8) & 0x7F);
+            int sounding = mSounding[index];
+            if (sounding != 0) {
+                mSounding[index] = 0;
+                int mapped = sounding - 1;
+                return (event & 0xFFFF0000) | (code << 4) | (mapped >> 7) | ((mapped & 0x7F) << 8);
+            }
+        }
+        int result = transform == null ? event : transform.apply(event);
+        if (noteOn) {
+            int index = (status & 0x0F) * 128 + ((event >> 8) & 0x7F);
+            mSounding[index] = result == MidiTransform.DROPPED ? 0
+                    : (short) ((((result & 0x0F) << 7) | ((result >> 8) & 0x7F)) + 1);
+        }
+        return result;
+    }
+}
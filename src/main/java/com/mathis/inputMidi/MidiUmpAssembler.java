@@ -0,0 +1,140 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Assembles the byte stream of a Universal MIDI Packet device (MidiManager.TRANSPORT_UNIVERSAL_MIDI_PACKETS:
+ * 32 bit words, most significant byte first) into int words, and feeds the complete packets to a
+ * MidiInputPipeline through receiveUmp, all packets of a call at once. Packets split over several
+ * calls are kept until complete.<br />
+ * To be called from a single receiving thread. Nothing is allocated after construction.
+ */
+public class MidiUmpAssembler implements midiByteReceiver {
+
+    /**
+     * Default capacity of the word buffer, in words
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Receiver of the packets
+     */
+    private final MidiInputPipeline mPipeline;
+
+    /**
+     * Assembled words; complete packets first, then the words of an incomplete packet
+     */
+    private final int[] mWords;
+
+    /**
+     * Number of words in mWords, and of words of complete packets among them
+     */
+    private int mWordCount = 0;
+    private int mCompleteCount = 0;
+
+    /**
+     * Bytes of an incomplete word, and their number
+     */
+    private int mPartialWord = 0;
+    private int mPartialBytes = 0;
+
+    /**
+     * Constructor, with a buffer of DEFAULT_CAPACITY words
+     * @param pipeline receiver of the packets
+     */
+    public MidiUmpAssembler(MidiInputPipeline pipeline)
+    {
+        this(pipeline, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param pipeline receiver of the packets
+     * @param capacity capacity of the word buffer, at least 4; more data than this per call is
+     *                 fed to the pipeline in several parts
+     */
+    public MidiUmpAssembler(MidiInputPipeline pipeline, int capacity)
+    {
+        if (capacity < 4) {
+            throw new IllegalArgumentException("capacity must be at least 4 words");
+        }
+        mPipeline = pipeline;
+        mWords = new int[capacity];
+    }
+
+    /**
+     * Process received bytes
+     * @param data the buffer
+     * @param offset start of the data in the buffer
+     * @param count number of bytes
+     * @param timestamp timestamp of the data, in System.nanoTime time base
+     */
+    @Override
+    public void onMidiBytes(byte[] data, int offset, int count, long timestamp)
+    {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            mPartialWord = (mPartialWord << 8) | (data[i] & 0xFF);
+            if (++mPartialBytes < 4) {
+                continue;
+            }
+            mWords[mWordCount++] = mPartialWord;
+            mPartialWord = 0;
+            mPartialBytes = 0;
+            if (mWordCount - mCompleteCount == MidiUmpSpec.getWordCount(mWords[mCompleteCount])) {
+                mCompleteCount = mWordCount;
+                if (mWords.length - mWordCount < 4) {
+                    flush(timestamp);
+                }
+            }
+        }
+        flush(timestamp);
+    }
+
+    /**
+     * Feed the complete packets to the pipeline and keep the incomplete one
+     */
+    private void flush(long timestamp)
+    {
+        if (mCompleteCount == 0) {
+            return;
+        }
+        mPipeline.receiveUmp(mWords, 0, mCompleteCount, timestamp);
+        int remaining = mWordCount - mCompleteCount;
+        System.arraycopy(mWords, mCompleteCount, mWords, 0, remaining);
+        mWordCount = remaining;
+        mCompleteCount = 0;
+    }
+
+    /**
+     * Forget an incomplete packet, e.g. before data from a new connection arrives
+     */
+    public void reset()
+    {
+        mWordCount = 0;
+        mCompleteCount = 0;
+        mPartialWord = 0;
+        mPartialBytes = 0;
+    }
+
+    public MidiInputPipeline getPipeline()
+    {
+        return mPipeline;
+    }
+}
@@ -0,0 +1,348 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Conversion between MIDI 1.0 messages (packed events and system exclusive chunks, see MidiEvent)
+ * and Universal MIDI Packets (see MidiUmpSpec), without allocation.<br />
+ * Up conversion (toUmp, sysExToUmp) turns channel voice messages into MIDI 2.0 channel voice
+ * packets, scaling the values with the min-center-max method of the MIDI 2.0 specification, so
+ * that the minimum, center and maximum values are kept exactly. It is stateless: controller
+ * sequences selecting registered or assignable parameters (controllers 98-101, 6, 38) pass as
+ * plain control changes.<br />
+ * Down conversion (toMidi1) turns MIDI 1.0 and MIDI 2.0 channel voice packets, system packets and
+ * 7 bit system exclusive packets into MIDI 1.0 messages, for receivers that do not process packets.
+ * Registered and assignable controllers become their MIDI 1.0 parameter number sequences, and
+ * program changes with a valid bank are preceded by the bank select controllers. Messages without
+ * MIDI 1.0 equivalent (per-note controllers and pitch bend, relative controllers, utility, 8 bit
+ * data, flex data and stream messages) are skipped and counted.<br />
+ * An object holds the buffer for reassembling system exclusive messages: toMidi1 is to be called
+ * from a single thread per object. The static methods may be called from any thread.
+ */
+public final class MidiUmpConverter {
+
+    /**
+     * Bank select and parameter number controllers used by the down conversion
+     */
+    private static final int CC_BANK_SELECT = 0;
+    private static final int CC_DATA_ENTRY = 6;
+    private static final int CC_BANK_SELECT_LSB = 32;
+    private static final int CC_DATA_ENTRY_LSB = 38;
+    private static final int CC_NRPN_LSB = 98;
+    private static final int CC_NRPN_MSB = 99;
+    private static final int CC_RPN_LSB = 100;
+    private static final int CC_RPN_MSB = 101;
+
+    /**
+     * Buffer for the system exclusive bytes of one packet, with the leading 0xF0 and trailing 0xF7
+     */
+    private final byte[] mSysEx = new byte[MidiUmpSpec.SYSEX_BYTES_PER_PACKET + 2];
+
+    /**
+     * Packets skipped by toMidi1
+     */
+    private long mSkippedCount = 0;
+
+    /**
+     * Scale a value to more bits, with the min-center-max method: values up to the center are
+     * shifted, values above it fill the new low bits with repetitions of their own low bits, so that
+     * the maximum maps to the maximum
+     * @param value the value, 0 to 2^srcBits - 1
+     * @param srcBits bits of the value, 1-31
+     * @param dstBits bits of the result, srcBits-32
+     * @return the scaled value; for 32 bits, as the bits of an int
+     */
+    public static int scaleUp(int value, int srcBits, int dstBits)
+    {
+        int scaleBits = dstBits - srcBits;
+        long shifted = ((long) value) << scaleBits;
+        if (value <= (1 << (srcBits - 1)) || scaleBits == 0) {
+            return (int) shifted;
+        }
+        int repeatBits = srcBits - 1;
+        long repeat = value & ((1L << repeatBits) - 1);
+        repeat = scaleBits > repeatBits ? repeat << (scaleBits - repeatBits) : repeat >> (repeatBits - scaleBits);
+        while (repeat != 0) {
+            shifted |= repeat;
+            repeat >>= repeatBits;
+        }
+        return (int) shifted;
+    }
+
+    /**
+     * Scale a value to fewer bits, by keeping its most significant bits
+     * @param value the value, as unsigned bits
+     * @param srcBits bits of the value, up to 32
+     * @param dstBits bits of the result
+     * @return the scaled value
+     */
+    public static int scaleDown(int value, int srcBits, int dstBits)
+    {
+        return value >>> (srcBits - dstBits);
+    }
+
+    /**
+     * Convert a short MIDI 1.0 message into a packet: a MIDI 2.0 channel voice packet (2 words) for
+     * channel messages, a system packet (1 word) for system common and realtime messages
+     * @param event packed midi event, see MidiEvent; the source tag is ignored
+     * @param group group of the packet, 0-15
+     * @param words buffer receiving the packet
+     * @param offset index of the first word to write
+     * @return the number of words written, 0 for system exclusive status bytes
+     */
+    public static int toUmp(int event, int group, int[] words, int offset)
+    {
+        int status = MidiEvent.getStatus(event);
+        int data1 = MidiEvent.getData1(event);
+        int data2 = MidiEvent.getData2(event);
+        if (status >= 0xF0) {
+            if (status == 0xF0 || status == 0xF7) {
+                return 0;
+            }
+            int length = MidiEvent.getLength(event);
+            words[offset] = (MidiUmpSpec.MT_SYSTEM << 28) | ((group & 0x0F) << 24) | (status << 16)
+                    | (length > 1 ? data1 << 8 : 0) | (length > 2 ? data2 : 0);
+            return 1;
+        }
+        int channel = status & 0x0F;
+        int word;
+        int data;
+        switch (status >> 4) {
+            case MidiSpec.MIDICODE_NOTEOFF:
+                word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_NOTE_OFF, channel, data1, 0);
+                data = scaleUp(data2, 7, 16) << 16;
+                break;
+            case MidiSpec.MIDICODE_NOTEON:
+                if (data2 == 0) {
+                    // a MIDI 2.0 note on always sounds: velocity 0 becomes a note off
+                    word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_NOTE_OFF, channel, data1, 0);
+                    data = scaleUp(64, 7, 16) << 16;
+                } else {
+                    word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_NOTE_ON, channel, data1, 0);
+                    data = scaleUp(data2, 7, 16) << 16;
+                }
+                break;
+            case MidiSpec.MIDICODE_POLYPRESS:
+                word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_POLY_PRESSURE, channel, data1, 0);
+                data = scaleUp(data2, 7, 32);
+                break;
+            case MidiSpec.MIDICODE_CONTROLLER:
+                word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_CONTROL_CHANGE, channel, data1, 0);
+                data = scaleUp(data2, 7, 32);
+                break;
+            case MidiSpec.MIDICODE_PROGCHANGE:
+                word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_PROGRAM_CHANGE, channel, 0, 0);
+                data = data1 << 24;
+                break;
+            case MidiSpec.MIDICODE_CHANPRESS:
+                word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_CHANNEL_PRESSURE, channel, 0, 0);
+                data = scaleUp(data1, 7, 32);
+                break;
+            default:
+                word = MidiUmpSpec.midi2Word(group, MidiUmpSpec.OPCODE_PITCH_BEND, channel, 0, 0);
+                data = scaleUp(data1 | (data2 << 7), 14, 32);
+                break;
+        }
+        words[offset] = word;
+        words[offset + 1] = data;
+        return 2;
+    }
+
+    /**
+     * Convert (part of) a system exclusive message into 7 bit system exclusive packets (2 words
+     * each, up to 6 data bytes). The leading 0xF0 and trailing 0xF7 are dropped.
+     * @param data buffer containing the bytes, as delivered to midiStreamListener.onSysExChunk
+     * @param offset position of the first byte
+     * @param count number of bytes
+     * @param first True if this is the first chunk of the message
+     * @param last True if this is the last chunk of the message
+     * @param group group of the packets, 0-15
+     * @param words buffer receiving the packets; needs room for 2 * (count / 6 + 1) words
+     * @param wordOffset index of the first word to write
+     * @return the number of words written
+     */
+    public static int sysExToUmp(byte[] data, int offset, int count, boolean first, boolean last, int group,
+                                 int[] words, int wordOffset)
+    {
+        int end = offset + count;
+        if (first && count > 0 && (data[offset] & 0xFF) == 0xF0) {
+            offset++;
+        }
+        if (last && end > offset && (data[end - 1] & 0xFF) == 0xF7) {
+            end--;
+        }
+        if (end == offset && !first && !last) {
+            return 0;
+        }
+        int written = 0;
+        boolean packetFirst = first;
+        do {
+            int n = Math.min(MidiUmpSpec.SYSEX_BYTES_PER_PACKET, end - offset);
+            boolean packetLast = last && offset + n == end;
+            int status = packetFirst ? (packetLast ? MidiUmpSpec.SYSEX_COMPLETE : MidiUmpSpec.SYSEX_START)
+                    : (packetLast ? MidiUmpSpec.SYSEX_END : MidiUmpSpec.SYSEX_CONTINUE);
+            long bits = 0;
+            for (int i = 0; i < MidiUmpSpec.SYSEX_BYTES_PER_PACKET; i++) {
+                bits = (bits << 8) | (i < n ? data[offset + i] & 0x7F : 0);
+            }
+            words[wordOffset + written] = (MidiUmpSpec.MT_DATA_64 << 28) | ((group & 0x0F) << 24)
+                    | (status << 20) | (n << 16) | (int) (bits >>> 32);
+            words[wordOffset + written + 1] = (int) bits;
+            written += 2;
+            offset += n;
+            packetFirst = false;
+        } while (offset < end);
+        return written;
+    }
+
+    /**
+     * Convert a packet into MIDI 1.0 messages
+     * @param words buffer holding the packet
+     * @param offset index of the first word of the packet; the whole packet must be present
+     * @param listener receiver of the messages
+     * @param timestamp timestamp given to the messages
+     * @return the number of words of the packet
+     */
+    public int toMidi1(int[] words, int offset, midiStreamListener listener, long timestamp)
+    {
+        int word = words[offset];
+        int count = MidiUmpSpec.getWordCount(word);
+        switch (MidiUmpSpec.getMessageType(word)) {
+            case MidiUmpSpec.MT_SYSTEM:
+                systemToMidi1(word, listener, timestamp);
+                break;
+            case MidiUmpSpec.MT_MIDI1_CHANNEL_VOICE: {
+                int status = MidiUmpSpec.getStatus(word);
+                int code = status >> 4;
+                boolean twoBytes = code == MidiSpec.MIDICODE_PROGCHANGE || code == MidiSpec.MIDICODE_CHANPRESS;
+                if (code < MidiSpec.MIDICODE_NOTEOFF) {
+                    mSkippedCount++;
+                    break;
+                }
+                listener.onMidiEvent(MidiEvent.pack(status, (word >>> 8) & 0x7F, twoBytes ? 0 : word & 0x7F),
+                        timestamp);
+                break;
+            }
+            case MidiUmpSpec.MT_MIDI2_CHANNEL_VOICE:
+                midi2ToMidi1(word, words[offset + 1], listener, timestamp);
+                break;
+            case MidiUmpSpec.MT_DATA_64:
+                sysExToMidi1(word, words[offset + 1], listener, timestamp);
+                break;
+            default:
+                mSkippedCount++;
+                break;
+        }
+        return count;
+    }
+
+    private void systemToMidi1(int word, midiStreamListener listener, long timestamp)
+    {
+        int status = MidiUmpSpec.getStatus(word);
+        if (status < 0xF1 || status == 0xF7) {
+            mSkippedCount++;
+            return;
+        }
+        int data1 = status == 0xF1 || status == 0xF2 || status == 0xF3 ? (word >>> 8) & 0x7F : 0;
+        int data2 = status == 0xF2 ? word & 0x7F : 0;
+        listener.onMidiEvent(MidiEvent.pack(status, data1, data2), timestamp);
+    }
+
+    private void midi2ToMidi1(int word, int data, midiStreamListener listener, long timestamp)
+    {
+        int channel = MidiUmpSpec.getChannel(word);
+        int index1 = MidiUmpSpec.getIndex1(word);
+        int index2 = MidiUmpSpec.getIndex2(word);
+        int controller = 0xB0 | channel;
+        switch (MidiUmpSpec.getOpcode(word)) {
+            case MidiUmpSpec.OPCODE_NOTE_OFF:
+                listener.onMidiEvent(MidiEvent.pack(0x80 | channel, index1,
+                        scaleDown(MidiUmpSpec.getVelocity(data), 16, 7)), timestamp);
+                break;
+            case MidiUmpSpec.OPCODE_NOTE_ON: {
+                // velocity 0 is a valid note on in MIDI 2.0, but a note off in MIDI 1.0
+                int velocity = scaleDown(MidiUmpSpec.getVelocity(data), 16, 7);
+                listener.onMidiEvent(MidiEvent.pack(0x90 | channel, index1, velocity == 0 ? 1 : velocity), timestamp);
+                break;
+            }
+            case MidiUmpSpec.OPCODE_POLY_PRESSURE:
+                listener.onMidiEvent(MidiEvent.pack(0xA0 | channel, index1, scaleDown(data, 32, 7)), timestamp);
+                break;
+            case MidiUmpSpec.OPCODE_CONTROL_CHANGE:
+                listener.onMidiEvent(MidiEvent.pack(controller, index1, scaleDown(data, 32, 7)), timestamp);
+                break;
+            case MidiUmpSpec.OPCODE_PROGRAM_CHANGE:
+                if ((index2 & MidiUmpSpec.PROGRAM_BANK_VALID) != 0) {
+                    listener.onMidiEvent(MidiEvent.pack(controller, CC_BANK_SELECT, (data >>> 8) & 0x7F), timestamp);
+                    listener.onMidiEvent(MidiEvent.pack(controller, CC_BANK_SELECT_LSB, data & 0x7F), timestamp);
+                }
+                listener.onMidiEvent(MidiEvent.pack(0xC0 | channel, (data >>> 24) & 0x7F, 0), timestamp);
+                break;
+            case MidiUmpSpec.OPCODE_CHANNEL_PRESSURE:
+                listener.onMidiEvent(MidiEvent.pack(0xD0 | channel, scaleDown(data, 32, 7), 0), timestamp);
+                break;
+            case MidiUmpSpec.OPCODE_PITCH_BEND: {
+                int bend = scaleDown(data, 32, 14);
+                listener.onMidiEvent(MidiEvent.pack(0xE0 | channel, bend & 0x7F, bend >> 7), timestamp);
+                break;
+            }
+            case MidiUmpSpec.OPCODE_REGISTERED_CONTROLLER:
+            case MidiUmpSpec.OPCODE_ASSIGNABLE_CONTROLLER: {
+                boolean registered = MidiUmpSpec.getOpcode(word) == MidiUmpSpec.OPCODE_REGISTERED_CONTROLLER;
+                int value = scaleDown(data, 32, 14);
+                listener.onMidiEvent(MidiEvent.pack(controller, registered ? CC_RPN_MSB : CC_NRPN_MSB, index1), timestamp);
+                listener.onMidiEvent(MidiEvent.pack(controller, registered ? CC_RPN_LSB : CC_NRPN_LSB, index2 & 0x7F), timestamp);
+                listener.onMidiEvent(MidiEvent.pack(controller, CC_DATA_ENTRY, value >> 7), timestamp);
+                listener.onMidiEvent(MidiEvent.pack(controller, CC_DATA_ENTRY_LSB, value & 0x7F), timestamp);
+                break;
+            }
+            default:
+                mSkippedCount++;
+                break;
+        }
+    }
+
+    private void sysExToMidi1(int word, int data, midiStreamListener listener, long timestamp)
+    {
+        int status = (word >>> 20) & 0x0F;
+        int n = Math.min((word >>> 16) & 0x0F, MidiUmpSpec.SYSEX_BYTES_PER_PACKET);
+        boolean first = status == MidiUmpSpec.SYSEX_COMPLETE || status == MidiUmpSpec.SYSEX_START;
+        boolean last = status == MidiUmpSpec.SYSEX_COMPLETE || status == MidiUmpSpec.SYSEX_END;
+        long bits = ((long) (word & 0xFFFF) << 32) | (data & 0xFFFFFFFFL);
+        int length = 0;
+        if (first) {
+            mSysEx[length++] = (byte) 0xF0;
+        }
+        for (int i = 0; i < n; i++) {
+            mSysEx[length++] = (byte) ((bits >>> (40 - 8 * i)) & 0x7F);
+        }
+        if (last) {
+            mSysEx[length++] = (byte) 0xF7;
+        }
+        listener.onSysExChunk(mSysEx, 0, length, first, last, timestamp);
+    }
+
+    /**
+     * @return Number of packets skipped by toMidi1 for lack of a MIDI 1.0 equivalent
+     */
+    public long getSkippedCount()
+    {
+        return mSkippedCount;
+    }
+}
@@ -0,0 +1,195 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Constants and field accessors of the Universal MIDI Packet format (MIDI 2.0, UMP). A packet is
+ * one to four 32 bit words; the message type in the top four bits of the first word determines
+ * its length. Packets are handled as int words, the first word of a packet first; on the wire
+ * (e.g. MidiReceiver.onSend for devices opened with MidiManager.TRANSPORT_UNIVERSAL_MIDI_PACKETS),
+ * each word is sent as four bytes, most significant byte first.<br />
+ * The MIDI 1.0 message codes are in MidiSpec.
+ */
+public final class MidiUmpSpec {
+
+    private MidiUmpSpec()
+    {
+    }
+
+    // Message types (top nibble of the first word)
+    public static final int MT_UTILITY = 0x0;
+    public static final int MT_SYSTEM = 0x1;
+    public static final int MT_MIDI1_CHANNEL_VOICE = 0x2;
+    public static final int MT_DATA_64 = 0x3;
+    public static final int MT_MIDI2_CHANNEL_VOICE = 0x4;
+    public static final int MT_DATA_128 = 0x5;
+    public static final int MT_FLEX_DATA = 0xD;
+    public static final int MT_STREAM = 0xF;
+
+    // Opcodes of MIDI 2.0 channel voice messages (MT_MIDI2_CHANNEL_VOICE)
+    public static final int OPCODE_REGISTERED_PER_NOTE_CONTROLLER = 0x0;
+    public static final int OPCODE_ASSIGNABLE_PER_NOTE_CONTROLLER = 0x1;
+    public static final int OPCODE_REGISTERED_CONTROLLER = 0x2;
+    public static final int OPCODE_ASSIGNABLE_CONTROLLER = 0x3;
+    public static final int OPCODE_RELATIVE_REGISTERED_CONTROLLER = 0x4;
+    public static final int OPCODE_RELATIVE_ASSIGNABLE_CONTROLLER = 0x5;
+    public static final int OPCODE_PER_NOTE_PITCH_BEND = 0x6;
+    public static final int OPCODE_NOTE_OFF = 0x8;
+    public static final int OPCODE_NOTE_ON = 0x9;
+    public static final int OPCODE_POLY_PRESSURE = 0xA;
+    public static final int OPCODE_CONTROL_CHANGE = 0xB;
+    public static final int OPCODE_PROGRAM_CHANGE = 0xC;
+    public static final int OPCODE_CHANNEL_PRESSURE = 0xD;
+    public static final int OPCODE_PITCH_BEND = 0xE;
+    public static final int OPCODE_PER_NOTE_MANAGEMENT = 0xF;
+
+    // Status of 7 bit system exclusive packets (MT_DATA_64)
+    public static final int SYSEX_COMPLETE = 0x0;
+    public static final int SYSEX_START = 0x1;
+    public static final int SYSEX_CONTINUE = 0x2;
+    public static final int SYSEX_END = 0x3;
+
+    /**
+     * Maximum number of system exclusive data bytes in a MT_DATA_64 packet
+     */
+    public static final int SYSEX_BYTES_PER_PACKET = 6;
+
+    /**
+     * Option flag of MIDI 2.0 program change messages: the bank in the second word is valid
+     */
+    public static final int PROGRAM_BANK_VALID = 0x1;
+
+    /**
+     * Center of 32 bit pitch bend values
+     */
+    public static final int PITCH_BEND_CENTER = 0x80000000;
+
+    /**
+     * Number of words in packets of each message type
+     */
+    private static final int[] WORD_COUNTS = {1, 1, 1, 2, 2, 4, 1, 1, 2, 2, 2, 3, 3, 4, 4, 4};
+
+    /**
+     * @param word first word of a packet
+     * @return the number of words of the packet, 1 to 4
+     */
+    public static int getWordCount(int word)
+    {
+        return WORD_COUNTS[word >>> 28];
+    }
+
+    /**
+     * @param word first word of a packet
+     * @return the message type, one of the MT_* constants
+     */
+    public static int getMessageType(int word)
+    {
+        return word >>> 28;
+    }
+
+    /**
+     * @param word first word of a packet
+     * @return the group, 0-15
+     */
+    public static int getGroup(int word)
+    {
+        return (word >>> 24) & 0x0F;
+    }
+
+    /**
+     * @param word first word of a channel voice packet
+     * @return the opcode, one of the OPCODE_* constants
+     */
+    public static int getOpcode(int word)
+    {
+        return (word >>> 20) & 0x0F;
+    }
+
+    /**
+     * @param word first word of a channel voice packet
+     * @return the channel, 0-15
+     */
+    public static int getChannel(int word)
+    {
+        return (word >>> 16) & 0x0F;
+    }
+
+    /**
+     * @param word first word of a channel voice or system packet
+     * @return the status byte (opcode and channel for channel voice messages)
+     */
+    public static int getStatus(int word)
+    {
+        return (word >>> 16) & 0xFF;
+    }
+
+    /**
+     * @param word first word of a channel voice packet
+     * @return the note number (or controller index or program), 0-127
+     */
+    public static int getIndex1(int word)
+    {
+        return (word >>> 8) & 0x7F;
+    }
+
+    /**
+     * @param word first word of a channel voice packet
+     * @return the second index byte (attribute type of notes, controller index of registered
+     * controllers, option flags of program changes)
+     */
+    public static int getIndex2(int word)
+    {
+        return word & 0xFF;
+    }
+
+    /**
+     * Velocity of a MIDI 2.0 note on or note off
+     * @param word2 second word of the packet
+     * @return the velocity, 0-65535
+     */
+    public static int getVelocity(int word2)
+    {
+        return word2 >>> 16;
+    }
+
+    /**
+     * Attribute data of a MIDI 2.0 note on or note off
+     * @param word2 second word of the packet
+     * @return the attribute, 0-65535 (e.g. pitch 7.9 for attribute type 3)
+     */
+    public static int getAttribute(int word2)
+    {
+        return word2 & 0xFFFF;
+    }
+
+    /**
+     * First word of a MIDI 2.0 channel voice message
+     * @param group group, 0-15
+     * @param opcode one of the OPCODE_* constants
+     * @param channel channel, 0-15
+     * @param index1 note number, controller index, ...
+     * @param index2 attribute type, controller index, option flags, ...
+     * @return the word
+     */
+    public static int midi2Word(int group, int opcode, int channel, int index1, int index2)
+    {
+        return (MT_MIDI2_CHANNEL_VOICE << 28) | ((group & 0x0F) << 24) | ((opcode & 0x0F) << 20)
+                | ((channel & 0x0F) << 16) | ((index1 & 0x7F) << 8) | (index2 & 0xFF);
+    }
+}
@@ -0,0 +1,93 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Output for MIDI 1.0 messages that converts them into Universal MIDI Packets for a midiUmpListener
+ * (see MidiUmpConverter.toUmp), so that a receiver processing packets can be attached to byte
+ * stream inputs as well, e.g. as the output of a MidiInputPipeline or a subscriber of a
+ * MidiDispatchBus. Each message is passed on as soon as it is received.<br />
+ * To be called from a single thread. Nothing is allocated after construction.
+ */
+public class MidiUmpUpConverter implements midiStreamListener {
+
+    /**
+     * System exclusive packets converted per call of the receiver
+     */
+    private static final int SYSEX_PACKETS = 16;
+
+    /**
+     * Receiver of the packets
+     */
+    private final midiUmpListener mListener;
+
+    /**
+     * Group given to the packets
+     */
+    private final int mGroup;
+
+    /**
+     * Converted packets
+     */
+    private final int[] mWords = new int[2 * SYSEX_PACKETS];
+
+    /**
+     * Constructor
+     * @param listener receiver of the packets
+     * @param group group given to the packets, 0-15
+     */
+    public MidiUmpUpConverter(midiUmpListener listener, int group)
+    {
+        mListener = listener;
+        mGroup = group;
+    }
+
+    @Override
+    public void onMidiEvent(int event, long timestamp)
+    {
+        int count = MidiUmpConverter.toUmp(event, mGroup, mWords, 0);
+        if (count > 0) {
+            mListener.onUmpPackets(mWords, 0, count, timestamp);
+        }
+    }
+
+    @Override
+    public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp)
+    {
+        int end = offset + count;
+        int position = offset;
+        do {
+            // the leading 0xF0 of the first slice does not take room in the packets
+            int slice = SYSEX_PACKETS * MidiUmpSpec.SYSEX_BYTES_PER_PACKET
+                    + (position == offset && first && count > 0 && (data[offset] & 0xFF) == 0xF0 ? 1 : 0);
+            slice = Math.min(slice, end - position);
+            int words = MidiUmpConverter.sysExToUmp(data, position, slice, first && position == offset,
+                    last && position + slice == end, mGroup, mWords, 0);
+            if (words > 0) {
+                mListener.onUmpPackets(mWords, 0, words, timestamp);
+            }
+            position += slice;
+        } while (position < end);
+    }
+
+    public int getGroup()
+    {
+        return mGroup;
+    }
+}
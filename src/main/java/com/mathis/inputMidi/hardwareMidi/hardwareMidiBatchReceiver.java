@@ -0,0 +1,37 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi;
+
+import com.mathis.inputMidi.MidiEventBatch;
+import com.mathis.midiBase.hardwareMidiNativeReceiver;
+
+/**
+ * Extension of hardwareMidiNativeReceiver for receivers that process the short messages of a
+ * packet as a group. If the object passed to hardwareMidiManager.setMessageReceiver implements
+ * this interface, the short messages of each packet delivered by the native tier are handed over in
+ * a single call, as packed events, without allocating an array per message; system exclusive
+ * messages are still delivered through onNativeMessageReceive.
+ */
+public interface hardwareMidiBatchReceiver extends hardwareMidiNativeReceiver {
+    /**
+     * Called once per received packet with its short messages, after transformation
+     * @param batch the messages, in order; only valid for the duration of the call
+     */
+    void onNativeMessageBatch(MidiEventBatch batch);
+}
@@ -0,0 +1,47 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi;
+
+import android.media.midi.MidiDevice;
+
+import com.mathis.midiBase.hardwareMidiNativeSetup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extension of hardwareMidiNativeSetup for native implementations that can deliver the received
+ * data in batches. If the object passed to hardwareMidiManager.setMidiNativeSetupHandler implements
+ * this interface, batched delivery is offered when reading starts; the native implementation may
+ * accept it or decline, in which case the data is delivered per message as before.
+ */
+public interface hardwareMidiBatchedNativeSetup extends hardwareMidiNativeSetup {
+    /**
+     * Start the midi reading thread in batched mode. The native reading thread writes the
+     * received data into the buffer, in the format described by MidiMessageBatch, and then calls
+     * AppMidiSupport.onNativeBatchReceive(int, int) with the number of records and bytes written.
+     * The batch is decoded before that call returns, so the buffer can be overwritten right after.
+     * @param receiveDevice The selected midi receive device
+     * @param portNumber The output port of the device to read
+     * @param buffer Direct buffer in native byte order, to be obtained with
+     *               JNIEnv::GetDirectBufferAddress and GetDirectBufferCapacity
+     * @return true if reading was started in batched mode, false if the native implementation
+     * does not support it (reading has then not been started)
+     */
+    boolean startBatchedReadingMidi(MidiDevice receiveDevice, int portNumber, ByteBuffer buffer);
+}
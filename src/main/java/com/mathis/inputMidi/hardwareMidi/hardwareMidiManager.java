@@ -32,17 +32,40 @@
 package com.mathis.inputMidi.hardwareMidi;
 
 import static android.media.midi.MidiManager.TRANSPORT_MIDI_BYTE_STREAM;
+import static android.media.midi.MidiManager.TRANSPORT_UNIVERSAL_MIDI_PACKETS;
 
+import android.media.midi.MidiDevice;
 import android.media.midi.MidiDeviceInfo;
+import android.media.midi.MidiDeviceStatus;
 import android.media.midi.MidiManager;
 
+import com.mathis.inputMidi.MidiDispatchBus;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiInputRecorder;
+import com.mathis.inputMidi.MidiMetricsRegistry;
+import com.mathis.inputMidi.MidiPriorityLanes;
+import com.mathis.inputMidi.MidiSysExAssembler;
+import com.mathis.inputMidi.MidiSysExBufferPool;
+import com.mathis.inputMidi.MidiTransformConfig;
+import com.mathis.inputMidi.midiSysExListener;
+import com.mathis.inputMidi.midiUmpListener;
 import com.mathis.midiBase.hardwareMidiNativeReceiver;
 import com.mathis.midiBase.hardwareMidiNativeSetup;
 import com.mathis.inputMidi.hardwareMidi.support.AppMidiSupport;
+import com.mathis.inputMidi.hardwareMidi.support.HardwareMidiInputPort;
+import com.mathis.inputMidi.hardwareMidi.support.MidiDeviceOpener;
+import com.mathis.inputMidi.hardwareMidi.support.MidiDeviceReconnector;
+import com.mathis.inputMidi.hardwareMidi.support.MidiDeviceRegistry;
+import com.mathis.inputMidi.hardwareMidi.support.MidiInputDeviceGroup;
 
 
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 
 /**
 Static interface class hardwareMidiManager. Do not instantiate. This class handles the listing of the available
@@ -67,30 +90,225 @@ Static interface class hardwareMidiManager. Do not instantiate. This class handl
    initMidiAeolus, step 5 is implemented in ScanMidiDevices (which is invoked by initMidiAeolus), and step 6
    is implemented with a default action of selecting the first avaible device in the onDeviceListChange()
    routine, which is called initially by ScanMidiDevices, and also as an event when the midi device list changes.
+   <br /><br />
+   Besides the single device read by the native tier, any number of devices can be received from
+   simultaneously through hardwareMidiOpenInputDevice; their events are merged into one stream ordered by
+   timestamp, available from getInputDeviceGroup().getMerger().
+   <br /><br />
+   Devices sending Universal MIDI Packets (MIDI 2.0) are listed separately, by availableUmpReceiveDevices,
+   and opened the same way through hardwareMidiOpenInputDevice. Their packets are converted into MIDI 1.0
+   messages for the merged stream, or passed on unchanged to the receiver set with setUmpOutput.
+   <br /><br />
+   Device notifications are delivered on a single thread owned by this class, which lives until
+   releaseHardwareMidiManager is called; setting a new callback, for instance after the activity has
+   been recreated, replaces the previous one without starting another thread. With setAutoReconnect,
+   the device opened through hardwareMidiOpenReceiveDevice is reopened when it is plugged in again.
  */
 public class hardwareMidiManager {
     /**
      * Singleton of the calss
      */
-    private static AppMidiSupport mAppMidiSupport;
+    private static volatile AppMidiSupport mAppMidiSupport;
 
     /**
      * Reference to the android midimanager
      */
-    private static MidiManager mMidiManager;
+    private static volatile MidiManager mMidiManager;
 
     /**
-     * The available hardware midi devices, from which data can be received. Actual reception
-     * is only from one device at the time in the present implementation
+     * The attached midi devices, kept up to date from the device notifications once
+     * scanhardwareMidiDevices has been called
      */
-    private static ArrayList<MidiDeviceInfo> mReceiveDevices = new ArrayList<MidiDeviceInfo>();
+    private static final MidiDeviceRegistry mDeviceRegistry = new MidiDeviceRegistry();
 
     /**
-     * Get the list of available midi devices for receiving data from them
-     * @return List of midi-devices from which data can be receivedc
+     * The attached Universal MIDI Packet devices, kept up to date like mDeviceRegistry
+     */
+    private static final MidiDeviceRegistry mUmpDeviceRegistry = new MidiDeviceRegistry();
+
+    /**
+     * Whether mDeviceRegistry and mUmpDeviceRegistry are filled and follow the device notifications
+     */
+    private static boolean mDeviceRegistryLive = false;
+
+    /**
+     * Capacity of the event queue of each device opened through hardwareMidiOpenInputDevice
+     */
+    private static final int INPUT_DEVICE_RING_CAPACITY = 1024;
+
+    /**
+     * Devices opened for simultaneous reception, independently of the native tier
+     */
+    private static volatile MidiInputDeviceGroup mInputDeviceGroup;
+
+    /**
+     * Bus distributing the messages of the native tier to additional subscribers; kept across
+     * calls of setHardwareMidiManager so that subscriptions survive
+     */
+    private static final MidiDispatchBus mDispatchBus = new MidiDispatchBus();
+
+    /**
+     * Stream indices of the hardware inputs in a MidiInputRecorder recording: the device received
+     * by the native tier, and the devices of the input device group (told apart by source index)
+     */
+    public static final int RECORDER_STREAM_NATIVE = 1;
+    public static final int RECORDER_STREAM_INPUT_DEVICES = 2;
+
+    /**
+     * Recorder of the hardware midi messages; kept across calls of setHardwareMidiManager
+     */
+    private static volatile MidiInputRecorder mInputRecorder;
+
+    /**
+     * Receiver of the packets of Universal MIDI Packet devices; kept across calls of setHardwareMidiManager
+     */
+    private static volatile midiUmpListener mUmpOutput;
+
+    /**
+     * Receiver of the system exclusive messages in pooled buffers, and the pool; kept across
+     * calls of setHardwareMidiManager
+     */
+    private static volatile midiSysExListener mSysExListener;
+    private static volatile MidiSysExBufferPool mSysExPool;
+
+    /**
+     * Thread on which the device notifications are delivered and reconnections are retried;
+     * created when first needed and shut down by releaseHardwareMidiManager
+     */
+    private static ScheduledExecutorService mDeviceExecutor;
+
+    /**
+     * Callback set with setHardwareMidiDeviceCallback, or null
+     */
+    private static volatile MidiManager.DeviceCallback mDeviceCallback;
+
+    /**
+     * Whether mDeviceCallbackForwarder is registered with mMidiManager
+     */
+    private static boolean mDeviceCallbackRegistered = false;
+
+    /**
+     * Reopens the receive device after it has been unplugged and plugged in again; kept across
+     * calls of setHardwareMidiManager so that its settings and statistics survive
+     */
+    private static final MidiDeviceReconnector mReconnector = new MidiDeviceReconnector();
+
+    /**
+     * Opens the devices on a dedicated thread, for both the native tier and the device group
+     */
+    private static volatile MidiDeviceOpener mDeviceOpener;
+
+    /**
+     * The only callback ever registered with the android midi manager. It passes the
+     * notifications on to the reconnector first, then to mDeviceCallback.
+     */
+    private static final MidiManager.DeviceCallback mDeviceCallbackForwarder = new MidiManager.DeviceCallback() {
+        @Override
+        public void onDeviceAdded(MidiDeviceInfo device) {
+            mDeviceRegistry.onDeviceAdded(device);
+            mReconnector.onDeviceAdded(device);
+            MidiManager.DeviceCallback callback = mDeviceCallback;
+            if (callback != null) {
+                callback.onDeviceAdded(device);
+            }
+        }
+
+        @Override
+        public void onDeviceRemoved(MidiDeviceInfo device) {
+            mDeviceRegistry.onDeviceRemoved(device);
+            mReconnector.onDeviceRemoved(device);
+            closeRemovedInputDevice(device);
+            MidiManager.DeviceCallback callback = mDeviceCallback;
+            if (callback != null) {
+                callback.onDeviceRemoved(device);
+            }
+        }
+
+        @Override
+        public void onDeviceStatusChanged(MidiDeviceStatus status) {
+            MidiManager.DeviceCallback callback = mDeviceCallback;
+            if (callback != null) {
+                callback.onDeviceStatusChanged(status);
+            }
+        }
+    };
+
+    /**
+     * Notifications about Universal MIDI Packet devices, registered along with mDeviceCallbackForwarder.
+     * They go to the UMP device registry and to mDeviceCallback, not to the reconnector, which only
+     * handles the byte stream device of the native tier.
+     */
+    private static final MidiManager.DeviceCallback mUmpDeviceCallbackForwarder = new MidiManager.DeviceCallback() {
+        @Override
+        public void onDeviceAdded(MidiDeviceInfo device) {
+            mUmpDeviceRegistry.onDeviceAdded(device);
+            MidiManager.DeviceCallback callback = mDeviceCallback;
+            if (callback != null) {
+                callback.onDeviceAdded(device);
+            }
+        }
+
+        @Override
+        public void onDeviceRemoved(MidiDeviceInfo device) {
+            mUmpDeviceRegistry.onDeviceRemoved(device);
+            closeRemovedInputDevice(device);
+            MidiManager.DeviceCallback callback = mDeviceCallback;
+            if (callback != null) {
+                callback.onDeviceRemoved(device);
+            }
+        }
+    };
+
+    /**
+     * Close the ports of an unplugged device opened with hardwareMidiOpenInputDevice, queueing
+     * note offs for the notes it left on
+     */
+    private static void closeRemovedInputDevice(MidiDeviceInfo device)
+    {
+        MidiInputDeviceGroup group = mInputDeviceGroup;
+        if (group != null) {
+            group.close(device);
+        }
+    }
+
+    /**
+     * Get the list of available midi devices for receiving data from them, as of the last call of
+     * scanhardwareMidiDevices or the last device notification since
+     * @return List of midi-devices from which data can be receivedc. This is a copy, which the
+     * caller may keep or modify.
      */
     public static ArrayList<MidiDeviceInfo> availableReceiveDevices(){
-        return mReceiveDevices;
+        return new ArrayList<MidiDeviceInfo>(mDeviceRegistry.getSnapshot().getReceiveDevices());
+    }
+
+    /**
+     * Registry of the attached devices, with their cached names and port counts. Its snapshots
+     * can be read from any thread without locking.
+     * @return the registry
+     */
+    public static MidiDeviceRegistry getDeviceRegistry()
+    {
+        return mDeviceRegistry;
+    }
+
+    /**
+     * Get the list of available Universal MIDI Packet (MIDI 2.0) devices for receiving data from
+     * them, as of the last call of scanhardwareMidiDevices or the last device notification since.
+     * They are opened with hardwareMidiOpenInputDevice.
+     * @return List of devices, a copy which the caller may keep or modify
+     */
+    public static ArrayList<MidiDeviceInfo> availableUmpReceiveDevices()
+    {
+        return new ArrayList<MidiDeviceInfo>(mUmpDeviceRegistry.getSnapshot().getReceiveDevices());
+    }
+
+    /**
+     * The attached Universal MIDI Packet devices, see getDeviceRegistry
+     * @return the registry
+     */
+    public static MidiDeviceRegistry getUmpDeviceRegistry()
+    {
+        return mUmpDeviceRegistry;
     }
 
     /**
@@ -101,24 +319,157 @@ public class hardwareMidiManager {
      * not software midi ports
      * @param midiManager
      */
-    public static void setHardwareMidiManager(MidiManager midiManager)
+    public static synchronized void setHardwareMidiManager(MidiManager midiManager)
     {
+        boolean forward = mDeviceCallbackRegistered;
+        unregisterDeviceCallbackForwarder();
+        mDeviceRegistryLive = false;
+        mDeviceRegistry.clear();
+        mUmpDeviceRegistry.clear();
         mMidiManager = midiManager;
-        mAppMidiSupport = new AppMidiSupport(mMidiManager);
+        MidiDeviceOpener previousOpener = mDeviceOpener;
+        mDeviceOpener = new MidiDeviceOpener(mMidiManager);
+        if (mAppMidiSupport != null) {
+            // stop its reading thread and release its notes, like the device group below
+            mAppMidiSupport.closeReceiveDevice();
+            MidiMetricsRegistry.getDefault().unregister(mAppMidiSupport.getMetrics());
+        }
+        mAppMidiSupport = new AppMidiSupport(mMidiManager, mDeviceOpener);
+        MidiMetricsRegistry.getDefault().register(mAppMidiSupport.getMetrics());
+        mAppMidiSupport.setDispatchBus(mDispatchBus);
+        mAppMidiSupport.setRecorder(mInputRecorder, RECORDER_STREAM_NATIVE);
+        mAppMidiSupport.setSysExAssembler(newSysExAssembler(0));
+        mReconnector.attach(mAppMidiSupport, getDeviceExecutor());
+        if (mInputDeviceGroup != null) {
+            mInputDeviceGroup.closeAll();
+        }
+        mInputDeviceGroup = new MidiInputDeviceGroup(mMidiManager, mDeviceOpener, INPUT_DEVICE_RING_CAPACITY);
+        mInputDeviceGroup.setRecorder(mInputRecorder, RECORDER_STREAM_INPUT_DEVICES);
+        mInputDeviceGroup.setUmpOutput(mUmpOutput);
+        mInputDeviceGroup.setSysExListener(mSysExListener, mSysExPool);
+        if (previousOpener != null) {
+            previousOpener.quit();
+        }
+        if (forward) {
+            registerDeviceCallbackForwarder();
+        }
 
     }
 
+    /**
+     * Close the devices, stop the device notifications and shut down the notification thread.
+     * Typically called when the application no longer needs midi input; setHardwareMidiManager
+     * must be called again before further use.
+     */
+    public static synchronized void releaseHardwareMidiManager()
+    {
+        unregisterDeviceCallbackForwarder();
+        mDeviceRegistryLive = false;
+        mDeviceRegistry.clear();
+        mUmpDeviceRegistry.clear();
+        mDeviceCallback = null;
+        mReconnector.detach();
+        if (mAppMidiSupport != null) {
+            mAppMidiSupport.closeReceiveDevice();
+        }
+        if (mInputDeviceGroup != null) {
+            mInputDeviceGroup.closeAll();
+        }
+        if (mDeviceOpener != null) {
+            mDeviceOpener.quit();
+            mDeviceOpener = null;
+        }
+        if (mDeviceExecutor != null) {
+            mDeviceExecutor.shutdownNow();
+            mDeviceExecutor = null;
+        }
+    }
+
     /** Set device notification for new or lost connections of
-     * hardware midi devices
+     * hardware midi devices. The callback is invoked on a thread owned by hardwareMidiManager; it
+     * replaces the callback set previously, if any.
      * @param theCallback Object that will receive the callback when devices are added or removed. This
      *                    object must implement the MidiManager.DeviceCallback interface. An simple example
-     *                    of a suitable class for this is provided as baseAeolusMidiActivity.MidiDeviceCallback
+     *                    of a suitable class for this is provided as baseAeolusMidiActivity.MidiDeviceCallback.
+     *                    Can be null to stop the notifications.
      */
 
-    public static void setHardwareMidiDeviceCallback(MidiManager.DeviceCallback theCallback)
+    public static synchronized void setHardwareMidiDeviceCallback(MidiManager.DeviceCallback theCallback)
     {
-        mMidiManager.registerDeviceCallback(TRANSPORT_MIDI_BYTE_STREAM, Executors.newSingleThreadExecutor(),theCallback);
+        mDeviceCallback = theCallback;
+        if (theCallback != null) {
+            registerDeviceCallbackForwarder();
+        }
+
+    }
 
+    /**
+     * Reopen the device opened with hardwareMidiOpenReceiveDevice when it is plugged in again after
+     * having been unplugged. A removed device is closed in any case.
+     * @param enabled true to reconnect automatically
+     */
+    public static synchronized void setAutoReconnect(boolean enabled)
+    {
+        mReconnector.setEnabled(enabled);
+        if (enabled) {
+            registerDeviceCallbackForwarder();
+        }
+    }
+
+    /**
+     * Configure how often and how fast a reappeared device is retried when it cannot be opened,
+     * see MidiDeviceReconnector.setBackoff
+     * @param initialMillis delay before the first retry
+     * @param maxMillis upper bound of the delay, which doubles with each retry
+     * @param maxAttempts attempts before giving up until the device appears again
+     */
+    public static void setReconnectBackoff(long initialMillis, long maxMillis, int maxAttempts)
+    {
+        mReconnector.setBackoff(initialMillis, maxMillis, maxAttempts);
+    }
+
+    /**
+     * Reconnection statistics: attempts made, devices reopened, and the time taken by the last
+     * reconnection
+     * @return the reconnector
+     */
+    public static MidiDeviceReconnector getReconnector()
+    {
+        return mReconnector;
+    }
+
+    private static ScheduledExecutorService getDeviceExecutor()
+    {
+        if (mDeviceExecutor == null) {
+            mDeviceExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hardwareMidiDevices");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mDeviceExecutor;
+    }
+
+    private static void registerDeviceCallbackForwarder()
+    {
+        if (!mDeviceCallbackRegistered) {
+            mMidiManager.registerDeviceCallback(TRANSPORT_MIDI_BYTE_STREAM, getDeviceExecutor(), mDeviceCallbackForwarder);
+            mMidiManager.registerDeviceCallback(TRANSPORT_UNIVERSAL_MIDI_PACKETS, getDeviceExecutor(),
+                    mUmpDeviceCallbackForwarder);
+            mDeviceCallbackRegistered = true;
+        }
+    }
+
+    private static void unregisterDeviceCallbackForwarder()
+    {
+        if (mDeviceCallbackRegistered) {
+            mMidiManager.unregisterDeviceCallback(mDeviceCallbackForwarder);
+            mMidiManager.unregisterDeviceCallback(mUmpDeviceCallbackForwarder);
+            mDeviceCallbackRegistered = false;
+        }
     }
 
     /**
@@ -126,23 +477,115 @@ public class hardwareMidiManager {
      * has been selected for input by the user and we should start listening to it.
      * Calling this function will open the the selected hardware midi device for receiving midimessages
      * within the native code; technically, this happens through the corresponding method invocations
-     * on the mAppMidiSupport object.
+     * on the mAppMidiSupport object. The previously opened device, if any, is closed first.
      * @param device The midi hardware device to be opened.
      */
 
     public static void hardwareMidiOpenReceiveDevice(MidiDeviceInfo device)
     {
+        mAppMidiSupport.closeReceiveDevice();
         mAppMidiSupport.openReceiveDevice(device);
+        mReconnector.onOpenRequested(device);
+    }
+
+    /**
+     * Open a hardware midi device for receiving in the native tier, like hardwareMidiOpenReceiveDevice,
+     * and report when reception has begun. The device is opened on a dedicated thread rather than
+     * on the main looper.
+     * @param device The midi hardware device to be opened
+     * @param timeoutMillis time allowed for opening the device, 0 for no limit
+     * @return future completed once the native reading thread is running; its time to the first
+     * message can then be read with getReceiveDeviceTimeToFirstMessageNanos
+     */
+    public static CompletableFuture<MidiDevice> hardwareMidiOpenReceiveDeviceAsync(MidiDeviceInfo device,
+                                                                                  long timeoutMillis)
+    {
+        mAppMidiSupport.closeReceiveDevice();
+        CompletableFuture<MidiDevice> started = mAppMidiSupport.openReceiveDeviceAsync(device, timeoutMillis);
+        mReconnector.onOpenRequested(device);
+        return started;
+    }
+
+    /**
+     * Time from the request to open the receive device to its first message
+     * @return the time in nanoseconds, or -1 if nothing has been received since the last opening
+     */
+    public static long getReceiveDeviceTimeToFirstMessageNanos()
+    {
+        return mAppMidiSupport.getTimeToFirstMessageNanos();
     }
 
     /**
-     * Scan the hardware midi devices for devices from which we can receive midi data. Populate
-     * the list of midi devices (mReceiveDevices) with this data.
+     * Close the hardware midi device opened with hardwareMidiOpenReceiveDevice
      */
+    public static void hardwareMidiCloseReceiveDevice()
+    {
+        mReconnector.onCloseRequested();
+        mAppMidiSupport.closeReceiveDevice();
+    }
 
-    public static void scanhardwareMidiDevices()
+    /**
+     * Open a hardware midi device port for reception in addition to the devices already open.
+     * The device is read through the Java midi API; its events are tagged with a source index and
+     * merged with those of the other devices, see getInputDeviceGroup().
+     * @param device The midi hardware device to be opened
+     * @param portNumber The output port of the device to receive from, typically 0
+     */
+    public static void hardwareMidiOpenInputDevice(MidiDeviceInfo device, int portNumber)
     {
-        mAppMidiSupport.ScanMidiDevices(mReceiveDevices);
+        mInputDeviceGroup.open(device, portNumber);
+    }
+
+    /**
+     * Open several hardware midi devices for simultaneous reception in parallel, with a timeout,
+     * see MidiInputDeviceGroup.openAllAsync. The time to the first message of each device is
+     * available from its HardwareMidiInputPort.
+     * @param devices The midi hardware devices to be opened
+     * @param portNumber The output port of the devices to receive from, typically 0
+     * @param timeoutMillis time allowed for opening each device, 0 for no limit
+     * @return future completed with the ports once all devices are open or have failed (null entries)
+     */
+    public static CompletableFuture<List<HardwareMidiInputPort>> hardwareMidiOpenInputDevicesAsync(
+            List<MidiDeviceInfo> devices, int portNumber, long timeoutMillis)
+    {
+        return mInputDeviceGroup.openAllAsync(devices, portNumber, timeoutMillis);
+    }
+
+    /**
+     * Stop receiving from a device opened with hardwareMidiOpenInputDevice, without affecting
+     * the other devices
+     * @param device The midi hardware device to be closed
+     */
+    public static void hardwareMidiCloseInputDevice(MidiDeviceInfo device)
+    {
+        mInputDeviceGroup.close(device);
+    }
+
+    /**
+     * The devices opened with hardwareMidiOpenInputDevice. Its merger delivers their events in
+     * timestamp order, and getSourceDevice maps the source index of an event to its device.
+     * @return the device group
+     */
+    public static MidiInputDeviceGroup getInputDeviceGroup()
+    {
+        return mInputDeviceGroup;
+    }
+
+    /**
+     * Scan the hardware midi devices for devices from which we can receive midi data, see
+     * availableReceiveDevices. Only the first call queries the android midi manager; afterwards,
+     * the device registry follows the device notifications and this call costs nothing.
+     */
+
+    public static synchronized void scanhardwareMidiDevices()
+    {
+        if (!mDeviceRegistryLive) {
+            // follow the notifications first, so that no change is missed while querying
+            registerDeviceCallbackForwarder();
+            mDeviceRegistry.synchronize(mMidiManager);
+            mUmpDeviceRegistry.synchronize(mMidiManager, TRANSPORT_UNIVERSAL_MIDI_PACKETS);
+            mDeviceRegistryLive = true;
+        }
     }
 
 
@@ -156,6 +599,121 @@ public class hardwareMidiManager {
         mAppMidiSupport.setMessageReceiver(receiver);
     }
 
+    /** Queue the incoming short midi messages (all but system exclusive) into a lock-free
+     * queue instead of transmitting them to the message receiver. The audio render thread can then
+     * drain the queue once per render block, without locking.
+     * @param ring The queue, or null to transmit to the message receiver again
+     */
+    public static void setEventRing(MidiEventRing ring)
+    {
+        mAppMidiSupport.setEventRing(ring);
+    }
+
+    /**
+     * Queue the incoming short midi messages into priority lanes instead of a single queue, so
+     * that notes and real-time messages overtake controller floods when drained
+     * @param lanes The lanes, or null to transmit to the queue or message receiver again
+     */
+    public static void setPriorityLanes(MidiPriorityLanes lanes)
+    {
+        mAppMidiSupport.setPriorityLanes(lanes);
+    }
+
+    /**
+     * Bus to which consumers can subscribe for the hardware midi messages received by the native
+     * tier, filtered by channel and message type. Subscribers are called on the native reading
+     * thread, in addition to the message receiver or queue. To distribute the events of the devices
+     * opened with hardwareMidiOpenInputDevice, drain getInputDeviceGroup().getMerger() into the bus.
+     * @return the bus
+     */
+    public static MidiDispatchBus getDispatchBus()
+    {
+        return mDispatchBus;
+    }
+
+    /**
+     * Create a pipeline delivering to the message receiver and bus of the native tier, e.g. to play
+     * a Standard MIDI File to the receivers of live hardware input with a MidiFilePlayer, which
+     * sends note offs for the notes still sounding when playback is stopped or rewound.
+     * @return the pipeline, tagging its events with source index 0 like the native tier
+     */
+    public static MidiInputPipeline newPlaybackPipeline()
+    {
+        return mAppMidiSupport.newPlaybackPipeline(0);
+    }
+
+    /**
+     * Record the hardware midi messages, of the native tier (stream RECORDER_STREAM_NATIVE) and of
+     * the input device group (stream RECORDER_STREAM_INPUT_DEVICES), as received (before
+     * transformation). The recorder is kept when setHardwareMidiManager is called again.
+     * @param recorder the recorder, or null to stop recording
+     */
+    public static synchronized void setInputRecorder(MidiInputRecorder recorder)
+    {
+        mInputRecorder = recorder;
+        if (mAppMidiSupport != null) {
+            mAppMidiSupport.setRecorder(recorder, RECORDER_STREAM_NATIVE);
+        }
+        if (mInputDeviceGroup != null) {
+            mInputDeviceGroup.setRecorder(recorder, RECORDER_STREAM_INPUT_DEVICES);
+        }
+    }
+
+    /**
+     * Have the packets of the Universal MIDI Packet devices opened with hardwareMidiOpenInputDevice
+     * passed on unchanged, at full resolution (32 bit controllers, 16 bit velocities, per-note
+     * pitch), instead of converted into MIDI 1.0 messages for the merged stream. The receiver is
+     * called on the receiving thread of each device, and is kept when setHardwareMidiManager is
+     * called again.
+     * @param listener the receiver, or null to convert the packets
+     */
+    public static synchronized void setUmpOutput(midiUmpListener listener)
+    {
+        mUmpOutput = listener;
+        if (mInputDeviceGroup != null) {
+            mInputDeviceGroup.setUmpOutput(listener);
+        }
+    }
+
+    /**
+     * Have the system exclusive messages of the native tier and of the devices opened with
+     * hardwareMidiOpenInputDevice gathered into buffers of a bounded pool, so that bulk dumps take
+     * a fixed amount of memory and are not copied per chunk; when the pool is exhausted, messages
+     * are dropped and counted rather than stalling the note traffic (see MidiSysExAssembler). The
+     * listener is called on the receiving threads, and is kept when setHardwareMidiManager is
+     * called again.
+     * @param listener receiver of the buffers, or null to transmit system exclusive messages as before
+     * @param pool pool shared by all inputs, ignored if listener is null
+     */
+    public static synchronized void setSysExListener(midiSysExListener listener, MidiSysExBufferPool pool)
+    {
+        mSysExListener = listener;
+        mSysExPool = pool;
+        if (mAppMidiSupport != null) {
+            mAppMidiSupport.setSysExAssembler(newSysExAssembler(0));
+        }
+        if (mInputDeviceGroup != null) {
+            mInputDeviceGroup.setSysExListener(listener, pool);
+        }
+    }
+
+    private static MidiSysExAssembler newSysExAssembler(int source)
+    {
+        midiSysExListener listener = mSysExListener;
+        return listener == null ? null : new MidiSysExAssembler(mSysExPool, listener, source);
+    }
+
+    /**
+     * Apply channel remapping, transposition, splits and velocity curves to the hardware midi
+     * messages received by the native tier. The configuration is compiled once into lookup tables
+     * and swapped in atomically, so it can be changed while playing.
+     * @param config the configuration, or null to pass messages unchanged
+     */
+    public static void setTransformConfig(MidiTransformConfig config)
+    {
+        mAppMidiSupport.setTransformConfig(config);
+    }
+
     /**
      * Init the native midireception tier (here, connected to the Aeolus synthesizer)
      */
@@ -182,6 +740,26 @@ public class hardwareMidiManager {
         return mAppMidiSupport.isMidiNativeSetupHandlerSet();
     }
 
+    /**
+     * Offer batched delivery of the received data to native implementations of
+     * hardwareMidiBatchedNativeSetup (the default): one JNI call per batch of messages, written to
+     * a direct buffer, instead of one call and one array per message. Takes effect when the next
+     * device is opened.
+     * @param enabled false to have the data delivered per message
+     */
+    public static void setNativeBatchedDelivery(boolean enabled)
+    {
+        mAppMidiSupport.setBatchedDeliveryEnabled(enabled);
+    }
+
+    /**
+     * @return True if the native implementation delivers the data of the open device in batches
+     */
+    public static boolean isNativeBatchedDelivery()
+    {
+        return mAppMidiSupport.isBatchedDelivery();
+    }
+
 
     public static hardwareMidiNativeReceiver getDefaultMidiMessageReceiver() {
         return mAppMidiSupport;
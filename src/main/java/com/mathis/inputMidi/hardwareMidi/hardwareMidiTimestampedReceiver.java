@@ -0,0 +1,36 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi;
+
+import com.mathis.midiBase.hardwareMidiNativeReceiver;
+
+/**
+ * Extension of hardwareMidiNativeReceiver for receivers that want to know when a hardware midi
+ * message was received. If the object passed to hardwareMidiManager.setMessageReceiver
+ * implements this interface, the timestamped variant is called instead of the plain one.
+ */
+public interface hardwareMidiTimestampedReceiver extends hardwareMidiNativeReceiver {
+    /**
+     * @param message a complete midi message
+     * @param timestamp reception time of the message (based on {@link java.lang.System#nanoTime}):
+     *                  the timestamp provided by the native tier if it provides one, otherwise the
+     *                  time of arrival in Java
+     */
+    void onNativeMessageReceive(final byte[] message, long timestamp);
+}
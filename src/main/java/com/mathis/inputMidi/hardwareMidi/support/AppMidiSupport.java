@@ -27,15 +27,40 @@ import android.media.midi.MidiDeviceInfo;
 import android.media.midi.MidiManager;
 import android.util.Log;
 
+import com.mathis.inputMidi.MidiDispatchBus;
+import com.mathis.inputMidi.MidiEvent;
+import com.mathis.inputMidi.MidiEventBatch;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiInputRecorder;
+import com.mathis.inputMidi.MidiLatencyMonitor;
+import com.mathis.inputMidi.MidiMessageBatch;
+import com.mathis.inputMidi.MidiNoteTracker;
+import com.mathis.inputMidi.MidiPriorityLanes;
+import com.mathis.inputMidi.MidiSourceMetrics;
+import com.mathis.inputMidi.MidiSysExAssembler;
+import com.mathis.inputMidi.MidiTransform;
+import com.mathis.inputMidi.MidiTransformConfig;
+import com.mathis.inputMidi.midiByteReceiver;
+import com.mathis.inputMidi.midiEventBatchHandler;
+import com.mathis.inputMidi.midiStreamListener;
+import com.mathis.inputMidi.hardwareMidi.hardwareMidiBatchReceiver;
+import com.mathis.inputMidi.hardwareMidi.hardwareMidiBatchedNativeSetup;
+import com.mathis.inputMidi.hardwareMidi.hardwareMidiTimestampedReceiver;
 import com.mathis.midiBase.hardwareMidiNativeReceiver;
 import com.mathis.midiBase.hardwareMidiNativeSetup;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Primary class to handle interaction with physical midi devices. Here restricted to receiving
- * midi messages from a single hardware midi source.
+ * midi messages from a single hardware midi source, read through the native tier; to receive from
+ * several devices at once, use MidiInputDeviceGroup.
  * This is derived from <a href="https://github.com/android/ndk-samples/blob/main/native-midi/app/src/main/java/com/example/nativemidi/AppMidiManager.java">native-midi example</a>
  * Please check out the original file if you are looking for generic midi functionality, this has been
  * restricted to what is needed in this particular project
@@ -56,12 +81,60 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
     /**
      * Selected hardware midi device from which we are receiving midi messages
      */
-    private MidiDevice mReceiveDevice; // an "Output" device is one we will RECEIVE data FROM
+    private volatile MidiDevice mReceiveDevice; // an "Output" device is one we will RECEIVE data FROM
 
     /**
-     * Configurable object which to which the incoming midi messages will be transmitted
+     * Counts the open and close requests, to discard devices whose opening completes too late
      */
-    private hardwareMidiNativeReceiver mMessageReceiver=null;
+    private final AtomicInteger mOpenRequest = new AtomicInteger();
+
+    /**
+     * Opens the devices on a dedicated thread
+     */
+    private final MidiDeviceOpener mOpener;
+
+    /**
+     * Time of the open request of the current device, and whether its first message is still awaited
+     */
+    private volatile long mOpenRequestNanos = 0;
+    private volatile boolean mAwaitingFirstMessage = false;
+
+    private volatile long mOpenLatencyNanos = -1;
+    private volatile long mTimeToFirstMessageNanos = -1;
+
+    /**
+     * Parsing, transformation, note tracking and instrumentation of the natively received data.
+     * Its output is a NativeMessageSplitter holding the hardwareMidiNativeReceiver object to which
+     * the incoming midi messages are transmitted; the receiver object is thereby part of the routing
+     * of the pipeline, published atomically.
+     */
+    private final MidiInputPipeline mPipeline = new MidiInputPipeline(0, "native");
+
+    /**
+     * Array currently being parsed on the native reading thread, null for synthesized events and
+     * batched delivery
+     */
+    private byte[] mCurrentMessage = null;
+
+    /**
+     * Whether batched delivery is offered to native implementations supporting it
+     */
+    private volatile boolean mBatchedDeliveryEnabled = true;
+
+    /**
+     * Buffer shared with the native reading thread in batched mode, created when first needed
+     */
+    private MidiMessageBatch mBatch = null;
+
+    /**
+     * Whether the current reading thread delivers in batches
+     */
+    private volatile boolean mBatchedDelivery = false;
+
+    /**
+     * Feeds the records of a batch into the pipeline
+     */
+    private final midiByteReceiver mBatchReceiver = mPipeline::receive;
 
 
     /** Constructor
@@ -70,7 +143,17 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
      *                    (MidiManager) getSystemService(Context.MIDI_SERVICE)
      */
     public AppMidiSupport(MidiManager midiManager) {
+        this(midiManager, new MidiDeviceOpener(midiManager));
+    }
+
+    /** Constructor
+     *
+     * @param midiManager Android MidiManger
+     * @param opener Opener of the devices, possibly shared with other users of the midi manager
+     */
+    public AppMidiSupport(MidiManager midiManager, MidiDeviceOpener opener) {
         mMidiManager = midiManager;
+        mOpener = opener;
     }
 
     /**
@@ -102,7 +185,138 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
      * @param receiver hardwareMidiNativeReceiver object
      */
     public void setMessageReceiver(hardwareMidiNativeReceiver receiver) {
-        mMessageReceiver=receiver;
+        NativeMessageSplitter output = receiver == null ? null : new NativeMessageSplitter(receiver);
+        midiEventBatchHandler batchOutput = receiver instanceof hardwareMidiBatchReceiver ? output : null;
+        mPipeline.updateRouting(routing -> routing.withOutputs(output, batchOutput));
+    }
+
+    /**
+     * @return The hardwareMidiNativeReceiver object set with setMessageReceiver, or null
+     */
+    public hardwareMidiNativeReceiver getMessageReceiver() {
+        midiStreamListener output = mPipeline.getOutput();
+        return output instanceof NativeMessageSplitter ? ((NativeMessageSplitter) output).mReceiver : null;
+    }
+
+    /**
+     * Set a queue to which short messages (everything but system exclusive) will be transmitted
+     * instead of the hardwareMidiNativeReceiver object. The queue is filled from the native
+     * reading thread and can be drained by the audio render thread without locking.
+     * @param ring The queue, or null to transmit short messages to the receiver object again
+     */
+    public void setEventRing(MidiEventRing ring) {
+        mPipeline.setEventRing(ring);
+    }
+
+    /**
+     * Set priority lanes to which short messages will be transmitted instead of the queue or
+     * receiver object, so that notes and real-time messages overtake controller floods when drained
+     * @param lanes The lanes, or null to transmit short messages to the queue or receiver object again
+     */
+    public void setPriorityLanes(MidiPriorityLanes lanes) {
+        mPipeline.setPriorityLanes(lanes);
+    }
+
+    /**
+     * Set a bus to which all messages will be transmitted, in addition to the receiver object or queue
+     * @param bus The bus, or null
+     */
+    public void setDispatchBus(MidiDispatchBus bus) {
+        mPipeline.setDispatchBus(bus);
+    }
+
+    /**
+     * Create a pipeline delivering to the same receiver object and bus as the native tier, to feed
+     * messages from another origin, e.g. a MidiFilePlayer, to the receivers of live input. Short
+     * messages go to the receiver object even if a queue is set, as the queue only takes a single
+     * producer.
+     * @param source source index packed into the events, 0-255
+     * @return the pipeline; to be fed from a single thread
+     */
+    public MidiInputPipeline newPlaybackPipeline(int source) {
+        MidiInputPipeline pipeline = new MidiInputPipeline(source, "playback" + source);
+        pipeline.setOutput(new PlaybackForwarder());
+        pipeline.setDispatchBus(mPipeline.getDispatchBus());
+        return pipeline;
+    }
+
+    /**
+     * Have the natively received system exclusive messages gathered into pooled buffers and
+     * transmitted to the listener of the assembler, instead of copied chunk by chunk to the
+     * receiver object
+     * @param assembler the assembler, or null to transmit them to the receiver object again
+     */
+    public void setSysExAssembler(MidiSysExAssembler assembler) {
+        mPipeline.setSysExAssembler(assembler);
+    }
+
+    /**
+     * Record the natively received messages
+     * @param recorder the recorder, or null to stop recording
+     * @param stream index of this input in the recording, see MidiInputPipeline.setRecorder
+     */
+    public void setRecorder(MidiInputRecorder recorder, int stream) {
+        mPipeline.setRecorder(recorder, stream);
+    }
+
+    /**
+     * Apply channel remapping, transposition, splits and velocity curves to the short messages
+     * before they are transmitted. The transform can be swapped at any time without interrupting
+     * reception.
+     * @param transform the compiled transform, or null to pass messages unchanged
+     */
+    public void setTransform(MidiTransform transform) {
+        mPipeline.setTransform(transform);
+    }
+
+    /**
+     * Compile and apply a transformation configuration, see setTransform
+     * @param config the configuration, or null to pass messages unchanged
+     */
+    public void setTransformConfig(MidiTransformConfig config) {
+        mPipeline.setTransformConfig(config);
+    }
+
+    /**
+     * @return The transform applied to the short messages, or null
+     */
+    public MidiTransform getTransform() {
+        return mPipeline.getTransform();
+    }
+
+    /**
+     * The processing of the natively received data, whose routing holds the receiver object,
+     * queue, bus, transform and recorder
+     * @return the pipeline
+     */
+    public MidiInputPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Notes currently held on the natively received device, as transmitted (after transformation)
+     * @return the note tracker; to be queried from the native reading thread
+     */
+    public MidiNoteTracker getNoteTracker() {
+        return mPipeline.getNoteTracker();
+    }
+
+    /**
+     * Delivery latency and jitter of the natively received data. The latency is only meaningful for
+     * native implementations passing on the receive timestamp, see onNativeMessageReceive(byte[], long);
+     * otherwise, the data is stamped on arrival.
+     * @return the latency monitor
+     */
+    public MidiLatencyMonitor getLatencyMonitor() {
+        return mPipeline.getLatencyMonitor();
+    }
+
+    /**
+     * Message rates and drops of the natively received data
+     * @return the counters
+     */
+    public MidiSourceMetrics getMetrics() {
+        return mPipeline.getMetrics();
     }
 
     public void setMidiNativeSetupHandler(hardwareMidiNativeSetup setupHandler) {
@@ -122,11 +336,58 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
      * reading thread.
      */
     public class OpenMidiReceiveDeviceListener implements MidiManager.OnDeviceOpenedListener {
+        /**
+         * Open request this listener belongs to; the device is discarded if superseded meanwhile
+         */
+        private final int mRequest;
+
+        /**
+         * Time of the open request
+         */
+        private final long mRequestNanos;
+
+        /**
+         * Completed once reading has started
+         */
+        private final CompletableFuture<MidiDevice> mStarted = new CompletableFuture<MidiDevice>();
+
+        public OpenMidiReceiveDeviceListener() {
+            this(mOpenRequest.get(), System.nanoTime());
+        }
+
+        OpenMidiReceiveDeviceListener(int request, long requestNanos) {
+            mRequest = request;
+            mRequestNanos = requestNanos;
+        }
+
         @Override
         public void onDeviceOpened(MidiDevice device) {
+            if (device == null) {
+                fail(new IOException("could not open device"));
+                return;
+            }
+            if (mRequest != mOpenRequest.get()) {
+                // closed or another device requested while opening
+                MidiDeviceOpener.closeQuietly(device);
+                mStarted.completeExceptionally(new CancellationException("superseded"));
+                return;
+            }
             mReceiveDevice = device;
             Log.i("AppMidiSupport","start reading midi");
+            mOpenRequestNanos = mRequestNanos;
+            mAwaitingFirstMessage = true;
             startReadingMidi(mReceiveDevice, 0/*mPortNumber*/);
+            mOpenLatencyNanos = System.nanoTime() - mRequestNanos;
+            mStarted.complete(device);
+        }
+
+        void fail(Throwable error) {
+            Log.w("AppMidiSupport", "could not open device", error);
+            mStarted.completeExceptionally(error);
+        }
+
+        public CompletableFuture<MidiDevice> getFuture() {
+            return mStarted;
         }
     }
 
@@ -137,16 +398,65 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
      *                to listen
      */
     public void openReceiveDevice(MidiDeviceInfo devInfo) {
-        mMidiManager.openDevice(devInfo, new OpenMidiReceiveDeviceListener(), null);
+        openReceiveDeviceAsync(devInfo, MidiDeviceOpener.DEFAULT_OPEN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Open a midi device for listening to it. The device is opened on the handler thread of the
+     * MidiDeviceOpener, not on the main looper. If closeReceiveDevice or openReceiveDevice is
+     * called again before the device is opened, it is closed right away and the future is cancelled.
+     * @param devInfo the hardware midi device to which we want to listen
+     * @param timeoutMillis time allowed for opening the device, 0 for no limit
+     * @return future completed with the device once the native reading thread has been started
+     */
+    public CompletableFuture<MidiDevice> openReceiveDeviceAsync(MidiDeviceInfo devInfo, long timeoutMillis) {
+        final OpenMidiReceiveDeviceListener listener =
+                new OpenMidiReceiveDeviceListener(mOpenRequest.incrementAndGet(), System.nanoTime());
+        mOpener.open(devInfo, timeoutMillis).whenComplete((device, error) -> {
+            if (error != null) {
+                listener.fail(error);
+            } else {
+                listener.onDeviceOpened(device);
+            }
+        });
+        return listener.getFuture();
     }
 
     /**
-     *  Unset the mReceiveDevice to indicate it is not active anymore.
+     * Time from the last successful open request to the start of the native reading thread
+     * @return the time in nanoseconds, or -1 if no device has been opened yet
+     */
+    public long getOpenLatencyNanos() {
+        return mOpenLatencyNanos;
+    }
+
+    /**
+     * Time from the last successful open request to the first message received from the device
+     * @return the time in nanoseconds, or -1 if nothing has been received yet since
+     */
+    public long getTimeToFirstMessageNanos() {
+        return mTimeToFirstMessageNanos;
+    }
+
+    /**
+     *  Stop the native reading thread and close mReceiveDevice, if a device is open
      */
     public void closeReceiveDevice() {
-        if (mReceiveDevice != null) {
-            // Native API
+        mOpenRequest.incrementAndGet();
+        MidiDevice device = mReceiveDevice;
+        if (device != null) {
             mReceiveDevice = null;
+            if (mSetupHandler != null) {
+                stopReadingMidi();
+            }
+            try {
+                device.close();
+            } catch (IOException e) {
+                Log.w("AppMidiSupport", "could not close device", e);
+            }
+            // the reading thread is stopped: release what the device left on
+            mPipeline.releaseAll(System.nanoTime());
+            mPipeline.reset();
         }
     }
 
@@ -172,9 +482,36 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
      * @param portNumber Possiblity to set a specific port, by default, provide 0
      */
     public void startReadingMidi(MidiDevice receiveDevice, int portNumber){
+        mBatchedDelivery = false;
+        if (mBatchedDeliveryEnabled && mSetupHandler instanceof hardwareMidiBatchedNativeSetup) {
+            if (mBatch == null) {
+                mBatch = new MidiMessageBatch();
+            }
+            if (((hardwareMidiBatchedNativeSetup) mSetupHandler).startBatchedReadingMidi(
+                    receiveDevice, portNumber, mBatch.getBuffer())) {
+                mBatchedDelivery = true;
+                return;
+            }
+        }
         mSetupHandler.startReadingMidi(receiveDevice,portNumber);
     }
 
+    /**
+     * Offer batched delivery to native implementations supporting it (the default), see
+     * hardwareMidiBatchedNativeSetup. Takes effect when reading starts for the next device.
+     * @param enabled false to have the data delivered per message
+     */
+    public void setBatchedDeliveryEnabled(boolean enabled) {
+        mBatchedDeliveryEnabled = enabled;
+    }
+
+    /**
+     * @return True if the native implementation accepted batched delivery for the device being read
+     */
+    public boolean isBatchedDelivery() {
+        return mBatchedDelivery;
+    }
+
     /*
     * Stop the native midi reading thread
      */
@@ -184,14 +521,139 @@ public class AppMidiSupport implements hardwareMidiNativeReceiver {
     }
 
     /**
-     * callback notified when a midi message is received by the native tier
-     * @param message
+     * callback notified by the native tier in batched mode, on its reading thread, when a batch of
+     * data has been written to the shared buffer (see MidiMessageBatch). The records are decoded
+     * from the buffer and processed like messages delivered one by one, before returning.
+     * @param messageCount number of records written
+     * @param byteCount number of bytes written
+     */
+    public void onNativeBatchReceive(int messageCount, int byteCount) {
+        MidiMessageBatch batch = mBatch;
+        if (batch == null || messageCount <= 0) {
+            return;
+        }
+        if (mAwaitingFirstMessage) {
+            mAwaitingFirstMessage = false;
+            mTimeToFirstMessageNanos = System.nanoTime() - mOpenRequestNanos;
+        }
+        mCurrentMessage = null;
+        batch.decode(byteCount, mBatchReceiver);
+    }
+
+    /**
+     * callback notified when a midi message is received by the native tier. The data is run
+     * through a MidiStreamParser, so that the receiver gets exactly one complete message per call
+     * even if the native tier delivers several messages at once, uses running status, or splits
+     * system exclusive messages. As the native tier provides no timestamp here, the messages are
+     * stamped with their time of arrival.
+     * @param message the midi data received
      */
     public void onNativeMessageReceive(final byte[] message) {
-        if(mMessageReceiver != null) {
-            mMessageReceiver.onNativeMessageReceive(message);
+        onNativeMessageReceive(message, System.nanoTime());
+    }
+
+    /**
+     * callback notified when a midi message is received by the native tier, for native
+     * implementations that pass on the timestamp obtained from AMidiOutputPort_receive
+     * (CLOCK_MONOTONIC, the same time base as {@link java.lang.System#nanoTime})
+     * @param message the midi data received
+     * @param timestamp timestamp of the data in nanoseconds
+     */
+    public void onNativeMessageReceive(final byte[] message, long timestamp) {
+        if (mAwaitingFirstMessage) {
+            mAwaitingFirstMessage = false;
+            mTimeToFirstMessageNanos = System.nanoTime() - mOpenRequestNanos;
+        }
+        if(message != null && message.length > 0) {
+            mCurrentMessage = message;
+            mPipeline.receive(message, 0, message.length, timestamp);
+            mCurrentMessage = null;
+        }
+    }
+
+    /**
+     * Hands the parsed messages over to a receiver object. When the natively received array holds
+     * exactly one message, as is usually the case, it is passed on unchanged; otherwise, each
+     * message is copied into an array of its own. Receivers implementing
+     * hardwareMidiTimestampedReceiver also get the timestamp, receivers implementing
+     * hardwareMidiBatchReceiver get the short messages of each packet at once.
+     */
+    private class NativeMessageSplitter implements midiStreamListener, midiEventBatchHandler {
+        /**
+         * The receiver object
+         */
+        final hardwareMidiNativeReceiver mReceiver;
+
+        NativeMessageSplitter(hardwareMidiNativeReceiver receiver) {
+            mReceiver = receiver;
+        }
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            byte[] current = mCurrentMessage;
+            int length = MidiEvent.getLength(event);
+            if (current != null && current.length == length
+                    && (current[0] & 0xFF) == MidiEvent.getStatus(event)
+                    && (length < 2 || current[1] == MidiEvent.getData1(event))
+                    && (length < 3 || current[2] == MidiEvent.getData2(event))) {
+                deliver(mReceiver, current, timestamp);
+                return;
+            }
+            deliverCopy(mReceiver, event, timestamp);
+        }
+
+        @Override
+        public void onMidiEventBatch(MidiEventBatch batch) {
+            ((hardwareMidiBatchReceiver) mReceiver).onNativeMessageBatch(batch);
         }
 
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            deliverCopy(mReceiver, data, offset, count, timestamp);
+        }
+    }
+
+    /**
+     * Output of playback pipelines: hands copies of the messages over to the receiver object
+     * currently set, on the playback thread
+     */
+    private class PlaybackForwarder implements midiStreamListener {
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            hardwareMidiNativeReceiver receiver = getMessageReceiver();
+            if (receiver != null) {
+                deliverCopy(receiver, event, timestamp);
+            }
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            hardwareMidiNativeReceiver receiver = getMessageReceiver();
+            if (receiver != null) {
+                deliverCopy(receiver, data, offset, count, timestamp);
+            }
+        }
+    }
+
+    private static void deliverCopy(hardwareMidiNativeReceiver receiver, int event, long timestamp) {
+        byte[] copy = new byte[MidiEvent.getLength(event)];
+        MidiEvent.toBytes(event, copy, 0);
+        deliver(receiver, copy, timestamp);
+    }
+
+    private static void deliverCopy(hardwareMidiNativeReceiver receiver, byte[] data, int offset, int count,
+                                    long timestamp) {
+        byte[] copy = new byte[count];
+        System.arraycopy(data, offset, copy, 0, count);
+        deliver(receiver, copy, timestamp);
+    }
+
+    private static void deliver(hardwareMidiNativeReceiver receiver, byte[] message, long timestamp) {
+        if (receiver instanceof hardwareMidiTimestampedReceiver) {
+            ((hardwareMidiTimestampedReceiver) receiver).onNativeMessageReceive(message, timestamp);
+        } else {
+            receiver.onNativeMessageReceive(message);
+        }
     }
 
 
@@ -0,0 +1,280 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import android.media.midi.MidiDevice;
+import android.media.midi.MidiDeviceInfo;
+import android.media.midi.MidiOutputPort;
+import android.media.midi.MidiReceiver;
+
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiInputRecorder;
+import com.mathis.inputMidi.MidiLatencyMonitor;
+import com.mathis.inputMidi.MidiNoteTracker;
+import com.mathis.inputMidi.MidiSourceMetrics;
+import com.mathis.inputMidi.MidiSysExAssembler;
+import com.mathis.inputMidi.MidiUmpAssembler;
+import com.mathis.inputMidi.midiStreamListener;
+import com.mathis.inputMidi.midiUmpListener;
+
+/**
+ * Receiving end of one output port of an open hardware midi device, read through the Java midi
+ * API (MidiOutputPort.connect) rather than the native tier. The received data is parsed, tagged
+ * with the source index of the port (see MidiEvent.getSource) and queued into a per-port
+ * MidiEventRing; MidiInputDeviceGroup merges the queues of all open ports. System exclusive
+ * messages are passed on to an optional listener, on the receiving thread of the port.<br />
+ * The notes received are tracked, so that note offs can be queued when the port is closed or
+ * a system reset is received. The release on closing holds the same lock as onSend, so that the
+ * queue keeps a single producer at a time even if data is still being delivered.<br />
+ * Devices sending Universal MIDI Packets (MIDI 2.0, see MidiDeviceInfo.getDefaultProtocol) are
+ * received as packets: they are converted into MIDI 1.0 messages for the queue, or passed on
+ * unchanged to a packet receiver if one is set (see setUmpOutput).
+ */
+public class HardwareMidiInputPort extends MidiReceiver {
+
+    /**
+     * Description of the device
+     */
+    private final MidiDeviceInfo mDeviceInfo;
+
+    /**
+     * The open device
+     */
+    private final MidiDevice mDevice;
+
+    /**
+     * The open output port of the device (an "Output" port is one we RECEIVE data FROM)
+     */
+    private final MidiOutputPort mOutputPort;
+
+    /**
+     * Port number on the device
+     */
+    private final int mPortNumber;
+
+    /**
+     * Source index packed into the events of this port
+     */
+    private final int mSource;
+
+    /**
+     * Queue of the events received on this port
+     */
+    private final MidiEventRing mRing;
+
+    /**
+     * Parsing, note tracking and instrumentation of the data of this port, queueing into mRing
+     */
+    private final MidiInputPipeline mPipeline;
+
+    /**
+     * Assembler of the packets of a Universal MIDI Packet device, null for byte stream devices
+     */
+    private final MidiUmpAssembler mUmpAssembler;
+
+    /**
+     * Held by onSend and releaseAll, so that they do not feed the pipeline at the same time;
+     * uncontended while the port is open
+     */
+    private final Object mReceiveLock = new Object();
+
+    /**
+     * Time at which opening of the port was requested (System.nanoTime)
+     */
+    private volatile long mOpenRequestNanos;
+
+    /**
+     * Time from the open request to the first received data, or -1 before that
+     */
+    private volatile long mTimeToFirstMessageNanos = -1;
+
+    /**
+     * Constructor
+     * @param deviceInfo Description of the device
+     * @param device The open device
+     * @param outputPort The open output port of the device
+     * @param portNumber Port number on the device
+     * @param source Source index packed into the events, 0-255
+     * @param ringCapacity Capacity of the event queue
+     */
+    public HardwareMidiInputPort(MidiDeviceInfo deviceInfo, MidiDevice device, MidiOutputPort outputPort,
+                                 int portNumber, int source, int ringCapacity)
+    {
+        mDeviceInfo = deviceInfo;
+        mDevice = device;
+        mOutputPort = outputPort;
+        mPortNumber = portNumber;
+        mSource = source;
+        mRing = new MidiEventRing(ringCapacity);
+        mPipeline = new MidiInputPipeline(source, "hardware" + source);
+        mPipeline.setEventRing(mRing);
+        mUmpAssembler = deviceInfo != null && deviceInfo.getDefaultProtocol() != MidiDeviceInfo.PROTOCOL_UNKNOWN
+                ? new MidiUmpAssembler(mPipeline) : null;
+        mOpenRequestNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onSend(byte[] msg, int offset, int count, long timestamp) {
+        if (mTimeToFirstMessageNanos < 0) {
+            mTimeToFirstMessageNanos = System.nanoTime() - mOpenRequestNanos;
+        }
+        synchronized (mReceiveLock) {
+            MidiUmpAssembler umpAssembler = mUmpAssembler;
+            if (umpAssembler != null) {
+                umpAssembler.onMidiBytes(msg, offset, count, timestamp);
+            } else {
+                mPipeline.receive(msg, offset, count, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Queue note offs for all notes still held, e.g. once the port is disconnected. Waits for an
+     * onSend still running on the receiving thread of the port.
+     * @param timestamp timestamp of the synthesized events
+     */
+    public void releaseAll(long timestamp)
+    {
+        synchronized (mReceiveLock) {
+            mPipeline.releaseAll(timestamp);
+        }
+    }
+
+    /**
+     * Set the receiver of system exclusive messages
+     * @param listener the receiver, or null to ignore system exclusive messages
+     */
+    public void setSysExListener(midiStreamListener listener)
+    {
+        // short messages all go to the queue, so the output only gets system exclusive messages
+        mPipeline.setOutput(listener);
+    }
+
+    /**
+     * Have the system exclusive messages gathered into pooled buffers and passed on to the
+     * listener of the assembler instead of the receiver set with setSysExListener
+     * @param assembler the assembler, with the source index of the port, or null
+     */
+    public void setSysExAssembler(MidiSysExAssembler assembler)
+    {
+        mPipeline.setSysExAssembler(assembler);
+    }
+
+    /**
+     * Set the receiver of the packets of a Universal MIDI Packet device, which then get to it
+     * unchanged, on the receiving thread of the port, instead of into the queue. Ignored for byte
+     * stream devices.
+     * @param listener the receiver, or null to convert the packets into MIDI 1.0 messages for the queue
+     */
+    public void setUmpOutput(midiUmpListener listener)
+    {
+        mPipeline.setUmpOutput(listener);
+    }
+
+    /**
+     * @return True if the device sends Universal MIDI Packets
+     */
+    public boolean isUmpDevice()
+    {
+        return mUmpAssembler != null;
+    }
+
+    /**
+     * Record the messages received on this port
+     * @param recorder the recorder, or null to stop recording
+     * @param stream index of the device group in the recording; the port is told apart by its source index
+     */
+    public void setRecorder(MidiInputRecorder recorder, int stream)
+    {
+        mPipeline.setRecorder(recorder, stream);
+    }
+
+    /**
+     * Set the time at which opening the port was requested, by default the time of construction.
+     * To be called before the port is connected.
+     * @param requestNanos the time, in System.nanoTime
+     */
+    public void setOpenRequestTime(long requestNanos)
+    {
+        mOpenRequestNanos = requestNanos;
+    }
+
+    /**
+     * Time from the request to open the port to the arrival of its first data
+     * @return the time in nanoseconds, or -1 if nothing has been received yet
+     */
+    public long getTimeToFirstMessageNanos()
+    {
+        return mTimeToFirstMessageNanos;
+    }
+
+    public MidiDeviceInfo getDeviceInfo()
+    {
+        return mDeviceInfo;
+    }
+
+    /**
+     * @return Id of the device (see MidiDeviceInfo.getId), -1 for a port without device description
+     */
+    public int getDeviceId()
+    {
+        return mDeviceInfo == null ? -1 : mDeviceInfo.getId();
+    }
+
+    public MidiDevice getDevice()
+    {
+        return mDevice;
+    }
+
+    public MidiOutputPort getOutputPort()
+    {
+        return mOutputPort;
+    }
+
+    public int getPortNumber()
+    {
+        return mPortNumber;
+    }
+
+    public int getSource()
+    {
+        return mSource;
+    }
+
+    public MidiNoteTracker getNoteTracker()
+    {
+        return mPipeline.getNoteTracker();
+    }
+
+    public MidiLatencyMonitor getLatencyMonitor()
+    {
+        return mPipeline.getLatencyMonitor();
+    }
+
+    public MidiSourceMetrics getMetrics()
+    {
+        return mPipeline.getMetrics();
+    }
+
+    public MidiEventRing getRing()
+    {
+        return mRing;
+    }
+}
@@ -0,0 +1,158 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import android.media.midi.MidiDevice;
+import android.media.midi.MidiDeviceInfo;
+import android.media.midi.MidiManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Opens midi devices asynchronously on a dedicated handler thread, rather than on the main looper,
+ * so that opening is not delayed by the user interface. Several devices can be opened in parallel:
+ * all requests are issued at once, and each completes independently.
+ */
+public class MidiDeviceOpener {
+
+    /**
+     * Timeout used when none is given
+     */
+    public static final long DEFAULT_OPEN_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The Android midi manager
+     */
+    private final MidiManager mMidiManager;
+
+    /**
+     * Thread on which the open notifications are delivered, started when first needed
+     */
+    private HandlerThread mThread = null;
+
+    private Handler mHandler = null;
+
+    /**
+     * Futures of the requests not completed yet, failed by quit
+     */
+    private final Set<CompletableFuture<MidiDevice>> mPending = new HashSet<>();
+
+    /** Constructor
+     *
+     * @param midiManager Android MidiManger
+     */
+    public MidiDeviceOpener(MidiManager midiManager)
+    {
+        mMidiManager = midiManager;
+    }
+
+    /**
+     * Open a device
+     * @param devInfo the device
+     * @param timeoutMillis time after which the future fails with a TimeoutException; a device
+     *                      opened later is closed right away. 0 to wait indefinitely.
+     * @return future completed on the handler thread with the open device, or failing with an
+     * IOException if it could not be opened
+     */
+    public CompletableFuture<MidiDevice> open(final MidiDeviceInfo devInfo, long timeoutMillis)
+    {
+        final CompletableFuture<MidiDevice> future = new CompletableFuture<MidiDevice>();
+        Handler handler;
+        synchronized (this) {
+            handler = getHandler();
+            mPending.add(future);
+        }
+        future.whenComplete((device, error) -> {
+            synchronized (MidiDeviceOpener.this) {
+                mPending.remove(future);
+            }
+        });
+        mMidiManager.openDevice(devInfo, new MidiManager.OnDeviceOpenedListener() {
+            @Override
+            public void onDeviceOpened(MidiDevice device) {
+                if (device == null) {
+                    future.completeExceptionally(new IOException("could not open device " + devInfo.getId()));
+                } else if (!future.complete(device)) {
+                    // timed out or cancelled meanwhile
+                    closeQuietly(device);
+                }
+            }
+        }, handler);
+        if (timeoutMillis > 0) {
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    future.completeExceptionally(new TimeoutException("opening device " + devInfo.getId()));
+                }
+            }, timeoutMillis);
+        }
+        return future;
+    }
+
+    /**
+     * Stop the handler thread. The futures of pending requests fail with a CancellationException.
+     */
+    public void quit()
+    {
+        List<CompletableFuture<MidiDevice>> pending;
+        synchronized (this) {
+            if (mThread != null) {
+                mThread.quitSafely();
+                mThread = null;
+                mHandler = null;
+            }
+            pending = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        // outside the lock: completion runs the dependent stages of the callers
+        for (CompletableFuture<MidiDevice> future : pending) {
+            future.completeExceptionally(new CancellationException("device opener stopped"));
+        }
+    }
+
+    private synchronized Handler getHandler()
+    {
+        if (mHandler == null) {
+            mThread = new HandlerThread("midiDeviceOpener", Process.THREAD_PRIORITY_FOREGROUND);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+        return mHandler;
+    }
+
+    static void closeQuietly(MidiDevice device)
+    {
+        try {
+            device.close();
+        } catch (IOException e) {
+            Log.w("MidiDeviceOpener", "could not close device", e);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import android.media.midi.MidiDevice;
+import android.media.midi.MidiDeviceInfo;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the device read by the native tier open across hot-plugs. The device opened through
+ * AppMidiSupport is remembered by identity (type, port counts, manufacturer, product, name and
+ * serial number), since Android assigns a new id each time a device is plugged in. When it is
+ * removed, the native reading is stopped; when a device with the same identity appears again and
+ * auto-reconnect is enabled, it is reopened, retrying with exponential backoff while opening fails.
+ * <br /><br />
+ * The device notifications must be passed on from the executor given to attach, which is also
+ * used for the retries: all the state is confined to that thread. The statistics can be read
+ * from any thread.
+ */
+public class MidiDeviceReconnector {
+
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+    private volatile AppMidiSupport mAppMidiSupport = null;
+    private volatile ScheduledExecutorService mExecutor = null;
+
+    private volatile boolean mEnabled = false;
+    private volatile long mInitialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private volatile long mMaxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private volatile int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Device the user wants open, or null. Replaced by the new device info after a reconnection
+     */
+    private MidiDeviceInfo mTarget = null;
+
+    /**
+     * Reappeared device being reopened
+     */
+    private MidiDeviceInfo mPending = null;
+
+    /**
+     * Whether mTarget has been removed and not reopened yet
+     */
+    private boolean mLost = false;
+
+    /**
+     * Attempts made on mPending so far
+     */
+    private int mAttempt = 0;
+
+    /**
+     * Incremented whenever the target changes, so that outcomes of older attempts are ignored
+     */
+    private int mGeneration = 0;
+
+    private long mLostNanos = 0;
+    private long mReappearedNanos = 0;
+    private ScheduledFuture<?> mScheduled = null;
+
+    private volatile int mAttemptCount = 0;
+    private volatile int mReconnectCount = 0;
+    private volatile int mGiveUpCount = 0;
+    private volatile long mLastReconnectLatencyNanos = -1;
+    private volatile long mLastOutageNanos = -1;
+
+    /**
+     * Use the given AppMidiSupport to reopen devices and the given executor for retries. Forgets
+     * the device opened so far.
+     * @param appMidiSupport the support object reading the device
+     * @param executor the executor on which the device notifications are passed on
+     */
+    public void attach(AppMidiSupport appMidiSupport, ScheduledExecutorService executor) {
+        mAppMidiSupport = appMidiSupport;
+        mExecutor = executor;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                setTarget(null);
+            }
+        });
+    }
+
+    /**
+     * Forget the device and cancel a pending retry. Nothing is reopened until attach is called again.
+     */
+    public void detach() {
+        ScheduledExecutorService executor = mExecutor;
+        mExecutor = null;
+        mAppMidiSupport = null;
+        post(executor, new Runnable() {
+            @Override
+            public void run() {
+                setTarget(null);
+            }
+        });
+    }
+
+    /**
+     * Enable or disable reopening a removed device when it appears again. Removed devices are
+     * closed either way.
+     * @param enabled true to reconnect automatically
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Configure the retries while a reappeared device cannot be opened. The first attempt is
+     * immediate; the n-th retry waits initialMillis * 2^(n-1), but never longer than maxMillis.
+     * @param initialMillis delay before the first retry
+     * @param maxMillis upper bound of the delay
+     * @param maxAttempts attempts, including the first one, before giving up until the device
+     *                    appears again
+     */
+    public void setBackoff(long initialMillis, long maxMillis, int maxAttempts) {
+        if (initialMillis < 0 || maxMillis < initialMillis || maxAttempts < 1) {
+            throw new IllegalArgumentException("invalid backoff " + initialMillis + "/" + maxMillis + "/" + maxAttempts);
+        }
+        mInitialBackoffMillis = initialMillis;
+        mMaxBackoffMillis = maxMillis;
+        mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * The user opened a device through AppMidiSupport: remember it for reconnection
+     * @param info the opened device
+     */
+    public void onOpenRequested(final MidiDeviceInfo info) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                setTarget(info);
+            }
+        });
+    }
+
+    /**
+     * The user closed the device: do not reconnect it anymore
+     */
+    public void onCloseRequested() {
+        onOpenRequested(null);
+    }
+
+    /**
+     * To be called from the executor when a device is added
+     * @param info the added device
+     */
+    public void onDeviceAdded(MidiDeviceInfo info) {
+        if (!mEnabled || !mLost || !isSameDevice(mTarget, info)) {
+            return;
+        }
+        cancelScheduled();
+        mGeneration++;
+        mPending = info;
+        mAttempt = 0;
+        mReappearedNanos = System.nanoTime();
+        attempt(mGeneration);
+    }
+
+    /**
+     * To be called from the executor when a device is removed
+     * @param info the removed device
+     */
+    public void onDeviceRemoved(MidiDeviceInfo info) {
+        if (mTarget == null || mLost || mTarget.getId() != info.getId()) {
+            return;
+        }
+        mLost = true;
+        mLostNanos = System.nanoTime();
+        AppMidiSupport support = mAppMidiSupport;
+        if (support != null) {
+            support.closeReceiveDevice();
+        }
+    }
+
+    /**
+     * Number of attempts to reopen a device, successful or not
+     */
+    public int getAttemptCount() {
+        return mAttemptCount;
+    }
+
+    /**
+     * Number of devices successfully reopened
+     */
+    public int getReconnectCount() {
+        return mReconnectCount;
+    }
+
+    /**
+     * Number of times a reappeared device could not be opened within the allowed attempts
+     */
+    public int getGiveUpCount() {
+        return mGiveUpCount;
+    }
+
+    /**
+     * Time from the reappearance of the device to its successful reopening, for the last
+     * reconnection
+     * @return the latency in nanoseconds, or -1 if nothing has been reconnected yet
+     */
+    public long getLastReconnectLatencyNanos() {
+        return mLastReconnectLatencyNanos;
+    }
+
+    /**
+     * Time from the removal of the device to its successful reopening, for the last reconnection
+     * @return the outage in nanoseconds, or -1 if nothing has been reconnected yet
+     */
+    public long getLastOutageNanos() {
+        return mLastOutageNanos;
+    }
+
+    /**
+     * Whether the two infos describe the same physical device. Ids are not compared, as a device
+     * gets a new one each time it is plugged in.
+     */
+    public static boolean isSameDevice(MidiDeviceInfo a, MidiDeviceInfo b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a.getType() != b.getType()
+                || a.getInputPortCount() != b.getInputPortCount()
+                || a.getOutputPortCount() != b.getOutputPortCount()) {
+            return false;
+        }
+        Bundle pa = a.getProperties();
+        Bundle pb = b.getProperties();
+        if (pa == null || pb == null) {
+            return pa == pb;
+        }
+        return Objects.equals(pa.getString(MidiDeviceInfo.PROPERTY_MANUFACTURER), pb.getString(MidiDeviceInfo.PROPERTY_MANUFACTURER))
+                && Objects.equals(pa.getString(MidiDeviceInfo.PROPERTY_PRODUCT), pb.getString(MidiDeviceInfo.PROPERTY_PRODUCT))
+                && Objects.equals(pa.getString(MidiDeviceInfo.PROPERTY_NAME), pb.getString(MidiDeviceInfo.PROPERTY_NAME))
+                && Objects.equals(pa.getString(MidiDeviceInfo.PROPERTY_SERIAL_NUMBER), pb.getString(MidiDeviceInfo.PROPERTY_SERIAL_NUMBER));
+    }
+
+    /**
+     * Delay before the given retry
+     * @param retry number of the retry, from 1
+     */
+    static long backoffDelayMillis(int retry, long initialMillis, long maxMillis) {
+        if (retry <= 1) {
+            return Math.min(initialMillis, maxMillis);
+        }
+        int shift = Math.min(retry - 1, 62);
+        long delay = initialMillis << shift;
+        if (delay >>> shift != initialMillis || delay > maxMillis) {
+            return maxMillis;
+        }
+        return delay;
+    }
+
+    private void setTarget(MidiDeviceInfo info) {
+        cancelScheduled();
+        mGeneration++;
+        mTarget = info;
+        mPending = null;
+        mLost = false;
+    }
+
+    private void attempt(final int generation) {
+        AppMidiSupport support = mAppMidiSupport;
+        if (support == null || generation != mGeneration) {
+            return;
+        }
+        mScheduled = null;
+        mAttempt++;
+        mAttemptCount++;
+        support.openReceiveDeviceAsync(mPending, MidiDeviceOpener.DEFAULT_OPEN_TIMEOUT_MILLIS).whenComplete((device, error) -> {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onAttemptDone(generation, error == null ? device : null);
+                }
+            });
+        });
+    }
+
+    private void onAttemptDone(final int generation, MidiDevice device) {
+        if (generation != mGeneration) {
+            return;
+        }
+        if (device != null) {
+            long now = System.nanoTime();
+            mLastReconnectLatencyNanos = now - mReappearedNanos;
+            mLastOutageNanos = now - mLostNanos;
+            mReconnectCount++;
+            mTarget = mPending;
+            mPending = null;
+            mLost = false;
+            Log.i("MidiDeviceReconnector", "reconnected after " + mAttempt + " attempt(s)");
+            return;
+        }
+        ScheduledExecutorService executor = mExecutor;
+        if (mAttempt >= mMaxAttempts || executor == null) {
+            mGiveUpCount++;
+            mPending = null;
+            Log.w("MidiDeviceReconnector", "giving up reconnecting after " + mAttempt + " attempt(s)");
+            return;
+        }
+        long delay = backoffDelayMillis(mAttempt, mInitialBackoffMillis, mMaxBackoffMillis);
+        mScheduled = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(generation);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduled() {
+        if (mScheduled != null) {
+            mScheduled.cancel(false);
+            mScheduled = null;
+        }
+    }
+
+    private void post(Runnable task) {
+        post(mExecutor, task);
+    }
+
+    private static void post(ScheduledExecutorService executor, Runnable task) {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // shut down meanwhile: nothing left to reconnect
+        }
+    }
+}
@@ -0,0 +1,301 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import android.media.midi.MidiDeviceInfo;
+import android.media.midi.MidiManager;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Registry of the attached midi devices, indexed by device id. It is filled once from
+ * MidiManager.getDevices and then kept up to date from the device added and removed notifications,
+ * so that listing the devices requires no further binder calls. The properties of each device are
+ * read once, when it is added.<br /><br />
+ * Readers get an immutable snapshot through getSnapshot, without locking; a new snapshot is
+ * published after each change.
+ */
+public class MidiDeviceRegistry {
+
+    /**
+     * A registered device with its cached properties
+     */
+    public static final class Entry {
+        private final MidiDeviceInfo mInfo;
+        private final int mId;
+        private final int mType;
+        private final String mName;
+        private final String mManufacturer;
+        private final String mProduct;
+        private final int mInputPortCount;
+        private final int mOutputPortCount;
+        private final int mDefaultProtocol;
+
+        Entry(MidiDeviceInfo info) {
+            mInfo = info;
+            mId = info.getId();
+            mType = info.getType();
+            Bundle properties = info.getProperties();
+            mName = properties == null ? null : properties.getString(MidiDeviceInfo.PROPERTY_NAME);
+            mManufacturer = properties == null ? null : properties.getString(MidiDeviceInfo.PROPERTY_MANUFACTURER);
+            mProduct = properties == null ? null : properties.getString(MidiDeviceInfo.PROPERTY_PRODUCT);
+            mInputPortCount = info.getInputPortCount();
+            mOutputPortCount = info.getOutputPortCount();
+            mDefaultProtocol = info.getDefaultProtocol();
+        }
+
+        public MidiDeviceInfo getInfo() {
+            return mInfo;
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * @return the name of the device, or null if it has none
+         */
+        public String getName() {
+            return mName;
+        }
+
+        public String getManufacturer() {
+            return mManufacturer;
+        }
+
+        public String getProduct() {
+            return mProduct;
+        }
+
+        public int getInputPortCount() {
+            return mInputPortCount;
+        }
+
+        public int getOutputPortCount() {
+            return mOutputPortCount;
+        }
+
+        /**
+         * @return the protocol of a Universal MIDI Packet device (MidiDeviceInfo.PROTOCOL_UMP_*),
+         * or MidiDeviceInfo.PROTOCOL_UNKNOWN for byte stream devices
+         */
+        public int getDefaultProtocol() {
+            return mDefaultProtocol;
+        }
+
+        /**
+         * Whether the device sends Universal MIDI Packets rather than a MIDI 1.0 byte stream
+         */
+        public boolean isUmpDevice() {
+            return mDefaultProtocol != MidiDeviceInfo.PROTOCOL_UNKNOWN;
+        }
+
+        /**
+         * Whether midi data can be received from the device: it has a name and output ports,
+         * the criterion of AppMidiSupport.ScanMidiDevices
+         */
+        public boolean isReceiveDevice() {
+            return mName != null && mOutputPortCount > 0;
+        }
+    }
+
+    /**
+     * Immutable state of the registry at one point in time
+     */
+    public static final class Snapshot {
+        private final long mVersion;
+        private final int[] mIds;
+        private final Entry[] mEntries;
+        private final List<Entry> mEntryList;
+        private final List<MidiDeviceInfo> mReceiveDevices;
+
+        Snapshot(long version, Entry[] entries) {
+            mVersion = version;
+            mEntries = entries;
+            mIds = new int[entries.length];
+            ArrayList<MidiDeviceInfo> receiveDevices = new ArrayList<MidiDeviceInfo>();
+            for (int i = 0; i < entries.length; i++) {
+                mIds[i] = entries[i].getId();
+                if (entries[i].isReceiveDevice()) {
+                    receiveDevices.add(entries[i].getInfo());
+                }
+            }
+            mEntryList = Collections.unmodifiableList(Arrays.asList(entries));
+            mReceiveDevices = Collections.unmodifiableList(receiveDevices);
+        }
+
+        /**
+         * Incremented with each change of the registry, to detect whether a list must be refreshed
+         */
+        public long getVersion() {
+            return mVersion;
+        }
+
+        /**
+         * All registered devices, by increasing id
+         */
+        public List<Entry> getDevices() {
+            return mEntryList;
+        }
+
+        /**
+         * The devices from which midi data can be received, by increasing id
+         */
+        public List<MidiDeviceInfo> getReceiveDevices() {
+            return mReceiveDevices;
+        }
+
+        /**
+         * @param id device id, as returned by MidiDeviceInfo.getId
+         * @return the device with this id, or null if it is not attached
+         */
+        public Entry get(int id) {
+            int index = Arrays.binarySearch(mIds, id);
+            return index < 0 ? null : mEntries[index];
+        }
+
+        public int size() {
+            return mEntries.length;
+        }
+    }
+
+    /**
+     * Current devices, guarded by this
+     */
+    private final TreeMap<Integer, Entry> mDevices = new TreeMap<Integer, Entry>();
+
+    /**
+     * Whether synchronize is waiting for MidiManager.getDevices, guarded by this
+     */
+    private boolean mSynchronizing = false;
+
+    /**
+     * Devices added and removed while synchronizing, guarded by this
+     */
+    private final Map<Integer, Entry> mAddedWhileSynchronizing = new TreeMap<Integer, Entry>();
+    private final Set<Integer> mRemovedWhileSynchronizing = new HashSet<Integer>();
+
+    private long mVersion = 0;
+
+    private volatile Snapshot mSnapshot = new Snapshot(0, new Entry[0]);
+
+    /**
+     * Replace the content of the registry with the devices currently attached. Only needed once,
+     * when the add and remove notifications start to be passed on: notifications arriving while
+     * the devices are queried take precedence over the queried list.
+     * @param midiManager the android midi manager to query
+     */
+    public void synchronize(MidiManager midiManager) {
+        synchronize(midiManager, MidiManager.TRANSPORT_MIDI_BYTE_STREAM);
+    }
+
+    /**
+     * Replace the content of the registry with the devices currently attached that use a given
+     * transport, see synchronize(MidiManager)
+     * @param midiManager the android midi manager to query
+     * @param transport MidiManager.TRANSPORT_MIDI_BYTE_STREAM or MidiManager.TRANSPORT_UNIVERSAL_MIDI_PACKETS
+     */
+    public void synchronize(MidiManager midiManager, int transport) {
+        synchronized (this) {
+            mSynchronizing = true;
+            mAddedWhileSynchronizing.clear();
+            mRemovedWhileSynchronizing.clear();
+        }
+        Collection<MidiDeviceInfo> infos = transport == MidiManager.TRANSPORT_MIDI_BYTE_STREAM
+                ? Arrays.asList(midiManager.getDevices()) : midiManager.getDevicesForTransport(transport);
+        TreeMap<Integer, Entry> devices = new TreeMap<Integer, Entry>();
+        for (MidiDeviceInfo info : infos) {
+            devices.put(info.getId(), new Entry(info));
+        }
+        synchronized (this) {
+            mSynchronizing = false;
+            devices.keySet().removeAll(mRemovedWhileSynchronizing);
+            devices.putAll(mAddedWhileSynchronizing);
+            mDevices.clear();
+            mDevices.putAll(devices);
+            publish();
+        }
+    }
+
+    /**
+     * To be called when a device is added
+     * @param info the added device
+     */
+    public void onDeviceAdded(MidiDeviceInfo info) {
+        Entry entry = new Entry(info);
+        synchronized (this) {
+            mDevices.put(entry.getId(), entry);
+            if (mSynchronizing) {
+                mRemovedWhileSynchronizing.remove(entry.getId());
+                mAddedWhileSynchronizing.put(entry.getId(), entry);
+            }
+            publish();
+        }
+    }
+
+    /**
+     * To be called when a device is removed
+     * @param info the removed device
+     */
+    public void onDeviceRemoved(MidiDeviceInfo info) {
+        int id = info.getId();
+        synchronized (this) {
+            if (mSynchronizing) {
+                mAddedWhileSynchronizing.remove(id);
+                mRemovedWhileSynchronizing.add(id);
+            }
+            if (mDevices.remove(id) != null) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Forget all devices
+     */
+    public synchronized void clear() {
+        mDevices.clear();
+        publish();
+    }
+
+    /**
+     * The current state of the registry. Never blocks; the snapshot does not change afterwards.
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    private void publish() {
+        mSnapshot = new Snapshot(++mVersion, mDevices.values().toArray(new Entry[0]));
+    }
+}
@@ -0,0 +1,471 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import android.media.midi.MidiDevice;
+import android.media.midi.MidiDeviceInfo;
+import android.media.midi.MidiManager;
+import android.media.midi.MidiOutputPort;
+import android.util.Log;
+
+import com.mathis.inputMidi.MidiEventMerger;
+import com.mathis.inputMidi.MidiInputRecorder;
+import com.mathis.inputMidi.MidiMetricsRegistry;
+import com.mathis.inputMidi.MidiSysExAssembler;
+import com.mathis.inputMidi.MidiSysExBufferPool;
+import com.mathis.inputMidi.midiStreamListener;
+import com.mathis.inputMidi.midiSysExListener;
+import com.mathis.inputMidi.midiUmpListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Set of simultaneously open hardware midi input ports, for setups with several controllers
+ * attached at once (keyboard, pad controller, pedal board, ...). Unlike the single device handled by
+ * the native tier through AppMidiSupport, each port here is read through the Java midi API, with
+ * its own parser and event queue (see HardwareMidiInputPort). The events of all ports are tagged with
+ * a source index and merged into a single stream ordered by timestamp via getMerger(), which the
+ * audio render thread drains. Opening or closing a port does not interrupt the other ports.<br />
+ * When a port is closed, note offs for its held notes are queued; its queue stays in the merged
+ * stream until its source index is reused, so that these note offs are still delivered.
+ */
+public class MidiInputDeviceGroup {
+
+    /**
+     * Maximum number of simultaneously open ports, limited by the 8 bit source tag of the events
+     */
+    public static final int MAX_PORTS = 256;
+
+    /**
+     * Opens the devices on a dedicated thread
+     */
+    private final MidiDeviceOpener mOpener;
+
+    /**
+     * Capacity of the event queue of each port
+     */
+    private final int mRingCapacity;
+
+    /**
+     * Open ports, indexed by source index
+     */
+    private final HardwareMidiInputPort[] mPorts = new HardwareMidiInputPort[MAX_PORTS];
+
+    /**
+     * Closed ports whose queue is still merged, indexed by source index
+     */
+    private final HardwareMidiInputPort[] mRetiredPorts = new HardwareMidiInputPort[MAX_PORTS];
+
+    /**
+     * Merged stream of all open ports
+     */
+    private final MidiEventMerger mMerger = new MidiEventMerger();
+
+    /**
+     * Optional receiver of system exclusive messages of all ports
+     */
+    private volatile midiStreamListener mSysExListener = null;
+
+    /**
+     * Optional receiver of the system exclusive messages of all ports in pooled buffers, and the pool
+     */
+    private midiSysExListener mSysExBufferListener = null;
+    private MidiSysExBufferPool mSysExBufferPool = null;
+
+    /**
+     * Optional receiver of the packets of all Universal MIDI Packet devices
+     */
+    private volatile midiUmpListener mUmpOutput = null;
+
+    /**
+     * Optional recorder of the messages of all ports, and the stream index given to it
+     */
+    private MidiInputRecorder mRecorder = null;
+    private int mRecorderStream = 0;
+
+    /** Constructor
+     *
+     * @param midiManager Android MidiManger
+     * @param ringCapacity Capacity of the event queue of each port
+     */
+    public MidiInputDeviceGroup(MidiManager midiManager, int ringCapacity)
+    {
+        this(midiManager, new MidiDeviceOpener(midiManager), ringCapacity);
+    }
+
+    /** Constructor
+     *
+     * @param midiManager Android MidiManger
+     * @param opener Opener of the devices, possibly shared with other users of the midi manager
+     * @param ringCapacity Capacity of the event queue of each port
+     */
+    public MidiInputDeviceGroup(MidiManager midiManager, MidiDeviceOpener opener, int ringCapacity)
+    {
+        mOpener = opener;
+        mRingCapacity = ringCapacity;
+    }
+
+    /**
+     * Open a device and start receiving from one of its output ports. The device is opened
+     * asynchronously; events start appearing in the merged stream once it is open.
+     * @param devInfo the device
+     * @param portNumber the output port of the device to receive from
+     */
+    public void open(final MidiDeviceInfo devInfo, final int portNumber)
+    {
+        openAsync(devInfo, portNumber, MidiDeviceOpener.DEFAULT_OPEN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Open a device and start receiving from one of its output ports
+     * @param devInfo the device
+     * @param portNumber the output port of the device to receive from
+     * @param timeoutMillis time allowed for opening the device, 0 for no limit
+     * @return future completed with the input port once it is connected, or failing if the device
+     * or port could not be opened in time
+     */
+    public CompletableFuture<HardwareMidiInputPort> openAsync(final MidiDeviceInfo devInfo, final int portNumber,
+                                                            long timeoutMillis)
+    {
+        final long requestNanos = System.nanoTime();
+        return mOpener.open(devInfo, timeoutMillis).thenApply(device -> {
+            HardwareMidiInputPort port = attach(devInfo, device, portNumber, requestNanos);
+            if (port == null) {
+                closeQuietly(device);
+                throw new CompletionException(new IOException("could not open port " + portNumber
+                        + " of device " + devInfo.getId()));
+            }
+            return port;
+        });
+    }
+
+    /**
+     * Open several devices in parallel, receiving from the same output port of each. All requests
+     * are issued at once, so the total startup time is that of the slowest device rather than the sum.
+     * @param devInfos the devices
+     * @param portNumber the output port of the devices to receive from
+     * @param timeoutMillis time allowed for opening each device, 0 for no limit
+     * @return future completed once every device is connected or has failed, with the input ports
+     * in the order of devInfos; null for the devices that could not be opened
+     */
+    public CompletableFuture<List<HardwareMidiInputPort>> openAllAsync(List<MidiDeviceInfo> devInfos,
+                                                                       int portNumber, long timeoutMillis)
+    {
+        final List<CompletableFuture<HardwareMidiInputPort>> futures =
+                new ArrayList<CompletableFuture<HardwareMidiInputPort>>(devInfos.size());
+        for (final MidiDeviceInfo devInfo : devInfos) {
+            futures.add(openAsync(devInfo, portNumber, timeoutMillis).exceptionally(error -> {
+                Log.w("MidiInputDeviceGroup", "could not open device " + devInfo.getId(), error);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<HardwareMidiInputPort> ports = new ArrayList<HardwareMidiInputPort>(futures.size());
+            for (CompletableFuture<HardwareMidiInputPort> future : futures) {
+                ports.add(future.join());
+            }
+            return ports;
+        });
+    }
+
+    /**
+     * Start receiving from an output port of an already open device
+     * @param devInfo the device description
+     * @param device the open device
+     * @param portNumber the output port of the device to receive from
+     * @return the new input port, or null if the port could not be opened or too many ports are open
+     */
+    public HardwareMidiInputPort attach(MidiDeviceInfo devInfo, MidiDevice device, int portNumber)
+    {
+        return attach(devInfo, device, portNumber, System.nanoTime());
+    }
+
+    /**
+     * Start receiving from an output port of an already open device
+     * @param requestNanos time at which opening was requested, from which the time to the first
+     *                     message is measured
+     */
+    private synchronized HardwareMidiInputPort attach(MidiDeviceInfo devInfo, MidiDevice device, int portNumber,
+                                                      long requestNanos)
+    {
+        if (find(devInfo.getId(), portNumber) >= 0) {
+            Log.i("MidiInputDeviceGroup", "port already open");
+            return null;
+        }
+        int source = -1;
+        for (int i = 0; i < MAX_PORTS; i++) {
+            if (mPorts[i] == null) {
+                source = i;
+                break;
+            }
+        }
+        if (source < 0) {
+            Log.w("MidiInputDeviceGroup", "too many open ports");
+            return null;
+        }
+        MidiOutputPort outputPort = device.openOutputPort(portNumber);
+        if (outputPort == null) {
+            Log.w("MidiInputDeviceGroup", "could not open port " + portNumber);
+            return null;
+        }
+        HardwareMidiInputPort port = new HardwareMidiInputPort(devInfo, device, outputPort, portNumber,
+                source, mRingCapacity);
+        port.setOpenRequestTime(requestNanos);
+        add(port);
+        Log.i("MidiInputDeviceGroup", "receiving from device " + devInfo.getId() + " port " + portNumber
+                + " as source " + source);
+        return port;
+    }
+
+    /**
+     * Configure a port like the others, merge its queue and connect it
+     * @param port the port, with a free source index
+     */
+    synchronized void add(HardwareMidiInputPort port)
+    {
+        int source = port.getSource();
+        port.setSysExListener(mSysExListener);
+        if (mSysExBufferListener != null) {
+            port.setSysExAssembler(new MidiSysExAssembler(mSysExBufferPool, mSysExBufferListener, source));
+        }
+        port.setUmpOutput(mUmpOutput);
+        port.setRecorder(mRecorder, mRecorderStream);
+        if (mRetiredPorts[source] != null) {
+            mMerger.removeSource(mRetiredPorts[source].getRing());
+            mRetiredPorts[source] = null;
+        }
+        mPorts[source] = port;
+        mMerger.addSource(port.getRing());
+        MidiMetricsRegistry.getDefault().register(port.getMetrics());
+        MidiOutputPort outputPort = port.getOutputPort();
+        if (outputPort != null) {
+            outputPort.connect(port);
+        }
+    }
+
+    /**
+     * Stop receiving from an output port of a device. The device is closed if no other port
+     * of it is open. Other ports are not affected.
+     * @param devInfo the device
+     * @param portNumber the output port
+     */
+    public synchronized void close(MidiDeviceInfo devInfo, int portNumber)
+    {
+        close(devInfo.getId(), portNumber);
+    }
+
+    private void close(int deviceId, int portNumber)
+    {
+        int source = find(deviceId, portNumber);
+        if (source < 0) {
+            return;
+        }
+        HardwareMidiInputPort port = mPorts[source];
+        mPorts[source] = null;
+        detach(port);
+        MidiDevice device = port.getDevice();
+        for (HardwareMidiInputPort other : mPorts) {
+            if (other != null && other.getDevice() == device) {
+                return;
+            }
+        }
+        if (device != null) {
+            closeQuietly(device);
+        }
+    }
+
+    /**
+     * Stop receiving from all ports of a device, and close it, e.g. once it is unplugged
+     * @param devInfo the device
+     */
+    public void close(MidiDeviceInfo devInfo)
+    {
+        closeDevice(devInfo.getId());
+    }
+
+    synchronized void closeDevice(int deviceId)
+    {
+        for (int i = 0; i < MAX_PORTS; i++) {
+            if (mPorts[i] != null && mPorts[i].getDeviceId() == deviceId) {
+                close(deviceId, mPorts[i].getPortNumber());
+            }
+        }
+    }
+
+    /**
+     * Stop receiving from all ports and close all devices
+     */
+    public synchronized void closeAll()
+    {
+        for (int i = 0; i < MAX_PORTS; i++) {
+            if (mPorts[i] != null) {
+                close(mPorts[i].getDeviceId(), mPorts[i].getPortNumber());
+            }
+        }
+    }
+
+    /**
+     * Disconnect a port and queue note offs for its held notes
+     */
+    private void detach(HardwareMidiInputPort port)
+    {
+        MidiOutputPort outputPort = port.getOutputPort();
+        if (outputPort != null) {
+            outputPort.disconnect(port);
+        }
+        // disconnect does not wait for a delivery in progress: releaseAll does
+        port.releaseAll(System.nanoTime());
+        mRetiredPorts[port.getSource()] = port;
+        MidiMetricsRegistry.getDefault().unregister(port.getMetrics());
+        if (outputPort == null) {
+            return;
+        }
+        try {
+            outputPort.close();
+        } catch (IOException e) {
+            Log.w("MidiInputDeviceGroup", "could not close port", e);
+        }
+    }
+
+    private static void closeQuietly(MidiDevice device)
+    {
+        try {
+            device.close();
+        } catch (IOException e) {
+            Log.w("MidiInputDeviceGroup", "could not close device", e);
+        }
+    }
+
+    /**
+     * Source index of an open port
+     * @return the source index, or -1 if the port is not open
+     */
+    private int find(int deviceId, int portNumber)
+    {
+        for (int i = 0; i < MAX_PORTS; i++) {
+            HardwareMidiInputPort port = mPorts[i];
+            if (port != null && port.getDeviceId() == deviceId && port.getPortNumber() == portNumber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The device from which events with a given source index come
+     * @param source source index, see MidiEvent.getSource
+     * @return the device, or null if no port is open with this source index
+     */
+    public synchronized MidiDeviceInfo getSourceDevice(int source)
+    {
+        HardwareMidiInputPort port = mPorts[source & 0xFF];
+        return port == null ? null : port.getDeviceInfo();
+    }
+
+    /**
+     * Open input port with a given source index
+     * @param source source index, see MidiEvent.getSource
+     * @return the port, or null
+     */
+    public synchronized HardwareMidiInputPort getPort(int source)
+    {
+        return mPorts[source & 0xFF];
+    }
+
+    /**
+     * Merged stream of the events of all open ports, ordered by timestamp and tagged with the
+     * source index. To be drained by a single consumer thread.
+     * @return the merger
+     */
+    public MidiEventMerger getMerger()
+    {
+        return mMerger;
+    }
+
+    /**
+     * Set the receiver of the system exclusive messages of all ports. It is called on the receiving
+     * thread of the respective port.
+     * @param listener the receiver, or null to ignore system exclusive messages
+     */
+    public synchronized void setSysExListener(midiStreamListener listener)
+    {
+        mSysExListener = listener;
+        for (HardwareMidiInputPort port : mPorts) {
+            if (port != null) {
+                port.setSysExListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Have the system exclusive messages of all ports, including those opened later, gathered into
+     * buffers of a bounded pool shared by the ports (see MidiSysExAssembler) and passed on to a
+     * listener instead of the one set with setSysExListener. It is called on the receiving thread
+     * of the respective port.
+     * @param listener the receiver of the buffers, or null
+     * @param pool the pool, ignored if listener is null
+     */
+    public synchronized void setSysExListener(midiSysExListener listener, MidiSysExBufferPool pool)
+    {
+        mSysExBufferListener = listener;
+        mSysExBufferPool = pool;
+        for (HardwareMidiInputPort port : mPorts) {
+            if (port != null) {
+                port.setSysExAssembler(listener == null ? null
+                        : new MidiSysExAssembler(pool, listener, port.getSource()));
+            }
+        }
+    }
+
+    /**
+     * Set the receiver of the packets of all ports of Universal MIDI Packet devices (MIDI 2.0), which
+     * then get to it unchanged, at full resolution, rather than converted into MIDI 1.0 messages in
+     * the merged stream. It is called on the receiving thread of the respective port.
+     * @param listener the receiver, or null to merge the converted messages
+     */
+    public synchronized void setUmpOutput(midiUmpListener listener)
+    {
+        mUmpOutput = listener;
+        for (HardwareMidiInputPort port : mPorts) {
+            if (port != null) {
+                port.setUmpOutput(listener);
+            }
+        }
+    }
+
+    /**
+     * Record the messages of all ports, including those opened later
+     * @param recorder the recorder, or null to stop recording
+     * @param stream index of this group in the recording; the ports are told apart by their source index
+     */
+    public synchronized void setRecorder(MidiInputRecorder recorder, int stream)
+    {
+        mRecorder = recorder;
+        mRecorderStream = stream;
+        for (HardwareMidiInputPort port : mPorts) {
+            if (port != null) {
+                port.setRecorder(recorder, stream);
+            }
+        }
+    }
+}
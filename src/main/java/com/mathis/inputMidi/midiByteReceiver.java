@@ -0,0 +1,34 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Receiver of raw midi data, as delivered by the Android midi framework: any number of
+ * messages per call, possibly split across calls, with running status. SynthDeviceServiceMidiReceiver.onSend
+ * and MidiInputPipeline.receive have this form and can be passed as method references.
+ */
+public interface midiByteReceiver {
+    /**
+     * @param data buffer containing the midi data
+     * @param offset position of the first byte in data
+     * @param count number of bytes
+     * @param timestamp timestamp of the data (based on {@link java.lang.System#nanoTime})
+     */
+    void onMidiBytes(byte[] data, int offset, int count, long timestamp);
+}
@@ -0,0 +1,31 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Receiver for groups of short midi messages, see MidiEventBatch. Implementations are typically
+ * called on the midi receiving thread or the audio render thread and should neither block nor
+ * allocate.
+ */
+public interface midiEventBatchHandler {
+    /**
+     * @param batch the events, in order; only valid for the duration of the call
+     */
+    void onMidiEventBatch(MidiEventBatch batch);
+}
@@ -0,0 +1,32 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Receiver for short midi messages packed into an int, see MidiEvent for the layout.
+ * Implementations are typically called on the midi receiving thread and should neither block
+ * nor allocate.
+ */
+public interface midiEventHandler {
+    /**
+     * @param event packed midi event
+     * @param timestamp timestamp of the event (based on {@link java.lang.System#nanoTime})
+     */
+    void onMidiEvent(int event, long timestamp);
+}
@@ -0,0 +1,40 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Receiver for the output of MidiStreamParser: short messages as packed events, and system
+ * exclusive messages as chunks of bytes.
+ */
+public interface midiStreamListener extends midiEventHandler {
+    /**
+     * Called with (part of) a system exclusive message. Messages fitting in the parser's
+     * system exclusive buffer are delivered in a single call with first and last both true.
+     * Longer messages are delivered in consecutive chunks.
+     * @param data buffer containing the bytes, including the leading 0xF0 in the first chunk and
+     *             the trailing 0xF7 in the last chunk (unless the message was interrupted). The buffer
+     *             is only valid for the duration of the call.
+     * @param offset position of the first byte in data
+     * @param count number of bytes
+     * @param first True if this is the first chunk of the message
+     * @param last True if this is the last chunk of the message
+     * @param timestamp timestamp of the packet in which the chunk was completed
+     */
+    void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp);
+}
@@ -0,0 +1,32 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Receiver of the system exclusive messages reassembled by a MidiSysExAssembler
+ */
+public interface midiSysExListener {
+    /**
+     * Called with a complete message, or a part of a message longer than the pooled buffers, on
+     * the receiving thread. The receiver owns the buffer and must release it once done, possibly
+     * from another thread.
+     * @param buffer the message or part
+     */
+    void onSysEx(MidiSysExBuffer buffer);
+}
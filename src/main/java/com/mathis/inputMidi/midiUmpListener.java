@@ -0,0 +1,35 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi;
+
+/**
+ * Receiver of Universal MIDI Packets, e.g. a synth engine consuming MIDI 2.0 messages directly,
+ * at full resolution (32 bit controllers, 16 bit velocities, per-note pitch). See MidiUmpSpec for
+ * the layout of the words.
+ */
+public interface midiUmpListener {
+    /**
+     * Called with complete packets; the words are only valid during the call
+     * @param words buffer holding the packets
+     * @param offset index of the first word of the first packet
+     * @param count number of words, a sum of whole packets
+     * @param timestamp timestamp of the packets, in System.nanoTime time base
+     */
+    void onUmpPackets(int[] words, int offset, int count, long timestamp);
+}
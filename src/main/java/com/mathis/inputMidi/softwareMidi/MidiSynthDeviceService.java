@@ -32,27 +32,103 @@ import android.media.midi.MidiDeviceStatus;
 import android.media.midi.MidiReceiver;
 import android.util.Log;
 
+import com.mathis.inputMidi.MidiDispatchBus;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiInputRecorder;
+import com.mathis.inputMidi.MidiMetricsRegistry;
+import com.mathis.inputMidi.MidiPriorityLanes;
+import com.mathis.inputMidi.MidiSysExAssembler;
+import com.mathis.inputMidi.MidiSysExBufferPool;
+import com.mathis.inputMidi.MidiTransform;
+import com.mathis.inputMidi.MidiTransformConfig;
+import com.mathis.inputMidi.midiSysExListener;
+
 /**
  * Class used to open a virtual (aka, software) midi port on which the application can
  * receive midi messages from other applications. A part from also using midi messages, this
  * mechanism is entirely distinct and separate from hardware midi message reception. For the
- * hardware part, see the hardwareMidiManager class
+ * hardware part, see the hardwareMidiManager class<br />
+ * Several input ports can be offered (see setInputPortCount), for example one per multitimbral
+ * part, to go beyond 16 channels. Each port has its own SynthDeviceServiceMidiReceiver, which tags
+ * the events it produces with its port index (see MidiEvent.getSource). The number of ports
+ * must match the input ports declared in the service's midi device info xml resource.
  */
 
 public class MidiSynthDeviceService extends MidiDeviceService {
 
+    /**
+     * Maximum number of input ports
+     */
+    public static final int MAX_INPUT_PORTS = 16;
 
     /**
-     * Is the software midi message reception currently running?
+     * Stream index of the software midi input ports in a MidiInputRecorder recording; the ports
+     * are told apart by their source index
      */
-    public boolean mSynthDeviceServiceMidiReceiverStarted = false;
+    public static final int RECORDER_STREAM = 0;
+
+    /**
+     * Is the software midi message reception currently running, i.e. is any input port open?
+     */
+    public volatile boolean mSynthDeviceServiceMidiReceiverStarted = false;
+
+    /**
+     * Open state of each input port
+     */
+    private final boolean[] mInputPortOpen = new boolean[MAX_INPUT_PORTS];
+
     /** Singleton class instance */
-    private static MidiSynthDeviceService mInstance;
+    private static volatile MidiSynthDeviceService mInstance;
+
+    /**
+     * Number of input ports offered
+     */
+    private static volatile int mInputPortCount = 1;
+
+    /**
+     * Delegate objects that will receive the actual midi messages, one per possible input port
+     */
+    private static final SynthDeviceServiceMidiReceiver[] mPortReceivers = new SynthDeviceServiceMidiReceiver[MAX_INPUT_PORTS];
+
+    /**
+     * Bus distributing the messages of all input ports to additional subscribers
+     */
+    private static final MidiDispatchBus mDispatchBus = new MidiDispatchBus();
+
+    static {
+        for (int port = 0; port < MAX_INPUT_PORTS; port++) {
+            mPortReceivers[port] = new SynthDeviceServiceMidiReceiver(port);
+            mPortReceivers[port].setDispatchBus(mDispatchBus);
+        }
+    }
+
+    /**
+     * Delegate object of the first input port
+     */
+    private static final SynthDeviceServiceMidiReceiver mSynthDeviceServiceMidiReceiver = mPortReceivers[0];
+
+    /**
+     * Set the number of input ports offered. Needs to be called before the service is bound,
+     * typically in the Application's onCreate, and must match the number of input ports declared
+     * in the service's midi device info xml resource.
+     * @param count Number of input ports, 1 to MAX_INPUT_PORTS
+     */
+    public static void setInputPortCount(int count)
+    {
+        if (count < 1 || count > MAX_INPUT_PORTS) {
+            throw new IllegalArgumentException("Input port count must be between 1 and " + MAX_INPUT_PORTS);
+        }
+        mInputPortCount = count;
+    }
 
     /**
-     * Delegate object that will receive the actual midi messages
+     * @return Number of input ports offered
      */
-    private static final SynthDeviceServiceMidiReceiver mSynthDeviceServiceMidiReceiver = new SynthDeviceServiceMidiReceiver();
+    public static int getInputPortCount()
+    {
+        return mInputPortCount;
+    }
 
     /**
      * Do we currently transmit the received messages to the application receivers (or just receive and
@@ -62,7 +138,9 @@ public class MidiSynthDeviceService extends MidiDeviceService {
      */
     public static void setTransmitSoftwareMidiMessagesToReceiver(boolean doReceive)
     {
-        mSynthDeviceServiceMidiReceiver.setTransmitSoftwareMidiMessagesToReceiver(doReceive);
+        for (SynthDeviceServiceMidiReceiver rec : mPortReceivers) {
+            rec.setTransmitSoftwareMidiMessagesToReceiver(doReceive);
+        }
     }
 
     /**
@@ -84,9 +162,164 @@ public class MidiSynthDeviceService extends MidiDeviceService {
     public static void setSoftwareMidiMessageReceiver(softwareMidiReceiver rec)
     {
         Log.i("MidiSynthDeviceService","Set softwareMidiReceiver");
-       mSynthDeviceServiceMidiReceiver.setSoftwareMidiMessageReceiver(rec);
+        softwareMidiRangeReceiver adapter = rec == null ? null : new softwareMidiReceiverAdapter(rec);
+        for (SynthDeviceServiceMidiReceiver portReceiver : mPortReceivers) {
+            portReceiver.setSoftwareMidiRangeReceiver(adapter);
+        }
+    }
+
+    /**
+     * Configure an allocation-free receiver object to which the incoming software midi messages
+     * will be retransmitted, as a range of the buffer received from the Android midi framework.
+     * The receiver is shared by all input ports; it gets the port index through
+     * softwareMidiRangeReceiver.onSoftwareMidiMessageReceive(int, byte[], int, int, long)
+     * @param rec The target receiver, which needs to implement the softwareMidiRangeReceiver interface
+     */
+
+    public static void setSoftwareMidiRangeReceiver(softwareMidiRangeReceiver rec)
+    {
+        Log.i("MidiSynthDeviceService","Set softwareMidiRangeReceiver");
+        for (SynthDeviceServiceMidiReceiver portReceiver : mPortReceivers) {
+            portReceiver.setSoftwareMidiRangeReceiver(rec);
+        }
     }
 
+    /**
+     * Queue the incoming short midi messages (all but system exclusive) of the first input port
+     * into a lock-free queue instead of transmitting them to the receiver object. The audio render
+     * thread can then drain the queue once per render block, without locking.
+     * @param ring The queue, or null to transmit to the receiver object again
+     */
+    public static void setEventRing(MidiEventRing ring)
+    {
+        setEventRing(0, ring);
+    }
+
+    /**
+     * Queue the incoming short midi messages of an input port into a lock-free queue instead of
+     * transmitting them to the receiver object. Each port needs its own queue, as each port is
+     * received on its own thread; a MidiEventMerger can combine the queues into a single stream.
+     * @param port Index of the input port
+     * @param ring The queue, or null to transmit to the receiver object again
+     */
+    public static void setEventRing(int port, MidiEventRing ring)
+    {
+        mPortReceivers[port].setEventRing(ring);
+    }
+
+    /**
+     * Queue the incoming short midi messages of an input port into priority lanes instead of a
+     * single queue, so that notes and real-time messages overtake controller floods when drained.
+     * Each port needs its own lanes.
+     * @param port Index of the input port
+     * @param lanes The lanes, or null to transmit to the queue or receiver object again
+     */
+    public static void setPriorityLanes(int port, MidiPriorityLanes lanes)
+    {
+        mPortReceivers[port].setPriorityLanes(lanes);
+    }
+
+    /**
+     * Bus to which consumers can subscribe for the software midi messages of all input ports,
+     * filtered by channel and message type. Subscribers are called on the receiving thread of the
+     * respective port, in addition to the receiver object or queue.
+     * @return the bus
+     */
+    public static MidiDispatchBus getDispatchBus()
+    {
+        return mDispatchBus;
+    }
+
+    /**
+     * Apply channel remapping, transposition, splits and velocity curves to the incoming software
+     * midi messages of all input ports. The configuration is compiled once into lookup tables and
+     * swapped in atomically, so it can be changed while playing.
+     * @param config the configuration, or null to pass messages unchanged
+     */
+    public static void setTransformConfig(MidiTransformConfig config)
+    {
+        MidiTransform transform = config == null ? null : config.compile();
+        for (SynthDeviceServiceMidiReceiver rec : mPortReceivers) {
+            rec.setTransform(transform);
+        }
+    }
+
+    /**
+     * Apply a transformation configuration to a single input port
+     * @param port Index of the input port
+     * @param config the configuration, or null to pass messages unchanged
+     */
+    public static void setTransformConfig(int port, MidiTransformConfig config)
+    {
+        mPortReceivers[port].setTransformConfig(config);
+    }
+
+    /**
+     * Have the system exclusive messages of all input ports gathered into buffers of a bounded
+     * pool, so that bulk dumps take a fixed amount of memory and are not copied per chunk. Each
+     * port gets its own MidiSysExAssembler (dropping messages when the pool is exhausted), all
+     * sharing the pool.
+     * @param listener receiver of the buffers, called on the receiving threads of the ports, or
+     *                 null to transmit system exclusive messages to the receiver object again
+     * @param pool pool of the buffers, ignored if listener is null
+     */
+    public static void setSysExListener(midiSysExListener listener, MidiSysExBufferPool pool)
+    {
+        for (int port = 0; port < MAX_INPUT_PORTS; port++) {
+            mPortReceivers[port].setSysExAssembler(listener == null ? null
+                    : new MidiSysExAssembler(pool, listener, port));
+        }
+    }
+
+    /**
+     * Record the messages received on all input ports, as received (before transformation),
+     * under stream index RECORDER_STREAM
+     * @param recorder the recorder, or null to stop recording
+     */
+    public static void setInputRecorder(MidiInputRecorder recorder)
+    {
+        for (SynthDeviceServiceMidiReceiver rec : mPortReceivers) {
+            rec.getPipeline().setRecorder(recorder, RECORDER_STREAM);
+        }
+    }
+
+    /**
+     * Create a pipeline delivering to the receiver object and bus of an input port, e.g. to play a
+     * Standard MIDI File to the receivers of live software midi input with a MidiFilePlayer. The
+     * receiver object is then called from the playback thread as well: use a port no client sends
+     * to during playback. MidiFilePlayer sends note offs for the notes still sounding when
+     * playback is stopped or rewound.
+     * @param port Index of the input port whose receivers get the messages
+     * @return the pipeline, tagging its events with the port index
+     */
+    public static MidiInputPipeline newPlaybackPipeline(int port)
+    {
+        MidiInputPipeline pipeline = new MidiInputPipeline(port, "playback" + port);
+        pipeline.setOutput(mPortReceivers[port]);
+        pipeline.setDispatchBus(mDispatchBus);
+        return pipeline;
+    }
+
+    /**
+     * Get the delegate object receiving the messages of an input port
+     * @param port Index of the input port
+     * @return the receiver of the port
+     */
+    public static SynthDeviceServiceMidiReceiver getPortReceiver(int port)
+    {
+        return mPortReceivers[port];
+    }
+
+    /**
+     * Is an input port currently open by a client?
+     * @param port Index of the input port
+     * @return True if a client has opened the port
+     */
+    public static boolean isInputPortOpen(int port)
+    {
+        MidiSynthDeviceService instance = mInstance;
+        return instance != null && port >= 0 && port < MAX_INPUT_PORTS && instance.mInputPortOpen[port];
+    }
 
     /** Keep track of the singleton instance */
     @Override
@@ -100,31 +333,44 @@ public class MidiSynthDeviceService extends MidiDeviceService {
 
     /**
      * Create the message receivers for each port
-     * @return List of message recievers. For now, just one receiver in the list
+     * @return List of message recievers, one per input port
      */
 
     @Override
     public MidiReceiver[] onGetInputPortReceivers() {
-        Log.i("MidiSynthDeviceService","onGetInputPortReceivers");
-        return new MidiReceiver[] {mSynthDeviceServiceMidiReceiver};
+        Log.i("MidiSynthDeviceService","onGetInputPortReceivers: " + mInputPortCount + " ports");
+        MidiReceiver[] receivers = new MidiReceiver[mInputPortCount];
+        System.arraycopy(mPortReceivers, 0, receivers, 0, mInputPortCount);
+        return receivers;
     }
 
 
 
     /** Callback function when software midi ports are added or removed
-     * This will get called when clients connect or disconnect.
+     * This will get called when clients connect or disconnect. The device counts as active
+     * as long as any of its input ports is open.
      */
     @Override
     public void onDeviceStatusChanged(MidiDeviceStatus status) {
-        Log.i("MidiSynthDeviceService","onDeviceStatusChanged: active");
-        if (status.isInputPortOpen(0) && !mSynthDeviceServiceMidiReceiverStarted) {
-            //M_SYNTH_DEVICE_SERVICE_MIDI_RECEIVER.start();
-
+        boolean anyOpen = false;
+        for (int port = 0; port < mInputPortCount; port++) {
+            boolean open = status.isInputPortOpen(port);
+            if (open != mInputPortOpen[port]) {
+                mInputPortOpen[port] = open;
+                Log.i("MidiSynthDeviceService","onDeviceStatusChanged: port " + port + (open ? " open" : " closed"));
+                mPortReceivers[port].onPortStatusChanged(open);
+                if (open) {
+                    MidiMetricsRegistry.getDefault().register(mPortReceivers[port].getMetrics());
+                } else {
+                    MidiMetricsRegistry.getDefault().unregister(mPortReceivers[port].getMetrics());
+                }
+            }
+            anyOpen |= open;
+        }
+        if (anyOpen && !mSynthDeviceServiceMidiReceiverStarted) {
             mSynthDeviceServiceMidiReceiverStarted = true;
-
-
-        } else if (!status.isInputPortOpen(0) && mSynthDeviceServiceMidiReceiverStarted){
-            //M_SYNTH_DEVICE_SERVICE_MIDI_RECEIVER.stop();
+            Log.i("MidiSynthDeviceService","onDeviceStatusChanged: active");
+        } else if (!anyOpen && mSynthDeviceServiceMidiReceiverStarted){
             mSynthDeviceServiceMidiReceiverStarted = false;
             Log.i("MidiSynthDeviceService","onDeviceStatusChanged: inactive");
         }
@@ -133,8 +379,9 @@ public class MidiSynthDeviceService extends MidiDeviceService {
 
     public static void checkDeviceStatus()
     {
-        if( mInstance != null) {
-            mSynthDeviceServiceMidiReceiver.onDeviceStatusChanged(mInstance.mSynthDeviceServiceMidiReceiverStarted);
+        MidiSynthDeviceService instance = mInstance;
+        if( instance != null) {
+            mSynthDeviceServiceMidiReceiver.onDeviceStatusChanged(instance.mSynthDeviceServiceMidiReceiverStarted);
         }
     }
 
@@ -23,25 +23,136 @@ import android.media.midi.MidiReceiver;
 
 import android.util.Log;
 
-import com.mathis.inputMidi.MidiSpec;
+import com.mathis.inputMidi.MidiDispatchBus;
+import com.mathis.inputMidi.MidiEvent;
+import com.mathis.inputMidi.MidiEventBatch;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiInputPipeline;
+import com.mathis.inputMidi.MidiLatencyMonitor;
+import com.mathis.inputMidi.MidiNoteTracker;
+import com.mathis.inputMidi.MidiPriorityLanes;
+import com.mathis.inputMidi.MidiSourceMetrics;
+import com.mathis.inputMidi.MidiSysExAssembler;
+import com.mathis.inputMidi.MidiTransform;
+import com.mathis.inputMidi.MidiTransformConfig;
+import com.mathis.inputMidi.midiEventBatchHandler;
+import com.mathis.inputMidi.midiStreamListener;
 
 /**
  * Helper class for MidiSynthDeviceService. It is a requirement by the software midi framework
  * of Android ("virtual midi ports") to have a message receiver object implementing MidiReceiver,
- * one per open receiving port. Here, the implementation is minimalistic, the incoming messages are
- * copied and transmitted to the softwareMidiReceiver object configured; optionally, transmission
- * to the softwareMidiReceiver object can be shut off.
+ * one per open receiving port. Here, the incoming byte stream is split into complete messages by a
+ * MidiStreamParser (handling running status, several messages per packet and system exclusive
+ * messages spread over several packets), and each message is transmitted to the
+ * softwareMidiRangeReceiver object configured, without allocation, or, for softwareMidiBatchReceiver
+ * objects, the short messages of each packet at once; optionally, transmission
+ * to the receiver object can be shut off. Classic softwareMidiReceiver objects are supported through
+ * softwareMidiReceiverAdapter, which copies each message into an array of its own.<br />
+ * Optionally, short messages can instead be queued into a MidiEventRing, to be drained by the
+ * audio render thread without any locking.<br />
+ * There is one object per input port; the events it queues carry its port index as source tag
+ * (see MidiEvent.getSource), and the receiver object is given the port index as well.<br />
+ * Additional consumers can subscribe to the messages through a MidiDispatchBus.<br />
+ * The notes transmitted are tracked, so that note offs can be synthesized when the port is closed
+ * or a system reset is received, rather than leaving notes hanging. The release on closing runs on
+ * the thread reporting the port status, under the same lock as onSend, so that the queue keeps a
+ * single producer at a time.<br />
+ * All this processing is done by a MidiInputPipeline, which does not depend on Android; this
+ * object only adapts it to the midi framework. The receiver object is part of the routing of the
+ * pipeline (see MidiInputRouting), so replacing it while messages arrive is safe: each packet goes
+ * entirely to either the old or the new receiver object.
  */
-public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
+public class SynthDeviceServiceMidiReceiver extends MidiReceiver implements midiStreamListener {
 
     /**
-     * The receiver object to which the midi messages will be transmitted
+     * Parsing, transformation, note tracking and instrumentation of the incoming byte stream; its
+     * output is a ReceiverOutput transmitting to the receiver object
      */
-    protected softwareMidiReceiver receiver=null;
+    private final MidiInputPipeline mPipeline;
+
+    /**
+     * Held by onSend and by the release on closing, so that they do not feed the pipeline at the
+     * same time; uncontended while the port is open
+     */
+    private final Object mReceiveLock = new Object();
+
+    /**
+     * Output of the pipeline for one receiver object. A new one is published with each change of
+     * the receiver object, so that the receiver object and the batch setting change together.
+     */
+    private static final class ReceiverOutput implements midiStreamListener, midiEventBatchHandler {
+        /**
+         * The receiver object to which the midi messages are transmitted
+         */
+        final softwareMidiRangeReceiver mReceiver;
+
+        /**
+         * Index of the input port
+         */
+        private final int mPort;
+
+        /**
+         * Buffer for handing over short messages, which may have been reassembled from several
+         * packets or from running status
+         */
+        private final byte[] mShortMessage = new byte[3];
+
+        ReceiverOutput(softwareMidiRangeReceiver receiver, int port)
+        {
+            mReceiver = receiver;
+            mPort = port;
+        }
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            int length = MidiEvent.toBytes(event, mShortMessage, 0);
+            mReceiver.onSoftwareMidiMessageReceive(mPort, mShortMessage, 0, length, timestamp);
+        }
+
+        /**
+         * Called with the short messages of a packet, if the receiver object processes batches
+         */
+        @Override
+        public void onMidiEventBatch(MidiEventBatch batch) {
+            ((softwareMidiBatchReceiver) mReceiver).onSoftwareMidiBatchReceive(mPort, batch);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            mReceiver.onSoftwareMidiMessageReceive(mPort, data, offset, count, timestamp);
+        }
+    }
+
+    /**
+     * Index of the input port this object receives
+     */
+    private final int mPort;
+
+    /**
+     * Constructor, for the first input port
+     */
+    public SynthDeviceServiceMidiReceiver()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructor
+     * @param port Index of the input port this object receives, 0-255
+     */
+    public SynthDeviceServiceMidiReceiver(int port)
+    {
+        mPort = port;
+        mPipeline = new MidiInputPipeline(port, "virtual" + port);
+    }
+
     /**
-     * Switch to toggle whether we want to receive software midi messages
+     * @return Index of the input port this object receives
      */
-    protected boolean transmitSoftwareMidiMessagesToReceiver = true;
+    public int getPort()
+    {
+        return mPort;
+    }
 
     /**
      * Set whether incoming midi messages shall be transmitted to the softwareMidiReceiver target
@@ -50,7 +161,7 @@ public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
      */
     public void setTransmitSoftwareMidiMessagesToReceiver(boolean doReceive)
     {
-        transmitSoftwareMidiMessagesToReceiver = doReceive;
+        mPipeline.setEnabled(doReceive);
     }
 
     /**
@@ -59,7 +170,7 @@ public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
      */
     public boolean getTransmitSoftwareMidiMessagesToReceiver()
     {
-        return transmitSoftwareMidiMessagesToReceiver;
+        return mPipeline.isEnabled();
     }
 
     /**
@@ -74,28 +185,36 @@ public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
 
     @Override
     public void onSend(byte[] msg, int offset, int count, long timestamp) {
+        synchronized (mReceiveLock) {
+            mPipeline.receive(msg, offset, count, timestamp);
+        }
+    }
 
-        if(!(receiver==null) & (count > 0))
-       {
-           if(transmitSoftwareMidiMessagesToReceiver) {
-               // if the message is a note-on or note-off message, three bytes are required.
-               if(((msg[0] & 0xF0) >> 4 == MidiSpec.MIDICODE_NOTEON)|((msg[0] & 0xF0) >> 4 == MidiSpec.MIDICODE_NOTEOFF))
-               {
-                  if(count<3){
-                      Log.i("SynthDeviceServiceMidiReceiver::onSend","Note on/off message too short! Needs to contain 3 bytes");
-                      return;
-                  }
-
-               }
-               byte[] submessage = new byte[count];
-               for (int i = 0; i < count; i++) {
-                   submessage[i] = msg[i + offset];
-               }
-
+    /**
+     * Transmit a short message to the current receiver object, e.g. from a playback pipeline
+     * (see MidiSynthDeviceService.newPlaybackPipeline)
+     * @param event packed midi event, see MidiEvent
+     * @param timestamp timestamp of the message
+     */
+    @Override
+    public void onMidiEvent(int event, long timestamp) {
+        midiStreamListener output = mPipeline.getOutput();
+        if(output != null)
+        {
+            output.onMidiEvent(event, timestamp);
+        }
+    }
 
-               receiver.onSoftwareMidiMessageReceive(submessage);
-           }
-       }
+    /**
+     * Transmit a system exclusive message to the current receiver object
+     */
+    @Override
+    public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+        midiStreamListener output = mPipeline.getOutput();
+        if(output != null)
+        {
+            output.onSysExChunk(data, offset, count, first, last, timestamp);
+        }
     }
 
     /** Set the SoftwareMidiReceiver object. This is the object to which incoming
@@ -105,7 +224,147 @@ public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
 
     public void setSoftwareMidiMessageReceiver(softwareMidiReceiver rec) {
         Log.i("SynthDeviceServiceMidiReceiver","setSoftwareMidiMessageReceiver");
-        receiver=rec;
+        setReceiver(rec==null ? null : new softwareMidiReceiverAdapter(rec));
+    }
+
+    /** Set the allocation-free receiver object. The messages are transmitted as a range of the
+     * buffer handed over by the Android midi framework, without copying
+     * @param rec The receiving object
+     */
+
+    public void setSoftwareMidiRangeReceiver(softwareMidiRangeReceiver rec) {
+        Log.i("SynthDeviceServiceMidiReceiver","setSoftwareMidiRangeReceiver");
+        setReceiver(rec);
+    }
+
+    /**
+     * Set the receiver object, and have the short messages delivered in batches if it processes
+     * them, in a single routing change
+     */
+    private void setReceiver(softwareMidiRangeReceiver rec) {
+        ReceiverOutput output = rec == null ? null : new ReceiverOutput(rec, mPort);
+        midiEventBatchHandler batchOutput = rec instanceof softwareMidiBatchReceiver ? output : null;
+        mPipeline.updateRouting(routing -> routing.withOutputs(output, batchOutput));
+    }
+
+    /**
+     * @return The current receiver object, or null
+     */
+    public softwareMidiRangeReceiver getSoftwareMidiRangeReceiver() {
+        midiStreamListener output = mPipeline.getOutput();
+        return output instanceof ReceiverOutput ? ((ReceiverOutput) output).mReceiver : null;
+    }
+
+    /**
+     * Set a queue to which short messages (everything but system exclusive) will be transmitted
+     * instead of the receiver object. The queue is single-producer: it must not be shared with
+     * another receiving port.
+     * @param ring The queue, or null to transmit short messages to the receiver object again
+     */
+    public void setEventRing(MidiEventRing ring) {
+        mPipeline.setEventRing(ring);
+    }
+
+    /**
+     * Set priority lanes to which short messages will be transmitted instead of the queue or
+     * receiver object, see MidiPriorityLanes. Like the queue, not to be shared with another port.
+     * @param lanes The lanes, or null to transmit short messages to the queue or receiver object again
+     */
+    public void setPriorityLanes(MidiPriorityLanes lanes) {
+        mPipeline.setPriorityLanes(lanes);
+    }
+
+    /**
+     * Set a bus to which all messages will be transmitted, in addition to the receiver object or queue
+     * @param bus The bus, or null
+     */
+    public void setDispatchBus(MidiDispatchBus bus) {
+        mPipeline.setDispatchBus(bus);
+    }
+
+    /**
+     * Have the system exclusive messages gathered into pooled buffers and transmitted to the
+     * listener of the assembler instead of the receiver object, see MidiSysExAssembler
+     * @param assembler the assembler, with the port index as source, or null to transmit system
+     *                  exclusive messages to the receiver object again
+     */
+    public void setSysExAssembler(MidiSysExAssembler assembler) {
+        mPipeline.setSysExAssembler(assembler);
+    }
+
+    /**
+     * @return The assembler set with setSysExAssembler, or null
+     */
+    public MidiSysExAssembler getSysExAssembler() {
+        return mPipeline.getSysExAssembler();
+    }
+
+    /**
+     * Apply channel remapping, transposition, splits and velocity curves to the short messages
+     * before they are transmitted. The transform can be swapped at any time without interrupting
+     * reception.
+     * @param transform the compiled transform, or null to pass messages unchanged
+     */
+    public void setTransform(MidiTransform transform) {
+        mPipeline.setTransform(transform);
+    }
+
+    /**
+     * Compile and apply a transformation configuration, see setTransform
+     * @param config the configuration, or null to pass messages unchanged
+     */
+    public void setTransformConfig(MidiTransformConfig config) {
+        mPipeline.setTransformConfig(config);
+    }
+
+    /**
+     * @return The transform applied to the short messages, or null
+     */
+    public MidiTransform getTransform() {
+        return mPipeline.getTransform();
+    }
+
+    /**
+     * Notes currently held on this port, as transmitted (after transformation)
+     * @return the note tracker of this port; to be queried from the receiving thread
+     */
+    public MidiNoteTracker getNoteTracker() {
+        return mPipeline.getNoteTracker();
+    }
+
+    /**
+     * Delivery latency and jitter of the data received on this port, measured from the timestamps
+     * given by the sender
+     * @return the latency monitor
+     */
+    public MidiLatencyMonitor getLatencyMonitor() {
+        return mPipeline.getLatencyMonitor();
+    }
+
+    /**
+     * Message rates and drops of this port, including the messages discarded while
+     * transmission is switched off. Registered with MidiMetricsRegistry.getDefault() while the
+     * port is open.
+     * @return the counters
+     */
+    public MidiSourceMetrics getMetrics() {
+        return mPipeline.getMetrics();
+    }
+
+    /**
+     * The processing of the data received on this port
+     * @return the pipeline
+     */
+    public MidiInputPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Get the queue configured with setEventRing
+     * @return the queue, or null if short messages are transmitted to the receiver object
+     */
+    public MidiEventRing getEventRing() {
+        return mPipeline.getEventRing();
     }
 
     /**
@@ -114,7 +373,29 @@ public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
 
     public void removeSoftwareMidiMessageReceiver()
     {
-        receiver=null;
+        setReceiver(null);
+    }
+
+    /**
+     * Called by MidiSynthDeviceService when a client opens or closes the input port of this object
+     * @param open True if the port was opened
+     */
+    public void onPortStatusChanged(boolean open)
+    {
+        if(!open)
+        {
+            // the sender is gone: nobody will release the notes it left on. onSend may still be
+            // running on the binder thread, hence the lock
+            synchronized (mReceiveLock) {
+                mPipeline.releaseAll(System.nanoTime());
+                mPipeline.reset();
+            }
+        }
+        softwareMidiRangeReceiver rec = getSoftwareMidiRangeReceiver();
+        if(rec != null)
+        {
+            rec.onPortStatusChanged(mPort, open);
+        }
     }
 
     /** force setting of the software midi device status
@@ -122,9 +403,10 @@ public class SynthDeviceServiceMidiReceiver extends MidiReceiver {
      */
     public void onDeviceStatusChanged(boolean active)
     {
-        if(!(receiver==null))
+        softwareMidiRangeReceiver rec = getSoftwareMidiRangeReceiver();
+        if(!(rec==null))
         {
-            receiver.onDeviceStatusChanged(active);
+            rec.onDeviceStatusChanged(active);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.softwareMidi;
+
+import com.mathis.inputMidi.MidiEventBatch;
+
+/**
+ * Extension of softwareMidiRangeReceiver for receivers that process the short messages of a
+ * packet as a group. If the receiver object set with setSoftwareMidiRangeReceiver implements this
+ * interface, the short messages of each packet received on an input port are handed over in a
+ * single call, as packed events; system exclusive messages are still delivered through
+ * onSoftwareMidiMessageReceive. Receivers not implementing it get one call per message.
+ */
+public interface softwareMidiBatchReceiver extends softwareMidiRangeReceiver {
+    /**
+     * Called once per received packet with its short messages, after transformation
+     * @param port index of the input port
+     * @param batch the messages, in order; only valid for the duration of the call
+     */
+    void onSoftwareMidiBatchReceive(int port, MidiEventBatch batch);
+}
@@ -0,0 +1,61 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.softwareMidi;
+
+/**
+ * Allocation-free variant of softwareMidiReceiver. Instead of a freshly allocated copy of each
+ * message, the receiver gets the buffer handed over by the Android midi framework, together
+ * with the offset and length of the message and its timestamp. The buffer is only valid for
+ * the duration of the call: implementations that need to keep the data must copy it.
+ */
+public interface softwareMidiRangeReceiver {
+    /**
+     * Called for every incoming software midi message
+     * @param msg buffer containing the midi data; do not keep a reference to it
+     * @param offset position of the first byte of the message in msg
+     * @param count number of bytes of the message
+     * @param timestamp timestamp of the message (based on {@link java.lang.System#nanoTime})
+     */
+    void onSoftwareMidiMessageReceive(final byte[] msg, int offset, int count, long timestamp);
+
+    /**
+     * Called for every incoming software midi message, with the index of the input port it
+     * was received on. The default implementation ignores the port.
+     * @param port index of the input port, see MidiSynthDeviceService.setInputPortCount
+     * @param msg buffer containing the midi data; do not keep a reference to it
+     * @param offset position of the first byte of the message in msg
+     * @param count number of bytes of the message
+     * @param timestamp timestamp of the message (based on {@link java.lang.System#nanoTime})
+     */
+    default void onSoftwareMidiMessageReceive(int port, final byte[] msg, int offset, int count, long timestamp)
+    {
+        onSoftwareMidiMessageReceive(msg, offset, count, timestamp);
+    }
+
+    void onDeviceStatusChanged(boolean active);
+
+    /**
+     * Called when a client opens or closes an input port. The default implementation does nothing.
+     * @param port index of the input port
+     * @param open True if the port was opened, false if it was closed
+     */
+    default void onPortStatusChanged(int port, boolean open)
+    {
+    }
+}
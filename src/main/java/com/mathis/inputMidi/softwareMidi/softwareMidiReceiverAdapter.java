@@ -0,0 +1,64 @@
+// ----------------------------------------------------------------------------
+//
+//  Copyright (C) 2025 Thomas and Mathis Braschler <thomas.braschler@gmail.com>
+//
+//  This program is free software; you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation; either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// ----------------------------------------------------------------------------
+package com.mathis.inputMidi.softwareMidi;
+
+/**
+ * Adapter presenting a classic softwareMidiReceiver as a softwareMidiRangeReceiver.
+ * Since softwareMidiReceiver implementations are free to keep the array they receive, each
+ * message is copied into a new array of exactly the message length, as was done before the
+ * allocation-free interface existed. Receivers that care about allocations on the midi thread
+ * should implement softwareMidiRangeReceiver directly.
+ */
+public class softwareMidiReceiverAdapter implements softwareMidiRangeReceiver {
+
+    /**
+     * The wrapped receiver
+     */
+    private final softwareMidiReceiver mReceiver;
+
+    /**
+     * Constructor
+     * @param receiver The softwareMidiReceiver to which the messages are transmitted
+     */
+    public softwareMidiReceiverAdapter(softwareMidiReceiver receiver)
+    {
+        mReceiver = receiver;
+    }
+
+    /**
+     * Get the wrapped receiver
+     * @return The softwareMidiReceiver passed at construction
+     */
+    public softwareMidiReceiver getReceiver()
+    {
+        return mReceiver;
+    }
+
+    @Override
+    public void onSoftwareMidiMessageReceive(byte[] msg, int offset, int count, long timestamp) {
+        byte[] submessage = new byte[count];
+        System.arraycopy(msg, offset, submessage, 0, count);
+        mReceiver.onSoftwareMidiMessageReceive(submessage);
+    }
+
+    @Override
+    public void onDeviceStatusChanged(boolean active) {
+        mReceiver.onDeviceStatusChanged(active);
+    }
+}
@@ -0,0 +1,129 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiCoalescer
+ */
+public class MidiCoalescerTest {
+
+    private static List<Integer> flush(MidiCoalescer coalescer) {
+        final List<Integer> events = new ArrayList<>();
+        coalescer.flush(new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                events.add(event);
+            }
+        });
+        return events;
+    }
+
+    @Test
+    public void controllerFlood_keepsLatestValue() {
+        MidiCoalescer coalescer = new MidiCoalescer(64);
+        for (int value = 0; value < 100; value++) {
+            coalescer.add(MidiEvent.pack(0xB0, MidiSpec.MIDICC_MODWHEEL, value), value);
+            coalescer.add(MidiEvent.pack(0xE0, 0, value), value);
+        }
+        List<Integer> events = flush(coalescer);
+        assertEquals(2, events.size());
+        assertEquals(MidiEvent.pack(0xB0, MidiSpec.MIDICC_MODWHEEL, 99), (int) events.get(0));
+        assertEquals(MidiEvent.pack(0xE0, 0, 99), (int) events.get(1));
+        assertEquals(198, coalescer.getMergedCount());
+    }
+
+    @Test
+    public void notes_endTheRun() {
+        MidiCoalescer coalescer = new MidiCoalescer(64);
+        coalescer.add(MidiEvent.pack(0xB0, 7, 10), 0);
+        coalescer.add(MidiEvent.pack(0xB0, 7, 20), 1);
+        coalescer.add(MidiEvent.pack(0x90, 60, 100), 2);
+        coalescer.add(MidiEvent.pack(0xB0, 7, 30), 3);
+        coalescer.add(MidiEvent.pack(0xB1, 7, 40), 4);
+        coalescer.add(MidiEvent.pack(0xB1, 7, 50), 5);
+        List<Integer> events = flush(coalescer);
+        assertEquals(4, events.size());
+        assertEquals(MidiEvent.pack(0xB0, 7, 20), (int) events.get(0));
+        assertEquals(MidiEvent.pack(0x90, 60, 100), (int) events.get(1));
+        assertEquals(MidiEvent.pack(0xB0, 7, 30), (int) events.get(2));
+        assertEquals(MidiEvent.pack(0xB1, 7, 50), (int) events.get(3));
+    }
+
+    @Test
+    public void interleavedChannels_keepTimestampOrder() {
+        MidiCoalescer coalescer = new MidiCoalescer(64);
+        coalescer.add(MidiEvent.pack(0xB0, 1, 10), 0);
+        coalescer.add(MidiEvent.pack(0x91, 60, 100), 1);
+        coalescer.add(MidiEvent.pack(0xB0, 1, 20), 2);
+        coalescer.add(MidiEvent.pack(0xE2, 0, 64), 3);
+        coalescer.add(MidiEvent.pack(0xB0, 1, 30), 4);
+        final List<Integer> events = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        coalescer.flush(new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                events.add(event);
+                timestamps.add(timestamp);
+            }
+        });
+        assertEquals(3, events.size());
+        assertEquals(MidiEvent.pack(0x91, 60, 100), (int) events.get(0));
+        assertEquals(MidiEvent.pack(0xE2, 0, 64), (int) events.get(1));
+        assertEquals(MidiEvent.pack(0xB0, 1, 30), (int) events.get(2));
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertTrue(timestamps.get(i) >= timestamps.get(i - 1));
+        }
+        assertEquals(4L, (long) timestamps.get(2));
+    }
+
+    @Test
+    public void controllerFlood_leavesRoomForNotes() {
+        MidiCoalescer coalescer = new MidiCoalescer(4);
+        for (int value = 0; value < 100; value++) {
+            coalescer.add(MidiEvent.pack(0xB0, 1, value), value);
+            coalescer.add(MidiEvent.pack(0xB1, 1, value), value);
+        }
+        assertTrue(coalescer.add(MidiEvent.pack(0x92, 60, 100), 100));
+        List<Integer> events = flush(coalescer);
+        assertEquals(3, events.size());
+        assertEquals(MidiEvent.pack(0xB0, 1, 99), (int) events.get(0));
+        assertEquals(MidiEvent.pack(0xB1, 1, 99), (int) events.get(1));
+        assertEquals(MidiEvent.pack(0x92, 60, 100), (int) events.get(2));
+        assertEquals(0, coalescer.getDroppedCount());
+    }
+
+    @Test
+    public void nrpnSequence_isKeptExactly() {
+        MidiCoalescer coalescer = new MidiCoalescer(64);
+        int[] sequence = {
+                MidiEvent.pack(0xB0, 99, 1), MidiEvent.pack(0xB0, 98, 2),
+                MidiEvent.pack(0xB0, 6, 3), MidiEvent.pack(0xB0, 6, 4),
+                MidiEvent.pack(0xB0, 99, 1), MidiEvent.pack(0xB0, 98, 2),
+        };
+        for (int event : sequence) {
+            coalescer.add(event, 0);
+        }
+        List<Integer> events = flush(coalescer);
+        assertEquals(sequence.length, events.size());
+        for (int i = 0; i < sequence.length; i++) {
+            assertEquals(sequence[i], (int) events.get(i));
+        }
+        assertEquals(0, coalescer.getMergedCount());
+    }
+
+    @Test
+    public void flush_startsNewBlock() {
+        MidiCoalescer coalescer = new MidiCoalescer(64);
+        coalescer.add(MidiEvent.pack(0xB0, 1, 10), 0);
+        assertEquals(1, flush(coalescer).size());
+        coalescer.add(MidiEvent.pack(0xB0, 1, 20), 0);
+        List<Integer> events = flush(coalescer);
+        assertEquals(MidiEvent.pack(0xB0, 1, 20), (int) events.get(0));
+        assertEquals(2, coalescer.getDeliveredCount());
+    }
+}
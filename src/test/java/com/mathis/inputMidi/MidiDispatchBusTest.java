@@ -0,0 +1,72 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiDispatchBus
+ */
+public class MidiDispatchBusTest {
+
+    /** Subscriber counting the events it gets */
+    private static class Counter implements midiStreamListener {
+        int events = 0;
+        int sysExChunks = 0;
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            events++;
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            sysExChunks++;
+        }
+    }
+
+    @Test
+    public void subscribers_getOnlyWhatTheyAskedFor() {
+        MidiDispatchBus bus = new MidiDispatchBus();
+        Counter synth = new Counter();
+        Counter keyboard = new Counter();
+        Counter learn = new Counter();
+        bus.subscribe(synth, MidiDispatchBus.ALL_CHANNELS, MidiDispatchBus.TYPE_ALL);
+        bus.subscribe(keyboard, 1, MidiDispatchBus.TYPE_NOTES);
+        bus.subscribe(learn, MidiDispatchBus.ALL_CHANNELS, MidiDispatchBus.TYPE_CONTROLLER);
+
+        bus.onMidiEvent(MidiEvent.pack(0x90, 60, 100), 0);
+        bus.onMidiEvent(MidiEvent.pack(0x91, 60, 100), 0);
+        bus.onMidiEvent(MidiEvent.pack(0xB3, 1, 10), 0);
+        bus.onMidiEvent(0xF8, 0);
+        bus.onSysExChunk(new byte[]{(byte) 0xF0, (byte) 0xF7}, 0, 2, true, true, 0);
+
+        assertEquals(4, synth.events);
+        assertEquals(1, synth.sysExChunks);
+        assertEquals(1, keyboard.events);
+        assertEquals(0, keyboard.sysExChunks);
+        assertEquals(1, learn.events);
+    }
+
+    @Test
+    public void unsubscribe_stopsDelivery() {
+        MidiDispatchBus bus = new MidiDispatchBus();
+        Counter counter = new Counter();
+        bus.subscribe(counter, MidiDispatchBus.ALL_CHANNELS, MidiDispatchBus.TYPE_ALL);
+        bus.subscribe(counter, MidiDispatchBus.ALL_CHANNELS, MidiDispatchBus.TYPE_ALL);
+        assertEquals(1, bus.getSubscriberCount());
+        bus.onMidiEvent(MidiEvent.pack(0x90, 60, 100), 0);
+        bus.unsubscribe(counter);
+        bus.onMidiEvent(MidiEvent.pack(0x90, 60, 100), 0);
+        assertEquals(1, counter.events);
+    }
+
+    @Test
+    public void typeOf_coversAllStatusBytes() {
+        assertEquals(MidiDispatchBus.TYPE_NOTE_OFF, MidiDispatchBus.typeOf(0x80));
+        assertEquals(MidiDispatchBus.TYPE_PITCH_BEND, MidiDispatchBus.typeOf(0xEF));
+        assertEquals(MidiDispatchBus.TYPE_SYSTEM_COMMON, MidiDispatchBus.typeOf(0xF2));
+        assertEquals(MidiDispatchBus.TYPE_SYSEX, MidiDispatchBus.typeOf(0xF0));
+        assertEquals(MidiDispatchBus.TYPE_REALTIME, MidiDispatchBus.typeOf(0xFF));
+    }
+}
@@ -0,0 +1,107 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiEventBatch and the batch delivery of MidiInputPipeline and MidiEventRing
+ */
+public class MidiEventBatchTest {
+
+    /** Records the calls it gets, batches as their sizes and system exclusive chunks as -1 */
+    private static class BatchOutput implements midiEventBatchHandler, midiStreamListener {
+        final List<Integer> calls = new ArrayList<>();
+        final List<Integer> events = new ArrayList<>();
+
+        @Override
+        public void onMidiEventBatch(MidiEventBatch batch) {
+            calls.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                events.add(batch.getEvent(i));
+            }
+        }
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            fail("single event delivered");
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            calls.add(-1);
+        }
+    }
+
+    @Test
+    public void pipeline_oneBatchPerPacket() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(2, "test");
+        BatchOutput output = new BatchOutput();
+        pipeline.setOutput(output);
+        pipeline.setBatchOutput(output);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100, 62, 100, 64, 100}, 0, 7, 1L);
+        pipeline.receive(new byte[]{(byte) 0xB0, 7, 90}, 0, 3, 2L);
+        assertEquals(2, output.calls.size());
+        assertEquals(3, (int) output.calls.get(0));
+        assertEquals(1, (int) output.calls.get(1));
+        assertEquals(MidiEvent.pack(0x90, 64, 100, 2), (int) output.events.get(2));
+    }
+
+    @Test
+    public void pipeline_batchHandedOverBeforeSysEx() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        BatchOutput output = new BatchOutput();
+        pipeline.setOutput(output);
+        pipeline.setBatchOutput(output);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100, (byte) 0xF0, 1, (byte) 0xF7, (byte) 0x80, 60, 0}, 0, 9, 1L);
+        assertEquals(3, output.calls.size());
+        assertEquals(1, (int) output.calls.get(0));
+        assertEquals(-1, (int) output.calls.get(1));
+        assertEquals(1, (int) output.calls.get(2));
+
+        // synthesized note offs come as one batch as well
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100, 62, 100}, 0, 5, 2L);
+        output.calls.clear();
+        pipeline.releaseAll(3L);
+        assertEquals(1, output.calls.size());
+        assertTrue(output.calls.get(0) >= 2);
+    }
+
+    @Test
+    public void pipeline_eventsOutsideReceiveDeliveredAtOnce() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        BatchOutput output = new BatchOutput();
+        pipeline.setBatchOutput(output);
+        pipeline.onMidiEvent(MidiEvent.pack(0x90, 60, 100), 1L);
+        assertEquals(1, output.calls.size());
+    }
+
+    @Test
+    public void ring_drainsInBatchesOfCapacity() {
+        MidiEventRing ring = new MidiEventRing(16);
+        for (int i = 0; i < 10; i++) {
+            ring.offer(MidiEvent.pack(0x90, i, 100), i);
+        }
+        BatchOutput output = new BatchOutput();
+        assertEquals(10, ring.drain(new MidiEventBatch(4), output));
+        assertEquals(3, output.calls.size());
+        assertEquals(2, (int) output.calls.get(2));
+        assertEquals(MidiEvent.pack(0x90, 9, 100), (int) output.events.get(9));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void unroller_deliversEachEvent() {
+        MidiEventRing ring = new MidiEventRing(8);
+        ring.offer(MidiEvent.pack(0x90, 60, 100), 5L);
+        ring.offer(MidiEvent.pack(0x80, 60, 0), 6L);
+        final long[] timestamps = new long[2];
+        final int[] count = new int[1];
+        ring.drain(new MidiEventBatch(), new MidiEventBatchUnroller((event, timestamp) -> timestamps[count[0]++] = timestamp));
+        assertEquals(2, count[0]);
+        assertArrayEquals(new long[]{5L, 6L}, timestamps);
+    }
+}
@@ -0,0 +1,64 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiEventMerger
+ */
+public class MidiEventMergerTest {
+
+    @Test
+    public void sources_mergedByTimestamp() {
+        MidiEventRing keyboard = new MidiEventRing(16);
+        MidiEventRing pads = new MidiEventRing(16);
+        MidiEventMerger merger = new MidiEventMerger();
+        merger.addSource(keyboard);
+        merger.addSource(pads);
+        keyboard.offer(MidiEvent.pack(0x90, 60, 100, 0), 10);
+        keyboard.offer(MidiEvent.pack(0x80, 60, 0, 0), 40);
+        pads.offer(MidiEvent.pack(0x99, 36, 90, 1), 20);
+        pads.offer(MidiEvent.pack(0x89, 36, 0, 1), 30);
+        pads.offer(MidiEvent.pack(0x99, 38, 90, 1), 50);
+
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Integer> sources = new ArrayList<>();
+        midiEventHandler handler = new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                timestamps.add(timestamp);
+                sources.add(MidiEvent.getSource(event));
+            }
+        };
+        assertEquals(4, merger.drain(handler, 45, 100));
+        assertEquals(1, pads.size());
+        assertEquals(1, merger.drain(handler));
+        for (int i = 0; i < 5; i++) {
+            assertEquals((i + 1) * 10L, (long) timestamps.get(i));
+        }
+        assertEquals(0, (int) sources.get(0));
+        assertEquals(1, (int) sources.get(1));
+    }
+
+    @Test
+    public void removedSource_isNotDrained() {
+        MidiEventRing ring = new MidiEventRing(4);
+        MidiEventMerger merger = new MidiEventMerger();
+        merger.addSource(ring);
+        merger.addSource(ring);
+        assertEquals(1, merger.getSourceCount());
+        ring.offer(1, 1);
+        merger.removeSource(ring);
+        assertEquals(0, merger.getSourceCount());
+        assertEquals(0, merger.drain(new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                fail("removed source drained");
+            }
+        }));
+    }
+}
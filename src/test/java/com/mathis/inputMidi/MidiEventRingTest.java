@@ -0,0 +1,70 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiEventRing
+ */
+public class MidiEventRingTest {
+
+    @Test
+    public void capacity_isRoundedToPowerOfTwo() {
+        assertEquals(64, new MidiEventRing(50).capacity());
+        assertEquals(64, new MidiEventRing(64).capacity());
+    }
+
+    @Test
+    public void overflow_isCounted() {
+        MidiEventRing ring = new MidiEventRing(4);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i, i);
+        }
+        assertEquals(4, ring.size());
+        assertEquals(2, ring.getOverflowCount());
+        int[] events = new int[8];
+        long[] timestamps = new long[8];
+        assertEquals(4, ring.drainTo(events, timestamps, 0, 8));
+        assertEquals(3, events[3]);
+        assertEquals(3L, timestamps[3]);
+        assertTrue(ring.offer(10, 10));
+        assertEquals(1, ring.drain(new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                assertEquals(10, event);
+            }
+        }));
+    }
+
+    @Test
+    public void producerAndConsumerThreads_keepOrder() throws InterruptedException {
+        final MidiEventRing ring = new MidiEventRing(256);
+        final int total = 1000000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    while (!ring.offer(i, i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+        final int[] expected = new int[1];
+        midiEventHandler checker = new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                assertEquals(expected[0], event);
+                assertEquals(expected[0], timestamp);
+                expected[0]++;
+            }
+        };
+        while (expected[0] < total) {
+            ring.drain(checker, 64);
+        }
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,68 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiEventScheduler
+ */
+public class MidiEventSchedulerTest {
+
+    /** Handler recording events and frame offsets */
+    private static class Recorder implements midiScheduledEventHandler {
+        final List<Integer> events = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+
+        @Override
+        public void onScheduledEvent(int event, int frameOffset) {
+            events.add(event);
+            offsets.add(frameOffset);
+        }
+    }
+
+    @Test
+    public void events_placedAtFrameOffset() {
+        // 1000 Hz: one frame per millisecond
+        MidiEventScheduler scheduler = new MidiEventScheduler(1000, 16);
+        scheduler.add(1, 5_000_000L);
+        scheduler.add(2, 12_000_000L);
+        Recorder recorder = new Recorder();
+        assertEquals(1, scheduler.render(0L, 10, recorder));
+        assertEquals(5, (int) recorder.offsets.get(0));
+        assertEquals(1, scheduler.getPendingCount());
+        assertEquals(1, scheduler.render(10_000_000L, 10, recorder));
+        assertEquals(2, (int) recorder.offsets.get(1));
+        assertEquals(0, scheduler.getLateEventCount());
+    }
+
+    @Test
+    public void lateEvents_clampedAndCounted() {
+        MidiEventScheduler scheduler = new MidiEventScheduler(1000, 16);
+        scheduler.add(1, 1_000_000L);
+        Recorder recorder = new Recorder();
+        scheduler.render(10_000_000L, 10, recorder);
+        assertEquals(0, (int) recorder.offsets.get(0));
+        assertEquals(1, scheduler.getLateEventCount());
+    }
+
+    @Test
+    public void latency_andOutOfOrderEvents() {
+        MidiEventScheduler scheduler = new MidiEventScheduler(1000, 16);
+        scheduler.setLatencyFrames(10);
+        scheduler.add(2, 3_000_000L);
+        scheduler.add(1, 1_000_000L);
+        scheduler.add(3, 3_000_000L);
+        Recorder recorder = new Recorder();
+        assertEquals(0, scheduler.render(0L, 10, recorder));
+        assertEquals(3, scheduler.render(10_000_000L, 10, recorder));
+        assertEquals(1, (int) recorder.events.get(0));
+        assertEquals(2, (int) recorder.events.get(1));
+        assertEquals(3, (int) recorder.events.get(2));
+        assertEquals(1, (int) recorder.offsets.get(0));
+        assertEquals(3, (int) recorder.offsets.get(2));
+    }
+}
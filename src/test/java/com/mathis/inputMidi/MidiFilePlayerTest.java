@@ -0,0 +1,191 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local unit tests for MidiFileReader and MidiFilePlayer
+ */
+public class MidiFilePlayerTest {
+
+    private static class Collector implements midiStreamListener {
+        final List<Integer> events = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Long> arrivals = new ArrayList<>();
+        final ByteArrayOutputStream sysEx = new ByteArrayOutputStream();
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            arrivals.add(System.nanoTime());
+            events.add(event);
+            timestamps.add(timestamp);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            sysEx.write(data, offset, count);
+            timestamps.add(timestamp);
+        }
+    }
+
+    private static byte[] track(int... bytes) {
+        byte[] chunk = new byte[8 + bytes.length];
+        chunk[0] = 'M';
+        chunk[1] = 'T';
+        chunk[2] = 'r';
+        chunk[3] = 'k';
+        chunk[7] = (byte) bytes.length;
+        for (int i = 0; i < bytes.length; i++) {
+            chunk[8 + i] = (byte) bytes[i];
+        }
+        return chunk;
+    }
+
+    private static ByteBuffer file(int format, int ppq, byte[]... tracks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, (byte) format, 0, (byte) tracks.length,
+                (byte) (ppq >> 8), (byte) ppq}, 0, 14);
+        for (byte[] track : tracks) {
+            out.write(track, 0, track.length);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * Tempo track at 60 bpm for one beat, then 120 bpm; note on, running status note off one
+     * beat later, system exclusive message one beat after that
+     */
+    private static ByteBuffer tempoMapFile() {
+        return file(1, 96,
+                track(0, 0xFF, 0x51, 3, 0x0F, 0x42, 0x40,
+                        96, 0xFF, 0x51, 3, 0x07, 0xA1, 0x20,
+                        0, 0xFF, 0x2F, 0),
+                track(0, 0x90, 60, 100,
+                        96, 60, 0,
+                        96, 0xF0, 3, 0x7E, 1, 0xF7,
+                        0, 0xFF, 0x2F, 0));
+    }
+
+    @Test
+    public void reader_mergesTracksAlongTempoMap() throws IOException {
+        MidiFileReader reader = new MidiFileReader(tempoMapFile());
+        assertEquals(2, reader.getTrackCount());
+        assertTrue(reader.next());
+        assertEquals(MidiEvent.pack(0x90, 60, 100, 1), reader.getEvent());
+        assertEquals(0L, reader.getTimeNanos());
+        assertTrue(reader.next());
+        assertEquals(MidiEvent.pack(0x90, 60, 0, 1), reader.getEvent());
+        assertEquals(1000000000L, reader.getTimeNanos());
+        assertTrue(reader.next());
+        assertTrue(reader.isSysEx());
+        assertEquals(1500000000L, reader.getTimeNanos());
+        Collector collector = new Collector();
+        reader.deliver(collector, 0L);
+        assertArrayEquals(new byte[]{(byte) 0xF0, 0x7E, 1, (byte) 0xF7}, collector.sysEx.toByteArray());
+        assertFalse(reader.next());
+
+        reader.rewind();
+        assertTrue(reader.next());
+        assertEquals(0L, reader.getTick());
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsOtherFiles() throws IOException {
+        new MidiFileReader(ByteBuffer.wrap(new byte[]{'R', 'I', 'F', 'F', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsMoreTracksThanSourceTags() throws IOException {
+        // 257 tracks: the track index would not fit into the source tag
+        new MidiFileReader(ByteBuffer.wrap(new byte[]{'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 1, 1, 1, 0, 96}));
+    }
+
+    @Test
+    public void render_deliversByBlocksOnVirtualClock() throws IOException {
+        Collector collector = new Collector();
+        MidiFilePlayer player = new MidiFilePlayer(new MidiFileReader(tempoMapFile()), collector);
+        player.setTimestampBase(5000L);
+        assertEquals(1, player.render(1000000000L));
+        assertEquals(5000L, (long) collector.timestamps.get(0));
+        assertFalse(player.isFinished());
+        assertEquals(2, player.render(1000000000L));
+        assertEquals(1000005000L, (long) collector.timestamps.get(1));
+        assertTrue(player.isFinished());
+        assertEquals(0, player.render(1000000000L));
+
+        player.rewind();
+        assertEquals(3, player.render(2000000000L));
+    }
+
+    /**
+     * Note on, and its note off 100 beats later
+     */
+    private static ByteBuffer longNoteFile() {
+        // 9600 ticks as variable length quantity: 0xCB 0x00
+        return file(0, 96, track(0, 0x90, 60, 100, 0xCB, 0x00, 0x80, 60, 0, 0, 0xFF, 0x2F, 0));
+    }
+
+    @Test
+    public void stop_releasesSoundingNotes() throws Exception {
+        final CountDownLatch noteOn = new CountDownLatch(1);
+        Collector collector = new Collector() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                super.onMidiEvent(event, timestamp);
+                noteOn.countDown();
+            }
+        };
+        MidiFilePlayer player = new MidiFilePlayer(new MidiFileReader(longNoteFile()), collector);
+        player.start();
+        assertTrue(noteOn.await(5, TimeUnit.SECONDS));
+        player.stop();
+        assertEquals(2, collector.events.size());
+        assertEquals(MidiEvent.pack(0x80, 60, 0), (int) collector.events.get(1));
+        assertFalse(player.isFinished());
+    }
+
+    @Test
+    public void rewind_releasesSoundingNotes() throws IOException {
+        Collector collector = new Collector();
+        MidiFilePlayer player = new MidiFilePlayer(new MidiFileReader(longNoteFile()), collector);
+        player.setTimestampBase(5000L);
+        assertEquals(1, player.render(1000000L));
+        player.rewind();
+        assertEquals(2, collector.events.size());
+        assertEquals(MidiEvent.pack(0x80, 60, 0), (int) collector.events.get(1));
+        assertEquals(1005000L, (long) collector.timestamps.get(1));
+        // nothing left to release
+        player.rewind();
+        assertEquals(2, collector.events.size());
+    }
+
+    @Test
+    public void start_playsOnSchedule() throws Exception {
+        // two notes 2 ticks apart at 96 ticks per beat and 120 bpm: 10.4 ms
+        Collector collector = new Collector();
+        MidiFilePlayer player = new MidiFilePlayer(new MidiFileReader(file(0, 96,
+                track(0, 0x90, 60, 100, 2, 0x80, 60, 0, 0, 0xFF, 0x2F, 0))), collector);
+        final CountDownLatch done = new CountDownLatch(1);
+        player.setCompletionListener(done::countDown);
+        player.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, collector.events.size());
+        long interval = collector.timestamps.get(1) - collector.timestamps.get(0);
+        assertEquals(10416666L, interval);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(collector.arrivals.get(i) >= collector.timestamps.get(i));
+        }
+        assertTrue(player.isFinished());
+        player.stop();
+        assertFalse(player.isPlaying());
+    }
+}
@@ -0,0 +1,144 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiInputPipeline
+ */
+public class MidiInputPipelineTest {
+
+    private static class RecordingOutput implements midiStreamListener {
+        int events = 0;
+        int sysExBytes = 0;
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            events++;
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            sysExBytes += count;
+        }
+    }
+
+    @Test
+    public void shortMessages_queuedWithSourceTag() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(5, "test");
+        MidiEventRing ring = new MidiEventRing(8);
+        pipeline.setEventRing(ring);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100, 64, 90}, 0, 5, 0L);
+        assertEquals(2, ring.size());
+        assertEquals(5, MidiEvent.getSource(ring.peekEvent()));
+        assertEquals(2, pipeline.getNoteTracker().getHeldNoteCount(0));
+        assertEquals(5, pipeline.getMetrics().getByteCount());
+        // by category, the running status message is counted at its full length
+        assertEquals(6, pipeline.getMetrics().getByteCount(MidiSourceMetrics.NOTE));
+    }
+
+    @Test
+    public void disabled_countsDropsButKeepsParsing() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        RecordingOutput output = new RecordingOutput();
+        pipeline.setOutput(output);
+        pipeline.setEnabled(false);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100}, 0, 3, 0L);
+        pipeline.setEnabled(true);
+        pipeline.receive(new byte[]{62, 100, (byte) 0xF0, 1, 2, (byte) 0xF7}, 0, 6, 0L);
+        assertEquals(1, output.events);
+        assertEquals(4, output.sysExBytes);
+        assertEquals(1, pipeline.getMetrics().getDropCount(MidiSourceMetrics.DROP_DISABLED));
+    }
+
+    @Test
+    public void releaseAll_transmitsNoteOffs() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        RecordingOutput output = new RecordingOutput();
+        pipeline.setOutput(output);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100}, 0, 3, 0L);
+        pipeline.releaseAll(1L);
+        assertEquals(2, output.events);
+        assertFalse(pipeline.getNoteTracker().isAnyNoteSounding());
+    }
+
+    @Test
+    public void releaseAll_offersNoteOffsToNotesLane() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        MidiPriorityLanes lanes = new MidiPriorityLanes(8);
+        pipeline.setPriorityLanes(lanes);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100, (byte) 0xB0, 64, 127, 1, 10}, 0, 8, 0L);
+        pipeline.releaseAll(5L);
+        // note on and pedal, then note off and pedal release, ahead of the controller data
+        assertEquals(4, lanes.getDepth(MidiPriorityLanes.LANE_NOTES));
+        assertEquals(1, lanes.getDepth(MidiPriorityLanes.LANE_CONTINUOUS));
+        MidiEventRing notes = lanes.getLane(MidiPriorityLanes.LANE_NOTES);
+        notes.skip();
+        notes.skip();
+        assertEquals(0x80, MidiEvent.getStatus(notes.peekEvent()));
+        assertEquals(5L, notes.peekTimestamp());
+        notes.skip();
+        assertEquals(MidiEvent.pack(0xB0, 64, 0), notes.peekEvent());
+    }
+
+    @Test
+    public void routingChange_takesEffectWithNextPacket() {
+        final MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        final RecordingOutput second = new RecordingOutput();
+        RecordingOutput first = new RecordingOutput() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                super.onMidiEvent(event, timestamp);
+                // reconfigure from within the packet: the rest of the packet keeps the old routing
+                pipeline.updateRouting(r -> r.withOutput(second).withEnabled(false));
+            }
+        };
+        pipeline.setOutput(first);
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100, 62, 100, 64, 100}, 0, 7, 0L);
+        assertEquals(3, first.events);
+        assertEquals(0, second.events);
+        assertSame(second, pipeline.getOutput());
+        assertFalse(pipeline.isEnabled());
+        pipeline.receive(new byte[]{(byte) 0x80, 60, 0}, 0, 3, 1L);
+        assertEquals(0, second.events);
+        assertEquals(1, pipeline.getMetrics().getDropCount(MidiSourceMetrics.DROP_DISABLED));
+    }
+
+    @Test
+    public void transform_partOfRouting() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        MidiEventRing ring = new MidiEventRing(8);
+        MidiTransform transform = new MidiTransformConfig().setTranspose(12).compile();
+        pipeline.setRouting(MidiInputRouting.DEFAULT.withEventRing(ring).withTransform(transform));
+        pipeline.receive(new byte[]{(byte) 0x90, 60, 100}, 0, 3, 0L);
+        assertEquals(72, MidiEvent.getData1(ring.peekEvent()));
+        assertNull(MidiInputRouting.DEFAULT.getTransform());
+    }
+
+    @Test
+    public void concurrentUpdates_noneLost() throws InterruptedException {
+        final MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        final MidiEventRing ring = new MidiEventRing(8);
+        final MidiDispatchBus bus = new MidiDispatchBus();
+        Thread[] threads = new Thread[2];
+        threads[0] = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                pipeline.setEventRing(i % 2 == 0 ? null : ring);
+            }
+        });
+        threads[1] = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                pipeline.setDispatchBus(i % 2 == 0 ? null : bus);
+            }
+        });
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertSame(ring, pipeline.getEventRing());
+        assertSame(bus, pipeline.getDispatchBus());
+    }
+}
@@ -0,0 +1,185 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Local unit tests for MidiInputRecorder, MidiRecordingReader and MidiFileExporter
+ */
+public class MidiInputRecorderTest {
+
+    private static File newDirectory() throws IOException {
+        File directory = Files.createTempDirectory("midirec").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void record_readBackAcrossSegments() throws IOException {
+        File directory = newDirectory();
+        try {
+            MidiInputRecorder recorder = new MidiInputRecorder(directory, "take", 64, 4, 1000);
+            assertFalse(recorder.record(0, MidiEvent.pack(0x90, 60, 100), 1L));
+            recorder.start();
+            assertTrue(recorder.record(0, MidiEvent.pack(0x90, 60, 100, 3), 1000L));
+            byte[] sysEx = {(byte) 0xF0, 0x7E, 1, 2, 3, 4, (byte) 0xF7};
+            assertTrue(recorder.recordSysEx(1, 2, sysEx, 0, sysEx.length, true, true, 2000L));
+            assertTrue(recorder.record(0, MidiEvent.pack(0x80, 60, 0, 3), 3000L));
+            assertTrue(recorder.record(0, MidiEvent.pack(0xB0, 7, 90), 4000L));
+            recorder.stop();
+            assertEquals(5, recorder.getWrittenCount());
+            assertEquals(2, recorder.getSegmentFiles().size());
+            assertNull(recorder.getError());
+
+            File[] segments = MidiRecordingReader.listSegments(directory, "take");
+            assertEquals(2, segments.length);
+            MidiRecordingReader reader = new MidiRecordingReader(segments);
+            assertTrue(reader.next());
+            assertEquals(MidiEvent.pack(0x90, 60, 100, 3), reader.getEvent());
+            assertEquals(3, reader.getSource());
+            assertEquals(1000L, reader.getTimestamp());
+
+            // the system exclusive message is split over two records, and over the two segments
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4];
+            assertTrue(reader.next());
+            assertTrue(reader.isSysEx() && reader.isFirst() && !reader.isLast());
+            assertEquals(1, reader.getStream());
+            assertEquals(2, reader.getSource());
+            bytes.write(chunk, 0, reader.getSysExBytes(chunk, 0));
+            assertTrue(reader.next());
+            assertTrue(reader.isSysEx() && reader.isLast());
+            bytes.write(chunk, 0, reader.getSysExBytes(chunk, 0));
+            assertArrayEquals(sysEx, bytes.toByteArray());
+
+            assertTrue(reader.next());
+            assertEquals(MidiEvent.pack(0x80, 60, 0, 3), reader.getEvent());
+            assertTrue(reader.next());
+            assertEquals(4000L, reader.getTimestamp());
+            assertFalse(reader.next());
+            reader.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void writeError_startRecovers() throws IOException, InterruptedException {
+        File directory = newDirectory();
+        try {
+            MidiInputRecorder recorder = new MidiInputRecorder(directory, "take", 64, 1, 1000);
+            recorder.start();
+            // the next segment cannot be created once the directory is gone
+            delete(directory);
+            assertTrue(recorder.record(0, MidiEvent.pack(0x90, 60, 100), 1000L));
+            assertTrue(recorder.record(0, MidiEvent.pack(0x80, 60, 0), 2000L));
+            for (int i = 0; i < 200 && recorder.getError() == null; i++) {
+                Thread.sleep(10);
+            }
+            assertNotNull(recorder.getError());
+            assertFalse(recorder.isRecording());
+            assertFalse(recorder.record(0, MidiEvent.pack(0xB0, 7, 90), 3000L));
+
+            recorder.start();
+            assertTrue(recorder.isRecording());
+            assertNull(recorder.getError());
+            assertTrue(recorder.record(0, MidiEvent.pack(0xB0, 7, 90), 3000L));
+            recorder.stop();
+            assertNull(recorder.getError());
+            assertEquals(3, recorder.getWrittenCount());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void pipeline_recordsAsReceived() throws IOException {
+        File directory = newDirectory();
+        try {
+            MidiInputRecorder recorder = new MidiInputRecorder(directory, "pipe");
+            MidiInputPipeline pipeline = new MidiInputPipeline(4, "test");
+            pipeline.setRecorder(recorder, 7);
+            pipeline.setEnabled(false);
+            recorder.start();
+            pipeline.receive(new byte[]{(byte) 0x90, 60, 100, 62, 100}, 0, 5, 10L);
+            recorder.stop();
+
+            MidiRecordingReader reader = new MidiRecordingReader(recorder.getSegmentFiles().toArray(new File[0]));
+            int count = 0;
+            while (reader.next()) {
+                assertEquals(7, reader.getStream());
+                assertEquals(4, reader.getSource());
+                count++;
+            }
+            assertEquals(2, count);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void recordSysEx_tooLargeForBuffer_dropped() throws IOException {
+        File directory = newDirectory();
+        try {
+            MidiInputRecorder recorder = new MidiInputRecorder(directory, "drop", 4, 16, 1000);
+            recorder.start();
+            byte[] sysEx = new byte[20];
+            assertFalse(recorder.recordSysEx(0, 0, sysEx, 0, sysEx.length, true, true, 1L));
+            recorder.stop();
+            assertEquals(1, recorder.getDroppedCount());
+            assertEquals(0, recorder.getWrittenCount());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void export_writesOneTrackPerInput() throws IOException {
+        File directory = newDirectory();
+        try {
+            MidiInputRecorder recorder = new MidiInputRecorder(directory, "smf");
+            recorder.start();
+            recorder.record(0, MidiEvent.pack(0x90, 60, 100, 1), 1000000000L);
+            // half a second later: one beat at 120 bpm
+            recorder.record(0, MidiEvent.pack(0x80, 60, 0, 1), 1500000000L);
+            recorder.record(0, MidiEvent.pack(0xF8, 0, 0, 1), 1500000000L);
+            recorder.record(1, MidiEvent.pack(0xC0, 5, 0), 1500000000L);
+            recorder.stop();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MidiRecordingReader reader = new MidiRecordingReader(recorder.getSegmentFiles().toArray(new File[0]));
+            assertEquals(3, MidiFileExporter.export(reader, out, 96));
+            byte[] smf = out.toByteArray();
+            assertEquals("MThd", new String(smf, 0, 4, "US-ASCII"));
+            assertEquals(1, smf[9]);  // format 1
+            assertEquals(3, smf[11]); // tempo track and two inputs
+            assertEquals(96, smf[13]);
+
+            // first input track: name, note on at 0, note off one beat later, end of track
+            int track = 14 + 8 + 7 + 4;
+            assertEquals("MTrk", new String(smf, track, 4, "US-ASCII"));
+            int name = 4 + "stream 0 source 1".length();
+            int events = track + 8 + name;
+            assertArrayEquals(new byte[]{0, (byte) 0x90, 60, 100, 96, (byte) 0x80, 60, 0, 0, (byte) 0xFF, 0x2F, 0},
+                    java.util.Arrays.copyOfRange(smf, events, events + 12));
+        } finally {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiLatencyHistogram and MidiLatencyMonitor
+ */
+public class MidiLatencyHistogramTest {
+
+    @Test
+    public void buckets_boundValuesWithin12Percent() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = MidiLatencyHistogram.bucketIndex(value);
+            assertTrue(index < MidiLatencyHistogram.BUCKET_COUNT);
+            long upper = MidiLatencyHistogram.bucketUpperBound(index);
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        MidiLatencyHistogram histogram = new MidiLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        MidiLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(1, snapshot.getNegativeCount());
+        assertEquals(1_000_000L, snapshot.getMax());
+        assertEquals(500_000.0, snapshot.getP50(), 500_000 / 8.0);
+        assertEquals(900_000.0, snapshot.getP90(), 900_000 / 8.0);
+        assertEquals(990_000.0, snapshot.getP99(), 990_000 / 8.0);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getP99());
+    }
+
+    @Test
+    public void monitor_latencyAndJitter() {
+        MidiLatencyMonitor monitor = new MidiLatencyMonitor();
+        monitor.record(1000, 1100);
+        monitor.record(2000, 2400);
+        monitor.record(0, 5000);
+        assertEquals(2, monitor.getLatency().snapshot().getCount());
+        assertEquals(400, monitor.getLatency().snapshot().getMax());
+        MidiLatencyHistogram.Snapshot jitter = monitor.getJitter().snapshot();
+        assertEquals(1, jitter.getCount());
+        assertEquals(300, jitter.getMax());
+    }
+}
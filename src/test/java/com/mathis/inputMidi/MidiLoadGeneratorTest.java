@@ -0,0 +1,69 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiLoadGenerator
+ */
+public class MidiLoadGeneratorTest {
+
+    private static long messageCount(MidiSourceMetrics metrics) {
+        long count = 0;
+        for (int category = 0; category < MidiSourceMetrics.CATEGORY_COUNT; category++) {
+            count += metrics.getMessageCount(category);
+        }
+        return count;
+    }
+
+    @Test
+    public void generate_sameSeedSameStream() {
+        for (int pattern = 0; pattern < MidiLoadGenerator.PATTERN_COUNT; pattern++) {
+            MidiLoadGenerator.Packets a = new MidiLoadGenerator(pattern, 0, 42).generate(1);
+            MidiLoadGenerator.Packets b = new MidiLoadGenerator(pattern, 0, 42).generate(1);
+            MidiLoadGenerator.Packets other = new MidiLoadGenerator(pattern, 0, 42).generate(2);
+            assertEquals(a.data.length, b.data.length);
+            for (int i = 0; i < a.data.length; i++) {
+                assertArrayEquals(a.data[i], b.data[i]);
+            }
+            assertFalse(java.util.Arrays.equals(a.data[0], other.data[0]) && a.data.length == other.data.length);
+        }
+    }
+
+    @Test
+    public void run_messageCountsMatchParser() throws InterruptedException {
+        for (int pattern = 0; pattern < MidiLoadGenerator.PATTERN_COUNT; pattern++) {
+            MidiInputPipeline pipeline = new MidiInputPipeline(0, "load");
+            MidiLoadGenerator generator = new MidiLoadGenerator(pattern, 0, 7);
+            generator.addMetrics(pipeline.getMetrics());
+            MidiLoadGenerator.Report report = generator.run(Collections.singletonList(pipeline::receive), 50);
+            assertTrue(report.getMessageCount() > 0);
+            assertEquals(report.getMessageCount(), messageCount(pipeline.getMetrics()));
+            assertEquals(report.getByteCount(), pipeline.getMetrics().getByteCount());
+            assertEquals(0, report.getDropCount(MidiSourceMetrics.DROP_MALFORMED_BYTES));
+        }
+    }
+
+    @Test
+    public void run_reportsQueueOverflowPerThread() throws InterruptedException {
+        List<midiByteReceiver> receivers = new ArrayList<>();
+        MidiLoadGenerator generator = new MidiLoadGenerator(MidiLoadGenerator.PATTERN_CHORDS, 100000, 1);
+        for (int t = 0; t < 2; t++) {
+            MidiInputPipeline pipeline = new MidiInputPipeline(t, "load" + t);
+            pipeline.setEventRing(new MidiEventRing(64));
+            generator.addMetrics(pipeline.getMetrics());
+            receivers.add(pipeline::receive);
+        }
+        MidiLoadGenerator.Report report = generator.run(receivers, 100);
+        // nothing drains the queues: all but 64 events per thread overflow
+        assertEquals(report.getMessageCount() - 2 * 64, report.getDropCount(MidiSourceMetrics.DROP_OVERFLOW));
+        // paced at 100000 msg/s per thread, in packets of 64 messages
+        assertTrue(report.getMessageCount() <= 2 * (10000 + 64));
+        assertTrue(report.getLag().getCount() > 0);
+    }
+}
@@ -0,0 +1,93 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Local unit tests for MidiMessageBatch
+ */
+public class MidiMessageBatchTest {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int sDecodedBytes = 0;
+
+    private static void count(byte[] data, int offset, int count, long timestamp) {
+        sDecodedBytes += count;
+    }
+
+    @Test
+    public void addAndDecode_feedsPipelineWithTimestamps() {
+        MidiMessageBatch batch = new MidiMessageBatch(256);
+        assertTrue(batch.add(new byte[]{(byte) 0x90, 60, 100}, 0, 3, 1000L));
+        // running status across records, as the native reading thread may deliver it
+        assertTrue(batch.add(new byte[]{0, 62, 90, 64, 80}, 1, 4, 2000L));
+        assertEquals(2, batch.getWrittenCount());
+        assertEquals(MidiMessageBatch.recordSize(3) + MidiMessageBatch.recordSize(4), batch.getWrittenBytes());
+        assertEquals(16, MidiMessageBatch.recordSize(3));
+
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "batch");
+        MidiEventRing ring = new MidiEventRing(8);
+        pipeline.setEventRing(ring);
+        assertEquals(2, batch.decode(batch.getWrittenBytes(), pipeline::receive));
+        int[] events = new int[4];
+        long[] timestamps = new long[4];
+        assertEquals(3, ring.drainTo(events, timestamps, 0, 4));
+        assertEquals(MidiEvent.pack(0x90, 64, 80), events[2]);
+        assertEquals(1000L, timestamps[0]);
+        assertEquals(2000L, timestamps[2]);
+    }
+
+    @Test
+    public void add_full_rejected() {
+        MidiMessageBatch batch = new MidiMessageBatch(32);
+        byte[] message = {(byte) 0xB0, 7, 100};
+        assertTrue(batch.add(message, 0, 3, 1L));
+        assertTrue(batch.add(message, 0, 3, 2L));
+        assertFalse(batch.add(message, 0, 3, 3L));
+        batch.clear();
+        assertEquals(0, batch.getWrittenBytes());
+        assertTrue(batch.add(message, 0, 3, 4L));
+    }
+
+    @Test
+    public void decode_stopsAtRecordExceedingBatch() {
+        MidiMessageBatch batch = new MidiMessageBatch(64);
+        batch.add(new byte[]{(byte) 0xB0, 7, 100}, 0, 3, 1L);
+        batch.getBuffer().putLong(16, 2L);
+        batch.getBuffer().putInt(24, 1000);
+        final int[] records = new int[1];
+        assertEquals(1, batch.decode(32, (data, offset, count, timestamp) -> records[0]++));
+        assertEquals(1, records[0]);
+        assertEquals(1, batch.getMalformedCount());
+    }
+
+    @Test
+    public void decode_allocatesNothing() {
+        MidiMessageBatch batch = new MidiMessageBatch(256);
+        byte[] message = {(byte) 0x90, 60, 100};
+        while (batch.add(message, 0, 3, 1L)) {
+        }
+        int bytes = batch.getWrittenBytes();
+        midiByteReceiver receiver = MidiMessageBatchTest::count;
+        // best of several rounds, to rule out one-off allocations by the runtime
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < 10000; i++) {
+                batch.decode(bytes, receiver);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - before);
+        }
+        assertEquals(5 * 10000 * 3 * batch.getWrittenCount(), sDecodedBytes);
+        assertTrue("allocated " + allocated + " bytes", allocated < 256);
+    }
+}
@@ -0,0 +1,56 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiSourceMetrics and MidiMetricsRegistry
+ */
+public class MidiMetricsRegistryTest {
+
+    @Test
+    public void categories() {
+        assertEquals(MidiSourceMetrics.NOTE, MidiSourceMetrics.categoryOf(0x93));
+        assertEquals(MidiSourceMetrics.PRESSURE, MidiSourceMetrics.categoryOf(0xD0));
+        assertEquals(MidiSourceMetrics.PITCH_BEND, MidiSourceMetrics.categoryOf(0xEF));
+        assertEquals(MidiSourceMetrics.SYSEX, MidiSourceMetrics.categoryOf(0xF0));
+        assertEquals(MidiSourceMetrics.SYSTEM_COMMON, MidiSourceMetrics.categoryOf(0xF2));
+        assertEquals(MidiSourceMetrics.REALTIME, MidiSourceMetrics.categoryOf(0xF8));
+    }
+
+    @Test
+    public void snapshot_andRates() {
+        MidiMetricsRegistry registry = new MidiMetricsRegistry();
+        MidiSourceMetrics source = new MidiSourceMetrics("test");
+        registry.register(source);
+        registry.register(source);
+        MidiMetricsRegistry.Snapshot before = registry.snapshot();
+        source.onBytes(6);
+        source.onMessage(MidiEvent.pack(0x90, 60, 100));
+        source.onMessage(MidiEvent.pack(0xB0, 1, 5));
+        source.onMessage(MidiEvent.pack(0xB0, 7, 90), 4);
+        source.onSysExBytes(5);
+        source.onSysEx();
+        source.onDrop(MidiSourceMetrics.DROP_OVERFLOW, 2);
+        MidiMetricsRegistry.Snapshot after = registry.snapshot();
+        assertEquals(1, after.getSources().size());
+        MidiMetricsRegistry.SourceSnapshot test = after.getSource("test");
+        assertEquals(4, test.getMessageCount());
+        assertEquals(2, test.getMessageCount(MidiSourceMetrics.CONTROL_CHANGE));
+        assertEquals(6, test.getByteCount());
+        assertEquals(3, test.getByteCount(MidiSourceMetrics.NOTE));
+        assertEquals(7, test.getByteCount(MidiSourceMetrics.CONTROL_CHANGE));
+        assertEquals(5, test.getByteCount(MidiSourceMetrics.SYSEX));
+        assertEquals(0, test.getByteCount(MidiSourceMetrics.PITCH_BEND));
+        assertEquals(2, test.getDropCount(MidiSourceMetrics.DROP_OVERFLOW));
+        String rates = MidiMetricsRegistry.formatRates(before, after);
+        assertTrue(rates.startsWith("test:"));
+        assertTrue(rates.contains(" cc.bytes/s="));
+        assertTrue(rates.contains(" sysex.bytes/s="));
+        assertFalse(rates.contains(" pitchbend.bytes/s="));
+        assertTrue(rates.contains("dropped.overflow=2"));
+        registry.unregister(source);
+        assertEquals(0, registry.snapshot().getSources().size());
+    }
+}
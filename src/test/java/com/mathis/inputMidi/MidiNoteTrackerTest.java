@@ -0,0 +1,62 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiNoteTracker
+ */
+public class MidiNoteTrackerTest {
+
+    @Test
+    public void heldNotes_andVoiceCount() {
+        MidiNoteTracker tracker = new MidiNoteTracker();
+        tracker.track(MidiEvent.pack(0x90, 60, 100));
+        tracker.track(MidiEvent.pack(0x90, 100, 90));
+        tracker.track(MidiEvent.pack(0x91, 60, 80));
+        assertTrue(tracker.isNoteHeld(0, 100));
+        assertEquals(2, tracker.getHeldNoteCount(0));
+        assertEquals(90, tracker.getLastVelocity(0, 100));
+        tracker.track(MidiEvent.pack(0x90, 60, 0));
+        assertFalse(tracker.isNoteHeld(0, 60));
+        assertEquals(1, tracker.getVoiceCount(0));
+        assertEquals(1, tracker.getVoiceCount(1));
+    }
+
+    @Test
+    public void sustainPedal_keepsReleasedNotesSounding() {
+        MidiNoteTracker tracker = new MidiNoteTracker();
+        tracker.track(MidiEvent.pack(0xB0, 64, 127));
+        tracker.track(MidiEvent.pack(0x90, 60, 100));
+        tracker.track(MidiEvent.pack(0x80, 60, 0));
+        assertFalse(tracker.isNoteHeld(0, 60));
+        assertTrue(tracker.isNoteSounding(0, 60));
+        tracker.track(MidiEvent.pack(0xB0, 64, 0));
+        assertFalse(tracker.isNoteSounding(0, 60));
+    }
+
+    @Test
+    public void releaseAll_synthesizesNoteOffs() {
+        MidiNoteTracker tracker = new MidiNoteTracker(2);
+        tracker.track(MidiEvent.pack(0x90, 1, 100));
+        tracker.track(MidiEvent.pack(0x9F, 127, 100));
+        tracker.track(MidiEvent.pack(0xB3, 64, 127));
+        final List<Integer> events = new ArrayList<>();
+        int count = tracker.releaseAll(new midiEventHandler() {
+            @Override
+            public void onMidiEvent(int event, long timestamp) {
+                events.add(event);
+            }
+        }, 0);
+        assertEquals(3, count);
+        assertEquals(MidiEvent.pack(0x80, 1, 0, 2), (int) events.get(0));
+        assertEquals(MidiEvent.pack(0x8F, 127, 0, 2), (int) events.get(1));
+        assertEquals(MidiEvent.pack(0xB3, 64, 0, 2), (int) events.get(2));
+        assertFalse(tracker.isAnyNoteSounding());
+        assertEquals(2, tracker.getSynthesizedNoteOffCount());
+    }
+}
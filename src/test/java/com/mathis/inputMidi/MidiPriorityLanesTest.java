@@ -0,0 +1,98 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiPriorityLanes
+ */
+public class MidiPriorityLanesTest {
+
+    /** Collects drained events */
+    private static class Collector implements midiEventHandler {
+        final List<Integer> events = new ArrayList<>();
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            events.add(event);
+        }
+    }
+
+    @Test
+    public void laneOf_classifiesByMessageType() {
+        assertEquals(MidiPriorityLanes.LANE_REALTIME, MidiPriorityLanes.laneOf(MidiEvent.pack(0xF8, 0, 0)));
+        assertEquals(MidiPriorityLanes.LANE_NOTES, MidiPriorityLanes.laneOf(MidiEvent.pack(0x90, 60, 100)));
+        assertEquals(MidiPriorityLanes.LANE_NOTES, MidiPriorityLanes.laneOf(MidiEvent.pack(0x80, 60, 0)));
+        assertEquals(MidiPriorityLanes.LANE_NOTES, MidiPriorityLanes.laneOf(MidiEvent.pack(0xC0, 5, 0)));
+        // sustain pedal and bank select stay ordered with the notes
+        assertEquals(MidiPriorityLanes.LANE_NOTES, MidiPriorityLanes.laneOf(MidiEvent.pack(0xB0, 64, 127)));
+        assertEquals(MidiPriorityLanes.LANE_NOTES, MidiPriorityLanes.laneOf(MidiEvent.pack(0xB0, 0, 1)));
+        assertEquals(MidiPriorityLanes.LANE_CONTINUOUS, MidiPriorityLanes.laneOf(MidiEvent.pack(0xB0, 1, 64)));
+        assertEquals(MidiPriorityLanes.LANE_CONTINUOUS, MidiPriorityLanes.laneOf(MidiEvent.pack(0xE0, 0, 64)));
+        assertEquals(MidiPriorityLanes.LANE_CONTINUOUS, MidiPriorityLanes.laneOf(MidiEvent.pack(0xD0, 10, 0)));
+        assertEquals(MidiPriorityLanes.LANE_CONTINUOUS, MidiPriorityLanes.laneOf(MidiEvent.pack(0xA0, 60, 10)));
+    }
+
+    @Test
+    public void noteOvertakesControllerFlood_orderKeptWithinLanes() {
+        MidiPriorityLanes lanes = new MidiPriorityLanes(1024);
+        for (int i = 0; i < 500; i++) {
+            lanes.offer(MidiEvent.pack(0xB0, 1, i & 0x7F), i);
+        }
+        int noteOn = MidiEvent.pack(0x90, 60, 100);
+        int noteOff = MidiEvent.pack(0x80, 60, 0);
+        lanes.offer(noteOn, 500);
+        lanes.offer(noteOff, 501);
+        lanes.offer(MidiEvent.pack(0xF8, 0, 0), 502);
+        assertEquals(500, lanes.getDepth(MidiPriorityLanes.LANE_CONTINUOUS));
+        Collector collector = new Collector();
+        assertEquals(503, lanes.drain(collector));
+        assertEquals(0xF8, collector.events.get(0) & 0xFF);
+        assertEquals(noteOn, (int) collector.events.get(1));
+        assertEquals(noteOff, (int) collector.events.get(2));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i & 0x7F, MidiEvent.getData2(collector.events.get(3 + i)));
+        }
+        assertEquals(500, lanes.getPeakDepth(MidiPriorityLanes.LANE_CONTINUOUS));
+        assertEquals(500, lanes.getWaitHistogram(MidiPriorityLanes.LANE_CONTINUOUS).snapshot().getCount());
+        assertEquals(2, lanes.getWaitHistogram(MidiPriorityLanes.LANE_NOTES).snapshot().getCount());
+        assertTrue(lanes.isEmpty());
+    }
+
+    @Test
+    public void drainOrderAndBudget() {
+        MidiPriorityLanes lanes = new MidiPriorityLanes(16);
+        lanes.offer(MidiEvent.pack(0xB0, 1, 1), 0);
+        lanes.offer(MidiEvent.pack(0x90, 60, 100), 0);
+        lanes.setDrainOrder(MidiPriorityLanes.LANE_CONTINUOUS, MidiPriorityLanes.LANE_NOTES,
+                MidiPriorityLanes.LANE_REALTIME);
+        Collector collector = new Collector();
+        assertEquals(1, lanes.drain(collector, 1));
+        assertEquals(0xB0, collector.events.get(0) & 0xFF);
+        assertEquals(1, lanes.drain(collector, 1));
+        assertEquals(0x90, collector.events.get(1) & 0xFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setDrainOrder_rejectsRepeatedLane() {
+        new MidiPriorityLanes(16).setDrainOrder(0, 0, 1);
+    }
+
+    @Test
+    public void fullLane_dropsOnlyItsOwnEvents() {
+        MidiPriorityLanes lanes = new MidiPriorityLanes(16, 16, 4);
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        pipeline.setPriorityLanes(lanes);
+        for (int i = 0; i < 10; i++) {
+            pipeline.receive(new byte[] {(byte) 0xE0, 0, (byte) i}, 0, 3, i);
+        }
+        pipeline.receive(new byte[] {(byte) 0x90, 60, 100}, 0, 3, 10);
+        assertEquals(6, lanes.getOverflowCount(MidiPriorityLanes.LANE_CONTINUOUS));
+        assertEquals(6, pipeline.getMetrics().getDropCount(MidiSourceMetrics.DROP_OVERFLOW));
+        assertEquals(1, lanes.getDepth(MidiPriorityLanes.LANE_NOTES));
+    }
+}
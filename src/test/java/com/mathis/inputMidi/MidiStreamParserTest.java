@@ -0,0 +1,117 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiStreamParser
+ */
+public class MidiStreamParserTest {
+
+    /** Listener recording everything it gets */
+    private static class RecordingListener implements midiStreamListener {
+        final List<Integer> events = new ArrayList<>();
+        final List<byte[]> sysEx = new ArrayList<>();
+        final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        int chunks = 0;
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            events.add(event);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            chunks++;
+            pending.write(data, offset, count);
+            if (last) {
+                sysEx.add(pending.toByteArray());
+                pending.reset();
+            }
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void offset_isHonoured() {
+        RecordingListener listener = new RecordingListener();
+        MidiStreamParser parser = new MidiStreamParser(listener);
+        byte[] data = bytes(0x80, 1, 2, 0x90, 60, 100);
+        assertEquals(1, parser.parse(data, 3, 3, 0L));
+        assertEquals(MidiEvent.pack(0x90, 60, 100), (int) listener.events.get(0));
+    }
+
+    @Test
+    public void runningStatus_andSplitPackets() {
+        RecordingListener listener = new RecordingListener();
+        MidiStreamParser parser = new MidiStreamParser(listener);
+        parser.parse(bytes(0xB0, 1), 0, 2, 0L);
+        assertTrue(listener.events.isEmpty());
+        assertFalse(parser.isIdle());
+        parser.parse(bytes(10, 1, 20, 7), 0, 4, 0L);
+        parser.parse(bytes(100, 0xC2, 5, 6), 0, 4, 0L);
+        assertEquals(5, listener.events.size());
+        assertEquals(MidiEvent.pack(0xB0, 1, 10), (int) listener.events.get(0));
+        assertEquals(MidiEvent.pack(0xB0, 1, 20), (int) listener.events.get(1));
+        assertEquals(MidiEvent.pack(0xB0, 7, 100), (int) listener.events.get(2));
+        assertEquals(MidiEvent.pack(0xC2, 5, 0), (int) listener.events.get(3));
+        assertEquals(MidiEvent.pack(0xC2, 6, 0), (int) listener.events.get(4));
+    }
+
+    @Test
+    public void realTime_insideMessage() {
+        RecordingListener listener = new RecordingListener();
+        MidiStreamParser parser = new MidiStreamParser(listener);
+        parser.parse(bytes(0x90, 0xF8, 60, 0xFE, 100), 0, 5, 0L);
+        assertEquals(3, listener.events.size());
+        assertEquals(0xF8, (int) listener.events.get(0));
+        assertEquals(0xFE, (int) listener.events.get(1));
+        assertEquals(MidiEvent.pack(0x90, 60, 100), (int) listener.events.get(2));
+    }
+
+    @Test
+    public void sysEx_reassembledAcrossPackets() {
+        RecordingListener listener = new RecordingListener();
+        MidiStreamParser parser = new MidiStreamParser(listener);
+        parser.parse(bytes(0xF0, 0x7E, 1), 0, 3, 0L);
+        parser.parse(bytes(2, 0xF8, 3), 0, 3, 0L);
+        parser.parse(bytes(0xF7, 0x90, 60, 1), 0, 4, 0L);
+        assertEquals(1, listener.chunks);
+        assertArrayEquals(bytes(0xF0, 0x7E, 1, 2, 3, 0xF7), listener.sysEx.get(0));
+        assertEquals(2, listener.events.size());
+    }
+
+    @Test
+    public void longSysEx_deliveredInChunks() {
+        RecordingListener listener = new RecordingListener();
+        MidiStreamParser parser = new MidiStreamParser(listener, 4);
+        byte[] message = bytes(0xF0, 1, 2, 3, 4, 5, 6, 7, 8, 0xF7);
+        parser.parse(message, 0, message.length, 0L);
+        assertEquals(3, listener.chunks);
+        assertArrayEquals(message, listener.sysEx.get(0));
+    }
+
+    @Test
+    public void orphanDataBytes_areDiscarded() {
+        RecordingListener listener = new RecordingListener();
+        MidiStreamParser parser = new MidiStreamParser(listener);
+        parser.parse(bytes(60, 100, 0xF7), 0, 3, 0L);
+        assertTrue(listener.events.isEmpty());
+        assertEquals(3, parser.getDiscardedBytes());
+        parser.parse(bytes(0x90, 60, 0xB0, 7, 100), 0, 5, 0L);
+        assertEquals(1, listener.events.size());
+        assertEquals(4, parser.getDiscardedBytes());
+    }
+}
@@ -0,0 +1,172 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiSysExAssembler and MidiSysExBufferPool
+ */
+public class MidiSysExAssemblerTest {
+
+    /** Keeps the buffers it gets, without releasing them */
+    private static class Collector implements midiSysExListener {
+        final List<MidiSysExBuffer> buffers = new ArrayList<>();
+
+        @Override
+        public void onSysEx(MidiSysExBuffer buffer) {
+            buffers.add(buffer);
+        }
+
+        void releaseAll() {
+            for (MidiSysExBuffer buffer : buffers) {
+                buffer.release();
+            }
+            buffers.clear();
+        }
+    }
+
+    private static byte[] sysEx(int length) {
+        byte[] data = new byte[length];
+        data[0] = (byte) 0xF0;
+        for (int i = 1; i < length - 1; i++) {
+            data[i] = (byte) (i & 0x7F);
+        }
+        data[length - 1] = (byte) 0xF7;
+        return data;
+    }
+
+    @Test
+    public void shortMessage_deliveredCompleteThroughPipeline() {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(64, 2);
+        Collector collector = new Collector();
+        MidiInputPipeline pipeline = new MidiInputPipeline(3, "test");
+        pipeline.setSysExAssembler(new MidiSysExAssembler(pool, collector, 3));
+        byte[] message = sysEx(10);
+        // split across packets
+        pipeline.receive(message, 0, 4, 100);
+        pipeline.receive(message, 4, 6, 200);
+        assertEquals(1, collector.buffers.size());
+        MidiSysExBuffer buffer = collector.buffers.get(0);
+        assertTrue(buffer.isComplete());
+        assertFalse(buffer.isTruncated());
+        assertEquals(10, buffer.getLength());
+        assertEquals(3, buffer.getSource());
+        assertEquals(200, buffer.getTimestamp());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(message[i], buffer.getData()[i]);
+        }
+        assertEquals(1, pool.getAvailableCount());
+        buffer.release();
+        assertEquals(2, pool.getAvailableCount());
+    }
+
+    @Test
+    public void longMessage_deliveredInParts() {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(16, 4);
+        Collector collector = new Collector();
+        MidiSysExAssembler assembler = new MidiSysExAssembler(pool, collector, 0);
+        byte[] message = sysEx(40);
+        assembler.onSysExChunk(message, 0, 20, true, false, 0);
+        assembler.onSysExChunk(message, 20, 20, false, true, 0);
+        assertEquals(3, collector.buffers.size());
+        assertTrue(collector.buffers.get(0).isFirst());
+        assertFalse(collector.buffers.get(0).isLast());
+        assertFalse(collector.buffers.get(1).isFirst());
+        assertFalse(collector.buffers.get(1).isLast());
+        assertTrue(collector.buffers.get(2).isLast());
+        assertEquals(8, collector.buffers.get(2).getLength());
+        assertEquals((byte) 0xF7, collector.buffers.get(2).getData()[7]);
+        assertEquals(1, assembler.getDeliveredCount());
+        assertEquals(0, assembler.getDroppedCount());
+    }
+
+    @Test
+    public void poolExhausted_dropsAndCountsWithoutStallingNotes() {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(16, 2);
+        Collector collector = new Collector();
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "test");
+        MidiEventRing ring = new MidiEventRing(16);
+        pipeline.setEventRing(ring);
+        MidiSysExAssembler assembler = new MidiSysExAssembler(pool, collector, 0);
+        pipeline.setSysExAssembler(assembler);
+        byte[] dump = sysEx(100);
+        pipeline.receive(dump, 0, dump.length, 0);
+        pipeline.receive(new byte[] {(byte) 0x90, 60, 100}, 0, 3, 0);
+        // the part gathered is delivered as the truncated end of the message
+        assertEquals(2, collector.buffers.size());
+        assertTrue(collector.buffers.get(1).isLast());
+        assertTrue(collector.buffers.get(1).isTruncated());
+        assertEquals(1, assembler.getDroppedCount());
+        assertEquals(100 - 32, assembler.getDroppedBytes());
+        assertEquals(1, pipeline.getMetrics().getDropCount(MidiSourceMetrics.DROP_SYSEX_TRUNCATED));
+        assertEquals(1, ring.size());
+        // nothing left: the next message is dropped entirely
+        pipeline.receive(sysEx(8), 0, 8, 0);
+        assertEquals(2, collector.buffers.size());
+        assertEquals(2, assembler.getDroppedCount());
+        collector.releaseAll();
+        pipeline.receive(sysEx(8), 0, 8, 0);
+        assertEquals(1, collector.buffers.size());
+        assertTrue(collector.buffers.get(0).isComplete());
+    }
+
+    @Test
+    public void maxMessageSize_truncates() {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(16, 4);
+        Collector collector = new Collector();
+        MidiSysExAssembler assembler = new MidiSysExAssembler(pool, collector, 0);
+        assembler.setMaxMessageSize(20);
+        byte[] message = sysEx(40);
+        assertTrue(assembler.onSysExChunk(message, 0, 40, true, true, 0));
+        assertEquals(2, collector.buffers.size());
+        assertEquals(4, collector.buffers.get(1).getLength());
+        assertTrue(collector.buffers.get(1).isTruncated());
+        assertEquals(20, assembler.getDroppedBytes());
+    }
+
+    @Test
+    public void waitPolicy_getsBufferReleasedByConsumer() throws Exception {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(16, 1);
+        final MidiSysExBuffer held = pool.acquire();
+        Collector collector = new Collector();
+        MidiSysExAssembler assembler = new MidiSysExAssembler(pool, collector, 0);
+        assembler.setPolicy(MidiSysExAssembler.POLICY_WAIT, 5_000_000_000L);
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return;
+            }
+            held.release();
+        });
+        consumer.start();
+        assertFalse(assembler.onSysExChunk(sysEx(8), 0, 8, true, true, 0));
+        consumer.join();
+        assertEquals(1, collector.buffers.size());
+        assertTrue(collector.buffers.get(0).isComplete());
+    }
+
+    @Test
+    public void reset_returnsPartialBuffer() {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(16, 1);
+        Collector collector = new Collector();
+        MidiSysExAssembler assembler = new MidiSysExAssembler(pool, collector, 0);
+        assembler.onSysExChunk(sysEx(40), 0, 8, true, false, 0);
+        assertEquals(0, pool.getAvailableCount());
+        assembler.reset();
+        assertEquals(1, pool.getAvailableCount());
+        assertTrue(collector.buffers.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void release_twiceThrows() {
+        MidiSysExBufferPool pool = new MidiSysExBufferPool(16, 1);
+        MidiSysExBuffer buffer = pool.acquire();
+        buffer.release();
+        buffer.release();
+    }
+}
@@ -0,0 +1,46 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiTransformConfig, MidiTransform and MidiTransformStage
+ */
+public class MidiTransformTest {
+
+    @Test
+    public void split_transpose_andChannelMap() {
+        MidiTransform transform = new MidiTransformConfig()
+                .setTranspose(0, 12)
+                .addSplit(0, 0, 59, 1, -12)
+                .setChannelMap(2, 5)
+                .setChannelMap(3, -1)
+                .compile();
+        assertEquals(MidiEvent.pack(0x90, 72, 100, 7), transform.apply(MidiEvent.pack(0x90, 60, 100, 7)));
+        assertEquals(MidiEvent.pack(0x91, 36, 100), transform.apply(MidiEvent.pack(0x90, 48, 100)));
+        assertEquals(MidiEvent.pack(0xB5, 1, 64), transform.apply(MidiEvent.pack(0xB2, 1, 64)));
+        assertEquals(MidiTransform.DROPPED, transform.apply(MidiEvent.pack(0x93, 60, 100)));
+        assertEquals(MidiTransform.DROPPED, transform.apply(MidiEvent.pack(0x90, 120, 100)));
+        assertEquals(0xF8, transform.apply(0xF8));
+    }
+
+    @Test
+    public void velocityCurve_keepsZeroAndNonZero() {
+        MidiTransform transform = new MidiTransformConfig().setVelocityCurve(3.0).compile();
+        assertEquals(0, MidiEvent.getData2(transform.apply(MidiEvent.pack(0x90, 60, 0))));
+        assertEquals(1, MidiEvent.getData2(transform.apply(MidiEvent.pack(0x90, 60, 1))));
+        assertEquals(127, MidiEvent.getData2(transform.apply(MidiEvent.pack(0x90, 60, 127))));
+        assertTrue(MidiEvent.getData2(transform.apply(MidiEvent.pack(0x90, 60, 64))) < 64);
+    }
+
+    @Test
+    public void stage_sendsNoteOffWhereNoteOnWent() {
+        MidiTransformStage stage = new MidiTransformStage();
+        stage.setConfig(new MidiTransformConfig().setTranspose(0, 12));
+        assertEquals(MidiEvent.pack(0x90, 72, 100), stage.process(MidiEvent.pack(0x90, 60, 100)));
+        stage.setConfig(new MidiTransformConfig().setChannelMap(0, 4));
+        assertEquals(MidiEvent.pack(0x80, 72, 0), stage.process(MidiEvent.pack(0x80, 60, 0)));
+        assertEquals(MidiEvent.pack(0x84, 60, 0), stage.process(MidiEvent.pack(0x80, 60, 0)));
+    }
+}
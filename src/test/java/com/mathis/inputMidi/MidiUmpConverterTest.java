@@ -0,0 +1,218 @@
+package com.mathis.inputMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for MidiUmpConverter, MidiUmpUpConverter, MidiUmpAssembler and
+ * MidiInputPipeline.receiveUmp
+ */
+public class MidiUmpConverterTest {
+
+    /** Collects converted messages */
+    private static class Collector implements midiStreamListener {
+        final List<Integer> events = new ArrayList<>();
+        final ByteArrayOutputStream sysEx = new ByteArrayOutputStream();
+
+        @Override
+        public void onMidiEvent(int event, long timestamp) {
+            events.add(event);
+        }
+
+        @Override
+        public void onSysExChunk(byte[] data, int offset, int count, boolean first, boolean last, long timestamp) {
+            sysEx.write(data, offset, count);
+        }
+    }
+
+    /** Collects packets */
+    private static class PacketCollector implements midiUmpListener {
+        final List<Integer> words = new ArrayList<>();
+        int calls = 0;
+
+        @Override
+        public void onUmpPackets(int[] packets, int offset, int count, long timestamp) {
+            calls++;
+            for (int i = 0; i < count; i++) {
+                words.add(packets[offset + i]);
+            }
+        }
+
+        int[] toArray() {
+            int[] result = new int[words.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words.get(i);
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void scaleUp_keepsMinCenterMax() {
+        assertEquals(0, MidiUmpConverter.scaleUp(0, 7, 32));
+        assertEquals(0x80000000, MidiUmpConverter.scaleUp(64, 7, 32));
+        assertEquals(0xFFFFFFFF, MidiUmpConverter.scaleUp(127, 7, 32));
+        assertEquals(0xFFFF, MidiUmpConverter.scaleUp(127, 7, 16));
+        assertEquals(0x80000000, MidiUmpConverter.scaleUp(MidiSpec.MID_PITCHBEND_VALUE, 14, 32));
+        assertEquals(0xFFFFFFFF, MidiUmpConverter.scaleUp(MidiSpec.MAX_PITCHBEND_VALUE, 14, 32));
+        for (int value = 0; value < 128; value++) {
+            assertEquals(value, MidiUmpConverter.scaleDown(MidiUmpConverter.scaleUp(value, 7, 32), 32, 7));
+        }
+    }
+
+    @Test
+    public void shortMessages_roundTrip() {
+        int[] events = {
+                MidiEvent.pack(0x93, 60, 100), MidiEvent.pack(0x83, 60, 40), MidiEvent.pack(0xB0, 7, 127),
+                MidiEvent.pack(0xC5, 12, 0), MidiEvent.pack(0xD1, 90, 0), MidiEvent.pack(0xE2, 0x11, 0x55),
+                MidiEvent.pack(0xA0, 61, 33), MidiEvent.pack(0xF8, 0, 0), MidiEvent.pack(0xF2, 0x10, 0x20)
+        };
+        int[] words = new int[2];
+        MidiUmpConverter converter = new MidiUmpConverter();
+        Collector collector = new Collector();
+        for (int event : events) {
+            int count = MidiUmpConverter.toUmp(event, 3, words, 0);
+            assertEquals(3, MidiUmpSpec.getGroup(words[0]));
+            assertEquals(count, converter.toMidi1(words, 0, collector, 0L));
+        }
+        for (int i = 0; i < events.length; i++) {
+            assertEquals(events[i], (int) collector.events.get(i));
+        }
+    }
+
+    @Test
+    public void midi2Messages_downConverted() {
+        MidiUmpConverter converter = new MidiUmpConverter();
+        Collector collector = new Collector();
+        // note on with the smallest velocity still sounds
+        int[] words = {MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_NOTE_ON, 1, 60, 0), 0x00010000};
+        converter.toMidi1(words, 0, collector, 0L);
+        assertEquals(MidiEvent.pack(0x91, 60, 1), (int) collector.events.get(0));
+
+        // registered controller: pitch bend sensitivity, 14 bits kept
+        collector.events.clear();
+        words[0] = MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_REGISTERED_CONTROLLER, 2, 0, 0);
+        words[1] = MidiUmpConverter.scaleUp((12 << 7) | 50, 14, 32);
+        converter.toMidi1(words, 0, collector, 0L);
+        assertEquals(4, collector.events.size());
+        assertEquals(MidiEvent.pack(0xB2, 101, 0), (int) collector.events.get(0));
+        assertEquals(MidiEvent.pack(0xB2, 100, 0), (int) collector.events.get(1));
+        assertEquals(MidiEvent.pack(0xB2, 6, 12), (int) collector.events.get(2));
+        assertEquals(MidiEvent.pack(0xB2, 38, 50), (int) collector.events.get(3));
+
+        // program change with bank
+        collector.events.clear();
+        words[0] = MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_PROGRAM_CHANGE, 0, 0, MidiUmpSpec.PROGRAM_BANK_VALID);
+        words[1] = (5 << 24) | (1 << 8) | 2;
+        converter.toMidi1(words, 0, collector, 0L);
+        assertEquals(MidiEvent.pack(0xB0, 0, 1), (int) collector.events.get(0));
+        assertEquals(MidiEvent.pack(0xB0, 32, 2), (int) collector.events.get(1));
+        assertEquals(MidiEvent.pack(0xC0, 5, 0), (int) collector.events.get(2));
+
+        // per-note pitch bend has no MIDI 1.0 equivalent
+        collector.events.clear();
+        words[0] = MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_PER_NOTE_PITCH_BEND, 0, 60, 0);
+        assertEquals(2, converter.toMidi1(words, 0, collector, 0L));
+        assertTrue(collector.events.isEmpty());
+        assertEquals(1, converter.getSkippedCount());
+    }
+
+    @Test
+    public void sysEx_roundTripThroughPackets() {
+        byte[] message = new byte[40];
+        message[0] = (byte) 0xF0;
+        for (int i = 1; i < message.length - 1; i++) {
+            message[i] = (byte) i;
+        }
+        message[message.length - 1] = (byte) 0xF7;
+        PacketCollector packets = new PacketCollector();
+        MidiUmpUpConverter up = new MidiUmpUpConverter(packets, 0);
+        // in two chunks, as the parser delivers long messages
+        up.onSysExChunk(message, 0, 17, true, false, 0L);
+        up.onSysExChunk(message, 17, message.length - 17, false, true, 0L);
+        int[] words = packets.toArray();
+        assertEquals(MidiUmpSpec.SYSEX_START, (words[0] >>> 20) & 0x0F);
+        assertEquals(MidiUmpSpec.SYSEX_END, (words[words.length - 2] >>> 20) & 0x0F);
+
+        MidiUmpConverter converter = new MidiUmpConverter();
+        Collector collector = new Collector();
+        for (int offset = 0; offset < words.length; ) {
+            offset += converter.toMidi1(words, offset, collector, 0L);
+        }
+        assertArrayEquals(message, collector.sysEx.toByteArray());
+    }
+
+    @Test
+    public void assembler_feedsPipelineAcrossSplitPackets() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(1, "ump");
+        MidiEventRing ring = new MidiEventRing(16);
+        pipeline.setEventRing(ring);
+        MidiUmpAssembler assembler = new MidiUmpAssembler(pipeline);
+        int controllerValue = 0x12345678;
+        byte[] data = toBytes(new int[]{
+                MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_CONTROL_CHANGE, 0, 74, 0), controllerValue,
+                0x10F80000});
+        assembler.onMidiBytes(data, 0, 5, 0L);
+        assertTrue(ring.isEmpty());
+        assembler.onMidiBytes(data, 5, data.length - 5, 0L);
+        assertEquals(2, ring.size());
+        assertEquals(MidiEvent.pack(0xB0, 74, controllerValue >>> 25, 1), ring.peekEvent());
+
+        // with a packet output, the full resolution reaches it
+        PacketCollector packets = new PacketCollector();
+        pipeline.setUmpOutput(packets);
+        assembler.onMidiBytes(data, 0, data.length, 0L);
+        assertEquals(1, packets.calls);
+        assertEquals(controllerValue, (int) packets.words.get(1));
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    public void receiveUmp_countsMessagesAndUnconvertedPackets() {
+        MidiInputPipeline pipeline = new MidiInputPipeline(0, "ump");
+        pipeline.setEventRing(new MidiEventRing(16));
+        int[] words = {
+                MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_NOTE_ON, 0, 60, 0), 0x80000000,
+                MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_PER_NOTE_PITCH_BEND, 0, 60, 0), 0,
+                0x10F80000,
+                MidiUmpSpec.midi2Word(0, MidiUmpSpec.OPCODE_CONTROL_CHANGE, 0, 1, 0)};
+        pipeline.receiveUmp(words, 0, words.length, 0L);
+        MidiSourceMetrics metrics = pipeline.getMetrics();
+        assertEquals(1, metrics.getMessageCount(MidiSourceMetrics.NOTE));
+        assertEquals(1, metrics.getMessageCount(MidiSourceMetrics.REALTIME));
+        assertEquals(3, metrics.getByteCount(MidiSourceMetrics.NOTE));
+        assertEquals(1, metrics.getByteCount(MidiSourceMetrics.REALTIME));
+        // the per-note pitch bend, and the controller missing its second word
+        assertEquals(2, metrics.getDropCount(MidiSourceMetrics.DROP_UNCONVERTED_PACKETS));
+
+        // passed on unchanged: counted by the category of the MIDI 1.0 equivalent
+        pipeline.setUmpOutput(new PacketCollector());
+        pipeline.receiveUmp(words, 0, 5, 0L);
+        assertEquals(2, metrics.getMessageCount(MidiSourceMetrics.NOTE));
+        assertEquals(1, metrics.getMessageCount(MidiSourceMetrics.CONTROL_CHANGE));
+        assertEquals(2, metrics.getMessageCount(MidiSourceMetrics.REALTIME));
+        // with the size of their packets
+        assertEquals(3 + 8, metrics.getByteCount(MidiSourceMetrics.NOTE));
+        assertEquals(8, metrics.getByteCount(MidiSourceMetrics.CONTROL_CHANGE));
+        assertEquals(1 + 4, metrics.getByteCount(MidiSourceMetrics.REALTIME));
+        pipeline.setEnabled(false);
+        pipeline.receiveUmp(words, 0, 5, 0L);
+        assertEquals(3, metrics.getDropCount(MidiSourceMetrics.DROP_DISABLED));
+    }
+
+    private static byte[] toBytes(int[] words) {
+        byte[] data = new byte[4 * words.length];
+        for (int i = 0; i < words.length; i++) {
+            data[4 * i] = (byte) (words[i] >>> 24);
+            data[4 * i + 1] = (byte) (words[i] >>> 16);
+            data[4 * i + 2] = (byte) (words[i] >>> 8);
+            data[4 * i + 3] = (byte) words[i];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,26 @@
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import static org.junit.Assert.*;
+
+import com.mathis.inputMidi.MidiEvent;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for HardwareMidiInputPort
+ */
+public class HardwareMidiInputPortTest {
+
+    @Test
+    public void timeToFirstMessage_measuredFromOpenRequest() {
+        HardwareMidiInputPort port = new HardwareMidiInputPort(null, null, null, 0, 3, 8);
+        port.setOpenRequestTime(System.nanoTime() - 1_000_000L);
+        assertEquals(-1, port.getTimeToFirstMessageNanos());
+        port.onSend(new byte[]{(byte) 0x90, 60, 100}, 0, 3, 0L);
+        long first = port.getTimeToFirstMessageNanos();
+        assertTrue(first >= 1_000_000L);
+        port.onSend(new byte[]{(byte) 0x80, 60, 0}, 0, 3, 0L);
+        assertEquals(first, port.getTimeToFirstMessageNanos());
+        assertEquals(3, MidiEvent.getSource(port.getRing().peekEvent()));
+    }
+}
@@ -0,0 +1,33 @@
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiDeviceReconnector
+ */
+public class MidiDeviceReconnectorTest {
+
+    @Test
+    public void backoff_doublesUpToBound() {
+        assertEquals(100, MidiDeviceReconnector.backoffDelayMillis(1, 100, 5000));
+        assertEquals(200, MidiDeviceReconnector.backoffDelayMillis(2, 100, 5000));
+        assertEquals(3200, MidiDeviceReconnector.backoffDelayMillis(6, 100, 5000));
+        assertEquals(5000, MidiDeviceReconnector.backoffDelayMillis(7, 100, 5000));
+        assertEquals(5000, MidiDeviceReconnector.backoffDelayMillis(200, 100, 5000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBackoff_rejectsInvertedBounds() {
+        new MidiDeviceReconnector().setBackoff(1000, 10, 3);
+    }
+
+    @Test
+    public void statistics_startEmpty() {
+        MidiDeviceReconnector reconnector = new MidiDeviceReconnector();
+        assertEquals(0, reconnector.getAttemptCount());
+        assertEquals(-1, reconnector.getLastReconnectLatencyNanos());
+        assertFalse(MidiDeviceReconnector.isSameDevice(null, null));
+    }
+}
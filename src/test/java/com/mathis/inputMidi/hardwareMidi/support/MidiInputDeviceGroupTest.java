@@ -0,0 +1,33 @@
+package com.mathis.inputMidi.hardwareMidi.support;
+
+import static org.junit.Assert.*;
+
+import com.mathis.inputMidi.MidiEvent;
+import com.mathis.inputMidi.MidiEventRing;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for MidiInputDeviceGroup
+ */
+public class MidiInputDeviceGroupTest {
+
+    @Test
+    public void deviceRemoved_queuesNoteOffsOfHeldNotes() {
+        MidiInputDeviceGroup group = new MidiInputDeviceGroup(null, null, 8);
+        HardwareMidiInputPort port = new HardwareMidiInputPort(null, null, null, 0, 2, 8);
+        group.add(port);
+        port.onSend(new byte[]{(byte) 0x90, 60, 100, 62, 100}, 0, 5, 0L);
+        assertEquals(2, port.getNoteTracker().getHeldNoteCount(0));
+
+        group.closeDevice(port.getDeviceId());
+        assertNull(group.getPort(2));
+        assertEquals(0, port.getNoteTracker().getHeldNoteCount(0));
+        MidiEventRing ring = port.getRing();
+        assertEquals(4, ring.size());
+        ring.skip();
+        ring.skip();
+        assertEquals(0x80, MidiEvent.getStatus(ring.peekEvent()));
+        assertEquals(2, MidiEvent.getSource(ring.peekEvent()));
+    }
+}
@@ -0,0 +1,194 @@
+package com.mathis.inputMidi.softwareMidi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mathis.inputMidi.MidiEvent;
+import com.mathis.inputMidi.MidiEventBatch;
+import com.mathis.inputMidi.MidiEventRing;
+import com.mathis.inputMidi.MidiSourceMetrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Local unit tests for SynthDeviceServiceMidiReceiver
+ */
+public class SynthDeviceServiceMidiReceiverTest {
+
+    /** Receiver that only counts what it gets, without allocating */
+    private static class CountingRangeReceiver implements softwareMidiRangeReceiver {
+        int messages = 0;
+        int bytes = 0;
+
+        @Override
+        public void onSoftwareMidiMessageReceive(byte[] msg, int offset, int count, long timestamp) {
+            messages++;
+            bytes += count;
+        }
+
+        @Override
+        public void onDeviceStatusChanged(boolean active) {
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void rangeReceiver_getsMessageRange() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver();
+        final byte[][] seen = new byte[1][];
+        final int[] range = new int[2];
+        final long[] time = new long[1];
+        rec.setSoftwareMidiRangeReceiver(new softwareMidiRangeReceiver() {
+            @Override
+            public void onSoftwareMidiMessageReceive(byte[] msg, int offset, int count, long timestamp) {
+                seen[0] = msg;
+                range[0] = offset;
+                range[1] = count;
+                time[0] = timestamp;
+            }
+
+            @Override
+            public void onDeviceStatusChanged(boolean active) {
+            }
+        });
+        byte[] buffer = new byte[]{0, 0, (byte) 0x90, 60, 100};
+        rec.onSend(buffer, 2, 3, 1234L);
+        assertEquals(3, range[1]);
+        assertEquals((byte) 0x90, seen[0][range[0]]);
+        assertEquals(60, seen[0][range[0] + 1]);
+        assertEquals(100, seen[0][range[0] + 2]);
+        assertEquals(1234L, time[0]);
+    }
+
+    @Test
+    public void classicReceiver_getsCopyOfMessage() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver();
+        final byte[][] seen = new byte[1][];
+        rec.setSoftwareMidiMessageReceiver(new softwareMidiReceiver() {
+            @Override
+            public void onSoftwareMidiMessageReceive(byte[] message) {
+                seen[0] = message;
+            }
+
+            @Override
+            public void onDeviceStatusChanged(boolean active) {
+            }
+        });
+        rec.onSend(new byte[]{0, (byte) 0x90, 60, 100}, 1, 3, 0L);
+        assertArrayEquals(new byte[]{(byte) 0x90, 60, 100}, seen[0]);
+    }
+
+    @Test
+    public void runningStatusPacket_isSplitIntoMessages() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver();
+        CountingRangeReceiver counter = new CountingRangeReceiver();
+        rec.setSoftwareMidiRangeReceiver(counter);
+        rec.onSend(new byte[]{(byte) 0x90, 60, 100, 64, 100, 67}, 0, 6, 0L);
+        assertEquals(2, counter.messages);
+        rec.onSend(new byte[]{100}, 0, 1, 0L);
+        assertEquals(3, counter.messages);
+        assertEquals(9, counter.bytes);
+    }
+
+    @Test
+    public void queuedEvents_carryPortIndex() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver(3);
+        MidiEventRing ring = new MidiEventRing(8);
+        rec.setEventRing(ring);
+        rec.onSend(new byte[]{(byte) 0x91, 60, 100}, 0, 3, 5L);
+        assertEquals(3, MidiEvent.getSource(ring.peekEvent()));
+        assertEquals(0x91, MidiEvent.getStatus(ring.peekEvent()));
+        assertEquals(5L, ring.peekTimestamp());
+    }
+
+    @Test
+    public void portClose_releasesHeldNotes() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver();
+        MidiEventRing ring = new MidiEventRing(8);
+        rec.setEventRing(ring);
+        rec.onSend(new byte[]{(byte) 0x90, 60, 100, 62, 100}, 0, 5, 0L);
+        assertEquals(2, rec.getNoteTracker().getHeldNoteCount(0));
+        rec.onPortStatusChanged(false);
+        assertEquals(4, ring.size());
+        assertEquals(0, rec.getNoteTracker().getHeldNoteCount(0));
+    }
+
+    @Test
+    public void metrics_countDisabledAndMalformed() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver();
+        rec.setEventRing(new MidiEventRing(8));
+        rec.setTransmitSoftwareMidiMessagesToReceiver(false);
+        rec.onSend(new byte[]{0x40, (byte) 0x90, 60, 100, (byte) 0xB0, 7, 100}, 0, 7, 0L);
+        MidiSourceMetrics metrics = rec.getMetrics();
+        assertEquals(7, metrics.getByteCount());
+        assertEquals(1, metrics.getMessageCount(MidiSourceMetrics.NOTE));
+        assertEquals(2, metrics.getDropCount(MidiSourceMetrics.DROP_DISABLED));
+        assertEquals(1, metrics.getDropCount(MidiSourceMetrics.DROP_MALFORMED_BYTES));
+    }
+
+    @Test
+    public void steadyStateReception_allocatesNothing() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver();
+        CountingRangeReceiver counter = new CountingRangeReceiver();
+        rec.setSoftwareMidiRangeReceiver(counter);
+        byte[] buffer = new byte[]{(byte) 0xB0, 1, 64};
+        // warm up, so that class loading and compilation do not count
+        for (int i = 0; i < 100000; i++) {
+            buffer[2] = (byte) (i & 0x7F);
+            rec.onSend(buffer, 0, 3, i);
+        }
+        // best of several rounds, to rule out one-off allocations by the runtime
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < 100000; i++) {
+                buffer[2] = (byte) (i & 0x7F);
+                rec.onSend(buffer, 0, 3, i);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - before);
+        }
+        assertEquals(600000, counter.messages);
+        assertTrue("allocated " + allocated + " bytes", allocated < 256);
+    }
+
+    @Test
+    public void batchReceiver_getsPacketAtOnce() {
+        SynthDeviceServiceMidiReceiver rec = new SynthDeviceServiceMidiReceiver(3);
+        final int[] batches = new int[2];
+        final CountingRangeReceiver single = new CountingRangeReceiver();
+        rec.setSoftwareMidiRangeReceiver(new softwareMidiBatchReceiver() {
+            @Override
+            public void onSoftwareMidiBatchReceive(int port, MidiEventBatch batch) {
+                assertEquals(3, port);
+                batches[0]++;
+                batches[1] += batch.size();
+            }
+
+            @Override
+            public void onSoftwareMidiMessageReceive(byte[] msg, int offset, int count, long timestamp) {
+                single.onSoftwareMidiMessageReceive(msg, offset, count, timestamp);
+            }
+
+            @Override
+            public void onDeviceStatusChanged(boolean active) {
+            }
+        });
+        rec.onSend(new byte[]{(byte) 0x90, 60, 100, 62, 100, (byte) 0xF0, 1, (byte) 0xF7}, 0, 8, 1L);
+        assertEquals(1, batches[0]);
+        assertEquals(2, batches[1]);
+        assertEquals(1, single.messages);
+
+        // a plain receiver gets one call per message again
+        rec.setSoftwareMidiRangeReceiver(single);
+        rec.onSend(new byte[]{(byte) 0x80, 60, 0, 62, 0}, 0, 5, 2L);
+        assertEquals(1, batches[0]);
+        assertEquals(3, single.messages);
+    }
+}